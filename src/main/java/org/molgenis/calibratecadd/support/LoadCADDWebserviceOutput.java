@@ -1,16 +1,21 @@
 package org.molgenis.calibratecadd.support;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class LoadCADDWebserviceOutput
 {
 
 	/**
-	 * "chr_pos_ref_alt" to CADD PHRED score
+	 * "chr_pos_ref_alt" to CADD PHRED score, the file may be gzipped
 	 * @param caddFile
 	 * @return
 	 * @throws FileNotFoundException
@@ -18,7 +23,12 @@ public class LoadCADDWebserviceOutput
 	public static Map<String, Double> load(File caddFile) throws Exception
 	{
 		HashMap<String, Double> caddScores;
-		try (Scanner cadd = new Scanner(caddFile))
+		InputStream inputStream = new FileInputStream(caddFile);
+		if (caddFile.getName().endsWith(".gz"))
+		{
+			inputStream = new GZIPInputStream(inputStream);
+		}
+		try (Scanner cadd = new Scanner(inputStream, UTF_8.name()))
 		{
 
 			caddScores = new HashMap<>();
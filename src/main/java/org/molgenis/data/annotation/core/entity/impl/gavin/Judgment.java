@@ -17,10 +17,20 @@ public class Judgment
 		calibrated, genomewide
 	}
 
+	/**
+	 * Structured reason of a judgment, rendered to text only when the reason is requested
+	 */
+	public interface Reason
+	{
+		String render();
+	}
+
 	private Classification classification;
 	private Method confidence;
 	private String gene;
 	private String reason;
+	private Reason structuredReason;
+	private String renderedReason;
 	private String source;
 	private String type;
 
@@ -35,6 +45,17 @@ public class Judgment
 		this.type = type;
 	}
 
+	public Judgment(Classification classification, Method confidence, String gene, Reason structuredReason,
+			String source, String type)
+	{
+		this.classification = classification;
+		this.confidence = confidence;
+		this.gene = gene;
+		this.structuredReason = structuredReason;
+		this.source = source;
+		this.type = type;
+	}
+
 	public Classification getClassification()
 	{
 		return classification;
@@ -69,15 +90,33 @@ public class Judgment
 
 	public String getReason()
 	{
-		return reason;
+		if (structuredReason == null)
+		{
+			return reason;
+		}
+		if (renderedReason == null)
+		{
+			renderedReason = structuredReason.render();
+		}
+		return renderedReason;
 	}
 
 	public Judgment setReason(String reason)
 	{
 		this.reason = reason;
+		this.structuredReason = null;
+		this.renderedReason = null;
 		return this;
 	}
 
+	/**
+	 * @return structured reason or null if this judgment was created with a textual reason
+	 */
+	public Reason getStructuredReason()
+	{
+		return structuredReason;
+	}
+
 	public String getSource()
 	{
 		return source;
@@ -105,7 +144,7 @@ public class Judgment
 	public String toString()
 	{
 		return "Judgment{" + "classification=" + classification + ", confidence=" + confidence + ", gene='" + gene
-				+ '\'' + ", reason='" + reason + '\'' + ", source='" + source + '\'' + ", type='" + type + '\'' + '}';
+				+ '\'' + ", reason='" + getReason() + '\'' + ", source='" + source + '\'' + ", type='" + type + '\'' + '}';
 	}
 
 	@Override
@@ -115,14 +154,14 @@ public class Judgment
 		if (o == null || getClass() != o.getClass()) return false;
 		Judgment judgment = (Judgment) o;
 		return classification == judgment.classification && confidence == judgment.confidence && Objects.equals(gene,
-				judgment.gene) && Objects.equals(reason, judgment.reason) && Objects.equals(source, judgment.source)
-				&& Objects.equals(type, judgment.type);
+				judgment.gene) && Objects.equals(reason, judgment.reason) && Objects.equals(structuredReason,
+				judgment.structuredReason) && Objects.equals(source, judgment.source) && Objects.equals(type, judgment.type);
 	}
 
 	@Override
 	public int hashCode()
 	{
 
-		return Objects.hash(classification, confidence, gene, reason, source, type);
+		return Objects.hash(classification, confidence, gene, reason, structuredReason, source, type);
 	}
 }
\ No newline at end of file
@@ -3,17 +3,19 @@ package org.molgenis.data.annotation.entity.impl.gavin;
 import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
 import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
 import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry.Category;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinReason.Rule;
 import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
 
 import javax.annotation.Nullable;
-import java.util.Map;
 
 import static org.molgenis.data.annotation.core.entity.impl.gavin.Judgment.Classification.Benign;
 import static org.molgenis.data.annotation.core.entity.impl.gavin.Judgment.Classification.Pathogenic;
+import static org.molgenis.data.annotation.core.entity.impl.gavin.Judgment.Classification.VOUS;
 import static org.molgenis.data.annotation.core.entity.impl.gavin.Judgment.Method.calibrated;
 import static org.molgenis.data.annotation.core.entity.impl.gavin.Judgment.Method.genomewide;
 import static org.molgenis.data.annotation.core.entity.impl.snpeff.Impact.*;
 import static org.molgenis.data.annotation.entity.impl.gavin.GavinEntry.Category.*;
+import static org.molgenis.data.annotation.entity.impl.gavin.GavinReason.Rule.*;
 
 public class GavinAlgorithm
 {
@@ -35,34 +37,34 @@ public class GavinAlgorithm
 	public Judgment classifyVariant(Impact impact, Double caddScaled, Double exacMAF, String gene,
 			GavinCalibrations gavinCalibrations)
 	{
-		Double pathoMAFThreshold;
-		Double meanPathogenicCADDScore;
-		Double meanPopulationCADDScore;
-		Double spec95thPerCADDThreshold;
-		Double sens95thPerCADDThreshold;
-		Category category;
-		Map<String, GavinEntry> geneToEntry = gavinCalibrations.getGavinEntries();
+		return classifyVariant(impact, caddScaled, exacMAF, gene,
+				gavinCalibrations.getCalibrationTable().getGeneId(gene), gavinCalibrations);
+	}
 
-		//get data from map, for reuse in GAVIN-related tools other than the annotator
-		if (!geneToEntry.containsKey(gene))
+	/**
+	 * Classify a variant in a gene that was already resolved to its id, see {@link GavinCalibrationTable#getGeneId}.
+	 *
+	 * @param impact
+	 * @param caddScaled
+	 * @param exacMAF
+	 * @param gene
+	 * @param geneId
+	 * @param gavinCalibrations
+	 * @return
+	 */
+	public Judgment classifyVariant(Impact impact, Double caddScaled, Double exacMAF, String gene, int geneId,
+			GavinCalibrations gavinCalibrations)
+	{
+		if (geneId == GavinCalibrationTable.UNKNOWN_GENE)
 		{
 			//if we have no data for this gene, immediately fall back to the genomewide method
 			return genomewideClassifyVariant(impact, caddScaled, exacMAF, gene, gavinCalibrations);
 		}
-		else
-		{
-			pathoMAFThreshold = geneToEntry.get(gene).getPathoMAFThreshold() != null ?
-					geneToEntry.get(gene).getPathoMAFThreshold() * extraSensitivityFactor * 2 : null;
-			meanPathogenicCADDScore = geneToEntry.get(gene).getMeanPathogenicCADDScore() != null ?
-					geneToEntry.get(gene).getMeanPathogenicCADDScore() - extraSensitivityFactor : null;
-			meanPopulationCADDScore = geneToEntry.get(gene).getMeanPopulationCADDScore() != null ?
-					geneToEntry.get(gene).getMeanPopulationCADDScore() - extraSensitivityFactor : null;
-			spec95thPerCADDThreshold = geneToEntry.get(gene).getSpec95thPerCADDThreshold() != null ?
-					geneToEntry.get(gene).getSpec95thPerCADDThreshold() - extraSensitivityFactor : null;
-			sens95thPerCADDThreshold = geneToEntry.get(gene).getSens95thPerCADDThreshold() != null ?
-					geneToEntry.get(gene).getSens95thPerCADDThreshold() - extraSensitivityFactor : null;
-			category = geneToEntry.get(gene).getCategory();
-		}
+
+		// thresholds are NaN when missing, comparisons against NaN are always false
+		GavinCalibrationTable calibrationTable = gavinCalibrations.getCalibrationTable();
+		double pathoMAFThreshold = calibrationTable.getPathoMAFThreshold(geneId);
+		Category category = calibrationTable.getCategory(geneId);
 
 		// CADD score based classification, calibrated
 		if (caddScaled != null)
@@ -71,34 +73,34 @@ public class GavinAlgorithm
 			{
 				case C1:
 				case C2:
+					double meanPathogenicCADDScore = calibrationTable.getMeanPathogenicCADDScore(geneId);
+					double meanPopulationCADDScore = calibrationTable.getMeanPopulationCADDScore(geneId);
 					if (caddScaled > meanPathogenicCADDScore)
 					{
-						return new Judgment(Pathogenic, calibrated, gene,
-								"Variant CADD score of " + caddScaled + " is greater than " + meanPathogenicCADDScore
-										+ " in a gene for which CADD scores are informative.", null, null);
+						return judgment(Pathogenic, calibrated, CALIBRATED_CADD_ABOVE_MEAN_PATHOGENIC, impact, caddScaled,
+								exacMAF, meanPathogenicCADDScore, gene);
 					}
 					else if (caddScaled < meanPopulationCADDScore)
 					{
-						return new Judgment(Benign, calibrated, gene,
-								"Variant CADD score of " + caddScaled + " is less than " + meanPopulationCADDScore
-										+ " in a gene for which CADD scores are informative.", null, null);
+						return judgment(Benign, calibrated, CALIBRATED_CADD_BELOW_MEAN_POPULATION, impact, caddScaled,
+								exacMAF, meanPopulationCADDScore, gene);
 					}
 					//else: this rule does not classify apparently, just continue onto the next rules
 					break;
 				case C3:
 				case C4:
 				case C5:
+					double spec95thPerCADDThreshold = calibrationTable.getSpec95thPerCADDThreshold(geneId);
+					double sens95thPerCADDThreshold = calibrationTable.getSens95thPerCADDThreshold(geneId);
 					if (caddScaled > spec95thPerCADDThreshold)
 					{
-						return new Judgment(Pathogenic, calibrated, gene,
-								"Variant CADD score of " + caddScaled + " is greater than " + spec95thPerCADDThreshold
-										+ " for this gene.", null, null);
+						return judgment(Pathogenic, calibrated, CALIBRATED_CADD_ABOVE_SPEC95, impact, caddScaled, exacMAF,
+								spec95thPerCADDThreshold, gene);
 					}
 					else if (caddScaled < sens95thPerCADDThreshold)
 					{
-						return new Judgment(Benign, calibrated, gene,
-								"Variant CADD score of " + caddScaled + " is less than " + sens95thPerCADDThreshold
-										+ " for this gene.", null, null);
+						return judgment(Benign, calibrated, CALIBRATED_CADD_BELOW_SENS95, impact, caddScaled, exacMAF,
+								sens95thPerCADDThreshold, gene);
 					}
 					//else: this rule does not classify apparently, just continue onto the next rules
 					break;
@@ -106,41 +108,34 @@ public class GavinAlgorithm
 		}
 
 		// MAF-based classification, calibrated
-		if (pathoMAFThreshold != null && exacMAF > pathoMAFThreshold)
+		if (!Double.isNaN(pathoMAFThreshold) && exacMAF > pathoMAFThreshold)
 		{
-			return new Judgment(Benign, calibrated, gene,
-					"Variant MAF of " + exacMAF + " is greater than " + pathoMAFThreshold + ".", null, null);
+			return judgment(Benign, calibrated, CALIBRATED_MAF_ABOVE_PATHO_MAF, impact, caddScaled, exacMAF,
+					pathoMAFThreshold, gene);
 		}
 
-		String mafReason = "the variant MAF of " + exacMAF + " is less than a MAF of " + pathoMAFThreshold + ".";
-
-		// Impact based classification, calibrated
+		// Impact based classification, calibrated, the reason also mentions the MAF threshold
 		if (impact != null)
 		{
 			if (category == I1 && impact == HIGH)
 			{
-				return new Judgment(Pathogenic, calibrated, gene,
-						"Variant is of high impact, while there are no known high impact variants in the population. Also, "
-								+ mafReason, null, null);
+				return judgment(Pathogenic, calibrated, CALIBRATED_HIGH_IMPACT, impact, caddScaled, exacMAF,
+						pathoMAFThreshold, gene);
 			}
 			else if (category == I2 && (impact == MODERATE || impact == HIGH))
 			{
-
-				return new Judgment(Pathogenic, calibrated, gene,
-						"Variant is of high/moderate impact, while there are no known high/moderate impact variants in the population. Also, "
-								+ mafReason, null, null);
+				return judgment(Pathogenic, calibrated, CALIBRATED_HIGH_MODERATE_IMPACT, impact, caddScaled, exacMAF,
+						pathoMAFThreshold, gene);
 			}
 			else if (category == I3 && (impact == LOW || impact == MODERATE || impact == HIGH))
 			{
-				return new Judgment(Pathogenic, calibrated, gene,
-						"Variant is of high/moderate/low impact, while there are no known high/moderate/low impact variants in the population. Also, "
-								+ mafReason, null, null);
+				return judgment(Pathogenic, calibrated, CALIBRATED_HIGH_MODERATE_LOW_IMPACT, impact, caddScaled,
+						exacMAF, pathoMAFThreshold, gene);
 			}
 			else if (impact == MODIFIER)
 			{
-				return new Judgment(Benign, calibrated, gene,
-						"Variant is of 'modifier' impact, and therefore unlikely to be pathogenic. However, "
-								+ mafReason, null, null);
+				return judgment(Benign, calibrated, CALIBRATED_MODIFIER_IMPACT, impact, caddScaled, exacMAF,
+						pathoMAFThreshold, gene);
 			}
 		}
 
@@ -164,37 +159,39 @@ public class GavinAlgorithm
 
 		if (exacMAF > mafThreshold)
 		{
-			return new Judgment(Benign, genomewide, gene,
-					"Variant MAF of " + exacMAF + " is not rare enough to generally be considered pathogenic.", null,
-					null);
+			return judgment(Benign, genomewide, GENOMEWIDE_MAF_NOT_RARE, impact, caddScaled, exacMAF, mafThreshold,
+					gene);
 		}
 		if (impact != null && impact == MODIFIER)
 		{
-			return new Judgment(Benign, genomewide, gene,
-					"Variant is of 'modifier' impact, and therefore unlikely to be pathogenic.", null, null);
+			return judgment(Benign, genomewide, GENOMEWIDE_MODIFIER_IMPACT, impact, caddScaled, exacMAF, Double.NaN,
+					gene);
 		}
 		else
 		{
 			if (caddScaled != null && caddScaled > caddThreshold)
 			{
-				return new Judgment(Pathogenic, genomewide, gene, "Variant MAF of " + exacMAF
-						+ " is rare enough to be potentially pathogenic and its CADD score of " + caddScaled
-						+ " is greater than a global threshold of " + caddThreshold + ".", null, null);
+				return judgment(Pathogenic, genomewide, GENOMEWIDE_CADD_ABOVE_THRESHOLD, impact, caddScaled, exacMAF,
+						caddThreshold, gene);
 			}
 			else if (caddScaled != null && caddScaled <= caddThreshold)
 			{
-				return new Judgment(Benign, genomewide, gene,
-						"Variant CADD score of " + caddScaled + " is less than a global threshold of "
-								+ caddThreshold + ", although the variant MAF of " + exacMAF
-								+ " is rare enough to be potentially pathogenic.", null, null);
+				return judgment(Benign, genomewide, GENOMEWIDE_CADD_BELOW_THRESHOLD, impact, caddScaled, exacMAF,
+						caddThreshold, gene);
 			}
 			else
 			{
-				return new Judgment(Judgment.Classification.VOUS, Judgment.Method.genomewide, gene,
-						"Unable to classify variant as benign or pathogenic. The combination of " + impact
-								+ " impact, a CADD score of " + caddScaled + " and MAF of " + exacMAF + " in " + gene
-								+ " is inconclusive.", null, null);
+				return judgment(VOUS, genomewide, GENOMEWIDE_INCONCLUSIVE, impact, caddScaled, exacMAF, Double.NaN,
+						gene);
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	private static Judgment judgment(Judgment.Classification classification, Judgment.Method method, Rule rule,
+			@Nullable Impact impact, @Nullable Double caddScaled, @Nullable Double exacMAF, double threshold,
+			String gene)
+	{
+		return new Judgment(classification, method, gene,
+				new GavinReason(rule, impact, gene, caddScaled, exacMAF, threshold), null, null);
+	}
+}
@@ -0,0 +1,237 @@
+package org.molgenis.data.annotation.entity.impl.gavin;
+
+import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry.Category;
+import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Classifies many variants at once with the same rules as {@link GavinAlgorithm#classifyVariant}, for calibration and
+ * cohort runs where creating a {@link Judgment} per variant/gene combination is too expensive.
+ *
+ * Input are primitive columns with one element per variant/gene combination: impact codes (see
+ * {@link #toImpactCode(Impact)}), CADD scores and ExAC MAFs (NaN when missing) and gene ids (see
+ * {@link GavinCalibrationTable#getGeneId(String)}). The result is a column of {@link Judgment.Classification} ordinals.
+ *
+ * The calibrations are gathered per block of variants into primitive arrays, after which the rules are applied as a
+ * sequence of comparisons and selects without branches or object access, which the JIT can vectorise. Large inputs can
+ * be split over a fork-join pool.
+ */
+public class GavinBulkClassifier
+{
+	public static final byte NO_IMPACT = -1;
+	public static final byte BENIGN = (byte) Judgment.Classification.Benign.ordinal();
+	public static final byte PATHOGENIC = (byte) Judgment.Classification.Pathogenic.ordinal();
+	public static final byte VOUS = (byte) Judgment.Classification.VOUS.ordinal();
+
+	private static final byte NOT_CLASSIFIED = -1;
+	private static final byte MODIFIER = (byte) Impact.MODIFIER.ordinal();
+	// impact rules disabled, no impact code is this large
+	private static final byte NO_IMPACT_RULE = Byte.MAX_VALUE;
+	private static final int BLOCK_SIZE = 1024;
+	private static final int MIN_TASK_SIZE = 64 * BLOCK_SIZE;
+
+	// calibrations by gene id + 1, slot 0 is for genes without calibrations
+	private final double[] caddPathogenicThresholds;
+	private final double[] caddBenignThresholds;
+	private final double[] pathoMAFThresholds;
+	private final byte[] minPathogenicImpacts;
+	private final double genomewideCaddThreshold;
+	private final double genomewideMafThreshold;
+
+	public GavinBulkClassifier(GavinCalibrations gavinCalibrations)
+	{
+		GavinCalibrationTable calibrationTable = gavinCalibrations.getCalibrationTable();
+		int nrOfSlots = calibrationTable.getNrOfGenes() + 1;
+		caddPathogenicThresholds = new double[nrOfSlots];
+		caddBenignThresholds = new double[nrOfSlots];
+		pathoMAFThresholds = new double[nrOfSlots];
+		minPathogenicImpacts = new byte[nrOfSlots];
+
+		caddPathogenicThresholds[0] = Double.NaN;
+		caddBenignThresholds[0] = Double.NaN;
+		pathoMAFThresholds[0] = Double.NaN;
+		minPathogenicImpacts[0] = NO_IMPACT_RULE;
+		for (int geneId = 0; geneId < calibrationTable.getNrOfGenes(); geneId++)
+		{
+			int slot = geneId + 1;
+			Category category = calibrationTable.getCategory(geneId);
+			switch (category)
+			{
+				case C1:
+				case C2:
+					caddPathogenicThresholds[slot] = calibrationTable.getMeanPathogenicCADDScore(geneId);
+					caddBenignThresholds[slot] = calibrationTable.getMeanPopulationCADDScore(geneId);
+					break;
+				case C3:
+				case C4:
+				case C5:
+					caddPathogenicThresholds[slot] = calibrationTable.getSpec95thPerCADDThreshold(geneId);
+					caddBenignThresholds[slot] = calibrationTable.getSens95thPerCADDThreshold(geneId);
+					break;
+				default:
+					caddPathogenicThresholds[slot] = Double.NaN;
+					caddBenignThresholds[slot] = Double.NaN;
+			}
+			pathoMAFThresholds[slot] = calibrationTable.getPathoMAFThreshold(geneId);
+			switch (category)
+			{
+				case I1:
+					minPathogenicImpacts[slot] = (byte) Impact.HIGH.ordinal();
+					break;
+				case I2:
+					minPathogenicImpacts[slot] = (byte) Impact.MODERATE.ordinal();
+					break;
+				case I3:
+					minPathogenicImpacts[slot] = (byte) Impact.LOW.ordinal();
+					break;
+				default:
+					minPathogenicImpacts[slot] = NO_IMPACT_RULE;
+			}
+		}
+		genomewideCaddThreshold = gavinCalibrations.getGenomewideCaddThreshold();
+		genomewideMafThreshold = gavinCalibrations.getGenomewideMafThreshold();
+	}
+
+	public static byte toImpactCode(@Nullable Impact impact)
+	{
+		return impact != null ? (byte) impact.ordinal() : NO_IMPACT;
+	}
+
+	public static Judgment.Classification toClassification(byte classificationCode)
+	{
+		return Judgment.Classification.values()[classificationCode];
+	}
+
+	/**
+	 * Classify all variants in the calling thread.
+	 */
+	public void classify(byte[] impacts, double[] caddScores, double[] exacMAFs, int[] geneIds,
+			byte[] classifications)
+	{
+		validate(impacts, caddScores, exacMAFs, geneIds, classifications);
+		classify(impacts, caddScores, exacMAFs, geneIds, classifications, 0, classifications.length);
+	}
+
+	/**
+	 * Classify all variants, split over the threads of the given pool.
+	 */
+	public void classify(byte[] impacts, double[] caddScores, double[] exacMAFs, int[] geneIds,
+			byte[] classifications, ForkJoinPool forkJoinPool)
+	{
+		validate(impacts, caddScores, exacMAFs, geneIds, classifications);
+		forkJoinPool.invoke(
+				new ClassifyTask(this, impacts, caddScores, exacMAFs, geneIds, classifications, 0,
+						classifications.length));
+	}
+
+	private static void validate(byte[] impacts, double[] caddScores, double[] exacMAFs, int[] geneIds,
+			byte[] classifications)
+	{
+		int length = classifications.length;
+		if (impacts.length != length || caddScores.length != length || exacMAFs.length != length
+				|| geneIds.length != length)
+		{
+			throw new IllegalArgumentException(
+					"Columns must have equal lengths, have " + impacts.length + ", " + caddScores.length + ", "
+							+ exacMAFs.length + ", " + geneIds.length + " and " + length);
+		}
+	}
+
+	private void classify(byte[] impacts, double[] caddScores, double[] exacMAFs, int[] geneIds,
+			byte[] classifications, int from, int to)
+	{
+		double[] blockCaddPathogenicThresholds = new double[BLOCK_SIZE];
+		double[] blockCaddBenignThresholds = new double[BLOCK_SIZE];
+		double[] blockPathoMAFThresholds = new double[BLOCK_SIZE];
+		byte[] blockMinPathogenicImpacts = new byte[BLOCK_SIZE];
+
+		for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE)
+		{
+			int blockSize = Math.min(BLOCK_SIZE, to - blockStart);
+
+			// gather the calibrations of the genes, UNKNOWN_GENE (-1) maps to slot 0
+			for (int j = 0; j < blockSize; j++)
+			{
+				int slot = geneIds[blockStart + j] + 1;
+				blockCaddPathogenicThresholds[j] = caddPathogenicThresholds[slot];
+				blockCaddBenignThresholds[j] = caddBenignThresholds[slot];
+				blockPathoMAFThresholds[j] = pathoMAFThresholds[slot];
+				blockMinPathogenicImpacts[j] = minPathogenicImpacts[slot];
+			}
+
+			// apply the rules of GavinAlgorithm, a later select overrides an earlier one so the first rule that
+			// classifies in GavinAlgorithm is applied last. NaN comparisons are false, so missing values never match.
+			for (int j = 0; j < blockSize; j++)
+			{
+				int i = blockStart + j;
+				double caddScaled = caddScores[i];
+				double exacMAF = exacMAFs[i];
+				byte impact = impacts[i];
+
+				// genome-wide method
+				byte genomewide = caddScaled <= genomewideCaddThreshold ? BENIGN : VOUS;
+				genomewide = caddScaled > genomewideCaddThreshold ? PATHOGENIC : genomewide;
+				genomewide = impact == MODIFIER ? BENIGN : genomewide;
+				genomewide = (Double.isNaN(exacMAF) ? 0 : exacMAF) > genomewideMafThreshold ? BENIGN : genomewide;
+
+				// calibrated method, for genes without calibrations the modifier rule gives the same result as the
+				// genome-wide method
+				byte calibrated = impact == MODIFIER ? BENIGN : NOT_CLASSIFIED;
+				calibrated = impact >= blockMinPathogenicImpacts[j] ? PATHOGENIC : calibrated;
+				calibrated = exacMAF > blockPathoMAFThresholds[j] ? BENIGN : calibrated;
+				calibrated = caddScaled < blockCaddBenignThresholds[j] ? BENIGN : calibrated;
+				calibrated = caddScaled > blockCaddPathogenicThresholds[j] ? PATHOGENIC : calibrated;
+
+				classifications[i] = calibrated != NOT_CLASSIFIED ? calibrated : genomewide;
+			}
+		}
+	}
+
+	private static class ClassifyTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final GavinBulkClassifier classifier;
+		private final byte[] impacts;
+		private final double[] caddScores;
+		private final double[] exacMAFs;
+		private final int[] geneIds;
+		private final byte[] classifications;
+		private final int from;
+		private final int to;
+
+		ClassifyTask(GavinBulkClassifier classifier, byte[] impacts, double[] caddScores, double[] exacMAFs,
+				int[] geneIds, byte[] classifications, int from, int to)
+		{
+			this.classifier = classifier;
+			this.impacts = impacts;
+			this.caddScores = caddScores;
+			this.exacMAFs = exacMAFs;
+			this.geneIds = geneIds;
+			this.classifications = classifications;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= MIN_TASK_SIZE)
+			{
+				classifier.classify(impacts, caddScores, exacMAFs, geneIds, classifications, from, to);
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new ClassifyTask(classifier, impacts, caddScores, exacMAFs, geneIds, classifications, from, middle),
+						new ClassifyTask(classifier, impacts, caddScores, exacMAFs, geneIds, classifications, middle, to));
+			}
+		}
+	}
+}
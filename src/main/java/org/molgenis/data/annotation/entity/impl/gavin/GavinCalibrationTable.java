@@ -0,0 +1,118 @@
+package org.molgenis.data.annotation.entity.impl.gavin;
+
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry.Category;
+import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dense, array backed view on the gene calibrations used by {@link GavinAlgorithm}.
+ *
+ * Genes are numbered 0..n-1 and the thresholds are stored per gene id as primitives, with the extra sensitivity
+ * factor already applied and NaN for thresholds that are missing. Resolve a gene symbol to its id once with
+ * {@link #getGeneId(String)}, after that classifying a variant only takes a few array loads.
+ */
+public class GavinCalibrationTable
+{
+	public static final int UNKNOWN_GENE = -1;
+
+	private final Map<String, Integer> geneToId;
+	private final Category[] categories;
+	private final double[] pathoMAFThresholds;
+	private final double[] meanPathogenicCADDScores;
+	private final double[] meanPopulationCADDScores;
+	private final double[] spec95thPerCADDThresholds;
+	private final double[] sens95thPerCADDThresholds;
+
+	public GavinCalibrationTable(GavinCalibrations gavinCalibrations, int extraSensitivityFactor)
+	{
+		Map<String, GavinEntry> gavinEntries = gavinCalibrations.getGavinEntries();
+		int nrOfGenes = gavinEntries.size();
+		geneToId = new HashMap<>(nrOfGenes * 2);
+		categories = new Category[nrOfGenes];
+		pathoMAFThresholds = new double[nrOfGenes];
+		meanPathogenicCADDScores = new double[nrOfGenes];
+		meanPopulationCADDScores = new double[nrOfGenes];
+		spec95thPerCADDThresholds = new double[nrOfGenes];
+		sens95thPerCADDThresholds = new double[nrOfGenes];
+
+		int geneId = 0;
+		for (Map.Entry<String, GavinEntry> entry : gavinEntries.entrySet())
+		{
+			GavinEntry gavinEntry = entry.getValue();
+			geneToId.put(entry.getKey(), geneId);
+			categories[geneId] = gavinEntry.getCategory();
+			pathoMAFThresholds[geneId] = gavinEntry.getPathoMAFThreshold() != null ?
+					gavinEntry.getPathoMAFThreshold() * extraSensitivityFactor * 2 : Double.NaN;
+			meanPathogenicCADDScores[geneId] = gavinEntry.getMeanPathogenicCADDScore() != null ?
+					gavinEntry.getMeanPathogenicCADDScore() - extraSensitivityFactor : Double.NaN;
+			meanPopulationCADDScores[geneId] = gavinEntry.getMeanPopulationCADDScore() != null ?
+					gavinEntry.getMeanPopulationCADDScore() - extraSensitivityFactor : Double.NaN;
+			spec95thPerCADDThresholds[geneId] = gavinEntry.getSpec95thPerCADDThreshold() != null ?
+					gavinEntry.getSpec95thPerCADDThreshold() - extraSensitivityFactor : Double.NaN;
+			sens95thPerCADDThresholds[geneId] = gavinEntry.getSens95thPerCADDThreshold() != null ?
+					gavinEntry.getSens95thPerCADDThreshold() - extraSensitivityFactor : Double.NaN;
+			geneId++;
+		}
+	}
+
+	/**
+	 * @return id of the gene or {@link #UNKNOWN_GENE} if there are no calibrations for this gene
+	 */
+	public int getGeneId(String gene)
+	{
+		Integer geneId = geneToId.get(gene);
+		return geneId != null ? geneId : UNKNOWN_GENE;
+	}
+
+	/**
+	 * @return ids of the genes, in iteration order of the given genes
+	 */
+	public int[] getGeneIds(Collection<String> genes)
+	{
+		int[] geneIds = new int[genes.size()];
+		int i = 0;
+		for (String gene : genes)
+		{
+			geneIds[i++] = getGeneId(gene);
+		}
+		return geneIds;
+	}
+
+	public int getNrOfGenes()
+	{
+		return categories.length;
+	}
+
+	public Category getCategory(int geneId)
+	{
+		return categories[geneId];
+	}
+
+	public double getPathoMAFThreshold(int geneId)
+	{
+		return pathoMAFThresholds[geneId];
+	}
+
+	public double getMeanPathogenicCADDScore(int geneId)
+	{
+		return meanPathogenicCADDScores[geneId];
+	}
+
+	public double getMeanPopulationCADDScore(int geneId)
+	{
+		return meanPopulationCADDScores[geneId];
+	}
+
+	public double getSpec95thPerCADDThreshold(int geneId)
+	{
+		return spec95thPerCADDThresholds[geneId];
+	}
+
+	public double getSens95thPerCADDThreshold(int geneId)
+	{
+		return sens95thPerCADDThresholds[geneId];
+	}
+}
@@ -1,5 +1,9 @@
 package org.molgenis.data.annotation.entity.impl.gavin;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class GavinEntry
 {
 	public static final int PATHO_MAF_INDEX = 9;
@@ -85,6 +89,108 @@ public class GavinEntry
 		this.spec95thPerCADDThreshold = split[CADD_INDEX].isEmpty() ? null : Double.parseDouble(split[CADD_INDEX]);
 	}
 
+	/**
+	 * Reads an entry in the binary format of {@link #write(DataOutput)}.
+	 */
+	public GavinEntry(DataInput in) throws IOException
+	{
+		this.gene = in.readUTF();
+		this.category = Category.values()[in.readByte()];
+		this.chromosome = in.readUTF();
+		this.start = in.readLong();
+		this.end = in.readLong();
+		this.nrOfPopulationVariants = readNullableInteger(in);
+		this.nrOfPathogenicVariants = readNullableInteger(in);
+		this.nrOfOverlappingVariants = readNullableInteger(in);
+		this.nrOfFilteredPopVariants = readNullableInteger(in);
+		this.pathoMAFThreshold = readNullableDouble(in);
+		this.popImpactHighPerc = readNullableDouble(in);
+		this.popImpactModeratePerc = readNullableDouble(in);
+		this.popImpactLowPerc = readNullableDouble(in);
+		this.popImpactModifierPerc = readNullableDouble(in);
+		this.pathoImpactHighPerc = readNullableDouble(in);
+		this.pathoImpactModeratePerc = readNullableDouble(in);
+		this.pathoImpactLowPerc = readNullableDouble(in);
+		this.pathoImpactModifierPerc = readNullableDouble(in);
+		this.popImpactHighEq = readNullableDouble(in);
+		this.popImpactModerateEq = readNullableDouble(in);
+		this.popImpactLowEq = readNullableDouble(in);
+		this.popImpactModifierEq = readNullableDouble(in);
+		this.nrOfCADDScoredPopulationVars = readNullableInteger(in);
+		this.nrOfCADDScoredPathogenicVars = readNullableInteger(in);
+		this.meanPopulationCADDScore = readNullableDouble(in);
+		this.meanPathogenicCADDScore = readNullableDouble(in);
+		this.meanDifference = readNullableDouble(in);
+		this.uTestPvalue = readNullableDouble(in);
+		this.sens95thPerCADDThreshold = readNullableDouble(in);
+		this.spec95thPerCADDThreshold = readNullableDouble(in);
+	}
+
+	/**
+	 * Writes the entry in a compact binary format, used for precompiled reference bundles.
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeUTF(gene);
+		out.writeByte(category.ordinal());
+		out.writeUTF(chromosome);
+		out.writeLong(start);
+		out.writeLong(end);
+		writeNullableInteger(out, nrOfPopulationVariants);
+		writeNullableInteger(out, nrOfPathogenicVariants);
+		writeNullableInteger(out, nrOfOverlappingVariants);
+		writeNullableInteger(out, nrOfFilteredPopVariants);
+		writeNullableDouble(out, pathoMAFThreshold);
+		writeNullableDouble(out, popImpactHighPerc);
+		writeNullableDouble(out, popImpactModeratePerc);
+		writeNullableDouble(out, popImpactLowPerc);
+		writeNullableDouble(out, popImpactModifierPerc);
+		writeNullableDouble(out, pathoImpactHighPerc);
+		writeNullableDouble(out, pathoImpactModeratePerc);
+		writeNullableDouble(out, pathoImpactLowPerc);
+		writeNullableDouble(out, pathoImpactModifierPerc);
+		writeNullableDouble(out, popImpactHighEq);
+		writeNullableDouble(out, popImpactModerateEq);
+		writeNullableDouble(out, popImpactLowEq);
+		writeNullableDouble(out, popImpactModifierEq);
+		writeNullableInteger(out, nrOfCADDScoredPopulationVars);
+		writeNullableInteger(out, nrOfCADDScoredPathogenicVars);
+		writeNullableDouble(out, meanPopulationCADDScore);
+		writeNullableDouble(out, meanPathogenicCADDScore);
+		writeNullableDouble(out, meanDifference);
+		writeNullableDouble(out, uTestPvalue);
+		writeNullableDouble(out, sens95thPerCADDThreshold);
+		writeNullableDouble(out, spec95thPerCADDThreshold);
+	}
+
+	private static Integer readNullableInteger(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readInt() : null;
+	}
+
+	private static Double readNullableDouble(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readDouble() : null;
+	}
+
+	private static void writeNullableInteger(DataOutput out, Integer value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+		{
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeNullableDouble(DataOutput out, Double value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+		{
+			out.writeDouble(value);
+		}
+	}
+
 	public String getGene()
 	{
 		return gene;
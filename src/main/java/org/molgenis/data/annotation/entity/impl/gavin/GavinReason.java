@@ -0,0 +1,166 @@
+package org.molgenis.data.annotation.entity.impl.gavin;
+
+import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
+
+import java.util.Objects;
+
+/**
+ * Reason of a {@link GavinAlgorithm} judgment as the rule that classified the variant and the values that the rule
+ * compared. The text of the reason is only built when it is requested, most judgments are discarded before that.
+ *
+ * Values are rendered like the reasons that were built eagerly before: a missing CADD score or MAF and a NaN MAF
+ * threshold as 'null', any other NaN value as 'NaN'.
+ */
+public class GavinReason implements Judgment.Reason
+{
+	public enum Rule
+	{
+		CALIBRATED_CADD_ABOVE_MEAN_PATHOGENIC,
+		CALIBRATED_CADD_BELOW_MEAN_POPULATION,
+		CALIBRATED_CADD_ABOVE_SPEC95,
+		CALIBRATED_CADD_BELOW_SENS95,
+		CALIBRATED_MAF_ABOVE_PATHO_MAF,
+		CALIBRATED_HIGH_IMPACT,
+		CALIBRATED_HIGH_MODERATE_IMPACT,
+		CALIBRATED_HIGH_MODERATE_LOW_IMPACT,
+		CALIBRATED_MODIFIER_IMPACT,
+		GENOMEWIDE_MAF_NOT_RARE,
+		GENOMEWIDE_MODIFIER_IMPACT,
+		GENOMEWIDE_CADD_ABOVE_THRESHOLD,
+		GENOMEWIDE_CADD_BELOW_THRESHOLD,
+		GENOMEWIDE_INCONCLUSIVE
+	}
+
+	private final Rule rule;
+	private final Impact impact;
+	private final String gene;
+	private final Double caddScaled;
+	private final Double exacMAF;
+	private final double threshold;
+
+	/**
+	 * @param rule       rule that classified the variant
+	 * @param impact     impact of the variant, may be null
+	 * @param gene       gene of the variant
+	 * @param caddScaled CADD score of the variant, may be null
+	 * @param exacMAF    ExAC allele frequency of the variant, may be null
+	 * @param threshold  threshold that the rule compared against or NaN
+	 */
+	public GavinReason(Rule rule, Impact impact, String gene, Double caddScaled, Double exacMAF, double threshold)
+	{
+		this.rule = rule;
+		this.impact = impact;
+		this.gene = gene;
+		this.caddScaled = caddScaled;
+		this.exacMAF = exacMAF;
+		this.threshold = threshold;
+	}
+
+	public Rule getRule()
+	{
+		return rule;
+	}
+
+	public Impact getImpact()
+	{
+		return impact;
+	}
+
+	public Double getCaddScaled()
+	{
+		return caddScaled;
+	}
+
+	public Double getExacMAF()
+	{
+		return exacMAF;
+	}
+
+	public double getThreshold()
+	{
+		return threshold;
+	}
+
+	@Override
+	public String render()
+	{
+		switch (rule)
+		{
+			case CALIBRATED_CADD_ABOVE_MEAN_PATHOGENIC:
+				return "Variant CADD score of " + caddScaled + " is greater than " + threshold
+						+ " in a gene for which CADD scores are informative.";
+			case CALIBRATED_CADD_BELOW_MEAN_POPULATION:
+				return "Variant CADD score of " + caddScaled + " is less than " + threshold
+						+ " in a gene for which CADD scores are informative.";
+			case CALIBRATED_CADD_ABOVE_SPEC95:
+				return "Variant CADD score of " + caddScaled + " is greater than " + threshold
+						+ " for this gene.";
+			case CALIBRATED_CADD_BELOW_SENS95:
+				return "Variant CADD score of " + caddScaled + " is less than " + threshold
+						+ " for this gene.";
+			case CALIBRATED_MAF_ABOVE_PATHO_MAF:
+				return "Variant MAF of " + exacMAF + " is greater than " + threshold + ".";
+			case CALIBRATED_HIGH_IMPACT:
+				return "Variant is of high impact, while there are no known high impact variants in the population. Also, "
+						+ mafReason();
+			case CALIBRATED_HIGH_MODERATE_IMPACT:
+				return "Variant is of high/moderate impact, while there are no known high/moderate impact variants in the population. Also, "
+						+ mafReason();
+			case CALIBRATED_HIGH_MODERATE_LOW_IMPACT:
+				return "Variant is of high/moderate/low impact, while there are no known high/moderate/low impact variants in the population. Also, "
+						+ mafReason();
+			case CALIBRATED_MODIFIER_IMPACT:
+				return "Variant is of 'modifier' impact, and therefore unlikely to be pathogenic. However, "
+						+ mafReason();
+			case GENOMEWIDE_MAF_NOT_RARE:
+				return "Variant MAF of " + exacMAF
+						+ " is not rare enough to generally be considered pathogenic.";
+			case GENOMEWIDE_MODIFIER_IMPACT:
+				return "Variant is of 'modifier' impact, and therefore unlikely to be pathogenic.";
+			case GENOMEWIDE_CADD_ABOVE_THRESHOLD:
+				return "Variant MAF of " + exacMAF
+						+ " is rare enough to be potentially pathogenic and its CADD score of " + caddScaled
+						+ " is greater than a global threshold of " + threshold + ".";
+			case GENOMEWIDE_CADD_BELOW_THRESHOLD:
+				return "Variant CADD score of " + caddScaled + " is less than a global threshold of "
+						+ threshold + ", although the variant MAF of " + exacMAF
+						+ " is rare enough to be potentially pathogenic.";
+			case GENOMEWIDE_INCONCLUSIVE:
+				return "Unable to classify variant as benign or pathogenic. The combination of " + impact
+						+ " impact, a CADD score of " + caddScaled + " and MAF of " + exacMAF
+						+ " in " + gene + " is inconclusive.";
+			default:
+				throw new RuntimeException("Unknown rule " + rule);
+		}
+	}
+
+	private String mafReason()
+	{
+		return "the variant MAF of " + exacMAF + " is less than a MAF of " + (!Double.isNaN(threshold) ? threshold : null)
+				+ ".";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		GavinReason that = (GavinReason) o;
+		return Double.compare(that.threshold, threshold) == 0 && rule == that.rule && impact == that.impact
+				&& Objects.equals(gene, that.gene) && Objects.equals(caddScaled, that.caddScaled) && Objects.equals(
+				exacMAF, that.exacMAF);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(rule, impact, gene, caddScaled, exacMAF, threshold);
+	}
+
+	@Override
+	public String toString()
+	{
+		return render();
+	}
+}
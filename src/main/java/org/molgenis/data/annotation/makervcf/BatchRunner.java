@@ -0,0 +1,270 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import org.molgenis.data.annotation.makervcf.checkpoint.CheckpointSettings;
+import org.molgenis.data.annotation.makervcf.util.CaddScoreCache;
+import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores.Mode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Analyses the input VCF files of a manifest in one JVM. The reference data is loaded once and shared by the
+ * pipelines, which run concurrently on a fixed size worker pool.
+ *
+ * The manifest has one job per line: input VCF, output RVCF and CADD intermediate file, separated by tabs. Empty lines
+ * and lines starting with '#' are skipped, relative paths are resolved against the directory of the manifest.
+ *
+ * A job that fails does not affect the other jobs, its partially written output RVCF is removed and the failure is
+ * reported when all jobs are done.
+ */
+public class BatchRunner
+{
+	private static final Logger LOG = LoggerFactory.getLogger(BatchRunner.class);
+
+	private final String version;
+	private final String cmdString;
+	private final VcfRecordMapperSettings vcfRecordMapperSettings;
+	private final boolean keepAllVariants;
+	private final Mode mode;
+	private final ReferenceData referenceData;
+	private final boolean replace;
+	private final boolean writeSidecar;
+	private final boolean writeGeneReport;
+	private final boolean coordinateGeneWindows;
+	private final long windowMemoryBudget;
+	private final int nrOfThreads;
+	private final CaddScoreCache caddScoreCache;
+
+	public BatchRunner(String version, String cmdString, VcfRecordMapperSettings vcfRecordMapperSettings,
+			boolean keepAllVariants, Mode mode, ReferenceData referenceData, boolean replace, boolean writeSidecar,
+			boolean writeGeneReport, boolean coordinateGeneWindows, long windowMemoryBudget, int nrOfThreads,
+			@Nullable CaddScoreCache caddScoreCache)
+	{
+		this.version = version;
+		this.cmdString = cmdString;
+		this.vcfRecordMapperSettings = vcfRecordMapperSettings;
+		this.keepAllVariants = keepAllVariants;
+		this.mode = mode;
+		this.referenceData = referenceData;
+		this.replace = replace;
+		this.writeSidecar = writeSidecar;
+		this.writeGeneReport = writeGeneReport;
+		this.coordinateGeneWindows = coordinateGeneWindows;
+		this.windowMemoryBudget = windowMemoryBudget;
+		this.nrOfThreads = nrOfThreads;
+		this.caddScoreCache = caddScoreCache;
+	}
+
+	public static List<BatchJob> readManifest(File manifestFile) throws IOException
+	{
+		File baseDir = manifestFile.getAbsoluteFile().getParentFile();
+		List<BatchJob> jobs = new ArrayList<>();
+		Set<File> outputFiles = new HashSet<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(manifestFile), UTF_8)))
+		{
+			String line;
+			int lineNr = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNr++;
+				if (line.trim().isEmpty() || line.startsWith("#"))
+				{
+					continue;
+				}
+				BatchJob job;
+				try
+				{
+					job = BatchJob.parse(line, baseDir);
+				}
+				catch (IOException e)
+				{
+					throw new IOException("Manifest line " + lineNr + ": " + e.getMessage());
+				}
+				if (!outputFiles.add(job.getOutputVcfFile().getAbsoluteFile()))
+				{
+					throw new IOException("Manifest line " + lineNr + " has the same output RVCF as an earlier line: "
+							+ job.getOutputVcfFile());
+				}
+				jobs.add(job);
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Runs the jobs and waits until all of them are done.
+	 *
+	 * @return failure per failed job, in manifest order
+	 */
+	public Map<BatchJob, Exception> run(List<BatchJob> jobs) throws InterruptedException
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+		Map<BatchJob, Exception> failures = new LinkedHashMap<>();
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<>(jobs.size());
+			for (BatchJob job : jobs)
+			{
+				futures.add(executorService.submit(() ->
+				{
+					run(job);
+					return null;
+				}));
+			}
+			for (int i = 0; i < jobs.size(); i++)
+			{
+				try
+				{
+					futures.get(i).get();
+				}
+				catch (ExecutionException e)
+				{
+					failures.put(jobs.get(i), e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+				}
+			}
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+
+		LOG.info("[BatchRunner] {} of {} jobs done, {} failed", jobs.size() - failures.size(), jobs.size(),
+				failures.size());
+		for (Map.Entry<BatchJob, Exception> failure : failures.entrySet())
+		{
+			LOG.error("[BatchRunner] Job {} failed: {}", failure.getKey(), failure.getValue().getMessage());
+		}
+		return failures;
+	}
+
+	/**
+	 * Runs a single job in the calling thread.
+	 */
+	public void run(BatchJob job) throws Exception
+	{
+		checkJob(job);
+		LOG.info("[BatchRunner] Starting job {}", job);
+		try
+		{
+			new Pipeline(version, cmdString, vcfRecordMapperSettings, keepAllVariants, mode, job.getInputVcfFile(),
+					job.getCaddFile(), job.getOutputVcfFile(), referenceData, writeSidecar, writeGeneReport,
+					coordinateGeneWindows, windowMemoryBudget, CheckpointSettings.noResume(), caddScoreCache, null).start();
+		}
+		catch (Exception e)
+		{
+			LOG.error("[BatchRunner] Job " + job + " failed", e);
+			job.getOutputVcfFile().delete();
+			throw e;
+		}
+		LOG.info("[BatchRunner] Finished job {}", job);
+	}
+
+	/**
+	 * Same checks as for a single analysis, see {@link Main}.
+	 */
+	private void checkJob(BatchJob job) throws IOException
+	{
+		File inputVcfFile = job.getInputVcfFile();
+		if (!inputVcfFile.isFile())
+		{
+			throw new FileNotFoundException("Input VCF file not found at " + inputVcfFile);
+		}
+		if (job.getOutputVcfFile().exists() && !replace)
+		{
+			throw new IOException("Output RVCF file already exists at " + job.getOutputVcfFile()
+					+ ", use the '-r' option to overwrite the output file.");
+		}
+		File caddFile = job.getCaddFile();
+		if (mode == Mode.ANALYSIS)
+		{
+			if (!caddFile.isFile())
+			{
+				throw new FileNotFoundException("CADD intermediate file not found at " + caddFile);
+			}
+			if (!caddFile.getName().endsWith(".tsv"))
+			{
+				throw new IOException(
+						"CADD intermediate file location extension expected to end in *.tsv, do not supply a gzipped file");
+			}
+		}
+		else if (mode == Mode.CREATEFILEFORCADD && caddFile.exists() && !replace)
+		{
+			throw new IOException("CADD file already exists at " + caddFile
+					+ ", use the '-r' option to overwrite the output file.");
+		}
+	}
+
+	public static class BatchJob
+	{
+		private final File inputVcfFile;
+		private final File outputVcfFile;
+		private final File caddFile;
+
+		public BatchJob(File inputVcfFile, File outputVcfFile, File caddFile)
+		{
+			this.inputVcfFile = inputVcfFile;
+			this.outputVcfFile = outputVcfFile;
+			this.caddFile = caddFile;
+		}
+
+		/**
+		 * Parses a job from a tab separated manifest line, relative paths are resolved against the base directory.
+		 */
+		public static BatchJob parse(String line, File baseDir) throws IOException
+		{
+			String[] split = line.split("\t", -1);
+			if (split.length != 3)
+			{
+				throw new IOException(
+						"expected 3 tab separated columns: input VCF, output RVCF and CADD file, found: " + line);
+			}
+			return new BatchJob(resolve(baseDir, split[0]), resolve(baseDir, split[1]), resolve(baseDir, split[2]));
+		}
+
+		private static File resolve(File baseDir, String path)
+		{
+			File file = new File(path.trim());
+			return file.isAbsolute() ? file : new File(baseDir, path.trim());
+		}
+
+		public File getInputVcfFile()
+		{
+			return inputVcfFile;
+		}
+
+		public File getOutputVcfFile()
+		{
+			return outputVcfFile;
+		}
+
+		public File getCaddFile()
+		{
+			return caddFile;
+		}
+
+		@Override
+		public String toString()
+		{
+			return inputVcfFile.getName() + " -> " + outputVcfFile.getName();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.molgenis.data.annotation.makervcf.BatchRunner.BatchJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-running service that analyses jobs submitted over a local socket, with the reference data of the
+ * {@link BatchRunner} loaded once and kept in memory.
+ *
+ * A client connects to the loopback address, sends one job as a manifest line (input VCF, output RVCF and CADD file,
+ * tab separated, relative paths are resolved against the working directory of the daemon) and reads one reply line
+ * when the job is done: 'OK' followed by the output RVCF, 'ERROR' followed by the failure or 'BUSY' when the job queue
+ * is full. Jobs run concurrently on a fixed number of threads, at most queueSize jobs wait for a thread. A job is
+ * rejected while another job writes to the same output.
+ */
+public class Daemon implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(Daemon.class);
+
+	static final int DEFAULT_PORT = 7384;
+	static final int DEFAULT_QUEUE_SIZE = 64;
+	private static final int READ_TIMEOUT_MILLIS = 10000;
+
+	private final BatchRunner batchRunner;
+	private final ServerSocket serverSocket;
+	private final ThreadPoolExecutor executor;
+	private final File workingDir;
+	private final Set<File> runningOutputVcfFiles = ConcurrentHashMap.newKeySet();
+
+	public Daemon(BatchRunner batchRunner, int port, int nrOfThreads, int queueSize) throws IOException
+	{
+		this.batchRunner = batchRunner;
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.executor = new ThreadPoolExecutor(nrOfThreads, nrOfThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize));
+		this.workingDir = new File("").getAbsoluteFile();
+	}
+
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Accepts jobs until the daemon is closed.
+	 */
+	public void serve() throws IOException
+	{
+		LOG.info("[Daemon] Accepting jobs on {}:{}", serverSocket.getInetAddress().getHostAddress(), getPort());
+		while (!serverSocket.isClosed())
+		{
+			Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (SocketException e)
+			{
+				if (serverSocket.isClosed())
+				{
+					break;
+				}
+				throw e;
+			}
+			try
+			{
+				// the job line is read by the executor, so a slow client does not hold up the others
+				executor.execute(() -> accept(socket));
+			}
+			catch (RejectedExecutionException e)
+			{
+				LOG.warn("[Daemon] Job queue is full, rejected a connection");
+				reply(socket, "BUSY\tjob queue is full, try again later");
+			}
+		}
+		LOG.info("[Daemon] Stopped accepting jobs");
+	}
+
+	private void accept(Socket socket)
+	{
+		BatchJob job;
+		try
+		{
+			socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+			String line = reader.readLine();
+			if (line == null || line.trim().isEmpty())
+			{
+				reply(socket, "ERROR\tno job received");
+				return;
+			}
+			job = BatchJob.parse(line, workingDir);
+		}
+		catch (IOException e)
+		{
+			LOG.warn("[Daemon] Could not read job: {}", e.getMessage());
+			reply(socket, "ERROR\t" + e.getMessage());
+			return;
+		}
+
+		File outputVcfFile = job.getOutputVcfFile().getAbsoluteFile();
+		if (!runningOutputVcfFiles.add(outputVcfFile))
+		{
+			LOG.warn("[Daemon] Output of job {} is in use by a running job", job);
+			reply(socket, "ERROR\toutput " + outputVcfFile + " is in use by a running job");
+			return;
+		}
+		String reply;
+		try
+		{
+			reply = runJob(job);
+		}
+		finally
+		{
+			// released before replying, so the client can submit the next job on the same output right away
+			runningOutputVcfFiles.remove(outputVcfFile);
+		}
+		reply(socket, reply);
+	}
+
+	/**
+	 * @return reply to the client
+	 */
+	private String runJob(BatchJob job)
+	{
+		long start = System.currentTimeMillis();
+		try
+		{
+			batchRunner.run(job);
+			LOG.info("[Daemon] Job {} done in {} ms", job, System.currentTimeMillis() - start);
+			return "OK\t" + job.getOutputVcfFile().getPath();
+		}
+		catch (Exception e)
+		{
+			return "ERROR\t" + (e.getMessage() != null ? e.getMessage() : e.toString());
+		}
+	}
+
+	private static void reply(Socket socket, String reply)
+	{
+		try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8)))
+		{
+			pw.println(reply.replace('\n', ' '));
+		}
+		catch (IOException e)
+		{
+			LOG.warn("[Daemon] Could not send reply: {}", e.getMessage());
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+				LOG.warn("[Daemon] Could not close connection: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting jobs, the jobs that are already accepted are finished.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		serverSocket.close();
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -5,9 +5,15 @@ import static java.util.Arrays.asList;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import org.apache.commons.lang3.StringUtils;
+import org.molgenis.data.annotation.makervcf.checkpoint.CheckpointSettings;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpointer;
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneWindowBuffer;
+import org.molgenis.data.annotation.makervcf.util.CaddScoreCache;
 import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores.Mode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +53,19 @@ public class Main
 	public static final String INCLUDE_SAMPLES = "include_samples";
 	public static final String DISABLE_PREFIX = "disable_prefix";
 	public static final String ADD_SPLITTED_ANN_FIELDS = "add_splitted_ann_fields";
+	public static final String SIDECAR = "sidecar";
+	public static final String GENE_REPORT = "gene_report";
+	public static final String BATCH = "batch";
+	public static final String THREADS = "threads";
+	public static final String DAEMON = "daemon";
+	public static final String QUEUE_SIZE = "queue_size";
+	public static final String BUNDLE = "bundle";
+	public static final String CADD_CACHE = "cadd_cache";
+	public static final String STRUCTURAL_VARIANTS = "sv";
+	public static final String COORDINATE_GENE_WINDOWS = "coordinate_gene_windows";
+	public static final String WINDOW_MEMORY = "window_memory";
+	public static final String RESUME = "resume";
+	public static final String COMPILE_BUNDLE = "compile_bundle";
 
   public enum RlvMode {
     MERGED, SPLITTED, BOTH
@@ -64,7 +83,7 @@ public class Main
 		OptionParser parser = new OptionParser();
 
 		parser.acceptsAll(asList("i", INPUT), "Input VCF file").withRequiredArg().ofType(File.class);
-		parser.acceptsAll(asList("o", OUTPUT), "Output RVCF file").withRequiredArg().ofType(File.class);
+		parser.acceptsAll(asList("o", OUTPUT), "Output RVCF file, bgzip compressed and tabix indexed when ending with .gz").withRequiredArg().ofType(File.class);
 		parser.acceptsAll(asList("g", GAVIN), "GAVIN calibration file").withRequiredArg().ofType(File.class);
 		parser.acceptsAll(asList("p", REPPATHO), "VCF file containing reported pathogenic/likely pathogenic variants").withRequiredArg().ofType(File.class);
 		parser.acceptsAll(asList("d", CGD), "CGD file").withRequiredArg().ofType(File.class);
@@ -97,6 +116,48 @@ public class Main
 				"In case of a splitted RLV field this option will NOT add the '[GENE|ALLELE]' prefix, only use for input with one variant per line.");
 		parser.acceptsAll(asList("x", ADD_SPLITTED_ANN_FIELDS),
 				"Splits ANN field provided in input and adds splitted values as separate info fields");
+		parser.acceptsAll(asList("b", SIDECAR),
+				"Also write the relevance information to a columnar binary sidecar file <output>.rlvc for fast downstream aggregation");
+		parser.acceptsAll(asList("t", GENE_REPORT),
+				"Also write a per-gene summary of the relevant variants to <output>.genes.tsv");
+		parser.acceptsAll(asList("j", BATCH),
+				"Batch mode: analyse the jobs of a manifest with shared reference data instead of -i, -o and -c. One job per line: input VCF, output RVCF and CADD file, tab separated")
+			  .withRequiredArg()
+			  .ofType(File.class);
+		parser.acceptsAll(asList("w", THREADS), "Number of jobs that run concurrently in batch or daemon mode, default the number of processors")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.acceptsAll(asList("n", DAEMON),
+				"Daemon mode: keep the reference data in memory and analyse jobs sent to this local port, default " + Daemon.DEFAULT_PORT
+						+ ". A job is one line with input VCF, output RVCF and CADD file, tab separated")
+			  .withOptionalArg()
+			  .ofType(Integer.class);
+		parser.acceptsAll(asList("z", BUNDLE), "Precompiled reference bundle, instead of -g, -p, -d and -f")
+			  .withRequiredArg()
+			  .ofType(File.class);
+		parser.acceptsAll(asList("a", COMPILE_BUNDLE),
+				"Compile the reference files of -g, -p, -d and -f to a reference bundle for fast startup, to be used with -z")
+			  .withRequiredArg()
+			  .ofType(File.class);
+		parser.acceptsAll(asList("u", QUEUE_SIZE), "Maximum number of jobs waiting in daemon mode, default " + Daemon.DEFAULT_QUEUE_SIZE)
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(STRUCTURAL_VARIANTS,
+				"Bgzip compressed and tabix indexed VCF with structural variants of the same samples, e.g. from Manta. Heterozygous and carrier variants complemented by a deletion or duplication of the gene become compound heterozygous")
+			  .withRequiredArg()
+			  .ofType(File.class);
+		parser.accepts(COORDINATE_GENE_WINDOWS,
+				"End the gene windows for compound heterozygous detection at the gene end of the GAVIN calibrations instead of at the first variant not annotated with the gene, for predictable memory use");
+		parser.accepts(WINDOW_MEMORY,
+				"Memory budget in MB per gene window, variants beyond it are spilled to a temporary file so large genes with all variants kept do not run out of memory, default unlimited")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(RESUME,
+				"Write checkpoints to <output>" + Checkpointer.EXTENSION + " during the run, so an interrupted run continues from its last checkpoint when it is started again with the same arguments. Not with -b, -t or -m " + Mode.CREATEFILEFORCADD);
+		parser.accepts(CADD_CACHE,
+				"Directory with CADD scores of earlier runs, scores in the cache are not requested again and new scores from the CADD file are added to it")
+			  .withRequiredArg()
+			  .ofType(File.class);
 
 		return parser;
 	}
@@ -116,11 +177,13 @@ public class Main
 				+ "-m ANALYSIS \n" + "\n" + "Dealing with CADD intermediate files:\n"
 				+ "You first want to generate a intermediate file with any missing CADD annotations using '-d toCadd.tsv -m CREATEFILEFORCADD'\n"
 				+ "After which, you want to score the variants in toCadd.tsv with the web service at http://cadd.gs.washington.edu/score\n"
-				+ "The resulting scored file should be unpacked and then used for analysis with '-d fromCadd.tsv -m ANALYSIS'\n"
+				+ "The resulting scored file, gzipped or unpacked, is then used for analysis with '-d fromCadd.tsv.gz -m ANALYSIS'\n"
+				+ "Add '--cadd_cache cadddir' to both steps to keep the scores for later runs, so only new variants end up in toCadd.tsv\n"
 				+ "\n" + "Details on the various helper files:\n"
 				+ "The required helper files for -g, -c, -d and -f can be downloaded from: http://molgenis.org/downloads/gavin at 'data_bundle'.\n"
-				+ "The -a file is either produced by the analysis (using -m CREATEFILEFORCADD) or used as an existing file (using -m ANALYSIS).\n"
+				+ "The -c file is either produced by the analysis (using -m CREATEFILEFORCADD) or used as an existing file (using -m ANALYSIS).\n"
 				+ "The -l is a user-supplied VCF of interpreted variants. Use 'CLSF=LP' or 'CLSF=P' as info field to denote (likely) pathogenic variants.\n"
+				+ "The -g, -p, -d and -f files can be compiled once into a reference bundle using '-a bundle.gavinbundle', which can be used with '-z bundle.gavinbundle' instead for fast startup.\n"
         + "The -q option determines if the GAVIN information should be added as separate fields, one merged field, or both.\n"
 				+ "\n" + "Using pedigree data for filtering:\n"
 				+ "Please use the standard PEDIGREE notation in your VCF header, e.g. '##PEDIGREE=<Child=p01,Mother=p02,Father=p03>'. Trios and duos are allowed.\n"
@@ -150,9 +213,13 @@ public class Main
 
 		System.out.println(appTitle);
 
+		boolean hasReferenceFiles =
+				options.has(GAVIN) && options.has(REPPATHO) && options.has(CGD) && options.has(FDR);
+		boolean hasReferenceData = hasReferenceFiles || options.has(BUNDLE);
 		if ((options.has(RESTORE) && options.has(INPUT) && options.has(OUTPUT)) || (options.has(INPUT)
-				&& options.has(OUTPUT) && options.has(GAVIN) && options.has(REPPATHO) && options.has(CGD)
-				&& options.has(FDR) && options.has(CADD) && options.has(MODE)))
+				&& options.has(OUTPUT) && hasReferenceData && options.has(CADD) && options.has(MODE)) || (
+				(options.has(BATCH) || options.has(DAEMON)) && hasReferenceData && options.has(MODE)) || (
+				options.has(COMPILE_BUNDLE) && hasReferenceFiles))
 		{
 			System.out.println("Arguments OK.");
 		}
@@ -178,126 +245,354 @@ public class Main
 			return;
 		}
 
-		/*************
-		 Regular mode
-		 */
-
 		/*
-		  Input check
+		  Check all kinds of files you need
 		 */
-		File inputVcfFile = (File) options.valueOf(INPUT);
-		if (!inputVcfFile.exists())
+		File bundleFile = null;
+		File gavinFile = null;
+		File repPathoFile = null;
+		File cgdFile = null;
+		File fdrFile = null;
+		if (options.has(BUNDLE) && !options.has(COMPILE_BUNDLE))
 		{
-			System.out.println("Input VCF file not found at " + inputVcfFile);
-			return;
+			bundleFile = (File) options.valueOf(BUNDLE);
+			if (!bundleFile.exists())
+			{
+				System.out.println("Reference bundle not found at " + bundleFile);
+				return;
+			}
+			else if (bundleFile.isDirectory())
+			{
+				System.out.println("Reference bundle location is a directory, not a file!");
+				return;
+			}
 		}
-		else if (inputVcfFile.isDirectory())
+		else
 		{
-			System.out.println("Input VCF file is a directory, not a file!");
-			return;
+			gavinFile = (File) options.valueOf(GAVIN);
+			if (!gavinFile.exists())
+			{
+				System.out.println("GAVIN calibration file not found at " + gavinFile);
+				return;
+			}
+			else if (gavinFile.isDirectory())
+			{
+				System.out.println("GAVIN calibration file location is a directory, not a file!");
+				return;
+			}
+
+			repPathoFile = (File) options.valueOf(REPPATHO);
+			if (!repPathoFile.exists())
+			{
+				System.out.println("VCF file (containing reported LP/P variants) not found at " + repPathoFile);
+				return;
+			}
+			else if (repPathoFile.isDirectory())
+			{
+				System.out.println("VCF file (containing reported LP/P variants) location is a directory, not a file!");
+				return;
+			}
+
+			cgdFile = (File) options.valueOf(CGD);
+			if (!cgdFile.exists())
+			{
+				System.out.println("CGD file not found at " + cgdFile);
+				return;
+			}
+			else if (cgdFile.isDirectory())
+			{
+				System.out.println("CGD file location is a directory, not a file!");
+				return;
+			}
+
+			fdrFile = (File) options.valueOf(FDR);
+			if (!fdrFile.exists())
+			{
+				System.out.println("FDR file not found at " + fdrFile);
+				return;
+			}
+			else if (fdrFile.isDirectory())
+			{
+				System.out.println("FDR file location is a directory, not a file!");
+				return;
+			}
 		}
 
 		/*
-		  Output and replace check
+		  Optional
 		 */
-		File outputVCFFile = (File) options.valueOf(OUTPUT);
-		if (outputVCFFile.exists())
+		File labVariants = null;
+		if (options.has(LAB))
 		{
-			if (options.has(REPLACE))
+			labVariants = (File) options.valueOf(LAB);
+			if (!labVariants.exists())
 			{
-				System.out.println("Override enabled, replacing existing output RVCF file with specified output: "
-						+ outputVCFFile.getAbsolutePath());
+				System.out.println("VCF file with lab specific variant classifications not found at " + labVariants);
+				return;
 			}
-			else
+			else if (labVariants.isDirectory())
 			{
 				System.out.println(
-						"Output RVCF file already exists, please either enter a different output name or use the '-r' option to overwrite the output file.");
+						"VCF file location with lab specific variant classifications is a directory, not a file!");
 				return;
 			}
 		}
 
-		/*
-		  Check all kinds of files you need
+		/*************
+		 "Compile bundle mode" where the reference files are compiled to a reference bundle
 		 */
-		File gavinFile = (File) options.valueOf(GAVIN);
-		if (!gavinFile.exists())
+		if (options.has(COMPILE_BUNDLE))
 		{
-			System.out.println("GAVIN calibration file not found at " + gavinFile);
+			File compiledBundleFile = (File) options.valueOf(COMPILE_BUNDLE);
+			if (compiledBundleFile.exists() && !options.has(REPLACE))
+			{
+				System.out.println(
+						"Reference bundle already exists, please either enter a different output name or use the '-r' option to overwrite the file.");
+				return;
+			}
+			LOG.info("Compiling reference bundle..");
+			ReferenceBundle.compile(gavinFile, repPathoFile, cgdFile, fdrFile, compiledBundleFile);
+			LOG.info("..done!");
 			return;
 		}
-		else if (gavinFile.isDirectory())
+
+		/*
+		  Check mode
+		 */
+		String modeString = (String) options.valueOf(MODE);
+		if (!isValidEnum(Mode.class, modeString))
 		{
-			System.out.println("GAVIN calibration file location is a directory, not a file!");
+			System.out.println("Mode must be one of the following: " + Arrays.toString(Mode.values()));
 			return;
 		}
+		Mode mode = Mode.valueOf(modeString);
 
-		File repPathoFile = (File) options.valueOf(REPPATHO);
-		if (!repPathoFile.exists())
+		/*
+		  Verbose
+		 */
+		if (options.has(VERBOSE))
 		{
-			System.out.println("VCF file (containing reported LP/P variants) not found at " + repPathoFile);
-			return;
+			setLogLevelToDebug();
+		}
+
+    String rlvModeString = (String) options.valueOf(RLV_FIELD_MODE);
+    if (!isValidEnum(RlvMode.class, rlvModeString)) {
+      System.out.println("Mode must be one of the following: " + Arrays.toString(RlvMode.values()));
+      return;
+    }
+    RlvMode rlvMode = RlvMode.valueOf(rlvModeString);
+
+		boolean disablePrefix = false;
+		if (options.has(DISABLE_PREFIX))
+		{
+			disablePrefix = true;
 		}
-		else if (repPathoFile.isDirectory())
+
+		boolean addSplittedAnnFields = false;
+		if (options.has(ADD_SPLITTED_ANN_FIELDS))
 		{
-			System.out.println("VCF file (containing reported LP/P variants) location is a directory, not a file!");
-			return;
+			addSplittedAnnFields = true;
 		}
 
-		File cgdFile = (File) options.valueOf(CGD);
-		if (!cgdFile.exists())
+		boolean keepAllVariants = false;
+		if (options.has(KEEP_ALL_VARIANTS))
 		{
-			System.out.println("CGD file not found at " + cgdFile);
-			return;
+			keepAllVariants = true;
+		}
+
+		boolean includeSamples = false;
+		if (options.has(INCLUDE_SAMPLES))
+		{
+			includeSamples = true;
+		}
+
+		boolean writeSidecar = false;
+		if (options.has(SIDECAR))
+		{
+			writeSidecar = true;
+		}
+
+		boolean writeGeneReport = false;
+		if (options.has(GENE_REPORT))
+		{
+			writeGeneReport = true;
+		}
+
+		boolean coordinateGeneWindows = false;
+		if (options.has(COORDINATE_GENE_WINDOWS))
+		{
+			coordinateGeneWindows = true;
+		}
+
+		long windowMemoryBudget = GeneWindowBuffer.UNLIMITED;
+		if (options.has(WINDOW_MEMORY))
+		{
+			int windowMemoryMb = (Integer) options.valueOf(WINDOW_MEMORY);
+			if (windowMemoryMb < 1)
+			{
+				System.out.println("Gene window memory budget must be at least 1 MB");
+				return;
+			}
+			windowMemoryBudget = windowMemoryMb * 1024L * 1024L;
 		}
-		else if (cgdFile.isDirectory())
+
+    VcfRecordMapperSettings vcfRecordMapperSettings = VcfRecordMapperSettings
+        .create(includeSamples, rlvMode,
+				addSplittedAnnFields, !disablePrefix);
+
+		/*************
+		 "Batch mode" where the jobs of a manifest share the reference data, or "Daemon mode" where the jobs are sent to
+		 a local port and the reference data is kept in memory between jobs
+		 */
+		if (options.has(BATCH) || options.has(DAEMON))
 		{
-			System.out.println("CGD file location is a directory, not a file!");
+			int nrOfThreads = Runtime.getRuntime().availableProcessors();
+			if (options.has(THREADS))
+			{
+				nrOfThreads = (Integer) options.valueOf(THREADS);
+			}
+			if (nrOfThreads < 1)
+			{
+				System.out.println("Number of threads must be at least 1");
+				return;
+			}
+			int queueSize = Daemon.DEFAULT_QUEUE_SIZE;
+			if (options.has(QUEUE_SIZE))
+			{
+				queueSize = (Integer) options.valueOf(QUEUE_SIZE);
+			}
+			if (queueSize < 1)
+			{
+				System.out.println("Queue size must be at least 1");
+				return;
+			}
+
+			List<BatchRunner.BatchJob> jobs = null;
+			if (options.has(BATCH))
+			{
+				File manifestFile = (File) options.valueOf(BATCH);
+				if (!manifestFile.isFile())
+				{
+					System.out.println("Batch manifest file not found at " + manifestFile);
+					return;
+				}
+				jobs = BatchRunner.readManifest(manifestFile);
+			}
+
+			LOG.info("Loading reference data..");
+			ReferenceData referenceData = bundleFile != null ? ReferenceBundle.load(bundleFile,
+					labVariants) : ReferenceData.load(gavinFile, repPathoFile, cgdFile, fdrFile, labVariants);
+			CaddScoreCache caddScoreCache = openCaddScoreCache(options);
+			BatchRunner batchRunner = new BatchRunner(version, cmdString, vcfRecordMapperSettings, keepAllVariants,
+					mode, referenceData, options.has(REPLACE), writeSidecar, writeGeneReport, coordinateGeneWindows,
+					windowMemoryBudget, nrOfThreads, caddScoreCache);
+
+			if (jobs != null)
+			{
+				LOG.info("Starting {} jobs on {} threads..", jobs.size(), nrOfThreads);
+				Map<BatchRunner.BatchJob, Exception> failures = batchRunner.run(jobs);
+				if (!failures.isEmpty())
+				{
+					System.out.println(failures.size() + " of " + jobs.size() + " jobs failed:");
+					failures.forEach((job, e) -> System.out.println(job + ": " + e.getMessage()));
+				}
+			}
+			else
+			{
+				int port = Daemon.DEFAULT_PORT;
+				if (options.valueOf(DAEMON) != null)
+				{
+					port = (Integer) options.valueOf(DAEMON);
+				}
+				Daemon daemon = new Daemon(batchRunner, port, nrOfThreads, queueSize);
+				Runtime.getRuntime().addShutdownHook(new Thread(() ->
+				{
+					try
+					{
+						daemon.close();
+						// the main thread may not get to close the cache before the JVM halts
+						if (caddScoreCache != null)
+						{
+							caddScoreCache.close();
+						}
+					}
+					catch (IOException e)
+					{
+						LOG.warn("Could not stop daemon: {}", e.getMessage());
+					}
+				}));
+				daemon.serve();
+			}
+			if (caddScoreCache != null)
+			{
+				caddScoreCache.close();
+			}
+			LOG.info("..done!");
 			return;
 		}
 
-		File fdrFile = (File) options.valueOf(FDR);
-		if (!fdrFile.exists())
+		/*************
+		 Regular mode
+		 */
+
+		/*
+		  Input check
+		 */
+		File inputVcfFile = (File) options.valueOf(INPUT);
+		if (!inputVcfFile.exists())
 		{
-			System.out.println("FDR file not found at " + fdrFile);
+			System.out.println("Input VCF file not found at " + inputVcfFile);
 			return;
 		}
-		else if (fdrFile.isDirectory())
+		else if (inputVcfFile.isDirectory())
 		{
-			System.out.println("FDR file location is a directory, not a file!");
+			System.out.println("Input VCF file is a directory, not a file!");
 			return;
 		}
 
 		/*
-		  Optional
+		  Resume check
 		 */
-		File labVariants = null;
-		if (options.has(LAB))
+		File outputVCFFile = (File) options.valueOf(OUTPUT);
+		CheckpointSettings checkpointSettings = CheckpointSettings.noResume();
+		boolean resumeFromCheckpoint = false;
+		if (options.has(RESUME))
 		{
-			labVariants = (File) options.valueOf(LAB);
-			if (!labVariants.exists())
+			if (writeSidecar || writeGeneReport || mode == Mode.CREATEFILEFORCADD)
 			{
-				System.out.println("VCF file with lab specific variant classifications not found at " + labVariants);
+				System.out.println("Resuming is not supported in combination with the '-b' or '-t' option or mode "
+						+ Mode.CREATEFILEFORCADD);
 				return;
 			}
-			else if (labVariants.isDirectory())
+			checkpointSettings = CheckpointSettings.create(true);
+			resumeFromCheckpoint = new File(outputVCFFile.getPath() + Checkpointer.EXTENSION).exists();
+		}
+
+		/*
+		  Output and replace check
+		 */
+		if (resumeFromCheckpoint)
+		{
+			System.out.println("Checkpoint found, resuming existing output RVCF file: " + outputVCFFile.getAbsolutePath());
+		}
+		else if (outputVCFFile.exists())
+		{
+			if (options.has(REPLACE))
+			{
+				System.out.println("Override enabled, replacing existing output RVCF file with specified output: "
+						+ outputVCFFile.getAbsolutePath());
+			}
+			else
 			{
 				System.out.println(
-						"VCF file location with lab specific variant classifications is a directory, not a file!");
+						"Output RVCF file already exists, please either enter a different output name or use the '-r' option to overwrite the output file.");
 				return;
 			}
 		}
 
 		/*
-		  Check mode in combination with CADD file and replace
+		  Check CADD file in combination with mode and replace
 		 */
-		String modeString = (String) options.valueOf(MODE);
-		if (!isValidEnum(Mode.class, modeString))
-		{
-			System.out.println("Mode must be one of the following: " + Arrays.toString(Mode.values()));
-			return;
-		}
-		Mode mode = Mode.valueOf(modeString);
-
 		File caddFile = (File) options.valueOf(CADD);
 		if (mode == Mode.ANALYSIS)
 		{
@@ -313,10 +608,9 @@ public class Main
 			}
 			else
 			{
-				if (!caddFile.getName().endsWith(".tsv"))
+				if (!caddFile.getName().endsWith(".tsv") && !caddFile.getName().endsWith(".tsv.gz"))
 				{
-					System.out.println(
-							"CADD intermediate file location extension expected to end in *.tsv, do not supply a gzipped file");
+					System.out.println("CADD intermediate file location extension expected to end in *.tsv or *.tsv.gz");
 					return;
 				}
 			}
@@ -337,57 +631,50 @@ public class Main
 		}
 
 		/*
-		  Verbose
+		  Check optional structural variants file
 		 */
-		if (options.has(VERBOSE))
-		{
-			setLogLevelToDebug();
-		}
-
-    String rlvModeString = (String) options.valueOf(RLV_FIELD_MODE);
-    if (!isValidEnum(RlvMode.class, rlvModeString)) {
-      System.out.println("Mode must be one of the following: " + Arrays.toString(RlvMode.values()));
-      return;
-    }
-    RlvMode rlvMode = RlvMode.valueOf(rlvModeString);
-
-		boolean disablePrefix = false;
-		if (options.has(DISABLE_PREFIX))
-		{
-			disablePrefix = true;
-		}
-
-		boolean addSplittedAnnFields = false;
-		if (options.has(ADD_SPLITTED_ANN_FIELDS))
-		{
-			addSplittedAnnFields = true;
-		}
-
-		boolean keepAllVariants = false;
-		if (options.has(KEEP_ALL_VARIANTS))
-		{
-			keepAllVariants = true;
-		}
-
-		boolean includeSamples = false;
-		if (options.has(INCLUDE_SAMPLES))
+		File svFile = null;
+		if (options.has(STRUCTURAL_VARIANTS))
 		{
-			includeSamples = true;
+			svFile = (File) options.valueOf(STRUCTURAL_VARIANTS);
+			if (!svFile.isFile())
+			{
+				System.out.println("Structural variants VCF file not found at " + svFile);
+				return;
+			}
 		}
 
 		/*
 		  Everything OK, start pipeline
 		 */
 		LOG.info("Starting..");
-    VcfRecordMapperSettings vcfRecordMapperSettings = VcfRecordMapperSettings
-        .create(includeSamples, rlvMode,
-				addSplittedAnnFields, !disablePrefix);
-		Pipeline pipeline = new Pipeline(version, cmdString, vcfRecordMapperSettings, keepAllVariants, mode,
-				inputVcfFile, gavinFile, repPathoFile, cgdFile, caddFile, fdrFile, outputVCFFile, labVariants);
-		pipeline.start();
+		try (CaddScoreCache caddScoreCache = openCaddScoreCache(options))
+		{
+			Pipeline pipeline;
+			if (bundleFile != null)
+			{
+				pipeline = new Pipeline(version, cmdString, vcfRecordMapperSettings, keepAllVariants, mode,
+						inputVcfFile, caddFile, outputVCFFile, ReferenceBundle.load(bundleFile, labVariants),
+						writeSidecar, writeGeneReport, coordinateGeneWindows, windowMemoryBudget, checkpointSettings,
+						caddScoreCache, svFile);
+			}
+			else
+			{
+				pipeline = new Pipeline(version, cmdString, vcfRecordMapperSettings, keepAllVariants, mode,
+						inputVcfFile, gavinFile, repPathoFile, cgdFile, caddFile, fdrFile, outputVCFFile, labVariants,
+						writeSidecar, writeGeneReport, coordinateGeneWindows, windowMemoryBudget, checkpointSettings,
+						caddScoreCache, svFile);
+			}
+			pipeline.start();
+		}
 		LOG.info("..done!");
 	}
 
+	private static CaddScoreCache openCaddScoreCache(OptionSet options) throws IOException
+	{
+		return options.has(CADD_CACHE) ? new CaddScoreCache((File) options.valueOf(CADD_CACHE)) : null;
+	}
+
 	/**
 	 * Copied from Apache Commons Lang 3.7
 	 */
@@ -1,21 +1,29 @@
 package org.molgenis.data.annotation.makervcf;
 
+import org.molgenis.data.annotation.makervcf.checkpoint.CheckpointSettings;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpointer;
 import org.molgenis.data.annotation.makervcf.genestream.core.ConvertBackToPositionalStream;
 import org.molgenis.data.annotation.makervcf.genestream.core.ConvertToGeneStream;
 import org.molgenis.data.annotation.makervcf.genestream.impl.AddGeneFDR;
 import org.molgenis.data.annotation.makervcf.genestream.impl.AssignCompoundHet;
 import org.molgenis.data.annotation.makervcf.genestream.impl.PhasingCompoundCheck;
+import org.molgenis.data.annotation.makervcf.genestream.impl.StructuralVariantComplement;
 import org.molgenis.data.annotation.makervcf.genestream.impl.TrioFilter;
 import org.molgenis.data.annotation.makervcf.positionalstream.CleanupVariantsWithoutSamples;
 import org.molgenis.data.annotation.makervcf.positionalstream.DiscoverRelevantVariants;
 import org.molgenis.data.annotation.makervcf.positionalstream.MAFFilter;
 import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarWriter;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
 import org.molgenis.data.annotation.makervcf.structs.TrioData;
+import org.molgenis.data.annotation.makervcf.util.CaddScoreCache;
 import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
+import org.molgenis.data.annotation.makervcf.util.StructuralVariantReader;
+import org.molgenis.data.annotation.reportrvcf.GeneCentricReport;
 
 import java.io.File;
 import java.util.Iterator;
+import javax.annotation.Nullable;
 
 /**
  * Created by joeri on 7/18/16.
@@ -36,11 +44,21 @@ public class Pipeline
 	private final File outputVcfFile;
 	private final File labVariants;
 	private final VcfRecordMapperSettings vcfRecordMapperSettings;
+	private final boolean writeSidecar;
+	private final boolean writeGeneReport;
+	private final boolean coordinateGeneWindows;
+	private final long windowMemoryBudget;
+	private final CheckpointSettings checkpointSettings;
+	private final ReferenceData referenceData;
+	private final CaddScoreCache caddScoreCache;
+	private final File svFile;
 
 	public Pipeline(String version, String cmdString, VcfRecordMapperSettings vcfRecordMapperSettings,
 			boolean keepAllVariants,
 			HandleMissingCaddScores.Mode mode, File inputVcfFile, File gavinFile, File clinvarFile, File cgdFile,
-			File caddFile, File FDRfile, File outputVcfFile, File labVariants)
+			File caddFile, File FDRfile, File outputVcfFile, File labVariants,
+			boolean writeSidecar, boolean writeGeneReport, boolean coordinateGeneWindows, long windowMemoryBudget,
+			CheckpointSettings checkpointSettings, @Nullable CaddScoreCache caddScoreCache, @Nullable File svFile)
 	{
 		this.version = version;
 		this.cmdString = cmdString;
@@ -55,53 +73,138 @@ public class Pipeline
 		this.outputVcfFile = outputVcfFile;
 		this.labVariants = labVariants;
 		this.vcfRecordMapperSettings = vcfRecordMapperSettings;
+		this.writeSidecar = writeSidecar;
+		this.writeGeneReport = writeGeneReport;
+		this.coordinateGeneWindows = coordinateGeneWindows;
+		this.windowMemoryBudget = windowMemoryBudget;
+		this.checkpointSettings = checkpointSettings;
+		this.referenceData = null;
+		this.caddScoreCache = caddScoreCache;
+		this.svFile = svFile;
 	}
 
-	public void start() throws Exception
+	/**
+	 * Pipeline with reference data that is already loaded, which may be shared with other pipelines.
+	 */
+	public Pipeline(String version, String cmdString, VcfRecordMapperSettings vcfRecordMapperSettings,
+			boolean keepAllVariants, HandleMissingCaddScores.Mode mode, File inputVcfFile, File caddFile,
+			File outputVcfFile, ReferenceData referenceData, boolean writeSidecar, boolean writeGeneReport,
+			boolean coordinateGeneWindows, long windowMemoryBudget, CheckpointSettings checkpointSettings,
+			@Nullable CaddScoreCache caddScoreCache, @Nullable File svFile)
 	{
-		//get trios and parents if applicable
-		TrioData td = TrioFilter.getTrioData(inputVcfFile);
-
-		//initial discovery of any suspected/likely pathogenic variant
-		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, clinvarFile, caddFile,
-				labVariants, mode, keepAllVariants);
-		Iterator<GavinRecord> rv1 = discover.findRelevantVariants();
-
-		//MAF filter to control false positives / non relevant variants in ClinVar
-		Iterator<GavinRecord> rv2 = new MAFFilter(rv1, keepAllVariants).go();
-
-		//match sample genotype with known disease inheritance mode
-		Iterator<GavinRecord> rv3 = new MatchVariantsToGenotypeAndInheritance(rv2, cgdFile, td.getParents()).go();
-
-		//swap over stream from strict position-based to gene-based so we can do a number of things
-		ConvertToGeneStream gs = new ConvertToGeneStream(rv3);
-		Iterator<GavinRecord> gsi = gs.go();
-
-		//convert heterozygous/carrier Status variants to compound heterozygous if they fall within the same gene
-		Iterator<GavinRecord> rv4 = new AssignCompoundHet(gsi).go();
-
-		//if available: use any parental information to filter out variants/Status
-		TrioFilter tf = new TrioFilter(rv4, td);
-		Iterator<GavinRecord> rv5 = tf.go();
-
-		//if available: use any phasing information to filter out compounds
-		Iterator<GavinRecord> rv6 = new PhasingCompoundCheck(rv5).go();
-
-		// TODO JvdV
-		//if available: use any SV data to give weight to carrier/heterozygous variants that may be complemented by a deleterious structural event
-
-		//add gene-specific FDR based on 1000G and this pipeline
-		Iterator<GavinRecord> rv8 = new AddGeneFDR(rv6, FDRfile).go();
+		this.version = version;
+		this.cmdString = cmdString;
+		this.keepAllVariants = keepAllVariants;
+		this.mode = mode;
+		this.inputVcfFile = inputVcfFile;
+		this.gavinFile = null;
+		this.clinvarFile = null;
+		this.cgdFile = null;
+		this.caddFile = caddFile;
+		this.FDRfile = null;
+		this.outputVcfFile = outputVcfFile;
+		this.labVariants = null;
+		this.vcfRecordMapperSettings = vcfRecordMapperSettings;
+		this.writeSidecar = writeSidecar;
+		this.writeGeneReport = writeGeneReport;
+		this.coordinateGeneWindows = coordinateGeneWindows;
+		this.windowMemoryBudget = windowMemoryBudget;
+		this.checkpointSettings = checkpointSettings;
+		this.referenceData = referenceData;
+		this.caddScoreCache = caddScoreCache;
+		this.svFile = svFile;
+	}
 
-		//fix order in which variants are written out (was re-ordered by compoundhet check to gene-based)
-		Iterator<GavinRecord> rv9 = new ConvertBackToPositionalStream(rv8, gs.getPositionalOrder()).go();
+	/**
+	 * Runs the pipeline. When resuming, checkpoints are written to &lt;output&gt;.checkpoint during the run, and a run
+	 * that finds a checkpoint of an earlier interrupted run with the same arguments continues from there. Resuming
+	 * does not cover the sidecar file, the gene report or the file with missing CADD scores.
+	 */
+	public void start() throws Exception
+	{
+		start(checkpointSettings.openCheckpointer(outputVcfFile, cmdString, inputVcfFile));
+	}
 
-		//cleanup stream by ditching variants without samples due to filtering
-		Iterator<GavinRecord> rv10 = new CleanupVariantsWithoutSamples(rv9, keepAllVariants).go();
+	void start(@Nullable Checkpointer checkpointer) throws Exception
+	{
+		//load the reference data, unless it is shared with other pipelines
+		ReferenceData referenceData = this.referenceData != null ? this.referenceData : ReferenceData.load(gavinFile,
+				clinvarFile, cgdFile, FDRfile, labVariants);
 
-		//write Entities output VCF file
-		new WriteToRVCF().writeRVCF(rv10, outputVcfFile, inputVcfFile, version, cmdString, true,
-				vcfRecordMapperSettings);
+		//get trios and parents if applicable
+		TrioData td = TrioFilter.getTrioData(inputVcfFile);
 
+		//missing CADD scores are either read from or written to the CADD file, depending on mode, and shared with
+		//other runs via the cache if there is one
+		try (HandleMissingCaddScores hmcs = new HandleMissingCaddScores(mode, caddFile, caddScoreCache);
+				StructuralVariantReader svReader = svFile != null ? new StructuralVariantReader(svFile) : null)
+		{
+			//initial discovery of any suspected/likely pathogenic variant
+			DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile,
+					referenceData.getGavinCalibrations(), referenceData.getReportedPathogenic(),
+					referenceData.getLabVariants(), hmcs, keepAllVariants, checkpointer);
+			Iterator<GavinRecord> rv1 = discover.findRelevantVariants();
+
+			//MAF filter to control false positives / non relevant variants in ClinVar
+			Iterator<GavinRecord> rv2 = new MAFFilter(rv1, keepAllVariants).go();
+
+			//match sample genotype with known disease inheritance mode
+			Iterator<GavinRecord> rv3 = new MatchVariantsToGenotypeAndInheritance(rv2, referenceData.getCgd(),
+					td.getParents()).go();
+
+			//swap over stream from strict position-based to gene-based so we can do a number of things
+			//if requested: end the gene windows by the gene coordinates of the calibrations instead of by annotation
+			//gene windows beyond the memory budget are spilled to disk
+			//if resuming: the points between gene windows are where checkpoints can be written
+			ConvertToGeneStream gs = new ConvertToGeneStream(rv3,
+					coordinateGeneWindows ? referenceData.getGavinCalibrations().getGeneIndex() : null,
+					windowMemoryBudget).setCheckpointer(checkpointer);
+			Iterator<GavinRecord> gsi = gs.go();
+
+			//convert heterozygous/carrier Status variants to compound heterozygous if they fall within the same gene
+			Iterator<GavinRecord> rv4 = new AssignCompoundHet(gsi).setWindowMemoryBudget(windowMemoryBudget).go();
+
+			//if available: use any parental information to filter out variants/Status
+			TrioFilter tf = new TrioFilter(rv4, td);
+			Iterator<GavinRecord> rv5 = tf.setWindowMemoryBudget(windowMemoryBudget).go();
+
+			//if available: use any phasing information to filter out compounds
+			Iterator<GavinRecord> rv6 = new PhasingCompoundCheck(rv5).setWindowMemoryBudget(windowMemoryBudget).go();
+
+			//if available: use any SV data to give weight to carrier/heterozygous variants that may be complemented by a deleterious structural event
+			Iterator<GavinRecord> rv7 = svReader != null ? new StructuralVariantComplement(rv6, svReader,
+					referenceData.getGavinCalibrations().getGeneIndex()).setWindowMemoryBudget(windowMemoryBudget).go() :
+					rv6;
+
+			//add gene-specific FDR based on 1000G and this pipeline
+			Iterator<GavinRecord> rv8 = new AddGeneFDR(rv7, referenceData.getFdrTable()).setWindowMemoryBudget(
+					windowMemoryBudget).go();
+
+			//if requested: summarize the relevant variants per gene, now that the gene-specific FDR is known
+			try (GeneCentricReport geneCentricReport = writeGeneReport ? new GeneCentricReport(rv8,
+					new File(outputVcfFile.getPath() + GeneCentricReport.EXTENSION)) : null)
+			{
+				Iterator<GavinRecord> rv9 = geneCentricReport != null ? geneCentricReport.setWindowMemoryBudget(
+						windowMemoryBudget).go() : rv8;
+
+				//fix order in which variants are written out (was re-ordered by compoundhet check to gene-based)
+				Iterator<GavinRecord> rv10 = new ConvertBackToPositionalStream(rv9, gs.getPositionalOrder()).go();
+
+				//cleanup stream by ditching variants without samples due to filtering
+				Iterator<GavinRecord> rv11 = new CleanupVariantsWithoutSamples(rv10, keepAllVariants).go();
+
+				//write Entities output VCF file, and if requested the relevance information as columnar sidecar file
+				File sidecarFile =
+						writeSidecar ? new File(outputVcfFile.getPath() + RlvSidecarWriter.EXTENSION) : null;
+				new WriteToRVCF().writeRVCF(rv11, outputVcfFile, inputVcfFile, version, cmdString, true,
+						vcfRecordMapperSettings, sidecarFile, checkpointer);
+			}
+		}
+
+		//the run is complete, so it does not need to be resumed
+		if (checkpointer != null)
+		{
+			checkpointer.complete();
+		}
 	}
 }
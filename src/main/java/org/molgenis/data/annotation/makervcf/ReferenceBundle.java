@@ -0,0 +1,351 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import javax.annotation.Nullable;
+import org.molgenis.cgd.CGDEntry;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
+import org.molgenis.data.annotation.makervcf.genestream.impl.AddGeneFDR;
+import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
+import org.molgenis.data.annotation.makervcf.util.LabVariants;
+import org.molgenis.data.annotation.makervcf.util.ReportedPathogenic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled snapshot of the reference data: GAVIN calibrations, reported pathogenic variants, CGD and gene FDR.
+ *
+ * The source files are parsed and validated once by {@link #compile}, which writes a single binary file with the
+ * format version, the name, size and CRC32 checksum of each source file, the resources in a compact binary format and
+ * a CRC32 checksum of the snapshot itself. {@link #load} memory-maps the snapshot, so concurrent runs share it via the
+ * page cache, verifies its checksum and reads the resources without any text parsing.
+ *
+ * Lab variants are specific to a run and are not part of the snapshot.
+ */
+public class ReferenceBundle
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ReferenceBundle.class);
+
+	private static final byte[] MAGIC = "GAVINBDL".getBytes(UTF_8);
+	static final int FORMAT_VERSION = 1;
+
+	private ReferenceBundle()
+	{
+	}
+
+	/*
+	args[0] = output bundle file, e.g. bundle_r1.2.gavinbundle
+	args[1] = GAVIN calibration file
+	args[2] = VCF file containing reported pathogenic/likely pathogenic variants
+	args[3] = CGD file
+	args[4] = gene-specific FDR file
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		compile(new File(args[1]), new File(args[2]), new File(args[3]), new File(args[4]), new File(args[0]));
+	}
+
+	public static void compile(File gavinFile, File repPathoFile, File cgdFile, File fdrFile, File bundleFile)
+			throws Exception
+	{
+		ReferenceData referenceData = ReferenceData.load(gavinFile, repPathoFile, cgdFile, fdrFile, null);
+
+		CRC32 checksum = new CRC32();
+		try (FileOutputStream fileOutputStream = new FileOutputStream(bundleFile))
+		{
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new CheckedOutputStream(fileOutputStream, checksum), 1 << 16));
+			out.write(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+
+			File[] sourceFiles = { gavinFile, repPathoFile, cgdFile, fdrFile };
+			out.writeInt(sourceFiles.length);
+			for (File sourceFile : sourceFiles)
+			{
+				writeString(out, sourceFile.getName());
+				out.writeLong(sourceFile.length());
+				out.writeLong(checksum(sourceFile));
+			}
+
+			writeGavinCalibrations(out, referenceData.getGavinCalibrations());
+			writeReportedPathogenic(out, referenceData.getReportedPathogenic());
+			writeCgd(out, referenceData.getCgd());
+			writeFdrTable(out, referenceData.getFdrTable());
+			out.flush();
+
+			// the snapshot checksum itself is not part of the checksum
+			new DataOutputStream(fileOutputStream).writeLong(checksum.getValue());
+		}
+		LOG.info("[ReferenceBundle] Compiled {} genes with calibrations, {} reported pathogenic variants, {} CGD genes and {} FDR genes to {}",
+				referenceData.getGavinCalibrations().getGavinEntries().size(),
+				referenceData.getReportedPathogenic().getPosRefAltToRepPatho().size(), referenceData.getCgd().size(),
+				referenceData.getFdrTable().getGenes().size(), bundleFile);
+	}
+
+	public static ReferenceData load(File bundleFile, @Nullable File labVariantsFile) throws Exception
+	{
+		MappedByteBuffer buffer;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(bundleFile, "r"))
+		{
+			FileChannel channel = randomAccessFile.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.limit() < MAGIC.length + 4 + 8)
+		{
+			throw new IOException("Reference bundle " + bundleFile + " is truncated");
+		}
+
+		ByteBuffer content = buffer.duplicate();
+		content.limit(buffer.limit() - 8);
+		CRC32 checksum = new CRC32();
+		checksum.update(content.duplicate());
+		if (checksum.getValue() != buffer.getLong(buffer.limit() - 8))
+		{
+			throw new IOException("Reference bundle " + bundleFile + " is corrupt, checksum mismatch");
+		}
+
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(content));
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC))
+		{
+			throw new IOException(bundleFile + " is not a reference bundle");
+		}
+		int formatVersion = in.readInt();
+		if (formatVersion != FORMAT_VERSION)
+		{
+			throw new IOException(
+					"Reference bundle " + bundleFile + " has format version " + formatVersion + ", expected "
+							+ FORMAT_VERSION + ". Please compile the bundle again.");
+		}
+		List<String> sources = new ArrayList<>();
+		int nrOfSources = in.readInt();
+		for (int i = 0; i < nrOfSources; i++)
+		{
+			sources.add(
+					readString(in) + " (" + in.readLong() + " bytes, crc32 " + Long.toHexString(in.readLong()) + ")");
+		}
+		LOG.debug("[ReferenceBundle] Loading {} compiled from {}", bundleFile, sources);
+
+		GavinCalibrations gavinCalibrations = readGavinCalibrations(in);
+		ReportedPathogenic reportedPathogenic = readReportedPathogenic(in);
+		Map<String, CGDEntry> cgd = readCgd(in);
+		AddGeneFDR.FdrTable fdrTable = readFdrTable(in);
+		return new ReferenceData(gavinCalibrations, reportedPathogenic, cgd, fdrTable,
+				labVariantsFile != null ? new LabVariants(labVariantsFile) : null);
+	}
+
+	private static long checksum(File file) throws IOException
+	{
+		CRC32 checksum = new CRC32();
+		try (InputStream inputStream = new FileInputStream(file))
+		{
+			byte[] bytes = new byte[1 << 16];
+			int nrOfBytes;
+			while ((nrOfBytes = inputStream.read(bytes)) != -1)
+			{
+				checksum.update(bytes, 0, nrOfBytes);
+			}
+		}
+		return checksum.getValue();
+	}
+
+	private static void writeGavinCalibrations(DataOutput out, GavinCalibrations gavinCalibrations)
+			throws IOException
+	{
+		out.writeDouble(gavinCalibrations.getGenomewideCaddThreshold());
+		out.writeDouble(gavinCalibrations.getGenomewideMafThreshold());
+		out.writeInt(gavinCalibrations.getGavinEntries().size());
+		for (GavinEntry gavinEntry : gavinCalibrations.getGavinEntries().values())
+		{
+			gavinEntry.write(out);
+		}
+	}
+
+	private static GavinCalibrations readGavinCalibrations(DataInput in) throws IOException
+	{
+		double caddThreshold = in.readDouble();
+		double mafThreshold = in.readDouble();
+		int nrOfEntries = in.readInt();
+		Map<String, GavinEntry> geneToEntry = new HashMap<>(nrOfEntries * 2);
+		for (int i = 0; i < nrOfEntries; i++)
+		{
+			GavinEntry gavinEntry = new GavinEntry(in);
+			geneToEntry.put(gavinEntry.getGene(), gavinEntry);
+		}
+		return GavinCalibrations.create(caddThreshold, mafThreshold, geneToEntry);
+	}
+
+	private static void writeReportedPathogenic(DataOutput out, ReportedPathogenic reportedPathogenic)
+			throws IOException
+	{
+		Map<String, String> posRefAltToRepPatho = reportedPathogenic.getPosRefAltToRepPatho();
+		out.writeInt(posRefAltToRepPatho.size());
+		for (Map.Entry<String, String> entry : posRefAltToRepPatho.entrySet())
+		{
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static ReportedPathogenic readReportedPathogenic(DataInput in) throws IOException
+	{
+		int nrOfVariants = in.readInt();
+		Map<String, String> posRefAltToRepPatho = new HashMap<>(nrOfVariants * 2);
+		for (int i = 0; i < nrOfVariants; i++)
+		{
+			posRefAltToRepPatho.put(readString(in), readString(in));
+		}
+		return new ReportedPathogenic(posRefAltToRepPatho);
+	}
+
+	private static void writeCgd(DataOutput out, Map<String, CGDEntry> cgd) throws IOException
+	{
+		out.writeInt(cgd.size());
+		for (Map.Entry<String, CGDEntry> entry : cgd.entrySet())
+		{
+			CGDEntry cgdEntry = entry.getValue();
+			writeString(out, entry.getKey());
+			writeString(out, cgdEntry.getGene());
+			writeString(out, cgdEntry.getHgnc_id());
+			writeString(out, cgdEntry.getEntrez_gene_id());
+			writeString(out, cgdEntry.getCondition());
+			writeString(out, cgdEntry.getInheritance());
+			writeString(out, cgdEntry.getAge_group());
+			writeString(out, cgdEntry.getAllelicConditions());
+			writeString(out, cgdEntry.getManifestationCategories());
+			writeString(out, cgdEntry.getInterventionCategories());
+			writeString(out, cgdEntry.getComments());
+			writeString(out, cgdEntry.getInterventionOrRationale());
+			writeString(out, cgdEntry.getReferences());
+			CGDEntry.generalizedInheritance generalizedInheritance = cgdEntry.getGeneralizedInheritance();
+			out.writeByte(generalizedInheritance != null ? generalizedInheritance.ordinal() : -1);
+		}
+	}
+
+	private static Map<String, CGDEntry> readCgd(DataInput in) throws IOException
+	{
+		// same map as LoadCGD
+		Map<String, CGDEntry> cgd = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		int nrOfGenes = in.readInt();
+		for (int i = 0; i < nrOfGenes; i++)
+		{
+			String key = readString(in);
+			CGDEntry cgdEntry = new CGDEntry(readString(in), readString(in), readString(in), readString(in),
+					readString(in), readString(in), readString(in), readString(in), readString(in), readString(in),
+					readString(in), readString(in));
+			byte generalizedInheritance = in.readByte();
+			if (generalizedInheritance != -1)
+			{
+				cgdEntry.setGeneralizedInheritance(CGDEntry.generalizedInheritance.values()[generalizedInheritance]);
+			}
+			cgd.put(key, cgdEntry);
+		}
+		return cgd;
+	}
+
+	private static void writeFdrTable(DataOutput out, AddGeneFDR.FdrTable fdrTable) throws IOException
+	{
+		out.writeInt(fdrTable.getGenes().size());
+		for (String gene : fdrTable.getGenes())
+		{
+			writeString(out, gene);
+			out.writeDouble(fdrTable.getAffectedFrac(gene));
+			out.writeDouble(fdrTable.getCarrierFrac(gene));
+		}
+	}
+
+	private static AddGeneFDR.FdrTable readFdrTable(DataInput in) throws IOException
+	{
+		int nrOfGenes = in.readInt();
+		Map<String, Double> affectedFrac = new HashMap<>(nrOfGenes * 2);
+		Map<String, Double> carrierFrac = new HashMap<>(nrOfGenes * 2);
+		for (int i = 0; i < nrOfGenes; i++)
+		{
+			String gene = readString(in);
+			affectedFrac.put(gene, in.readDouble());
+			carrierFrac.put(gene, in.readDouble());
+		}
+		return new AddGeneFDR.FdrTable(affectedFrac, carrierFrac);
+	}
+
+	/**
+	 * Length prefixed UTF-8, unlike {@link DataOutput#writeUTF(String)} not limited to 64KB, -1 length for null
+	 */
+	private static void writeString(DataOutput out, @Nullable String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	@Nullable
+	private static String readString(DataInput in) throws IOException
+	{
+		int length = in.readInt();
+		if (length == -1)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length)
+		{
+			if (!buffer.hasRemaining())
+			{
+				return -1;
+			}
+			int nrOfBytes = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, nrOfBytes);
+			return nrOfBytes;
+		}
+	}
+}
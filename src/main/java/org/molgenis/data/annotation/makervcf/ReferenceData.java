@@ -0,0 +1,73 @@
+package org.molgenis.data.annotation.makervcf;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.cgd.CGDEntry;
+import org.molgenis.cgd.LoadCGD;
+import org.molgenis.data.annotation.makervcf.genestream.impl.AddGeneFDR;
+import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
+import org.molgenis.data.annotation.makervcf.util.LabVariants;
+import org.molgenis.data.annotation.makervcf.util.ReportedPathogenic;
+
+/**
+ * Reference resources that do not depend on the input VCF: GAVIN calibrations, reported pathogenic variants, CGD,
+ * gene FDR and optional lab variants.
+ *
+ * The resources are loaded once and only read afterwards, so one instance can be shared by pipelines that run
+ * concurrently, see {@link BatchRunner}.
+ */
+public class ReferenceData
+{
+	private final GavinCalibrations gavinCalibrations;
+	private final ReportedPathogenic reportedPathogenic;
+	private final Map<String, CGDEntry> cgd;
+	private final AddGeneFDR.FdrTable fdrTable;
+	private final LabVariants labVariants;
+
+	public ReferenceData(GavinCalibrations gavinCalibrations, ReportedPathogenic reportedPathogenic,
+			Map<String, CGDEntry> cgd, AddGeneFDR.FdrTable fdrTable, @Nullable LabVariants labVariants)
+	{
+		this.gavinCalibrations = gavinCalibrations;
+		this.reportedPathogenic = reportedPathogenic;
+		this.cgd = Collections.unmodifiableMap(cgd);
+		this.fdrTable = fdrTable;
+		this.labVariants = labVariants;
+	}
+
+	public static ReferenceData load(File gavinFile, File repPathoFile, File cgdFile, File fdrFile,
+			@Nullable File labVariantsFile) throws Exception
+	{
+		return new ReferenceData(GavinUtils.getGeneToEntry(gavinFile), new ReportedPathogenic(repPathoFile),
+				LoadCGD.loadCGD(cgdFile), AddGeneFDR.FdrTable.load(fdrFile),
+				labVariantsFile != null ? new LabVariants(labVariantsFile) : null);
+	}
+
+	public GavinCalibrations getGavinCalibrations()
+	{
+		return gavinCalibrations;
+	}
+
+	public ReportedPathogenic getReportedPathogenic()
+	{
+		return reportedPathogenic;
+	}
+
+	public Map<String, CGDEntry> getCgd()
+	{
+		return cgd;
+	}
+
+	public AddGeneFDR.FdrTable getFdrTable()
+	{
+		return fdrTable;
+	}
+
+	@Nullable
+	public LabVariants getLabVariants()
+	{
+		return labVariants;
+	}
+}
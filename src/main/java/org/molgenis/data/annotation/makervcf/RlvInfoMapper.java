@@ -1,110 +1,219 @@
 package org.molgenis.data.annotation.makervcf;
 
-import static com.google.common.collect.Lists.newArrayList;
 import static org.molgenis.data.annotation.makervcf.structs.RVCF.FIELD_NAME;
-import static org.molgenis.data.annotation.makervcf.structs.RVCFUtils.createRvcfValues;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_ALLELE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_ALLELEFREQ;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_FDR;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_GENE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PHENOTYPE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PHENOTYPEDETAILS;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PHENOTYPEGROUP;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PHENOTYPEINHERITANCE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PHENOTYPEONSET;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PRESENT;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_SAMPLEGENOTYPE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_SAMPLEGROUP;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_SAMPLEPHENOTYPE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_SAMPLESTATUS;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_TRANSCRIPT;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTGROUP;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTMULTIGENIC;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTSIGNIFICANCE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTSIGNIFICANCEJUSTIFICATION;
+import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTSIGNIFICANCESOURCE;
+import static org.molgenis.data.annotation.makervcf.structs.RVCFUtils.appendEscapedGenotype;
+import static org.molgenis.data.annotation.makervcf.structs.RVCFUtils.appendEscapedToSafeVCF;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import joptsimple.internal.Strings;
+import org.molgenis.cgd.CGDEntry;
 import org.molgenis.data.annotation.makervcf.Main.RlvMode;
-import org.molgenis.data.annotation.makervcf.structs.RVCF;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance;
 import org.molgenis.data.annotation.makervcf.structs.RVCFUtils;
 import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.data.vcf.utils.VcfLineBuffer;
 
 /**
  * Maps {@link org.molgenis.data.annotation.makervcf.structs.Relevance} list to RLV field value.
+ *
+ * The RLV fields are serialized directly from the {@link Relevance} objects in a fixed field order, the order of the
+ * RLV header. Values are escaped in a single pass while they are written.
  */
 public class RlvInfoMapper
 {
+  private static final char RVCF_FIELDSEP = '|';
+  private static final char RVCF_KEYVALSEP = ':';
+  private static final char RVCF_SAMPLESEP = '/';
 
-  public String map(List<Relevance> relevanceList, RlvMode rlvMode, boolean prefixRlvFields) {
-    StringBuffer infoField = new StringBuffer();
-    if (!relevanceList.isEmpty()) {
-      List<RVCF> rvcfList = mapRelevanceListToRVcfList(relevanceList);
+  /**
+   * Writes the escaped value of one RLV field for a relevance, writes nothing for an empty value.
+   */
+  private interface FieldWriter {
+
+    void write(Relevance relevance, VcfLineBuffer buffer);
+  }
+
+  /**
+   * Phenotype group, sample phenotype, sample group, variant multigenic and variant group are not provided yet.
+   */
+  private static final FieldWriter NOT_PROVIDED = (rlv, buffer) -> {
+  };
+
+  private static final FieldWriter[] MERGED_FIELD_WRITERS = {
+      (rlv, buffer) -> appendValue(rlv.getAllele(), buffer),
+      (rlv, buffer) -> buffer.append(String.valueOf(rlv.getAlleleFreq())),
+      (rlv, buffer) -> appendValue(rlv.getGene(), buffer),
+      (rlv, buffer) -> appendValue(rlv.getFDR(), buffer),
+      (rlv, buffer) -> rlv.getTranscript().ifPresent(transcript -> appendEscapedToSafeVCF(transcript, buffer)),
+      (rlv, buffer) -> appendValue(rlv.getCgdInfo() != null ? rlv.getCgdInfo().getCondition() : null, buffer),
+      (rlv, buffer) -> appendValue(getPhenotypeInheritance(rlv.getCgdInfo()), buffer),
+      (rlv, buffer) -> appendValue(rlv.getCgdInfo() != null ? rlv.getCgdInfo().getAge_group() : null, buffer),
+      (rlv, buffer) -> appendValue(rlv.getCgdInfo() != null ? rlv.getCgdInfo().getComments() : null, buffer),
+      NOT_PROVIDED,
+      RlvInfoMapper::appendSampleStatus,
+      NOT_PROVIDED,
+      (rlv, buffer) -> appendSampleGenotypes(rlv, buffer, true),
+      NOT_PROVIDED,
+      (rlv, buffer) -> appendValue(rlv.getJudgment().getType(), buffer),
+      (rlv, buffer) -> appendValue(rlv.getJudgment().getSource(), buffer),
+      (rlv, buffer) -> appendValue(rlv.getJudgment().getReason(), buffer),
+      NOT_PROVIDED,
+      NOT_PROVIDED };
+
+  private static final String[] SPLITTED_FIELD_NAMES = { RLV_PRESENT, RLV_ALLELE, RLV_ALLELEFREQ, RLV_GENE, RLV_FDR,
+      RLV_TRANSCRIPT, RLV_PHENOTYPE, RLV_PHENOTYPEINHERITANCE, RLV_PHENOTYPEONSET, RLV_PHENOTYPEDETAILS,
+      RLV_PHENOTYPEGROUP, RLV_SAMPLESTATUS, RLV_SAMPLEPHENOTYPE, RLV_SAMPLEGENOTYPE, RLV_SAMPLEGROUP,
+      RLV_VARIANTSIGNIFICANCE, RLV_VARIANTSIGNIFICANCESOURCE, RLV_VARIANTSIGNIFICANCEJUSTIFICATION,
+      RLV_VARIANTMULTIGENIC, RLV_VARIANTGROUP };
+
+  private static final FieldWriter[] SPLITTED_FIELD_WRITERS = createSplittedFieldWriters();
 
+  private static FieldWriter[] createSplittedFieldWriters() {
+    FieldWriter[] fieldWriters = new FieldWriter[MERGED_FIELD_WRITERS.length + 1];
+    fieldWriters[0] = (rlv, buffer) -> buffer.append("TRUE");
+    System.arraycopy(MERGED_FIELD_WRITERS, 0, fieldWriters, 1, MERGED_FIELD_WRITERS.length);
+    // genotypes in the splitted sample genotype field are escaped like any other value
+    fieldWriters[13] = (rlv, buffer) -> appendSampleGenotypes(rlv, buffer, false);
+    return fieldWriters;
+  }
+
+  /**
+   * Appends the RLV INFO fields for the relevance list to the buffer.
+   */
+  public void write(List<Relevance> relevanceList, RlvMode rlvMode, boolean prefixRlvFields,
+      VcfLineBuffer buffer) {
+    if (!relevanceList.isEmpty()) {
       if (rlvMode == RlvMode.SPLITTED || rlvMode == RlvMode.BOTH) {
-        infoField.append(getSplittedFields(rvcfList, prefixRlvFields));
+        writeSplittedFields(relevanceList, prefixRlvFields, buffer);
       }
       if (rlvMode == RlvMode.BOTH) {
-        infoField.append(";");
+        buffer.append(';');
       }
       if (rlvMode == RlvMode.MERGED || rlvMode == RlvMode.BOTH) {
-        infoField.append(getMergedFields(rvcfList));
+        writeMergedFields(relevanceList, buffer);
       }
     } else {
       if (rlvMode == RlvMode.SPLITTED || rlvMode == RlvMode.BOTH) {
-        infoField.append(RVCF.RLV_PRESENT + "=" + "FALSE");
+        buffer.append(RLV_PRESENT).append('=').append("FALSE");
       }
       if (rlvMode == RlvMode.MERGED || rlvMode == RlvMode.BOTH) {
-        if (!(infoField.length() == 0)) {
-          infoField.append(",");
+        if (rlvMode == RlvMode.BOTH) {
+          buffer.append(',');
         }
-        infoField.append(RVCF.FIELD_NAME + "=" + RVCFUtils.EMPTY_VALUE);
+        buffer.append(FIELD_NAME).append('=').append(RVCFUtils.EMPTY_VALUE);
       }
     }
-    return infoField.toString();
   }
 
-  private List<RVCF> mapRelevanceListToRVcfList(List<Relevance> relevanceList) {
-    List<RVCF> rvcfList = newArrayList();
-    for (Relevance rlv : relevanceList) {
-      RVCF rvcf = new RVCF();
-
-      rvcf.setGene(rlv.getGene());
-      rvcf.setFDR(rlv.getFDR());
-      rvcf.setAllele(rlv.getAllele());
-      rvcf.setAlleleFreq(String.valueOf(rlv.getAlleleFreq()));
-      Optional<String> transcript = rlv.getTranscript();
-      rvcf.setTranscript(transcript.orElse(""));
-
-      if (rlv.getCgdInfo() != null) {
-        rvcf.setPhenotype(rlv.getCgdInfo().getCondition());
-        rvcf.setPhenotypeInheritance(rlv.getCgdInfo().getGeneralizedInheritance().toString());
-        rvcf.setPhenotypeOnset(rlv.getCgdInfo().getAge_group());
-        rvcf.setPhenotypeDetails(rlv.getCgdInfo().getComments());
-        rvcf.setPhenotypeGroup(null);
+  private void writeSplittedFields(List<Relevance> relevanceList, boolean prefixRlvFields,
+      VcfLineBuffer buffer) {
+    for (int field = 0; field < SPLITTED_FIELD_NAMES.length; field++) {
+      if (field > 0) {
+        buffer.append(';');
+      }
+      buffer.append(SPLITTED_FIELD_NAMES[field]).append('=');
+      for (int i = 0; i < relevanceList.size(); i++) {
+        Relevance relevance = relevanceList.get(i);
+        if (i > 0) {
+          buffer.append(',');
+        }
+        if (prefixRlvFields) {
+          buffer.append('[');
+          appendRaw(relevance.getAllele(), buffer);
+          buffer.append(RVCF_FIELDSEP);
+          appendRaw(relevance.getGene(), buffer);
+          buffer.append(']');
+        }
+        int valueStart = buffer.length();
+        SPLITTED_FIELD_WRITERS[field].write(relevance, buffer);
+        if (buffer.length() == valueStart) {
+          buffer.append(RVCFUtils.EMPTY_VALUE);
+        }
       }
+    }
+  }
 
-      rvcf.setVariantSignificance(rlv.getJudgment().getType());
-      rvcf.setVariantSignificanceSource(rlv.getJudgment().getSource());
-      rvcf.setVariantSignificanceJustification(rlv.getJudgment().getReason());
-      rvcf.setVariantMultiGenic(null);
-      rvcf.setVariantGroup(null);
+  private void writeMergedFields(List<Relevance> relevanceList, VcfLineBuffer buffer) {
+    buffer.append(FIELD_NAME).append('=');
+    for (int i = 0; i < relevanceList.size(); i++) {
+      Relevance relevance = relevanceList.get(i);
+      if (i > 0) {
+        buffer.append(',');
+      }
+      for (int field = 0; field < MERGED_FIELD_WRITERS.length; field++) {
+        if (field > 0) {
+          buffer.append(RVCF_FIELDSEP);
+        }
+        MERGED_FIELD_WRITERS[field].write(relevance, buffer);
+      }
+    }
+  }
 
-      rvcf.setSampleStatus(rlv.getSampleStatus());
-      rvcf.setSampleGenotype(rlv.getSampleGenotypes());
-      rvcf.setSamplePhenotype(null);
-      rvcf.setSampleGroup(null);
+  private static String getPhenotypeInheritance(CGDEntry cgdInfo) {
+    return cgdInfo != null ? cgdInfo.getGeneralizedInheritance().toString() : null;
+  }
 
-      rvcfList.add(rvcf);
+  private static void appendValue(String value, VcfLineBuffer buffer) {
+    if (value != null) {
+      appendEscapedToSafeVCF(value, buffer);
     }
-    return rvcfList;
   }
 
-  private String getSplittedFields(List<RVCF> rvcfList, boolean prefixRlvFields) {
-    Map<String, String> rvcfValues = new HashMap<>();
-    for (RVCF rvcf : rvcfList) {
-      rvcfValues = createRvcfValues(rvcf, rvcfValues, prefixRlvFields);
+  private static void appendRaw(String value, VcfLineBuffer buffer) {
+    if (value != null) {
+      buffer.append(value);
     }
-    List<String> rlvInfoFields = new ArrayList<>();
-    for (Map.Entry<String, String> entry : rvcfValues.entrySet()) {
-      rlvInfoFields.add(entry.getKey() + "=" + entry.getValue());
+  }
+
+  private static void appendSampleStatus(Relevance relevance, VcfLineBuffer buffer) {
+    boolean first = true;
+    for (Map.Entry<String, MatchVariantsToGenotypeAndInheritance.Status> sample : relevance
+        .getSampleStatus().entrySet()) {
+      if (!first) {
+        buffer.append(RVCF_SAMPLESEP);
+      }
+      appendEscapedToSafeVCF(sample.getKey(), buffer);
+      buffer.append(RVCF_KEYVALSEP);
+      appendEscapedToSafeVCF(sample.getValue().toString(), buffer);
+      first = false;
     }
-    return Strings.join(rlvInfoFields, ";");
   }
 
-  private String getMergedFields(List<RVCF> rvcfList) {
-    List<String> rvcfStringList = new ArrayList<>();
-    StringBuffer infoField = new StringBuffer();
-    infoField.append(FIELD_NAME + "=");
-    for (RVCF rvcf : rvcfList) {
-      rvcfStringList.add(RVCFUtils.getMergedFieldVcfString(rvcf));
+  private static void appendSampleGenotypes(Relevance relevance, VcfLineBuffer buffer,
+      boolean escapeGenotype) {
+    boolean first = true;
+    for (Map.Entry<String, String> sample : relevance.getSampleGenotypes().entrySet()) {
+      if (!first) {
+        buffer.append(RVCF_SAMPLESEP);
+      }
+      appendEscapedToSafeVCF(sample.getKey(), buffer);
+      buffer.append(RVCF_KEYVALSEP);
+      if (escapeGenotype) {
+        appendEscapedGenotype(sample.getValue(), buffer);
+      } else {
+        appendEscapedToSafeVCF(sample.getValue(), buffer);
+      }
+      first = false;
     }
-    infoField.append(Strings.join(rvcfStringList, ","));
-    return infoField.toString();
   }
 }
@@ -1,133 +1,131 @@
 package org.molgenis.data.annotation.makervcf;
 
-import static java.util.Arrays.stream;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
 import static org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord.CADD_SCALED;
 import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_PRESENT;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.StreamSupport;
 import joptsimple.internal.Strings;
 import org.molgenis.data.annotation.core.entity.impl.snpeff.Annotation;
-import org.molgenis.data.annotation.makervcf.Main.RlvMode;
-import org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
-import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.data.vcf.utils.VcfLineBuffer;
 import org.molgenis.vcf.VcfInfo;
-import org.molgenis.vcf.VcfRecord;
 import org.molgenis.vcf.VcfRecordUtils;
-import org.molgenis.vcf.VcfSample;
 import org.molgenis.vcf.meta.VcfMeta;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
- * Maps {@link GavinRecord} to {@link VcfRecord}.
+ * Writes {@link GavinRecord} as a VCF line to a {@link VcfLineBuffer}.
  */
 class VcfRecordMapper {
 
-  private static final Logger LOG = LoggerFactory.getLogger(VcfRecordMapper.class);
   private static final String MISSING_VALUE = ".";
   public static final String ANN = "ANN";
+  private static final byte[] RLV_PRESENT_FALSE = (RLV_PRESENT + "=FALSE").getBytes(StandardCharsets.US_ASCII);
 
-  private final VcfMeta vcfMeta;
   private final VcfRecordMapperSettings vcfRecordMapperSettings;
   private final RlvInfoMapper rlvInfoMapper;
 
-  VcfRecordMapper(VcfMeta vcfMeta, VcfRecordMapperSettings vcfRecordMapperSettings) {
-    this.vcfMeta = requireNonNull(vcfMeta);
+  VcfRecordMapper(VcfRecordMapperSettings vcfRecordMapperSettings) {
     this.vcfRecordMapperSettings = requireNonNull(vcfRecordMapperSettings);
     rlvInfoMapper = new RlvInfoMapper();
   }
 
-  public VcfRecord map(GavinRecord gavinRecord) {
-    List<String> tokens = createTokens(gavinRecord);
-    return new VcfRecord(vcfMeta, tokens.toArray(new String[0]));
-  }
-
-  private List<String> createTokens(GavinRecord gavinRecord) {
-    List<String> tokens = new ArrayList<>();
-    tokens.add(gavinRecord.getChromosome());
-    tokens.add(String.valueOf(gavinRecord.getPosition()));
-
-    List<String> identifiers = gavinRecord.getIdentifiers();
-    tokens.add(!identifiers.isEmpty() ? identifiers.stream().collect(joining(";")) : MISSING_VALUE);
+  /**
+   * Appends the VCF line (without line terminator) for the given {@link GavinRecord} to the buffer. Columns that are
+   * not changed by the pipeline are copied verbatim from the input record.
+   */
+  void write(GavinRecord gavinRecord, VcfLineBuffer buffer) {
+    String[] tokens = gavinRecord.getAnnotatedVcfRecord().getTokens();
+    for (int i = 0; i < VcfMeta.COL_INFO_IDX; i++) {
+      buffer.append(tokens[i]).append('\t');
+    }
 
-    tokens.add(gavinRecord.getRef());
-    String[] altTokens = gavinRecord.getAlts();
-    if (altTokens.length == 0) {
-      tokens.add(MISSING_VALUE);
+    if (isPassThrough(gavinRecord)) {
+      writePassThroughInfoToken(tokens[VcfMeta.COL_INFO_IDX], buffer);
     } else {
-      tokens.add(stream(altTokens).collect(joining(",")));
+      writeInfoToken(gavinRecord, tokens[VcfMeta.COL_INFO_IDX], buffer);
     }
 
-    tokens.add(gavinRecord.getQuality().map(Object::toString).orElse(MISSING_VALUE));
-    List<String> filterStatus = gavinRecord.getFilterStatus();
-    tokens
-        .add(!filterStatus.isEmpty() ? filterStatus.stream().collect(joining(";")) : MISSING_VALUE);
-
-    tokens.add(createInfoToken(gavinRecord, vcfRecordMapperSettings));
-
-    if (vcfRecordMapperSettings.includeSamples()) {
-
-      AnnotatedVcfRecord annotatedVcfRecord = gavinRecord.getAnnotatedVcfRecord();
-      Iterable<VcfSample> vcfSamples = annotatedVcfRecord.getSamples();
-      if (vcfSamples.iterator().hasNext()) {
-        tokens.add(createFormatToken(annotatedVcfRecord));
-        tokens.addAll(Arrays.asList(annotatedVcfRecord.getSampleTokens()));
+    if (vcfRecordMapperSettings.includeSamples() && tokens.length > VcfMeta.COL_FORMAT_IDX + 1) {
+      for (int i = VcfMeta.COL_FORMAT_IDX; i < tokens.length; i++) {
+        buffer.append('\t').append(tokens[i]);
       }
     }
-    return tokens;
   }
 
-  private String createInfoToken(GavinRecord gavinRecord,
-      VcfRecordMapperSettings vcfRecordMapperSettings) {
-    Iterable<VcfInfo> vcfInformations = gavinRecord.getAnnotatedVcfRecord().getInformation();
-
-    boolean hasInformation = vcfInformations.iterator().hasNext();
+  /**
+   * Records without relevance for which no CADD score was filled in only get the RLV marker, so their INFO column is
+   * copied as-is instead of being split into fields. A CADD_SCALED field keeps its original notation and position.
+   */
+  private boolean isPassThrough(GavinRecord gavinRecord) {
+    return gavinRecord.getRelevance().isEmpty() && !gavinRecord.isCaddPhredScoresUpdated()
+        && !vcfRecordMapperSettings.addSplittedAnnFields();
+  }
 
-    StringBuilder stringBuilder = new StringBuilder();
+  private void writePassThroughInfoToken(String infoToken, VcfLineBuffer buffer) {
+    if (!infoToken.isEmpty() && !infoToken.equals(MISSING_VALUE)) {
+      buffer.append(infoToken).append(';');
+    }
+    buffer.append(RLV_PRESENT_FALSE);
+  }
 
-    if (hasInformation) {
-      //process all info fields except CADD_SCALED, we might have added values there so we process it seperately
-      stringBuilder.append(StreamSupport.stream(vcfInformations.spliterator(), false)
-          .filter(vcfInfo -> !vcfInfo.getKey().equals(CADD_SCALED))
-          .map(this::createInfoTokenPart)
-          .collect(joining(";")));
+  private void writeInfoToken(GavinRecord gavinRecord, String infoToken, VcfLineBuffer buffer) {
+    int start = buffer.length();
+    if (!infoToken.isEmpty() && !infoToken.equals(MISSING_VALUE)) {
+      //copy all info fields except CADD_SCALED, we might have added values there so we process it seperately
+      int fieldStart = 0;
+      while (fieldStart < infoToken.length()) {
+        int fieldEnd = infoToken.indexOf(';', fieldStart);
+        if (fieldEnd == -1) {
+          fieldEnd = infoToken.length();
+        }
+        if (!isInfoField(infoToken, fieldStart, fieldEnd, CADD_SCALED)) {
+          if (buffer.length() > start) {
+            buffer.append(';');
+          }
+          buffer.append(infoToken, fieldStart, fieldEnd);
+        }
+        fieldStart = fieldEnd + 1;
+      }
 
       Double[] caddScores = gavinRecord.getCaddPhredScores();
       if (caddScores != null && caddScores.length > 0) {
-        List<String> caddScoresList = Arrays.stream(caddScores).map(this::caddToString)
-            .collect(toList());
-        if (!caddScoresList.isEmpty()) {
-          stringBuilder.append(";")
-              .append(createInfoTokenPart(CADD_SCALED, Strings.join(caddScoresList, ",")));
+        if (buffer.length() > start) {
+          buffer.append(';');
+        }
+        buffer.append(CADD_SCALED).append('=');
+        for (int i = 0; i < caddScores.length; i++) {
+          if (i > 0) {
+            buffer.append(',');
+          }
+          buffer.append(caddToString(caddScores[i]));
         }
       }
     }
 
-    if (stringBuilder.length() > 0) {
-      stringBuilder.append(';');
+    if (buffer.length() > start) {
+      buffer.append(';');
     }
     if (!gavinRecord.getRelevance().isEmpty()) {
-      stringBuilder.append(getRlv(gavinRecord, vcfRecordMapperSettings.rlvMode(),
-          vcfRecordMapperSettings.prefixSplittedRlvFields()));
+      rlvInfoMapper.write(gavinRecord.getRelevance(), vcfRecordMapperSettings.rlvMode(),
+          vcfRecordMapperSettings.prefixSplittedRlvFields(), buffer);
     } else {
-      stringBuilder.append(createInfoTokenPart(RLV_PRESENT, "FALSE"));
+      buffer.append(RLV_PRESENT_FALSE);
     }
     if (vcfRecordMapperSettings.addSplittedAnnFields()) {
-      stringBuilder.append(';');
-      stringBuilder.append(getAnn(gavinRecord));
+      buffer.append(';');
+      buffer.append(getAnn(gavinRecord));
     }
+  }
 
-    return stringBuilder.toString();
+  private static boolean isInfoField(String infoToken, int fieldStart, int fieldEnd, String key) {
+    int keyEnd = fieldStart + key.length();
+    return infoToken.startsWith(key, fieldStart) && (keyEnd == fieldEnd || infoToken.charAt(keyEnd) == '=');
   }
 
   private String caddToString(Double score) {
@@ -140,33 +138,6 @@ class VcfRecordMapper {
     return stringValue;
   }
 
-  private String createInfoTokenPart(VcfInfo vcfInfo) {
-    return createInfoTokenPart(vcfInfo.getKey(), vcfInfo.getValRaw());
-  }
-
-  private String createInfoTokenPart(String key, String value) {
-    return key + '=' + value;
-  }
-
-  private String createFormatToken(AnnotatedVcfRecord vcfEntity) {
-    String[] formatTokens = vcfEntity.getFormat();
-    return stream(formatTokens).collect(joining(":"));
-  }
-
-  private String getRlv(GavinRecord gavinRecord, RlvMode rlvMode,
-      boolean prefixSplittedFields) {
-    LOG.debug("[MakeRVCFforClinicalVariants] Looking at: {}", gavinRecord);
-
-    List<Relevance> relevance = gavinRecord.getRelevance();
-    String rlv = rlvInfoMapper.map(relevance, rlvMode, prefixSplittedFields);
-
-    LOG.debug(
-        "[MakeRVCFforClinicalVariants] Converted relevant variant to a VCF INFO field for writing out: {}",
-        rlv);
-
-    return rlv;
-  }
-
   private String getAnn(GavinRecord gavinRecord) {
     String result = "";
     Optional<VcfInfo> annotationInfoField = VcfRecordUtils.getInformation(ANN,
@@ -40,20 +40,33 @@ import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTSIGN
 import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTSIGNIFICANCEJUSTIFICATION;
 import static org.molgenis.data.annotation.makervcf.structs.RVCF.RLV_VARIANTSIGNIFICANCESOURCE;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import javax.annotation.Nullable;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import net.sf.samtools.util.BlockCompressedOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.molgenis.calibratecadd.support.GavinUtils;
 import org.molgenis.data.annotation.makervcf.Main.RlvMode;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpoint;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpointer;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarWriter;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.vcf.utils.TabixIndexBuilder;
+import org.molgenis.data.vcf.utils.VcfLineBuffer;
 import org.molgenis.vcf.VcfReader;
-import org.molgenis.vcf.VcfWriter;
 import org.molgenis.vcf.VcfWriterFactory;
+import org.molgenis.vcf.VcfWriterFactory.Format;
 import org.molgenis.vcf.meta.VcfMeta;
 import org.molgenis.vcf.meta.VcfMetaInfo;
 import org.slf4j.Logger;
@@ -65,6 +78,8 @@ class WriteToRVCF
 	public static final String STRING = "String";
 	public static final String INTEGER = "Integer";
 
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
 	private static final String KEY_ID = "ID";
 	private static final String KEY_NUMBER = "Number";
 	private static final String KEY_TYPE = "Type";
@@ -73,27 +88,165 @@ class WriteToRVCF
 	void writeRVCF(Iterator<GavinRecord> gavinRecords, File writeTo, File inputVcfFile, String version,
 			String cmdString, boolean writeToDisk, VcfRecordMapperSettings vcfRecordMapperSettings)
 			throws Exception
+	{
+		writeRVCF(gavinRecords, writeTo, inputVcfFile, version, cmdString, writeToDisk, vcfRecordMapperSettings, null);
+	}
+
+	void writeRVCF(Iterator<GavinRecord> gavinRecords, File writeTo, File inputVcfFile, String version,
+			String cmdString, boolean writeToDisk, VcfRecordMapperSettings vcfRecordMapperSettings,
+			@Nullable File sidecarFile) throws Exception
+	{
+		writeRVCF(gavinRecords, writeTo, inputVcfFile, version, cmdString, writeToDisk, vcfRecordMapperSettings,
+				sidecarFile, null);
+	}
+
+	/**
+	 * Writes the RVCF, as BGZF blocks with a tabix index built from the virtual file offsets of the records when the
+	 * output file name ends with .gz, and optionally the relevance information as columnar binary sidecar file.
+	 *
+	 * With a checkpointer the output is flushed whenever a checkpoint is due, and the checkpoint records the length of
+	 * the output file at that point. When resuming from a checkpoint the output is truncated to that length and
+	 * appended to, the tabix index is rebuilt from the records that were already written.
+	 */
+	void writeRVCF(Iterator<GavinRecord> gavinRecords, File writeTo, File inputVcfFile, String version,
+			String cmdString, boolean writeToDisk, VcfRecordMapperSettings vcfRecordMapperSettings,
+			@Nullable File sidecarFile, @Nullable Checkpointer checkpointer) throws Exception
 	{
 		VcfMeta vcfMeta = createRvcfMeta(inputVcfFile, vcfRecordMapperSettings);
 		vcfMeta.add("GavinVersion", StringUtils.wrap(version, "\""));
 		vcfMeta.add("GavinCmd", StringUtils.wrap(cmdString, "\""));
-		LOG.debug("[WriteToRVCF] Writing header");
 
-		try (VcfWriter vcfWriter = new VcfWriterFactory().create(writeTo, vcfMeta))
+		Checkpoint resumeCheckpoint = checkpointer != null ? checkpointer.getResumeCheckpoint() : null;
+		boolean bgzipCompressed = isBgzipCompressed(writeTo);
+		TabixIndexBuilder tabixIndexBuilder = bgzipCompressed ? new TabixIndexBuilder() : null;
+		// length of the output file before this run, and bytes of the uncompressed output written by this run
+		long resumeOffset = 0;
+		long writtenBytes = 0;
+		if (resumeCheckpoint != null)
 		{
-			VcfRecordMapper vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
+			resumeOffset = resumeCheckpoint.getOutputOffset();
+			LOG.debug("[WriteToRVCF] Resuming output at offset {}", resumeOffset);
+			truncate(writeTo, resumeOffset);
+			if (tabixIndexBuilder != null)
+			{
+				indexWrittenRecords(writeTo, tabixIndexBuilder);
+			}
+		}
+
+		BlockCompressedOutputStream bgzipOutputStream = null;
+		if (bgzipCompressed)
+		{
+			bgzipOutputStream = resumeCheckpoint != null ? new BlockCompressedOutputStream(
+					new FileOutputStream(writeTo, true), writeTo) : new BlockCompressedOutputStream(writeTo);
+		}
+		// the BGZF virtual file offsets of the appended blocks start at the end of the resumed output
+		long virtualOffsetBase = resumeOffset << 16;
+		try (OutputStream outputStream = bgzipOutputStream != null ? bgzipOutputStream : new BufferedOutputStream(
+				new FileOutputStream(writeTo, resumeCheckpoint != null), OUTPUT_BUFFER_SIZE);
+				RlvSidecarWriter sidecarWriter = sidecarFile != null ? new RlvSidecarWriter(sidecarFile) : null)
+		{
+			if (resumeCheckpoint == null)
+			{
+				LOG.debug("[WriteToRVCF] Writing header");
+				byte[] header = createHeader(vcfMeta);
+				outputStream.write(header);
+				writtenBytes += header.length;
+			}
+			VcfRecordMapper vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+			VcfLineBuffer lineBuffer = new VcfLineBuffer();
 			while (gavinRecords.hasNext())
 			{
 				GavinRecord gavinRecord = gavinRecords.next();
 				if (writeToDisk)
 				{
+					if (checkpointer != null && checkpointer.isDue(gavinRecord))
+					{
+						outputStream.flush();
+						checkpointer.commit(bgzipOutputStream != null ? resumeOffset + (
+								bgzipOutputStream.getFilePointer() >>> 16) : resumeOffset + writtenBytes);
+					}
 					LOG.debug("[WriteToRVCF] Writing VCF record");
-					vcfWriter.write(vcfRecordMapper.map(gavinRecord));
+					lineBuffer.clear();
+					vcfRecordMapper.write(gavinRecord, lineBuffer);
+					lineBuffer.append('\n');
+					long startOffset =
+							bgzipOutputStream != null ? virtualOffsetBase + bgzipOutputStream.getFilePointer() : 0;
+					lineBuffer.writeTo(outputStream);
+					writtenBytes += lineBuffer.length();
+					if (tabixIndexBuilder != null)
+					{
+						int position = gavinRecord.getPosition();
+						tabixIndexBuilder.addRecord(gavinRecord.getChromosome(), position,
+								position + gavinRecord.getRef().length() - 1L, startOffset,
+								virtualOffsetBase + bgzipOutputStream.getFilePointer());
+					}
+					if (sidecarWriter != null)
+					{
+						sidecarWriter.write(gavinRecord);
+					}
+				}
+			}
+		}
+		if (tabixIndexBuilder != null)
+		{
+			LOG.debug("[WriteToRVCF] Writing tabix index");
+			tabixIndexBuilder.writeIndex(writeTo);
+		}
+	}
+
+	static boolean isBgzipCompressed(File file)
+	{
+		return file.getName().endsWith(".gz");
+	}
+
+	private static void truncate(File file, long length) throws IOException
+	{
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+		{
+			if (randomAccessFile.length() < length)
+			{
+				throw new IOException(
+						"Output RVCF file " + file + " is shorter than its checkpoint, please remove the checkpoint file to start over.");
+			}
+			randomAccessFile.setLength(length);
+		}
+	}
+
+	/**
+	 * Adds the records of a bgzip compressed RVCF to the tabix index, with the virtual file offsets at which they were
+	 * written.
+	 */
+	private static void indexWrittenRecords(File bgzipFile, TabixIndexBuilder tabixIndexBuilder) throws IOException
+	{
+		try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(bgzipFile))
+		{
+			long startOffset = 0;
+			String line;
+			while ((line = inputStream.readLine()) != null)
+			{
+				long endOffset = inputStream.getFilePointer();
+				if (!line.isEmpty() && line.charAt(0) != '#')
+				{
+					String[] tokens = StringUtils.split(line, '\t');
+					long position = Long.parseLong(tokens[VcfMeta.COL_POS_IDX]);
+					tabixIndexBuilder.addRecord(tokens[VcfMeta.COL_CHROM_IDX], position,
+							position + tokens[VcfMeta.COL_REF_IDX].length() - 1L, startOffset, endOffset);
 				}
+				startOffset = endOffset;
 			}
 		}
 	}
 
+	/**
+	 * Meta information and column header lines exactly as the vcf-io writer would write them.
+	 */
+	private byte[] createHeader(VcfMeta vcfMeta) throws Exception
+	{
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		new VcfWriterFactory().create(header, vcfMeta, Format.UNCOMPRESSED).close();
+		return header.toByteArray();
+	}
+
 	private VcfMeta createRvcfMeta(File inputVcfFile, VcfRecordMapperSettings vcfRecordMapperSettings)
 			throws IOException
 	{
@@ -0,0 +1,206 @@
+package org.molgenis.data.annotation.makervcf.checkpoint;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * State of an interrupted run at a safe point: where to continue in the input, how much of the output was complete and
+ * the state of the stages that spans the safe point.
+ *
+ * A checkpoint is a small properties file next to the output. It is written to a temporary file first and then moved
+ * into place, so an interruption while writing leaves the previous checkpoint intact.
+ */
+public class Checkpoint
+{
+	private static final String TMP_EXTENSION = ".tmp";
+	private static final String CHROMOSOME_SEPARATOR = "\t";
+
+	private static final String KEY_CMD = "cmd";
+	private static final String KEY_INPUT = "input";
+	private static final String KEY_INPUT_LENGTH = "inputLength";
+	private static final String KEY_RECORD_INDEX = "recordIndex";
+	private static final String KEY_INPUT_OFFSET = "inputOffset";
+	private static final String KEY_CHROMOSOME = "chromosome";
+	private static final String KEY_POSITION = "position";
+	private static final String KEY_OUTPUT_OFFSET = "outputOffset";
+	private static final String KEY_FINISHED_CHROMOSOMES = "finishedChromosomes";
+	private static final String KEY_GENES_OUTSIDE_SPAN = "nrOfGenesOutsideSpan";
+
+	private final String cmdString;
+	private final String inputPath;
+	private final long inputLength;
+	private final long recordIndex;
+	private final long inputOffset;
+	private final String chromosome;
+	private final int position;
+	private final long outputOffset;
+	private final List<String> finishedChromosomes;
+	private final int nrOfGenesOutsideSpan;
+
+	/**
+	 * @param recordIndex          number of input records before the safe point
+	 * @param inputOffset          BGZF virtual file offset of the first input record after the safe point, or -1 if
+	 *                             the input is not bgzip compressed
+	 * @param chromosome           chromosome of the first input record after the safe point
+	 * @param position             position of the first input record after the safe point
+	 * @param outputOffset         length of the output file up to the safe point, in bytes of the file
+	 * @param finishedChromosomes  chromosomes that were completely read before the safe point
+	 * @param nrOfGenesOutsideSpan ANN gene assignments outside the calibrated gene span before the safe point
+	 */
+	public Checkpoint(String cmdString, File inputVcfFile, long recordIndex, long inputOffset, String chromosome,
+			int position, long outputOffset, List<String> finishedChromosomes, int nrOfGenesOutsideSpan)
+	{
+		this(cmdString, inputVcfFile.getAbsolutePath(), inputVcfFile.length(), recordIndex, inputOffset, chromosome,
+				position, outputOffset, finishedChromosomes, nrOfGenesOutsideSpan);
+	}
+
+	private Checkpoint(String cmdString, String inputPath, long inputLength, long recordIndex, long inputOffset,
+			String chromosome, int position, long outputOffset, List<String> finishedChromosomes,
+			int nrOfGenesOutsideSpan)
+	{
+		this.cmdString = cmdString;
+		this.inputPath = inputPath;
+		this.inputLength = inputLength;
+		this.recordIndex = recordIndex;
+		this.inputOffset = inputOffset;
+		this.chromosome = chromosome;
+		this.position = position;
+		this.outputOffset = outputOffset;
+		this.finishedChromosomes = Collections.unmodifiableList(finishedChromosomes);
+		this.nrOfGenesOutsideSpan = nrOfGenesOutsideSpan;
+	}
+
+	public long getRecordIndex()
+	{
+		return recordIndex;
+	}
+
+	public long getInputOffset()
+	{
+		return inputOffset;
+	}
+
+	public String getChromosome()
+	{
+		return chromosome;
+	}
+
+	public int getPosition()
+	{
+		return position;
+	}
+
+	public long getOutputOffset()
+	{
+		return outputOffset;
+	}
+
+	public List<String> getFinishedChromosomes()
+	{
+		return finishedChromosomes;
+	}
+
+	public int getNrOfGenesOutsideSpan()
+	{
+		return nrOfGenesOutsideSpan;
+	}
+
+	/**
+	 * Checks that the checkpoint was written by a run with the same arguments on the same input.
+	 *
+	 * @throws IOException describing the difference
+	 */
+	public void validate(String cmdString, File inputVcfFile) throws IOException
+	{
+		if (!this.cmdString.equals(cmdString))
+		{
+			throw new IOException(
+					"Checkpoint was written by a run with other arguments: " + this.cmdString + ", remove it to start over");
+		}
+		if (!inputPath.equals(inputVcfFile.getAbsolutePath()) || inputLength != inputVcfFile.length())
+		{
+			throw new IOException(
+					"Checkpoint was written for another input VCF: " + inputPath + ", remove it to start over");
+		}
+	}
+
+	public void write(File checkpointFile) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.setProperty(KEY_CMD, cmdString);
+		properties.setProperty(KEY_INPUT, inputPath);
+		properties.setProperty(KEY_INPUT_LENGTH, Long.toString(inputLength));
+		properties.setProperty(KEY_RECORD_INDEX, Long.toString(recordIndex));
+		properties.setProperty(KEY_INPUT_OFFSET, Long.toString(inputOffset));
+		properties.setProperty(KEY_CHROMOSOME, chromosome);
+		properties.setProperty(KEY_POSITION, Integer.toString(position));
+		properties.setProperty(KEY_OUTPUT_OFFSET, Long.toString(outputOffset));
+		properties.setProperty(KEY_FINISHED_CHROMOSOMES, String.join(CHROMOSOME_SEPARATOR, finishedChromosomes));
+		properties.setProperty(KEY_GENES_OUTSIDE_SPAN, Integer.toString(nrOfGenesOutsideSpan));
+
+		File tmpCheckpointFile = new File(checkpointFile.getPath() + TMP_EXTENSION);
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpCheckpointFile), UTF_8))
+		{
+			properties.store(writer, "GAVIN+ checkpoint at " + chromosome + ":" + position);
+		}
+		Files.move(tmpCheckpointFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static Checkpoint read(File checkpointFile) throws IOException
+	{
+		Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(checkpointFile), UTF_8))
+		{
+			properties.load(reader);
+		}
+		try
+		{
+			String finishedChromosomes = getProperty(properties, KEY_FINISHED_CHROMOSOMES);
+			return new Checkpoint(getProperty(properties, KEY_CMD), getProperty(properties, KEY_INPUT),
+					Long.parseLong(getProperty(properties, KEY_INPUT_LENGTH)),
+					Long.parseLong(getProperty(properties, KEY_RECORD_INDEX)),
+					Long.parseLong(getProperty(properties, KEY_INPUT_OFFSET)), getProperty(properties, KEY_CHROMOSOME),
+					Integer.parseInt(getProperty(properties, KEY_POSITION)),
+					Long.parseLong(getProperty(properties, KEY_OUTPUT_OFFSET)),
+					finishedChromosomes.isEmpty() ? new ArrayList<>() : Arrays.asList(
+							finishedChromosomes.split(CHROMOSOME_SEPARATOR, -1)),
+					Integer.parseInt(getProperty(properties, KEY_GENES_OUTSIDE_SPAN)));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Invalid checkpoint file " + checkpointFile + ": " + e.getMessage());
+		}
+	}
+
+	private static String getProperty(Properties properties, String key) throws IOException
+	{
+		String value = properties.getProperty(key);
+		if (value == null)
+		{
+			throw new IOException("Invalid checkpoint file, missing " + key);
+		}
+		return value;
+	}
+
+	@Override
+	public String toString()
+	{
+		return chromosome + ":" + position + " (input record " + recordIndex + ", output offset " + outputOffset + ")";
+	}
+}
@@ -0,0 +1,51 @@
+package org.molgenis.data.annotation.makervcf.checkpoint;
+
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Whether a run writes checkpoints to resume from, and how often.
+ */
+@AutoValue
+public abstract class CheckpointSettings
+{
+	private static final CheckpointSettings NO_RESUME = create(false, Checkpointer.DEFAULT_INTERVAL_MILLIS);
+
+	public abstract boolean resume();
+
+	public abstract long intervalMillis();
+
+	/**
+	 * Opens the checkpoints next to the output of a run.
+	 *
+	 * @return checkpointer, or null if the run does not resume
+	 * @throws IOException if the checkpoint was written by a run with other arguments or on another input
+	 */
+	@Nullable
+	public Checkpointer openCheckpointer(File outputVcfFile, String cmdString, File inputVcfFile) throws IOException
+	{
+		return resume() ? Checkpointer.open(new File(outputVcfFile.getPath() + Checkpointer.EXTENSION), cmdString,
+				inputVcfFile, intervalMillis()) : null;
+	}
+
+	public static CheckpointSettings create(boolean resume, long intervalMillis)
+	{
+		return new AutoValue_CheckpointSettings(resume, intervalMillis);
+	}
+
+	public static CheckpointSettings create(boolean resume)
+	{
+		return resume ? create(true, Checkpointer.DEFAULT_INTERVAL_MILLIS) : NO_RESUME;
+	}
+
+	/**
+	 * @return settings of a run without checkpoints
+	 */
+	public static CheckpointSettings noResume()
+	{
+		return NO_RESUME;
+	}
+}
@@ -0,0 +1,271 @@
+package org.molgenis.data.annotation.makervcf.checkpoint;
+
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the safe points of a running pipeline and now and then writes a {@link Checkpoint} at one of them,
+ * so an interrupted run can be resumed instead of started over.
+ *
+ * A safe point is an input record that no state of the pipeline spans: the gene windows before it all end before it,
+ * and its gene group in the gene stream stages is not joined with the group before it. The stages report the safe
+ * points while the records stream by. The input reports every record it reads with {@link #readRecord}, the gene
+ * stream creates a safe point for the record it just received with {@link #createSafePoint} and confirms it with
+ * {@link #confirm} once the gene groups around it are known. A confirmed safe point is reached when the output writes
+ * a record at or after it, all output before the safe point is written by then.
+ *
+ * A checkpoint is written at the first reached safe point of a chromosome, and within a chromosome at most once per
+ * interval. When the run completes the checkpoint is removed.
+ */
+public class Checkpointer
+{
+	private static final Logger LOG = LoggerFactory.getLogger(Checkpointer.class);
+
+	public static final String EXTENSION = ".checkpoint";
+	public static final long DEFAULT_INTERVAL_MILLIS = 60_000;
+
+	private final File checkpointFile;
+	private final String cmdString;
+	private final File inputVcfFile;
+	private final Checkpoint resumeCheckpoint;
+	private final long intervalMillis;
+
+	// order of the chromosomes in the input, and the chromosomes that were completely read
+	private final Map<String, Integer> chromosomeRanks = new HashMap<>();
+	private final List<String> finishedChromosomes = new ArrayList<>();
+
+	// the record that was read last
+	private GavinRecord currentRecord;
+	private String currentChromosome;
+	private int currentPosition;
+	private boolean currentFirstAtPosition;
+	private long currentRecordIndex;
+	private long currentInputOffset;
+	private int currentNrOfGenesOutsideSpan;
+
+	private final Deque<SafePoint> confirmedSafePoints = new ArrayDeque<>();
+	private SafePoint reachedSafePoint;
+	private String lastCheckpointChromosome;
+	private long lastCheckpointMillis;
+	private int previousWrittenRank = -1;
+	private int previousWrittenPosition;
+	private boolean disabled;
+
+	protected Checkpointer(File checkpointFile, String cmdString, File inputVcfFile,
+			@Nullable Checkpoint resumeCheckpoint, long intervalMillis)
+	{
+		this.checkpointFile = checkpointFile;
+		this.cmdString = cmdString;
+		this.inputVcfFile = inputVcfFile;
+		this.resumeCheckpoint = resumeCheckpoint;
+		this.intervalMillis = intervalMillis;
+		if (resumeCheckpoint != null)
+		{
+			for (String chromosome : resumeCheckpoint.getFinishedChromosomes())
+			{
+				chromosomeRanks.put(chromosome, chromosomeRanks.size());
+				finishedChromosomes.add(chromosome);
+			}
+			lastCheckpointChromosome = resumeCheckpoint.getChromosome();
+		}
+		lastCheckpointMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Opens the checkpoints of a run, to resume from if the checkpoint file exists.
+	 *
+	 * @throws IOException if the checkpoint was written by a run with other arguments or on another input
+	 */
+	public static Checkpointer open(File checkpointFile, String cmdString, File inputVcfFile, long intervalMillis)
+			throws IOException
+	{
+		Checkpoint resumeCheckpoint = null;
+		if (checkpointFile.exists())
+		{
+			resumeCheckpoint = Checkpoint.read(checkpointFile);
+			resumeCheckpoint.validate(cmdString, inputVcfFile);
+			LOG.info("[Checkpointer] Resuming from checkpoint at {}", resumeCheckpoint);
+		}
+		return new Checkpointer(checkpointFile, cmdString, inputVcfFile, resumeCheckpoint, intervalMillis);
+	}
+
+	/**
+	 * @return checkpoint to resume from, or null to start from the beginning
+	 */
+	@Nullable
+	public Checkpoint getResumeCheckpoint()
+	{
+		return resumeCheckpoint;
+	}
+
+	/**
+	 * Called by the input for every record it reads, in input order.
+	 *
+	 * @param recordIndex          number of input records before this record
+	 * @param inputOffset          BGZF virtual file offset of the record, or -1 if the input is not bgzip compressed
+	 * @param nrOfGenesOutsideSpan ANN gene assignments outside the calibrated gene span before this record
+	 */
+	public void readRecord(GavinRecord gavinRecord, long recordIndex, long inputOffset, int nrOfGenesOutsideSpan)
+	{
+		String chromosome = gavinRecord.getChromosome();
+		int position = gavinRecord.getPosition();
+		if (!chromosome.equals(currentChromosome))
+		{
+			if (currentChromosome != null)
+			{
+				finishedChromosomes.add(currentChromosome);
+			}
+			chromosomeRanks.putIfAbsent(chromosome, chromosomeRanks.size());
+			currentChromosome = chromosome;
+			currentFirstAtPosition = true;
+		}
+		else
+		{
+			currentFirstAtPosition = position != currentPosition;
+		}
+		currentRecord = gavinRecord;
+		currentPosition = position;
+		currentRecordIndex = recordIndex;
+		currentInputOffset = inputOffset;
+		currentNrOfGenesOutsideSpan = nrOfGenesOutsideSpan;
+	}
+
+	/**
+	 * Creates a safe point before the record that was read last, to be confirmed when the gene groups around it are
+	 * known. Only the first record at a position can be a safe point, so the output can tell whether it passed it.
+	 *
+	 * @return safe point, or null if the record is not the one that was read last or not the first at its position
+	 */
+	@Nullable
+	public SafePoint createSafePoint(GavinRecord gavinRecord)
+	{
+		if (disabled || gavinRecord != currentRecord || !currentFirstAtPosition)
+		{
+			return null;
+		}
+		return new SafePoint(currentChromosome, currentPosition, currentRecordIndex, currentInputOffset,
+				finishedChromosomes.size(), currentNrOfGenesOutsideSpan);
+	}
+
+	/**
+	 * Confirms a safe point, safe points must be confirmed in input order.
+	 */
+	public void confirm(SafePoint safePoint)
+	{
+		if (!disabled)
+		{
+			confirmedSafePoints.add(safePoint);
+		}
+	}
+
+	/**
+	 * Called by the output before writing a record.
+	 *
+	 * @return true if a checkpoint is due, to be written with {@link #commit} once the output before the record is
+	 * flushed
+	 */
+	public boolean isDue(GavinRecord gavinRecord)
+	{
+		if (disabled)
+		{
+			return false;
+		}
+		Integer rank = chromosomeRanks.get(gavinRecord.getChromosome());
+		int position = gavinRecord.getPosition();
+		if (rank == null || rank < previousWrittenRank || (rank == previousWrittenRank
+				&& position < previousWrittenPosition))
+		{
+			disable("output is not in input order at " + gavinRecord.toStringShort());
+			return false;
+		}
+		previousWrittenRank = rank;
+		previousWrittenPosition = position;
+
+		while (!confirmedSafePoints.isEmpty() && isReached(confirmedSafePoints.peek(), rank, position))
+		{
+			reachedSafePoint = confirmedSafePoints.poll();
+		}
+		return reachedSafePoint != null && (!reachedSafePoint.chromosome.equals(lastCheckpointChromosome)
+				|| System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis);
+	}
+
+	private boolean isReached(SafePoint safePoint, int rank, int position)
+	{
+		int safePointRank = chromosomeRanks.get(safePoint.chromosome);
+		return safePointRank < rank || (safePointRank == rank && safePoint.position <= position);
+	}
+
+	/**
+	 * Writes a checkpoint at the reached safe point.
+	 *
+	 * @param outputOffset length of the output file up to the safe point, with all output before it flushed
+	 */
+	public void commit(long outputOffset) throws IOException
+	{
+		SafePoint safePoint = reachedSafePoint;
+		reachedSafePoint = null;
+		Checkpoint checkpoint = new Checkpoint(cmdString, inputVcfFile, safePoint.recordIndex, safePoint.inputOffset,
+				safePoint.chromosome, safePoint.position, outputOffset,
+				new ArrayList<>(finishedChromosomes.subList(0, safePoint.nrOfFinishedChromosomes)),
+				safePoint.nrOfGenesOutsideSpan);
+		checkpoint.write(checkpointFile);
+		lastCheckpointChromosome = safePoint.chromosome;
+		lastCheckpointMillis = System.currentTimeMillis();
+		LOG.info("[Checkpointer] Checkpoint at {}", checkpoint);
+	}
+
+	/**
+	 * Removes the checkpoint, called when the run completed.
+	 */
+	public void complete()
+	{
+		if (checkpointFile.exists() && !checkpointFile.delete())
+		{
+			LOG.warn("[Checkpointer] Could not delete checkpoint file {}", checkpointFile);
+		}
+	}
+
+	private void disable(String reason)
+	{
+		LOG.warn("[Checkpointer] No more checkpoints, {}", reason);
+		disabled = true;
+		confirmedSafePoints.clear();
+		reachedSafePoint = null;
+		complete();
+	}
+
+	/**
+	 * Input record before which a checkpoint can be written, with the state of the input at that record.
+	 */
+	public static class SafePoint
+	{
+		private final String chromosome;
+		private final int position;
+		private final long recordIndex;
+		private final long inputOffset;
+		private final int nrOfFinishedChromosomes;
+		private final int nrOfGenesOutsideSpan;
+
+		private SafePoint(String chromosome, int position, long recordIndex, long inputOffset,
+				int nrOfFinishedChromosomes, int nrOfGenesOutsideSpan)
+		{
+			this.chromosome = chromosome;
+			this.position = position;
+			this.recordIndex = recordIndex;
+			this.inputOffset = inputOffset;
+			this.nrOfFinishedChromosomes = nrOfFinishedChromosomes;
+			this.nrOfGenesOutsideSpan = nrOfGenesOutsideSpan;
+		}
+	}
+}
@@ -1,27 +1,73 @@
 package org.molgenis.data.annotation.makervcf.genestream.core;
 
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpointer;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.GeneIndex;
 import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.data.annotation.makervcf.structs.RelevanceUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
  * Created by joeri on 6/29/16.
  * <p>
  * We re-order the stream of variants so that genes are always grouped together
+ * <p>
+ * By default a gene ends when the next variant is no longer annotated with it. With a {@link GeneIndex} the gene
+ * windows are driven by coordinate instead: a gene ends as soon as the stream passes the end of the gene, or enters
+ * another chromosome, so variants without annotation or of overlapping genes do not split or prolong the window. Genes
+ * without coordinates still end when the next variant is no longer annotated with them.
+ * <p>
+ * The variants of a gene are kept in a {@link GeneWindowBuffer}, which spills to disk beyond the window memory budget.
+ * <p>
+ * With a {@link Checkpointer} the variants before which all buffered genes end are reported as safe points. A safe
+ * point is confirmed once the first variant after it is returned and shares no relevant gene with the variant returned
+ * before it, so the gene stream stages do not group variants from both sides of it either.
  */
 public class ConvertToGeneStream
 {
 	private static final Logger LOG = LoggerFactory.getLogger(ConvertToGeneStream.class);
 	private Iterator<GavinRecord> gavinRecordIterator;
 	private List<Integer> positionalOrder;
+	private GeneIndex geneIndex;
+	private long windowMemoryBudget;
+	private Checkpointer checkpointer;
 
 	public ConvertToGeneStream(Iterator<GavinRecord> gavinRecordIterator)
+	{
+		this(gavinRecordIterator, null);
+	}
+
+	/**
+	 * @param geneIndex gene spans to end the gene windows by coordinate, or null to end them by annotation
+	 */
+	public ConvertToGeneStream(Iterator<GavinRecord> gavinRecordIterator, @Nullable GeneIndex geneIndex)
+	{
+		this(gavinRecordIterator, geneIndex, GeneWindowBuffer.UNLIMITED);
+	}
+
+	/**
+	 * @param windowMemoryBudget estimated bytes per gene window above which variants are spilled to disk
+	 */
+	public ConvertToGeneStream(Iterator<GavinRecord> gavinRecordIterator, @Nullable GeneIndex geneIndex,
+			long windowMemoryBudget)
 	{
 		this.gavinRecordIterator = gavinRecordIterator;
 		this.positionalOrder = new ArrayList<>();
+		this.geneIndex = geneIndex;
+		this.windowMemoryBudget = windowMemoryBudget;
+	}
+
+	/**
+	 * @param checkpointer to report the safe points between gene windows to, or null
+	 */
+	public ConvertToGeneStream setCheckpointer(@Nullable Checkpointer checkpointer)
+	{
+		this.checkpointer = checkpointer;
+		return this;
 	}
 
 	public List<Integer> getPositionalOrder()
@@ -42,14 +88,27 @@ public class ConvertToGeneStream
 			LinkedHashMap<String, Iterator<GavinRecord>> resultBatches;
 
 			// variantBuffer with genes and variants that lags behind the input and gets turned into result batches
-			HashMap<String, List<GavinRecord>> variantBuffer = new HashMap<>();
+			HashMap<String, GeneWindowBuffer> variantBuffer = new HashMap<>();
 
 			// set of genes seen for variant in previous iteration
 			Set<String> underlyingGenesForPreviousVariant = new HashSet<>();
 
 			// within returning a batch, there may be duplicates (e.g. variants relevant for multiple genes)
 			// we keep track of the positions and make sure they are only outputted once
-			List<String> positionCheck = new ArrayList<>();
+			Set<String> positionCheck = new HashSet<>();
+
+			// when windowing by coordinate: end of the open genes and the genes ordered by end, genes without
+			// coordinates and the chromosome of the previous variant
+			Map<String, Long> openGeneEnds = new HashMap<>();
+			PriorityQueue<String> openGenesByEnd = new PriorityQueue<>(
+					Comparator.comparingLong((String gene) -> openGeneEnds.get(gene)).thenComparing(gene -> gene));
+			Set<String> openGenesWithoutEnd = new LinkedHashSet<>();
+			String previousChromosome;
+
+			// when checkpointing: safe points waiting for the first variant after them to be returned, and the
+			// relevant genes of the variant that was returned last
+			List<SafePointCandidate> safePointCandidates = new ArrayList<>();
+			Set<String> previousResultGenes = Collections.emptySet();
 
 			@Override
 			public boolean hasNext()
@@ -61,40 +120,14 @@ public class ConvertToGeneStream
 					LOG.debug("[ConvertToGeneStream] Flushing next variant: {}"
 								,nextFromResultBatches.toStringShort());
 					nextResult = nextFromResultBatches;
+					resolveSafePoints(nextResult);
 					return true;
 				}
 				else
 				{
 					while (gavinRecordIterator.hasNext())
 					{
-
-						if (resultBatches != null)
-						{
-							LOG.debug("[ConvertToGeneStream] Flush complete, cleanup of genes: {}",
-										resultBatches.keySet());
-
-							// we remove variants from the variantBuffer (by position) that were already written out for another gene before
-							// of course we also delete the variants for the genes that were written out
-							for (String gene : resultBatches.keySet())
-							{
-								ArrayList<String> removeVariantsByPosition = new ArrayList<>(
-										variantBuffer.get(gene).size());
-								for (GavinRecord rv : variantBuffer.get(gene))
-								{
-									removeVariantsByPosition.add(rv.getChrPosRefAlt());
-								}
-								for (Map.Entry<String, List<GavinRecord>> entry : variantBuffer.entrySet())
-								{
-
-									entry.getValue()
-										 .removeIf(rlvToCheck -> removeVariantsByPosition.contains(
-												 rlvToCheck.getChrPosRefAlt()));
-								}
-								variantBuffer.remove(gene);
-							}
-							positionCheck.clear();
-							resultBatches = null;
-						}
+						cleanupResultBatches();
 
 						// get variant, store position, and get underlying genes
 						GavinRecord gavinRecord = gavinRecordIterator.next();
@@ -102,6 +135,9 @@ public class ConvertToGeneStream
 						positionalOrder.add(pos);
 						Set<String> underlyingGenesForCurrentVariant = gavinRecord.getGenes();
 
+						// genes that still have variants buffered, the variant is a safe point if they all end here
+						Set<String> bufferedGenes = checkpointer != null ? getBufferedGenes() : null;
+
 						LOG.debug("[ConvertToGeneStream] Assessing next variant: " + gavinRecord.toStringShort());
 
 						// put genes and variants in a map, grouping all variants per gene
@@ -114,10 +150,10 @@ public class ConvertToGeneStream
 								{
 									if (rlv.getGene().equals(gene))
 									{
-										List<GavinRecord> variants = variantBuffer.get(gene);
+										GeneWindowBuffer variants = variantBuffer.get(gene);
 										if (variants == null)
 										{
-											variants = new ArrayList<>();
+											variants = new GeneWindowBuffer(windowMemoryBudget, true);
 										}
 										variantBuffer.put(gene, variants);
 										variants.add(gavinRecord);
@@ -128,10 +164,10 @@ public class ConvertToGeneStream
 							}
 							else
 							{
-								List<GavinRecord> variants = variantBuffer.get(gene);
+								GeneWindowBuffer variants = variantBuffer.get(gene);
 								if (variants == null)
 								{
-									variants = new ArrayList<>();
+									variants = new GeneWindowBuffer(windowMemoryBudget, true);
 								}
 								variants.add(gavinRecord);
 								variantBuffer.put(gene, variants);
@@ -139,24 +175,50 @@ public class ConvertToGeneStream
 
 						}
 
-						// when we stop seeing an underlying gene, we process all variants for that gene
+						// when we stop seeing an underlying gene, or pass its end, we process all variants for that gene
 						//when multiple genes end at once, we have to start multiple batches
 						resultBatches = new LinkedHashMap<>();
-						for (String gene : underlyingGenesForPreviousVariant)
+						Collection<String> endedGenes;
+						if (geneIndex != null)
+						{
+							endedGenes = endGenesByCoordinate(gavinRecord, underlyingGenesForCurrentVariant);
+						}
+						else
+						{
+							endedGenes = new ArrayList<>();
+							for (String gene : underlyingGenesForPreviousVariant)
+							{
+								if (!underlyingGenesForCurrentVariant.contains(gene))
+								{
+									endedGenes.add(gene);
+								}
+							}
+						}
+						for (String gene : endedGenes)
 						{
 							// include null check, for variants that are annotated to a gene but were not ever relevant for that gene
 							// added check: still variants left for this gene to be outputted
-							if (!underlyingGenesForCurrentVariant.contains(gene) && variantBuffer.get(gene) != null
-									&& !variantBuffer.get(gene).isEmpty())
+							if (variantBuffer.get(gene) != null && !variantBuffer.get(gene).isEmpty())
 							{
 								LOG.debug("[ConvertToGeneStream] Gene " + gene
 											+ " ended, creating result batch. Putting " + variantBuffer.get(gene).size()
 											+ " variants in output batch");
-								List<GavinRecord> variants = variantBuffer.get(gene);
+								GeneWindowBuffer variants = variantBuffer.get(gene);
 								resultBatches.put(gene, variants.iterator());
 							}
 						}
 
+						if (bufferedGenes != null && endedGenes.containsAll(bufferedGenes) && Collections.disjoint(
+								bufferedGenes, underlyingGenesForCurrentVariant))
+						{
+							Checkpointer.SafePoint safePoint = checkpointer.createSafePoint(gavinRecord);
+							if (safePoint != null)
+							{
+								safePointCandidates.add(new SafePointCandidate(safePoint,
+										resultBatches.isEmpty() ? null : resultBatches));
+							}
+						}
+
 						// cycle genes seen
 						underlyingGenesForPreviousVariant.clear();
 						underlyingGenesForPreviousVariant.addAll(underlyingGenesForCurrentVariant);
@@ -166,6 +228,7 @@ public class ConvertToGeneStream
 						{
 							nextResult = getNextFromResultBatches(resultBatches, positionCheck);
 							LOG.debug("[ConvertToGeneStream] Flushing first variant of result batch: {}",nextResult.toStringShort());
+							resolveSafePoints(nextResult);
 							return true;
 						}
 						else
@@ -176,10 +239,11 @@ public class ConvertToGeneStream
 					}
 
 					// remaining variants that are leftover, i.e. not terminated yet by a gene ending
+					cleanupResultBatches();
 					resultBatches = new LinkedHashMap<>();
-					for (Map.Entry<String, List<GavinRecord>> variantEntry: variantBuffer.entrySet())
+					for (Map.Entry<String, GeneWindowBuffer> variantEntry: variantBuffer.entrySet())
 					{
-						List<GavinRecord> gavinRecords = variantEntry.getValue();
+						GeneWindowBuffer gavinRecords = variantEntry.getValue();
 						if (!gavinRecords.isEmpty())
 						{
 							resultBatches.put(variantEntry.getKey(), gavinRecords.iterator());
@@ -192,6 +256,7 @@ public class ConvertToGeneStream
 						{
 							LOG.debug("[ConvertToGeneStream] Flushing first of remaining variants: "
 										+ nextResult.toStringShort());
+							resolveSafePoints(nextResult);
 							return true;
 						}
 					}
@@ -199,6 +264,147 @@ public class ConvertToGeneStream
 				return false;
 			}
 
+			/**
+			 * Cleanup after the result batches are written out: we remove variants from the variantBuffer (by position)
+			 * that were already written out for another gene before, and of course the variants for the genes that
+			 * were written out
+			 */
+			private void cleanupResultBatches()
+			{
+				if (resultBatches == null)
+				{
+					return;
+				}
+				LOG.debug("[ConvertToGeneStream] Flush complete, cleanup of genes: {}", resultBatches.keySet());
+
+				// all variants of the written out genes were returned once, so their positions are in the position check
+				for (String gene : resultBatches.keySet())
+				{
+					variantBuffer.remove(gene).close();
+				}
+				for (GeneWindowBuffer variants : variantBuffer.values())
+				{
+					variants.removeAll(positionCheck);
+				}
+				positionCheck.clear();
+				resultBatches = null;
+			}
+
+			private Set<String> getBufferedGenes()
+			{
+				Set<String> bufferedGenes = new HashSet<>();
+				for (Map.Entry<String, GeneWindowBuffer> variantEntry : variantBuffer.entrySet())
+				{
+					if (!variantEntry.getValue().isEmpty())
+					{
+						bufferedGenes.add(variantEntry.getKey());
+					}
+				}
+				return bufferedGenes;
+			}
+
+			/**
+			 * Resolves the safe points that the variant is returned after, i.e. the ones it was not buffered before.
+			 * A safe point is confirmed when the variant starts a new gene group, otherwise it is dropped.
+			 */
+			private void resolveSafePoints(GavinRecord gavinRecord)
+			{
+				if (checkpointer == null)
+				{
+					return;
+				}
+				Set<String> resultGenes = RelevanceUtils.getRelevantGenes(gavinRecord.getRelevance());
+				for (Iterator<SafePointCandidate> it = safePointCandidates.iterator(); it.hasNext(); )
+				{
+					SafePointCandidate candidate = it.next();
+					if (candidate.resultBatches == resultBatches)
+					{
+						// still returning the variants of the genes that ended at this safe point
+						break;
+					}
+					if (Collections.disjoint(previousResultGenes, resultGenes))
+					{
+						checkpointer.confirm(candidate.safePoint);
+					}
+					it.remove();
+				}
+				previousResultGenes = resultGenes;
+			}
+
+			/**
+			 * Closes the open genes that end before the position of the variant, or on another chromosome, and opens
+			 * the genes that the variant was buffered for. A gene of the variant is kept open, its end moves to the
+			 * variant when the variant lies beyond it.
+			 *
+			 * @return ended genes ordered by end
+			 */
+			private List<String> endGenesByCoordinate(GavinRecord gavinRecord, Set<String> underlyingGenesForCurrentVariant)
+			{
+				String chromosome = gavinRecord.getChromosome();
+				long pos = gavinRecord.getPosition();
+				boolean newChromosome = previousChromosome != null && !previousChromosome.equals(chromosome);
+				previousChromosome = chromosome;
+
+				List<String> endedGenes = new ArrayList<>();
+				List<String> extendedGenes = new ArrayList<>();
+				while (!openGenesByEnd.isEmpty() && (newChromosome || openGeneEnds.get(openGenesByEnd.peek()) < pos))
+				{
+					String gene = openGenesByEnd.poll();
+					if (underlyingGenesForCurrentVariant.contains(gene))
+					{
+						extendedGenes.add(gene);
+					}
+					else
+					{
+						openGeneEnds.remove(gene);
+						endedGenes.add(gene);
+					}
+				}
+				for (String gene : extendedGenes)
+				{
+					openGeneEnds.put(gene, pos);
+					openGenesByEnd.add(gene);
+				}
+				for (Iterator<String> it = openGenesWithoutEnd.iterator(); it.hasNext(); )
+				{
+					String gene = it.next();
+					if (!underlyingGenesForCurrentVariant.contains(gene))
+					{
+						it.remove();
+						endedGenes.add(gene);
+					}
+				}
+
+				for (String gene : underlyingGenesForCurrentVariant)
+				{
+					if (variantBuffer.containsKey(gene) && !openGeneEnds.containsKey(gene)
+							&& !openGenesWithoutEnd.contains(gene))
+					{
+						Long end = geneIndex.getEnd(gene, chromosome);
+						if (end != null)
+						{
+							openGeneEnds.put(gene, Math.max(end, pos));
+							openGenesByEnd.add(gene);
+						}
+						else
+						{
+							openGenesWithoutEnd.add(gene);
+						}
+					}
+				}
+
+				// genes that lost all of their variants to genes that ended before are not kept around
+				for (String gene : endedGenes)
+				{
+					GeneWindowBuffer variants = variantBuffer.get(gene);
+					if (variants != null && variants.isEmpty())
+					{
+						variantBuffer.remove(gene).close();
+					}
+				}
+				return endedGenes;
+			}
+
 			@Override
 			public GavinRecord next()
 			{
@@ -215,7 +421,7 @@ public class ConvertToGeneStream
 	 * @return
 	 */
 	private GavinRecord getNextFromResultBatches(LinkedHashMap<String, Iterator<GavinRecord>> resultBatches,
-			List<String> positionAltsAlreadyReturned)
+			Set<String> positionAltsAlreadyReturned)
 	{
 		if (resultBatches == null)
 		{
@@ -239,4 +445,18 @@ public class ConvertToGeneStream
 		return null;
 	}
 
+	/**
+	 * Safe point with the result batches of the genes that ended at it, which hold the variants before it.
+	 */
+	private static class SafePointCandidate
+	{
+		private final Checkpointer.SafePoint safePoint;
+		private final Map<String, Iterator<GavinRecord>> resultBatches;
+
+		SafePointCandidate(Checkpointer.SafePoint safePoint, @Nullable Map<String, Iterator<GavinRecord>> resultBatches)
+		{
+			this.safePoint = safePoint;
+			this.resultBatches = resultBatches;
+		}
+	}
 }
@@ -10,17 +10,30 @@ import java.util.*;
 
 /**
  * Created by joeri on 6/29/16.
+ * <p>
+ * The variants of the genes in a window are kept in a {@link GeneWindowBuffer}, variants without relevance are
+ * spilled to disk beyond the window memory budget.
  */
 public abstract class GeneStream
 {
 	private static final Logger LOG = LoggerFactory.getLogger(GeneStream.class);
 	private Iterator<GavinRecord> gavinRecordIterator;
+	private long windowMemoryBudget = GeneWindowBuffer.UNLIMITED;
 
 	public GeneStream(Iterator<GavinRecord> gavinRecordIterator)
 	{
 		this.gavinRecordIterator = gavinRecordIterator;
 	}
 
+	/**
+	 * @param windowMemoryBudget estimated bytes per gene window above which variants are spilled to disk
+	 */
+	public GeneStream setWindowMemoryBudget(long windowMemoryBudget)
+	{
+		this.windowMemoryBudget = windowMemoryBudget;
+		return this;
+	}
+
 	public Iterator<GavinRecord> go()
 	{
 		return new Iterator<GavinRecord>()
@@ -30,8 +43,9 @@ public abstract class GeneStream
 			Set<String> previousGenes;
 			Set<String> currentGenes;
 
-			HashMap<String, List<GavinRecord>> variantBufferPerGene = new HashMap<>();
-			List<GavinRecord> variantBuffer = new ArrayList<>();
+			// genes in order of their first variant, so perGene is called in a deterministic order
+			Map<String, List<GavinRecord>> variantBufferPerGene = new LinkedHashMap<>();
+			GeneWindowBuffer variantBuffer = new GeneWindowBuffer(windowMemoryBudget, false);
 			Iterator<GavinRecord> resultBatch;
 
 			@Override
@@ -79,12 +93,12 @@ public abstract class GeneStream
 										throw new RuntimeException(e);
 									}
 								}
-								// create shallow copy, so that we can add another variant to buffer after we instantiate the iterator
-								resultBatch = new ArrayList<>(variantBuffer).iterator();
+								// stream out the buffer, so that we can add another variant to a new buffer
+								resultBatch = variantBuffer.iterator();
 
 								//reset buffers
-								variantBuffer = new ArrayList<>();
-								variantBufferPerGene = new HashMap<>();
+								variantBuffer = new GeneWindowBuffer(windowMemoryBudget, false);
+								variantBufferPerGene = new LinkedHashMap<>();
 
 							}
 
@@ -137,9 +151,9 @@ public abstract class GeneStream
 							throw new RuntimeException(e);
 						}
 					}
-					resultBatch = new ArrayList<>(variantBuffer).iterator();
-					variantBuffer = new ArrayList<>();
-					variantBufferPerGene = new HashMap<>();
+					resultBatch = variantBuffer.iterator();
+					variantBuffer = new GeneWindowBuffer(windowMemoryBudget, false);
+					variantBufferPerGene = new LinkedHashMap<>();
 					if (resultBatch.hasNext())
 					{
 						LOG.debug("[GeneStream] Returning first of remaining variants");
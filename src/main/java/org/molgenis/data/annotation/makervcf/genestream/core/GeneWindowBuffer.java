@@ -0,0 +1,351 @@
+package org.molgenis.data.annotation.makervcf.genestream.core;
+
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.vcf.meta.VcfMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Records of a gene window in stream order, kept compact and spilled to a temporary file once their memory use exceeds
+ * a budget, so that very large windows (e.g. TTN with all variants kept) do not exhaust the heap.
+ *
+ * Without a budget records are kept live. With a budget they are encoded in the binary format of
+ * {@link GavinRecord#write} in an off-heap {@link RecordArena}, which takes several times less memory than the token
+ * strings of a live record, and are rebuilt when read back. Their relevance is not encoded but kept by reference, so it
+ * is the same instance after reading. Relevant records are only encoded when the buffer is created with
+ * compactRelevant, gene stream stages that update relevant records in place need to keep them live.
+ *
+ * Once the budget is exceeded, records without relevance are spilled to disk. Relevant records are few, so they stay
+ * in memory. The records are read back once, in order, after which the arena and spill file are released.
+ */
+public class GeneWindowBuffer implements Iterable<GavinRecord>, Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(GeneWindowBuffer.class);
+
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	private static final String SPILL_FILE_PREFIX = "gavin-window-";
+	private static final String SPILL_FILE_SUFFIX = ".bin";
+
+	// estimated heap use of a String, of the record objects around the tokens and of an encoded record reference
+	private static final int STRING_OVERHEAD = 56;
+	private static final int RECORD_OVERHEAD = 256;
+	private static final int ENCODED_RECORD_OVERHEAD = 96;
+
+	// entries are a live record, an encoded record, the chrom_pos_ref_alt key of a spilled record, or a removed marker
+	private static final Object REMOVED = new Object();
+	private static final Object REMOVED_SPILLED = new Object();
+
+	private final long memoryBudget;
+	private final boolean compactRelevant;
+	private final List<Object> entries = new ArrayList<>();
+	private int size;
+	private long memoryUse;
+
+	private final RecordArena arena = new RecordArena();
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private VcfMeta vcfMeta;
+
+	private File spillFile;
+	private DataOutputStream spillOutputStream;
+	private boolean read;
+
+	/**
+	 * @param memoryBudget    bytes above which records without relevance are spilled to disk, or {@link #UNLIMITED} to
+	 *                        keep all records live
+	 * @param compactRelevant whether relevant records are encoded too, instead of kept live
+	 */
+	public GeneWindowBuffer(long memoryBudget, boolean compactRelevant)
+	{
+		this.memoryBudget = memoryBudget;
+		this.compactRelevant = compactRelevant;
+	}
+
+	public void add(GavinRecord gavinRecord)
+	{
+		if (read)
+		{
+			throw new IllegalStateException("Gene window buffer was already read");
+		}
+		if (memoryBudget == UNLIMITED || (gavinRecord.isRelevant() && !compactRelevant))
+		{
+			memoryUse += estimateSize(gavinRecord);
+			entries.add(gavinRecord);
+		}
+		else
+		{
+			encode(gavinRecord);
+			if (memoryUse + recordBytes.size() > memoryBudget && !gavinRecord.isRelevant())
+			{
+				spill(gavinRecord);
+				entries.add(gavinRecord.getChrPosRefAlt());
+			}
+			else
+			{
+				long reference = arena.append(recordBytes.toByteArray(), recordBytes.size());
+				memoryUse += ENCODED_RECORD_OVERHEAD + recordBytes.size();
+				entries.add(new EncodedRecord(reference, recordBytes.size(), gavinRecord.getRelevance(),
+						gavinRecord.getChrPosRefAlt()));
+			}
+		}
+		size++;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Removes the records with these chrom_pos_ref_alt keys, e.g. because they were already written out for another
+	 * gene.
+	 */
+	public void removeAll(Set<String> chrPosRefAlts)
+	{
+		for (int i = 0; i < entries.size(); i++)
+		{
+			Object entry = entries.get(i);
+			if (entry instanceof GavinRecord && chrPosRefAlts.contains(((GavinRecord) entry).getChrPosRefAlt()))
+			{
+				memoryUse -= estimateSize((GavinRecord) entry);
+				entries.set(i, REMOVED);
+				size--;
+			}
+			else if (entry instanceof EncodedRecord && chrPosRefAlts.contains(((EncodedRecord) entry).chrPosRefAlt))
+			{
+				// the arena is append-only, its bytes are released with the buffer
+				entries.set(i, REMOVED);
+				size--;
+			}
+			else if (entry instanceof String && chrPosRefAlts.contains(entry))
+			{
+				entries.set(i, REMOVED_SPILLED);
+				size--;
+			}
+		}
+	}
+
+	/**
+	 * @return records in the order they were added, can be called once
+	 */
+	@Override
+	public Iterator<GavinRecord> iterator()
+	{
+		if (read)
+		{
+			throw new IllegalStateException("Gene window buffer was already read");
+		}
+		read = true;
+		DataInputStream spillInputStream = openSpillFile();
+		return new Iterator<GavinRecord>()
+		{
+			int index = 0;
+			GavinRecord next = advance();
+
+			private GavinRecord advance()
+			{
+				try
+				{
+					while (index < entries.size())
+					{
+						Object entry = entries.get(index++);
+						if (entry instanceof GavinRecord)
+						{
+							return (GavinRecord) entry;
+						}
+						else if (entry instanceof EncodedRecord)
+						{
+							return decode((EncodedRecord) entry);
+						}
+						else if (entry instanceof String)
+						{
+							spillInputStream.readInt();
+							return GavinRecord.read(spillInputStream, vcfMeta);
+						}
+						else if (entry == REMOVED_SPILLED)
+						{
+							spillInputStream.skipBytes(spillInputStream.readInt());
+						}
+					}
+					if (spillInputStream != null)
+					{
+						spillInputStream.close();
+					}
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+				close();
+				return null;
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return next != null;
+			}
+
+			@Override
+			public GavinRecord next()
+			{
+				if (next == null)
+				{
+					throw new NoSuchElementException();
+				}
+				GavinRecord result = next;
+				next = advance();
+				return result;
+			}
+		};
+	}
+
+	private void encode(GavinRecord gavinRecord)
+	{
+		if (vcfMeta == null)
+		{
+			vcfMeta = gavinRecord.getAnnotatedVcfRecord().getVcfMeta();
+		}
+		recordBytes.reset();
+		try
+		{
+			gavinRecord.write(new DataOutputStream(recordBytes));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private GavinRecord decode(EncodedRecord encodedRecord) throws IOException
+	{
+		GavinRecord gavinRecord = GavinRecord.read(arena.read(encodedRecord.reference, encodedRecord.length),
+				vcfMeta);
+		if (!encodedRecord.relevances.isEmpty())
+		{
+			gavinRecord.setRelevances(encodedRecord.relevances);
+		}
+		return gavinRecord;
+	}
+
+	private void spill(GavinRecord gavinRecord)
+	{
+		try
+		{
+			if (spillOutputStream == null)
+			{
+				spillFile = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX);
+				spillOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+				LOG.debug("[GeneWindowBuffer] Memory budget of {} bytes exceeded at {}, spilling records to {}",
+						memoryBudget, gavinRecord.toStringShort(), spillFile);
+			}
+			// records are length prefixed, so removed records can be skipped when reading
+			spillOutputStream.writeInt(recordBytes.size());
+			recordBytes.writeTo(spillOutputStream);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private DataInputStream openSpillFile()
+	{
+		if (spillOutputStream == null)
+		{
+			return null;
+		}
+		try
+		{
+			spillOutputStream.close();
+			spillOutputStream = null;
+			return new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static long estimateSize(GavinRecord gavinRecord)
+	{
+		long size = RECORD_OVERHEAD;
+		for (String token : gavinRecord.getAnnotatedVcfRecord().getTokens())
+		{
+			size += STRING_OVERHEAD + 2L * token.length();
+		}
+		return size;
+	}
+
+	/**
+	 * Releases the arena and removes the spill file, if any. Called when the records are read back, a buffer that is
+	 * not read should be closed.
+	 */
+	@Override
+	public void close()
+	{
+		entries.clear();
+		arena.release();
+		if (spillFile != null)
+		{
+			try
+			{
+				if (spillOutputStream != null)
+				{
+					spillOutputStream.close();
+					spillOutputStream = null;
+				}
+			}
+			catch (IOException e)
+			{
+				LOG.warn("[GeneWindowBuffer] Could not close spill file {}", spillFile, e);
+			}
+			if (!spillFile.delete())
+			{
+				LOG.warn("[GeneWindowBuffer] Could not delete spill file {}", spillFile);
+			}
+			spillFile = null;
+		}
+	}
+
+	/**
+	 * Reference to a record in the arena, with the relevance and key that are needed without decoding it.
+	 */
+	private static class EncodedRecord
+	{
+		private final long reference;
+		private final int length;
+		private final List<Relevance> relevances;
+		private final String chrPosRefAlt;
+
+		EncodedRecord(long reference, int length, List<Relevance> relevances, String chrPosRefAlt)
+		{
+			this.reference = reference;
+			this.length = length;
+			this.relevances = relevances;
+			this.chrPosRefAlt = chrPosRefAlt;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package org.molgenis.data.annotation.makervcf.genestream.core;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only off-heap storage for encoded records of one gene window.
+ *
+ * Bytes are stored in direct chunks that are taken from a pool shared by all arenas and returned to it when the arena
+ * is released, so gene windows that open and close all the time do not allocate direct memory over and over. Records
+ * larger than a chunk get a chunk of their own that is not pooled.
+ */
+class RecordArena
+{
+	static final int CHUNK_SIZE = 1 << 16;
+	private static final int MAX_POOLED_CHUNKS = 1024;
+
+	private static final Deque<ByteBuffer> POOL = new ConcurrentLinkedDeque<>();
+	private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private ByteBuffer currentChunk;
+	private long size;
+
+	/**
+	 * @return reference to the stored bytes, to be read with {@link #read(long, int)}
+	 */
+	long append(byte[] bytes, int length)
+	{
+		if (currentChunk == null || currentChunk.remaining() < length)
+		{
+			currentChunk = length <= CHUNK_SIZE ? acquire() : ByteBuffer.allocateDirect(length);
+			chunks.add(currentChunk);
+		}
+		long reference = (long) (chunks.size() - 1) << 32 | currentChunk.position();
+		currentChunk.put(bytes, 0, length);
+		size += length;
+		return reference;
+	}
+
+	DataInputStream read(long reference, int length)
+	{
+		ByteBuffer bytes = chunks.get((int) (reference >>> 32)).duplicate();
+		bytes.limit((int) reference + length);
+		bytes.position((int) reference);
+		return new DataInputStream(new ByteBufferInputStream(bytes));
+	}
+
+	/**
+	 * @return number of stored bytes
+	 */
+	long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the chunks to the pool, the arena can not be read afterwards.
+	 */
+	void release()
+	{
+		for (ByteBuffer chunk : chunks)
+		{
+			// concurrent releases may overshoot the maximum a bit, which is harmless
+			if (chunk.capacity() == CHUNK_SIZE && POOL_SIZE.get() < MAX_POOLED_CHUNKS)
+			{
+				chunk.clear();
+				POOL.push(chunk);
+				POOL_SIZE.incrementAndGet();
+			}
+		}
+		chunks.clear();
+		currentChunk = null;
+		size = 0;
+	}
+
+	private static ByteBuffer acquire()
+	{
+		ByteBuffer chunk = POOL.poll();
+		if (chunk != null)
+		{
+			POOL_SIZE.decrementAndGet();
+			return chunk;
+		}
+		return ByteBuffer.allocateDirect(CHUNK_SIZE);
+	}
+
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer bytes;
+
+		ByteBufferInputStream(ByteBuffer bytes)
+		{
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read()
+		{
+			return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (!bytes.hasRemaining())
+			{
+				return -1;
+			}
+			int nrOfBytes = Math.min(len, bytes.remaining());
+			bytes.get(b, off, nrOfBytes);
+			return nrOfBytes;
+		}
+
+		@Override
+		public long skip(long n)
+		{
+			int nrOfBytes = (int) Math.min(n, bytes.remaining());
+			bytes.position(bytes.position() + nrOfBytes);
+			return nrOfBytes;
+		}
+	}
+}
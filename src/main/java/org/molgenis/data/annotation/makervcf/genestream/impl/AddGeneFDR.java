@@ -18,35 +18,25 @@ import java.util.*;
 public class AddGeneFDR extends GeneStream
 {
 	private static final Logger LOG = LoggerFactory.getLogger(AddGeneFDR.class);
-	private Map<String, Double> affectedFrac;
-	private Map<String, Double> carrierFrac;
+	private final FdrTable fdrTable;
 
 	public AddGeneFDR(Iterator<GavinRecord> relevantVariants, File fdrFile) throws FileNotFoundException
 	{
-		super(relevantVariants);
-
-		this.affectedFrac = new HashMap<>();
-		this.carrierFrac = new HashMap<>();
+		this(relevantVariants, FdrTable.load(fdrFile));
+	}
 
-		try (Scanner s = new Scanner(fdrFile))
-		{
-			s.nextLine(); //skip header
-			while (s.hasNextLine())
-			{
-				//"Gene    AffectedAbs     CarrierAbs      AffectedFrac    CarrierFrac"
-				String[] split = s.nextLine().split("\t", -1);
-				affectedFrac.put(split[0], Double.parseDouble(split[3]));
-				carrierFrac.put(split[0], Double.parseDouble(split[4]));
-			}
-		}
+	public AddGeneFDR(Iterator<GavinRecord> relevantVariants, FdrTable fdrTable)
+	{
+		super(relevantVariants);
+		this.fdrTable = fdrTable;
 	}
 
 	@Override
 	public void perGene(String gene, List<GavinRecord> gavinRecords)
 	{
 
-		Double affectedFracForGene = this.affectedFrac.get(gene);
-		Double carrierFracForGene = this.carrierFrac.get(gene);
+		Double affectedFracForGene = fdrTable.getAffectedFrac(gene);
+		Double carrierFracForGene = fdrTable.getCarrierFrac(gene);
 
 		for (GavinRecord gavinRecord : gavinRecords)
 		{
@@ -65,4 +55,53 @@ public class AddGeneFDR extends GeneStream
 			}
 		}
 	}
+
+	/**
+	 * Affected and carrier fractions per gene, read only after loading.
+	 */
+	public static class FdrTable
+	{
+		private final Map<String, Double> affectedFrac;
+		private final Map<String, Double> carrierFrac;
+
+		public FdrTable(Map<String, Double> affectedFrac, Map<String, Double> carrierFrac)
+		{
+			this.affectedFrac = affectedFrac;
+			this.carrierFrac = carrierFrac;
+		}
+
+		public static FdrTable load(File fdrFile) throws FileNotFoundException
+		{
+			Map<String, Double> affectedFrac = new HashMap<>();
+			Map<String, Double> carrierFrac = new HashMap<>();
+
+			try (Scanner s = new Scanner(fdrFile))
+			{
+				s.nextLine(); //skip header
+				while (s.hasNextLine())
+				{
+					//"Gene    AffectedAbs     CarrierAbs      AffectedFrac    CarrierFrac"
+					String[] split = s.nextLine().split("\t", -1);
+					affectedFrac.put(split[0], Double.parseDouble(split[3]));
+					carrierFrac.put(split[0], Double.parseDouble(split[4]));
+				}
+			}
+			return new FdrTable(affectedFrac, carrierFrac);
+		}
+
+		public Set<String> getGenes()
+		{
+			return Collections.unmodifiableSet(affectedFrac.keySet());
+		}
+
+		public Double getAffectedFrac(String gene)
+		{
+			return affectedFrac.get(gene);
+		}
+
+		public Double getCarrierFrac(String gene)
+		{
+			return carrierFrac.get(gene);
+		}
+	}
 }
@@ -0,0 +1,122 @@
+package org.molgenis.data.annotation.makervcf.genestream.impl;
+
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneStream;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.GeneIndex;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.data.annotation.makervcf.structs.StructuralVariant;
+import org.molgenis.data.annotation.makervcf.util.StructuralVariantReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives weight to heterozygous and carrier variants that are complemented by a deletion or duplication of the same
+ * gene on the other allele, in the same way as {@link AssignCompoundHet} does for two small variants.
+ *
+ * The gene spans from the GAVIN calibrations are used to find the overlapping structural variants, for a gene without
+ * calibration the span of its variants is used. A structural variant is on the other allele unless both genotypes are
+ * phased and have the alternative allele on the same haplotype, e.g. 1|0 and 1|0.
+ */
+public class StructuralVariantComplement extends GeneStream
+{
+	private static final Logger LOG = LoggerFactory.getLogger(StructuralVariantComplement.class);
+
+	private final StructuralVariantReader structuralVariantReader;
+	private final GeneIndex geneIndex;
+
+	public StructuralVariantComplement(Iterator<GavinRecord> relevantVariants,
+			StructuralVariantReader structuralVariantReader, GeneIndex geneIndex)
+	{
+		super(relevantVariants);
+		this.structuralVariantReader = structuralVariantReader;
+		this.geneIndex = geneIndex;
+	}
+
+	@Override
+	public void perGene(String gene, List<GavinRecord> variantsPerGene) throws Exception
+	{
+		String chromosome = variantsPerGene.get(0).getChromosome();
+		long start;
+		long end;
+		GeneIndex.Region region = geneIndex.getRegion(gene);
+		if (region != null && GeneIndex.isSameChromosome(region.getChromosome(), chromosome))
+		{
+			start = region.getStart();
+			end = region.getEnd();
+		}
+		else
+		{
+			start = Long.MAX_VALUE;
+			end = Long.MIN_VALUE;
+			for (GavinRecord gavinRecord : variantsPerGene)
+			{
+				start = Math.min(start, gavinRecord.getPosition());
+				end = Math.max(end, gavinRecord.getPosition() + gavinRecord.getRef().length() - 1L);
+			}
+		}
+
+		List<StructuralVariant> structuralVariants = structuralVariantReader.getOverlapping(chromosome, start, end);
+		if (structuralVariants.isEmpty())
+		{
+			return;
+		}
+		LOG.debug("[StructuralVariantComplement] Gene {} overlaps {}", gene, structuralVariants);
+
+		for (GavinRecord gavinRecord : variantsPerGene)
+		{
+			for (Relevance rlv : gavinRecord.getRelevance())
+			{
+				if (!rlv.getGene().equals(gene))
+				{
+					continue;
+				}
+				char affectedIndex = Character.forDigit(gavinRecord.getAltIndex(rlv.getAllele()), 10);
+				for (Map.Entry<String, Status> sampleStatus : rlv.getSampleStatus().entrySet())
+				{
+					Status status = sampleStatus.getValue();
+					if (status != Status.HETEROZYGOUS && status != Status.CARRIER)
+					{
+						continue;
+					}
+					String sample = sampleStatus.getKey();
+					String genotype = rlv.getSampleGenotypes().get(sample);
+					for (StructuralVariant structuralVariant : structuralVariants)
+					{
+						String svGenotype = structuralVariant.getSampleGenotypes().get(sample);
+						if (svGenotype != null && isOnOtherAllele(genotype, affectedIndex, svGenotype))
+						{
+							Status compoundStatus =
+									status == Status.HETEROZYGOUS ? Status.HOMOZYGOUS_COMPOUNDHET : Status.AFFECTED_COMPOUNDHET;
+							LOG.debug("[StructuralVariantComplement] Reassigning {} from {} to {} because of {}", sample,
+									status, compoundStatus, structuralVariant);
+							sampleStatus.setValue(compoundStatus);
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return false if both genotypes are phased with the alternative alleles on the same haplotype
+	 */
+	static boolean isOnOtherAllele(String genotype, char affectedIndex, String svGenotype)
+	{
+		if (genotype == null || genotype.length() != 3 || svGenotype.length() != 3 || genotype.charAt(1) != '|'
+				|| svGenotype.charAt(1) != '|')
+		{
+			return true;
+		}
+		boolean svLeft = svGenotype.charAt(0) != '0' && svGenotype.charAt(0) != '.';
+		boolean svRight = svGenotype.charAt(2) != '0' && svGenotype.charAt(2) != '.';
+		boolean variantLeft = genotype.charAt(0) == affectedIndex;
+		boolean variantRight = genotype.charAt(2) == affectedIndex;
+		return (variantLeft && svRight) || (variantRight && svLeft);
+	}
+}
@@ -4,6 +4,8 @@ import org.molgenis.calibratecadd.support.GavinUtils;
 import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
 import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
 import org.molgenis.data.annotation.entity.impl.gavin.GavinAlgorithm;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpoint;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpointer;
 import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
 import org.molgenis.data.annotation.makervcf.structs.Relevance;
@@ -11,12 +13,18 @@ import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
 import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores.Mode;
 import org.molgenis.data.annotation.makervcf.util.LabVariants;
 import org.molgenis.data.annotation.makervcf.util.ReportedPathogenic;
+import net.sf.samtools.util.BlockCompressedInputStream;
 import org.molgenis.vcf.VcfReader;
 import org.molgenis.vcf.VcfRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -29,6 +37,8 @@ import java.util.*;
 public class DiscoverRelevantVariants
 {
 	private static final Logger LOG = LoggerFactory.getLogger(DiscoverRelevantVariants.class);
+	// default up- and downstream distance of SnpEff, variants this close to a gene may be annotated with it
+	private static final long ANN_GENE_MARGIN = 5000;
 	private VcfReader vcf;
 	private LabVariants lab;
 	private GavinCalibrations gavinCalibrations;
@@ -36,20 +46,58 @@ public class DiscoverRelevantVariants
 	private HandleMissingCaddScores hmcs;
 	private ReportedPathogenic repPatho;
 	private boolean keepAllVariants;
+	private Checkpointer checkpointer;
+	private BlockCompressedInputStream bgzipInput;
 
 	public DiscoverRelevantVariants(File vcfFile, File gavinFile, File repPathoFile, File caddFile, File labVariants,
 			Mode mode, boolean keepAllVariants) throws Exception
 	{
-		this.vcf = GavinUtils.getVcfReader(vcfFile);
-		this.repPatho = new ReportedPathogenic(repPathoFile);
-		this.keepAllVariants = keepAllVariants;
-		if (labVariants != null)
+		this(vcfFile, GavinUtils.getGeneToEntry(gavinFile), new ReportedPathogenic(repPathoFile),
+				labVariants != null ? new LabVariants(labVariants) : null, new HandleMissingCaddScores(mode, caddFile),
+				keepAllVariants);
+	}
+
+	/**
+	 * Discovers the relevant variants with reference data that is already loaded, the calibrations, reported
+	 * pathogenic and lab variants are only read and can be shared with other instances.
+	 */
+	public DiscoverRelevantVariants(File vcfFile, GavinCalibrations gavinCalibrations, ReportedPathogenic repPatho,
+			@Nullable LabVariants lab, HandleMissingCaddScores hmcs, boolean keepAllVariants) throws Exception
+	{
+		this(vcfFile, gavinCalibrations, repPatho, lab, hmcs, keepAllVariants, null);
+	}
+
+	/**
+	 * Discovers the relevant variants and reports the records that are read to the checkpointer, starting at its
+	 * checkpoint if it has one. A bgzip compressed input is read by BGZF block, so the input can be resumed by seeking
+	 * to the virtual file offset of the checkpoint, other input is resumed by skipping the records before it.
+	 */
+	public DiscoverRelevantVariants(File vcfFile, GavinCalibrations gavinCalibrations, ReportedPathogenic repPatho,
+			@Nullable LabVariants lab, HandleMissingCaddScores hmcs, boolean keepAllVariants,
+			@Nullable Checkpointer checkpointer) throws Exception
+	{
+		if (checkpointer != null && isBgzipCompressed(vcfFile))
+		{
+			this.bgzipInput = new BlockCompressedInputStream(vcfFile);
+			this.vcf = new VcfReader(bgzipInput);
+		}
+		else
 		{
-			this.lab = new LabVariants(labVariants);
+			this.vcf = GavinUtils.getVcfReader(vcfFile);
 		}
+		Checkpoint checkpoint = checkpointer != null ? checkpointer.getResumeCheckpoint() : null;
+		if (checkpoint != null && bgzipInput != null && checkpoint.getInputOffset() >= 0)
+		{
+			vcf.getVcfMeta();
+			bgzipInput.seek(checkpoint.getInputOffset());
+		}
+		this.checkpointer = checkpointer;
+		this.repPatho = repPatho;
+		this.keepAllVariants = keepAllVariants;
+		this.lab = lab;
 		this.gavin = new GavinAlgorithm();
-		this.gavinCalibrations = GavinUtils.getGeneToEntry(gavinFile);
-		this.hmcs = new HandleMissingCaddScores(mode, caddFile);
+		this.gavinCalibrations = gavinCalibrations;
+		this.hmcs = hmcs;
 	}
 
 	public Iterator<GavinRecord> findRelevantVariants()
@@ -57,11 +105,25 @@ public class DiscoverRelevantVariants
 
 		Iterator<VcfRecord> vcfIterator = vcf.iterator();
 
+		// when resuming input that can not be seeked, skip the records before the checkpoint
+		Checkpoint checkpoint = checkpointer != null ? checkpointer.getResumeCheckpoint() : null;
+		if (checkpoint != null && (bgzipInput == null || checkpoint.getInputOffset() < 0))
+		{
+			for (long i = 0; i < checkpoint.getRecordIndex() && vcfIterator.hasNext(); i++)
+			{
+				vcfIterator.next();
+			}
+		}
+
 		return new Iterator<GavinRecord>()
 		{
 
 			GavinRecord nextResult;
 
+			// index and virtual file offset of the next input record, to resume from
+			long recordIndex = checkpoint != null ? checkpoint.getRecordIndex() : 0;
+			long nextInputOffset = bgzipInput != null ? bgzipInput.getFilePointer() : -1;
+
 			int pos = -1;
 			int previousPos = -1;
 
@@ -71,7 +133,10 @@ public class DiscoverRelevantVariants
 			String chrPosRefAlt;
 			String previouschrPosRefAlt = null;
 
-			Set<String> chromosomesSeenBefore = new HashSet<>();
+			Set<String> chromosomesSeenBefore = checkpoint != null ? new HashSet<>(
+					checkpoint.getFinishedChromosomes()) : new HashSet<>();
+
+			int nrOfGenesOutsideSpan = checkpoint != null ? checkpoint.getNrOfGenesOutsideSpan() : 0;
 
 			@Override
 			public boolean hasNext()
@@ -84,6 +149,22 @@ public class DiscoverRelevantVariants
 						chrom = gavinRecord.getChromosome();
 						chrPosRefAlt = gavinRecord.getChrPosRefAlt();
 
+						if (checkpointer != null)
+						{
+							// check: a resumed input continues at the record of the checkpoint
+							if (checkpoint != null && recordIndex == checkpoint.getRecordIndex() && (
+									!chrom.equals(checkpoint.getChromosome()) || pos != checkpoint.getPosition()))
+							{
+								throw new RuntimeException(
+										"Input record " + chrom + ":" + pos + " does not match checkpoint at "
+												+ checkpoint.getChromosome() + ":" + checkpoint.getPosition()
+												+ ". Please remove the checkpoint file to start over.");
+							}
+							long inputOffset = nextInputOffset;
+							nextInputOffset = bgzipInput != null ? bgzipInput.getFilePointer() : -1;
+							checkpointer.readRecord(gavinRecord, recordIndex++, inputOffset, nrOfGenesOutsideSpan);
+						}
+
 						// check: no 'before' positions on the same chromosome allowed
 						if (previousPos != -1 && previousChrom != null && pos < previousPos && previousChrom.equals(
 								chrom))
@@ -120,6 +201,21 @@ public class DiscoverRelevantVariants
 
 						List<Relevance> relevance = new ArrayList<>();
 
+						// resolve genes to calibration ids once for all alternatives
+						int[] geneIds = gavinCalibrations.getCalibrationTable().getGeneIds(gavinRecord.getGenes());
+
+						// validate the ANN gene assignments against the calibrated gene spans
+						for (String gene : gavinRecord.getGenes())
+						{
+							if (!gavinCalibrations.getGeneIndex().isWithinGene(gene, chrom, pos, ANN_GENE_MARGIN))
+							{
+								nrOfGenesOutsideSpan++;
+								LOG.debug("[DiscoverRelevantVariants] Gene {} of variant {} is outside its calibrated span {}",
+										gene, gavinRecord.toStringShort(),
+										gavinCalibrations.getGeneIndex().getRegion(gene));
+							}
+						}
+
 						/*
 						  Iterate over alternatives, if applicable multi allelic example: 1:1148100-1148100
 						 */
@@ -190,8 +286,10 @@ public class DiscoverRelevantVariants
 									LOG.debug("[DiscoverRelevantVariants] WARNING: no genes for variant {}",
 											gavinRecord.toStringShort());
 								}
+								int geneIndex = 0;
 								for (String gene : gavinRecord.getGenes())
 								{
+									int geneId = geneIds[geneIndex++];
 									Optional<Impact> impact = gavinRecord.getImpact(i, gene);
 									Optional<String> transcript = gavinRecord.getTranscript(i, gene);
 
@@ -218,7 +316,7 @@ public class DiscoverRelevantVariants
 									}
 
 									Judgment gavinJudgment = gavin.classifyVariant(impact.orElse(null), cadd,
-											gavinRecord.getExAcAlleleFrequencies(i), gene, gavinCalibrations);
+											gavinRecord.getExAcAlleleFrequencies(i), gene, geneId, gavinCalibrations);
 
 									if (labJudgment != null
 											&& labJudgment.getClassification() == Judgment.Classification.Pathogenic)
@@ -261,6 +359,23 @@ public class DiscoverRelevantVariants
 							return true;
 						}
 				}
+
+				if (nrOfGenesOutsideSpan > 0)
+				{
+					LOG.info("[DiscoverRelevantVariants] {} ANN gene assignments are outside the calibrated gene span",
+							nrOfGenesOutsideSpan);
+					nrOfGenesOutsideSpan = 0;
+				}
+
+				// all variants are read, so the file with missing CADD scores is complete
+				try
+				{
+					hmcs.close();
+				}
+				catch (Exception e)
+				{
+					throw new RuntimeException(e);
+				}
 				return false;
 			}
 
@@ -271,4 +386,16 @@ public class DiscoverRelevantVariants
 			}
 		};
 	}
+
+	private static boolean isBgzipCompressed(File vcfFile) throws IOException
+	{
+		if (!vcfFile.getName().endsWith(".gz"))
+		{
+			return false;
+		}
+		try (InputStream inputStream = new BufferedInputStream(new FileInputStream(vcfFile)))
+		{
+			return BlockCompressedInputStream.isValidFile(inputStream);
+		}
+	}
 }
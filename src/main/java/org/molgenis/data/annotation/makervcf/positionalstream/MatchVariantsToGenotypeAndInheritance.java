@@ -76,9 +76,15 @@ public class MatchVariantsToGenotypeAndInheritance
 
 	public MatchVariantsToGenotypeAndInheritance(Iterator<GavinRecord> gavinRecords, File cgdFile, Set<String> parents)
 			throws IOException
+	{
+		this(gavinRecords, LoadCGD.loadCGD(cgdFile), parents);
+	}
+
+	public MatchVariantsToGenotypeAndInheritance(Iterator<GavinRecord> gavinRecords, Map<String, CGDEntry> cgd,
+			Set<String> parents)
 	{
 		this.gavinRecords = gavinRecords;
-		this.cgd = LoadCGD.loadCGD(cgdFile);
+		this.cgd = cgd;
 		this.minDepth = 1;
 		this.parents = parents;
 	}
@@ -0,0 +1,114 @@
+package org.molgenis.data.annotation.makervcf.sidecar;
+
+import java.nio.ByteBuffer;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
+
+/**
+ * One block of relevance entries read from a sidecar file. Column values are ids into the dictionaries of the
+ * {@link RlvSidecarReader}, the statuses and genotypes of entry i are found between offset(i) and offset(i + 1).
+ */
+public class RlvSidecarBlock
+{
+	private static final Status[] STATUSES = Status.values();
+
+	private final int size;
+	private final int[] chromosomes;
+	private final int[] positions;
+	private final int[] genes;
+	private final int[] sources;
+	private final int[] statusOffsets;
+	private final int[] statusSamples;
+	private final byte[] statuses;
+	private final int[] genotypeOffsets;
+	private final int[] genotypeSamples;
+	private final int[] genotypes;
+
+	RlvSidecarBlock(ByteBuffer byteBuffer)
+	{
+		size = byteBuffer.getInt();
+		chromosomes = getInts(byteBuffer, size);
+		positions = getInts(byteBuffer, size);
+		genes = getInts(byteBuffer, size);
+		sources = getInts(byteBuffer, size);
+		statusOffsets = getInts(byteBuffer, size + 1);
+		statusSamples = getInts(byteBuffer, statusOffsets[size]);
+		statuses = new byte[statusOffsets[size]];
+		byteBuffer.get(statuses);
+		genotypeOffsets = getInts(byteBuffer, size + 1);
+		genotypeSamples = getInts(byteBuffer, genotypeOffsets[size]);
+		genotypes = getInts(byteBuffer, genotypeOffsets[size]);
+	}
+
+	private static int[] getInts(ByteBuffer byteBuffer, int length)
+	{
+		int[] values = new int[length];
+		byteBuffer.asIntBuffer().get(values);
+		byteBuffer.position(byteBuffer.position() + length * Integer.BYTES);
+		return values;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getChromosome(int entry)
+	{
+		return chromosomes[entry];
+	}
+
+	public int getPosition(int entry)
+	{
+		return positions[entry];
+	}
+
+	public int getGene(int entry)
+	{
+		return genes[entry];
+	}
+
+	public int getSource(int entry)
+	{
+		return sources[entry];
+	}
+
+	public int getStatusStart(int entry)
+	{
+		return statusOffsets[entry];
+	}
+
+	public int getStatusEnd(int entry)
+	{
+		return statusOffsets[entry + 1];
+	}
+
+	public int getStatusSample(int index)
+	{
+		return statusSamples[index];
+	}
+
+	public Status getStatus(int index)
+	{
+		return STATUSES[statuses[index]];
+	}
+
+	public int getGenotypeStart(int entry)
+	{
+		return genotypeOffsets[entry];
+	}
+
+	public int getGenotypeEnd(int entry)
+	{
+		return genotypeOffsets[entry + 1];
+	}
+
+	public int getGenotypeSample(int index)
+	{
+		return genotypeSamples[index];
+	}
+
+	public int getGenotype(int index)
+	{
+		return genotypes[index];
+	}
+}
@@ -0,0 +1,109 @@
+package org.molgenis.data.annotation.makervcf.sidecar;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a sidecar file written by {@link RlvSidecarWriter} block by block.
+ */
+public class RlvSidecarReader implements Closeable
+{
+	private final RandomAccessFile file;
+	private final List<String> chromosomes;
+	private final List<String> genes;
+	private final List<String> sources;
+	private final List<String> samples;
+	private final List<String> genotypes;
+	private final long[] blockOffsets;
+
+	public RlvSidecarReader(File sidecarFile) throws IOException
+	{
+		file = new RandomAccessFile(sidecarFile, "r");
+		byte[] magic = new byte[RlvSidecarWriter.MAGIC.length];
+		file.readFully(magic);
+		if (!Arrays.equals(magic, RlvSidecarWriter.MAGIC) || file.readInt() != RlvSidecarWriter.VERSION)
+		{
+			file.close();
+			throw new IOException("Not a supported RLV sidecar file: " + sidecarFile);
+		}
+		file.seek(file.length() - Long.BYTES - RlvSidecarWriter.MAGIC.length);
+		file.seek(file.readLong());
+
+		DataInputStream footer = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(file.getChannel())));
+		chromosomes = readDictionary(footer);
+		genes = readDictionary(footer);
+		sources = readDictionary(footer);
+		samples = readDictionary(footer);
+		genotypes = readDictionary(footer);
+		blockOffsets = new long[footer.readInt()];
+		for (int i = 0; i < blockOffsets.length; i++)
+		{
+			blockOffsets[i] = footer.readLong();
+		}
+	}
+
+	private static List<String> readDictionary(DataInputStream inputStream) throws IOException
+	{
+		int size = inputStream.readInt();
+		List<String> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+		{
+			values.add(inputStream.readUTF());
+		}
+		return values;
+	}
+
+	public List<String> getChromosomes()
+	{
+		return chromosomes;
+	}
+
+	public List<String> getGenes()
+	{
+		return genes;
+	}
+
+	public List<String> getSources()
+	{
+		return sources;
+	}
+
+	public List<String> getSamples()
+	{
+		return samples;
+	}
+
+	public List<String> getGenotypes()
+	{
+		return genotypes;
+	}
+
+	public int getNrOfBlocks()
+	{
+		return blockOffsets.length;
+	}
+
+	public synchronized RlvSidecarBlock readBlock(int blockIndex) throws IOException
+	{
+		file.seek(blockOffsets[blockIndex]);
+		byte[] bytes = new byte[file.readInt()];
+		file.readFully(bytes);
+		return new RlvSidecarBlock(ByteBuffer.wrap(bytes));
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
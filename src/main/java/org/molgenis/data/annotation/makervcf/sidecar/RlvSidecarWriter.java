@@ -0,0 +1,210 @@
+package org.molgenis.data.annotation.makervcf.sidecar;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+
+/**
+ * Writes the relevance information of an RVCF as a columnar binary sidecar file, so cohort level aggregations (e.g.
+ * FDR and hom/het counts per gene) do not need to parse the RVCF text again.
+ *
+ * Every relevance (variant, allele and gene combination) is one entry. Entries are grouped in blocks, within a block
+ * every column is stored contiguously. Strings (chromosomes, genes, significance sources, samples and genotypes) are
+ * stored as ids into dictionaries that are written in the footer of the file.
+ *
+ * File layout:
+ * <pre>
+ * "RLVC" version
+ * block*: byteLength size chromosome[size] position[size] gene[size] source[size]
+ *         statusOffset[size+1] statusSample[n] status[n] (byte, Status ordinal)
+ *         genotypeOffset[size+1] genotypeSample[m] genotype[m]
+ * footer: chromosomes genes sources samples genotypes (count + UTF strings) nrOfBlocks blockOffset[nrOfBlocks]
+ * footerOffset "RLVC"
+ * </pre>
+ */
+public class RlvSidecarWriter implements Closeable
+{
+	public static final String EXTENSION = ".rlvc";
+	static final byte[] MAGIC = { 'R', 'L', 'V', 'C' };
+	static final int VERSION = 1;
+	static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	private final DataOutputStream outputStream;
+	private final int blockSize;
+	private long filePointer;
+	private long[] blockOffsets = new long[16];
+	private int nrOfBlocks;
+
+	private final StringDictionary chromosomes = new StringDictionary();
+	private final StringDictionary genes = new StringDictionary();
+	private final StringDictionary sources = new StringDictionary();
+	private final StringDictionary samples = new StringDictionary();
+	private final StringDictionary genotypes = new StringDictionary();
+
+	private final IntColumn chromosomeColumn = new IntColumn();
+	private final IntColumn positionColumn = new IntColumn();
+	private final IntColumn geneColumn = new IntColumn();
+	private final IntColumn sourceColumn = new IntColumn();
+	private final IntColumn statusOffsetColumn = new IntColumn();
+	private final IntColumn statusSampleColumn = new IntColumn();
+	private final IntColumn statusColumn = new IntColumn();
+	private final IntColumn genotypeOffsetColumn = new IntColumn();
+	private final IntColumn genotypeSampleColumn = new IntColumn();
+	private final IntColumn genotypeColumn = new IntColumn();
+
+	public RlvSidecarWriter(File file) throws IOException
+	{
+		this(file, DEFAULT_BLOCK_SIZE);
+	}
+
+	RlvSidecarWriter(File file, int blockSize) throws IOException
+	{
+		this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		this.blockSize = blockSize;
+		outputStream.write(MAGIC);
+		outputStream.writeInt(VERSION);
+		filePointer = MAGIC.length + Integer.BYTES;
+		statusOffsetColumn.add(0);
+		genotypeOffsetColumn.add(0);
+	}
+
+	/**
+	 * Adds an entry for every relevance of the record.
+	 */
+	public void write(GavinRecord gavinRecord) throws IOException
+	{
+		for (Relevance relevance : gavinRecord.getRelevance())
+		{
+			chromosomeColumn.add(chromosomes.getId(gavinRecord.getChromosome()));
+			positionColumn.add(gavinRecord.getPosition());
+			geneColumn.add(genes.getId(relevance.getGene()));
+			String source = relevance.getJudgment().getSource();
+			sourceColumn.add(sources.getId(source != null ? source : ""));
+
+			for (Map.Entry<String, Status> sampleStatus : relevance.getSampleStatus().entrySet())
+			{
+				statusSampleColumn.add(samples.getId(sampleStatus.getKey()));
+				statusColumn.add(sampleStatus.getValue().ordinal());
+			}
+			statusOffsetColumn.add(statusSampleColumn.size);
+
+			for (Map.Entry<String, String> sampleGenotype : relevance.getSampleGenotypes().entrySet())
+			{
+				genotypeSampleColumn.add(samples.getId(sampleGenotype.getKey()));
+				genotypeColumn.add(genotypes.getId(sampleGenotype.getValue()));
+			}
+			genotypeOffsetColumn.add(genotypeSampleColumn.size);
+
+			if (chromosomeColumn.size == blockSize)
+			{
+				writeBlock();
+			}
+		}
+	}
+
+	private void writeBlock() throws IOException
+	{
+		int size = chromosomeColumn.size;
+		int nrOfStatuses = statusSampleColumn.size;
+		int nrOfGenotypes = genotypeSampleColumn.size;
+		int byteLength = Integer.BYTES * (1 + 4 * size + 2 * (size + 1) + nrOfStatuses + 2 * nrOfGenotypes)
+				+ nrOfStatuses;
+
+		ByteBuffer block = ByteBuffer.allocate(Integer.BYTES + byteLength);
+		block.putInt(byteLength);
+		block.putInt(size);
+		chromosomeColumn.putTo(block);
+		positionColumn.putTo(block);
+		geneColumn.putTo(block);
+		sourceColumn.putTo(block);
+		statusOffsetColumn.putTo(block);
+		statusSampleColumn.putTo(block);
+		for (int i = 0; i < nrOfStatuses; i++)
+		{
+			block.put((byte) statusColumn.values[i]);
+		}
+		genotypeOffsetColumn.putTo(block);
+		genotypeSampleColumn.putTo(block);
+		genotypeColumn.putTo(block);
+
+		if (nrOfBlocks == blockOffsets.length)
+		{
+			blockOffsets = Arrays.copyOf(blockOffsets, nrOfBlocks * 2);
+		}
+		blockOffsets[nrOfBlocks++] = filePointer;
+		outputStream.write(block.array());
+		filePointer += block.capacity();
+
+		for (IntColumn column : Arrays.asList(chromosomeColumn, positionColumn, geneColumn, sourceColumn,
+				statusOffsetColumn, statusSampleColumn, statusColumn, genotypeOffsetColumn, genotypeSampleColumn,
+				genotypeColumn))
+		{
+			column.size = 0;
+		}
+		statusOffsetColumn.add(0);
+		genotypeOffsetColumn.add(0);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (chromosomeColumn.size > 0)
+		{
+			writeBlock();
+		}
+		long footerOffset = filePointer;
+		writeDictionary(chromosomes.getValues());
+		writeDictionary(genes.getValues());
+		writeDictionary(sources.getValues());
+		writeDictionary(samples.getValues());
+		writeDictionary(genotypes.getValues());
+		outputStream.writeInt(nrOfBlocks);
+		for (int i = 0; i < nrOfBlocks; i++)
+		{
+			outputStream.writeLong(blockOffsets[i]);
+		}
+		outputStream.writeLong(footerOffset);
+		outputStream.write(MAGIC);
+		outputStream.close();
+	}
+
+	private void writeDictionary(List<String> values) throws IOException
+	{
+		outputStream.writeInt(values.size());
+		for (String value : values)
+		{
+			outputStream.writeUTF(value);
+		}
+	}
+
+	private static class IntColumn
+	{
+		private int[] values = new int[1024];
+		private int size;
+
+		void add(int value)
+		{
+			if (size == values.length)
+			{
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void putTo(ByteBuffer byteBuffer)
+		{
+			byteBuffer.asIntBuffer().put(values, 0, size);
+			byteBuffer.position(byteBuffer.position() + size * Integer.BYTES);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.molgenis.data.annotation.makervcf.sidecar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns consecutive integer ids to strings in order of first appearance.
+ */
+class StringDictionary
+{
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> values = new ArrayList<>();
+
+	int getId(String value)
+	{
+		Integer id = ids.get(value);
+		if (id == null)
+		{
+			id = values.size();
+			ids.put(value, id);
+			values.add(value);
+		}
+		return id;
+	}
+
+	List<String> getValues()
+	{
+		return Collections.unmodifiableList(values);
+	}
+}
@@ -1,6 +1,8 @@
 package org.molgenis.data.annotation.makervcf.structs;
 
 import com.google.auto.value.AutoValue;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinAlgorithm;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinCalibrationTable;
 import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
 
 import java.util.Map;
@@ -8,15 +10,40 @@ import java.util.Map;
 @AutoValue
 public abstract class GavinCalibrations
 {
+	// derived from the gavin entries and set once by create(), so they are left out of equals, hashCode and toString
+	private GavinCalibrationTable calibrationTable;
+	private GeneIndex geneIndex;
+
 	public abstract double getGenomewideCaddThreshold();
 
 	public abstract double getGenomewideMafThreshold();
 
 	public abstract Map<String, GavinEntry> getGavinEntries();
 
+	/**
+	 * @return calibrations by gene id
+	 */
+	public GavinCalibrationTable getCalibrationTable()
+	{
+		return calibrationTable;
+	}
+
+	/**
+	 * @return index of the gene spans by chromosome
+	 */
+	public GeneIndex getGeneIndex()
+	{
+		return geneIndex;
+	}
+
 	public static GavinCalibrations create(double genomewideCaddThreshold, double genomewideMafThreshold,
 			Map<String, GavinEntry> gavinEntries)
 	{
-		return new AutoValue_GavinCalibrations(genomewideCaddThreshold, genomewideMafThreshold, gavinEntries);
+		GavinCalibrations gavinCalibrations = new AutoValue_GavinCalibrations(genomewideCaddThreshold,
+				genomewideMafThreshold, gavinEntries);
+		gavinCalibrations.calibrationTable = new GavinCalibrationTable(gavinCalibrations,
+				GavinAlgorithm.extraSensitivityFactor);
+		gavinCalibrations.geneIndex = new GeneIndex(gavinEntries);
+		return gavinCalibrations;
 	}
 }
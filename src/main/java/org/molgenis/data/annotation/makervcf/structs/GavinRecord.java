@@ -1,11 +1,16 @@
 package org.molgenis.data.annotation.makervcf.structs;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -15,9 +20,12 @@ import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
 import org.molgenis.data.vcf.datastructures.Sample;
 import org.molgenis.vcf.VcfRecord;
 import org.molgenis.vcf.VcfRecordUtils;
+import org.molgenis.vcf.meta.VcfMeta;
 
 public class GavinRecord
 {
+	private static final String COLUMN_SEPARATOR = "\t";
+
 	private AnnotatedVcfRecord annotatedVcfRecord;
 	private List<Relevance> relevances;
 	/**
@@ -25,6 +33,7 @@ public class GavinRecord
 	 */
 	private Set<String> genes;
 	private Double[] caddPhredScores;
+	private boolean caddPhredScoresUpdated;
 
 	public GavinRecord(VcfRecord record)
 	{
@@ -40,6 +49,70 @@ public class GavinRecord
 		this.caddPhredScores = annotatedVcfRecord.getCaddPhredScores();
 	}
 
+	private GavinRecord(VcfRecord record, Set<String> genes, Double[] caddPhredScores,
+			boolean caddPhredScoresUpdated)
+	{
+		this.annotatedVcfRecord = new AnnotatedVcfRecord(record);
+		this.relevances = emptyList();
+		this.genes = genes;
+		this.caddPhredScores = caddPhredScores;
+		this.caddPhredScoresUpdated = caddPhredScoresUpdated;
+	}
+
+	/**
+	 * Writes the record without its relevance in a compact binary format, used to spill large gene windows to disk.
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		// the raw line, VCF columns contain no tabs
+		byte[] line = String.join(COLUMN_SEPARATOR, annotatedVcfRecord.getTokens()).getBytes(UTF_8);
+		out.writeInt(line.length);
+		out.write(line);
+		out.writeInt(genes.size());
+		for (String gene : genes)
+		{
+			out.writeUTF(gene);
+		}
+		out.writeInt(caddPhredScores != null ? caddPhredScores.length : -1);
+		if (caddPhredScores != null)
+		{
+			for (Double caddPhredScore : caddPhredScores)
+			{
+				out.writeBoolean(caddPhredScore != null);
+				if (caddPhredScore != null)
+				{
+					out.writeDouble(caddPhredScore);
+				}
+			}
+		}
+		out.writeBoolean(caddPhredScoresUpdated);
+	}
+
+	/**
+	 * Reads a record in the binary format of {@link #write(DataOutput)}, the record has no relevance.
+	 */
+	public static GavinRecord read(DataInput in, VcfMeta vcfMeta) throws IOException
+	{
+		byte[] line = new byte[in.readInt()];
+		in.readFully(line);
+		String[] tokens = new String(line, UTF_8).split(COLUMN_SEPARATOR, -1);
+		int nrOfGenes = in.readInt();
+		// keeps the gene order of the written record
+		Set<String> genes = new LinkedHashSet<>();
+		for (int i = 0; i < nrOfGenes; i++)
+		{
+			genes.add(in.readUTF());
+		}
+		int nrOfCaddPhredScores = in.readInt();
+		Double[] caddPhredScores = nrOfCaddPhredScores != -1 ? new Double[nrOfCaddPhredScores] : null;
+		for (int i = 0; i < nrOfCaddPhredScores; i++)
+		{
+			caddPhredScores[i] = in.readBoolean() ? in.readDouble() : null;
+		}
+		boolean caddPhredScoresUpdated = in.readBoolean();
+		return new GavinRecord(new VcfRecord(vcfMeta, tokens), genes, caddPhredScores, caddPhredScoresUpdated);
+	}
+
 	public AnnotatedVcfRecord getAnnotatedVcfRecord()
 	{
 		return annotatedVcfRecord;
@@ -68,6 +141,15 @@ public class GavinRecord
 	public void setCaddPhredScore(int i, Double phredScore)
 	{
 		this.caddPhredScores[i] = phredScore;
+		this.caddPhredScoresUpdated = true;
+	}
+
+	/**
+	 * @return whether any CADD phred score differs from the CADD_SCALED value of the input record
+	 */
+	public boolean isCaddPhredScoresUpdated()
+	{
+		return caddPhredScoresUpdated;
 	}
 
 	public Set<String> getGenes()
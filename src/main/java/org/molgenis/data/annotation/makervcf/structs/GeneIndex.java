@@ -0,0 +1,133 @@
+package org.molgenis.data.annotation.makervcf.structs;
+
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the gene spans of the GAVIN calibrations, one {@link IntervalTree} per chromosome.
+ *
+ * Gene membership of a variant comes from its ANN field, the index gives the genes by coordinate instead, e.g. to
+ * validate ANN gene assignments or to know where a gene ends in a position sorted stream. Chromosome names are
+ * matched with or without a 'chr' prefix.
+ */
+public class GeneIndex
+{
+	private static final String CHR_PREFIX = "chr";
+
+	private final Map<String, IntervalTree<String>> genesPerChromosome = new HashMap<>();
+	private final Map<String, Region> regionPerGene = new HashMap<>();
+
+	public GeneIndex(Map<String, GavinEntry> gavinEntries)
+	{
+		for (GavinEntry gavinEntry : gavinEntries.values())
+		{
+			if (gavinEntry.getChromosome() == null || gavinEntry.getChromosome().isEmpty()
+					|| gavinEntry.getStart() == null || gavinEntry.getEnd() == null
+					|| gavinEntry.getEnd() < gavinEntry.getStart())
+			{
+				continue;
+			}
+			Region region = new Region(gavinEntry.getChromosome(), gavinEntry.getStart(), gavinEntry.getEnd());
+			regionPerGene.put(gavinEntry.getGene(), region);
+			genesPerChromosome.computeIfAbsent(normalize(region.getChromosome()), k -> new IntervalTree<>())
+							  .add(region.getStart(), region.getEnd(), gavinEntry.getGene());
+		}
+	}
+
+	/**
+	 * @return genes overlapping the 1-based closed interval, ordered by start
+	 */
+	public List<String> getGenes(String chromosome, long start, long end)
+	{
+		IntervalTree<String> genes = genesPerChromosome.get(normalize(chromosome));
+		return genes != null ? genes.getOverlapping(start, end) : new ArrayList<>(0);
+	}
+
+	/**
+	 * @return span of the gene, or null if the calibrations have no coordinates for it
+	 */
+	@Nullable
+	public Region getRegion(String gene)
+	{
+		return regionPerGene.get(gene);
+	}
+
+	/**
+	 * @return end of the gene if it is on this chromosome, or null if it is not or has no coordinates
+	 */
+	@Nullable
+	public Long getEnd(String gene, String chromosome)
+	{
+		Region region = regionPerGene.get(gene);
+		return region != null && isSameChromosome(region.getChromosome(), chromosome) ? region.getEnd() : null;
+	}
+
+	/**
+	 * Checks an ANN gene assignment against the gene span, extended with a margin for up- and downstream variants.
+	 *
+	 * @return false if the position is outside the span or on another chromosome, true otherwise or if the gene has
+	 * no coordinates
+	 */
+	public boolean isWithinGene(String gene, String chromosome, long position, long margin)
+	{
+		Region region = regionPerGene.get(gene);
+		return region == null || (isSameChromosome(region.getChromosome(), chromosome)
+				&& position >= region.getStart() - margin && position <= region.getEnd() + margin);
+	}
+
+	public static boolean isSameChromosome(String chromosome, String otherChromosome)
+	{
+		return normalize(chromosome).equals(normalize(otherChromosome));
+	}
+
+	private static String normalize(String chromosome)
+	{
+		return chromosome.startsWith(CHR_PREFIX) ? chromosome.substring(CHR_PREFIX.length()) : chromosome;
+	}
+
+	/**
+	 * 1-based closed interval on a chromosome.
+	 */
+	public static class Region
+	{
+		private final String chromosome;
+		private final long start;
+		private final long end;
+
+		public Region(String chromosome, long start, long end)
+		{
+			this.chromosome = chromosome;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String getChromosome()
+		{
+			return chromosome;
+		}
+
+		public long getStart()
+		{
+			return start;
+		}
+
+		public long getEnd()
+		{
+			return end;
+		}
+
+		/**
+		 * @return region in the chromosome:start-end notation of tabix
+		 */
+		@Override
+		public String toString()
+		{
+			return chromosome + ":" + start + "-" + end;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package org.molgenis.data.annotation.makervcf.structs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Interval tree over 1-based closed intervals of one chromosome.
+ *
+ * The intervals are kept in arrays sorted by start, which are used as an implicit binary search tree: the node at index
+ * i is at the level of the number of trailing 1-bits of i, and every node stores the maximum end of its subtree. This
+ * is the layout of cgranges (Li 2019); it needs no node objects and answers an overlap query in O(log n + k), also
+ * when a few very long intervals overlap most of the others.
+ *
+ * Intervals are added first, the tree is indexed on the first query after the last add. Queries may run concurrently,
+ * adding may not.
+ */
+public class IntervalTree<T>
+{
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int SMALL_SUBTREE_LEVEL = 3;
+
+	private long[] starts = new long[INITIAL_CAPACITY];
+	private long[] ends = new long[INITIAL_CAPACITY];
+	private long[] maxEnds = new long[0];
+	private Object[] values = new Object[INITIAL_CAPACITY];
+	private int size;
+	private int rootLevel;
+	private volatile boolean indexed = true;
+
+	public void add(long start, long end, T value)
+	{
+		if (end < start)
+		{
+			throw new IllegalArgumentException("Interval end " + end + " before start " + start);
+		}
+		if (size == starts.length)
+		{
+			int capacity = size * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		values[size] = value;
+		size++;
+		indexed = false;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return values of the intervals that overlap [start, end], ordered by start
+	 */
+	public List<T> getOverlapping(long start, long end)
+	{
+		if (size == 0)
+		{
+			return new ArrayList<>(0);
+		}
+		if (!indexed)
+		{
+			index();
+		}
+
+		int[] hits = new int[INITIAL_CAPACITY];
+		int nrOfHits = 0;
+
+		// explicit stack of (node, level, left child visited), at most two entries per level
+		long[] stack = new long[3 * 2 * (rootLevel + 2)];
+		int top = 0;
+		stack[top++] = (1L << rootLevel) - 1;
+		stack[top++] = rootLevel;
+		stack[top++] = 0;
+		while (top > 0)
+		{
+			boolean leftVisited = stack[--top] != 0;
+			int level = (int) stack[--top];
+			long node = stack[--top];
+			if (level <= SMALL_SUBTREE_LEVEL)
+			{
+				// small subtree, scan all of its nodes
+				long from = node >> level << level;
+				long to = Math.min(from + (1L << (level + 1)) - 1, size);
+				for (int i = (int) from; i < to && starts[i] <= end; i++)
+				{
+					if (ends[i] >= start)
+					{
+						if (nrOfHits == hits.length)
+						{
+							hits = Arrays.copyOf(hits, nrOfHits * 2);
+						}
+						hits[nrOfHits++] = i;
+					}
+				}
+			}
+			else if (!leftVisited)
+			{
+				// revisit this node after its left child, which is skipped when all of its intervals end before start
+				stack[top++] = node;
+				stack[top++] = level;
+				stack[top++] = 1;
+				long leftChild = node - (1L << (level - 1));
+				if (leftChild >= size || maxEnds[(int) leftChild] >= start)
+				{
+					stack[top++] = leftChild;
+					stack[top++] = level - 1;
+					stack[top++] = 0;
+				}
+			}
+			else if (node < size && starts[(int) node] <= end)
+			{
+				if (ends[(int) node] >= start)
+				{
+					if (nrOfHits == hits.length)
+					{
+						hits = Arrays.copyOf(hits, nrOfHits * 2);
+					}
+					hits[nrOfHits++] = (int) node;
+				}
+				stack[top++] = node + (1L << (level - 1));
+				stack[top++] = level - 1;
+				stack[top++] = 0;
+			}
+		}
+
+		// nodes are visited in tree order, the array index is the start order
+		Arrays.sort(hits, 0, nrOfHits);
+		List<T> overlapping = new ArrayList<>(nrOfHits);
+		for (int i = 0; i < nrOfHits; i++)
+		{
+			overlapping.add(getValue(hits[i]));
+		}
+		return overlapping;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T getValue(int index)
+	{
+		return (T) values[index];
+	}
+
+	private synchronized void index()
+	{
+		if (indexed)
+		{
+			return;
+		}
+		Integer[] order = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+		Arrays.sort(order, Comparator.comparingLong(i -> starts[i]));
+		long[] sortedStarts = new long[size];
+		long[] sortedEnds = new long[size];
+		Object[] sortedValues = new Object[size];
+		for (int i = 0; i < size; i++)
+		{
+			sortedStarts[i] = starts[order[i]];
+			sortedEnds[i] = ends[order[i]];
+			sortedValues[i] = values[order[i]];
+		}
+		starts = sortedStarts;
+		ends = sortedEnds;
+		values = sortedValues;
+
+		// leaves are the even indices, then compute the maximum end of each subtree level by level
+		maxEnds = new long[size];
+		long lastIndex = 0;
+		long lastMaxEnd = 0;
+		for (int i = 0; i < size; i += 2)
+		{
+			lastIndex = i;
+			lastMaxEnd = maxEnds[i] = ends[i];
+		}
+		int level = 1;
+		for (; 1L << level <= size; level++)
+		{
+			long halfWidth = 1L << (level - 1);
+			for (long i = (halfWidth << 1) - 1; i < size; i += halfWidth << 2)
+			{
+				long leftMaxEnd = maxEnds[(int) (i - halfWidth)];
+				// a right child beyond the last interval has the maximum end of the last subtree
+				long rightMaxEnd = i + halfWidth < size ? maxEnds[(int) (i + halfWidth)] : lastMaxEnd;
+				maxEnds[(int) i] = Math.max(ends[(int) i], Math.max(leftMaxEnd, rightMaxEnd));
+			}
+			lastIndex = (lastIndex >> level & 1) != 0 ? lastIndex - halfWidth : lastIndex + halfWidth;
+			if (lastIndex < size && maxEnds[(int) lastIndex] > lastMaxEnd)
+			{
+				lastMaxEnd = maxEnds[(int) lastIndex];
+			}
+		}
+		rootLevel = level - 1;
+		indexed = true;
+	}
+}
@@ -0,0 +1,63 @@
+package org.molgenis.data.annotation.makervcf.structs;
+
+import java.util.Map;
+
+/**
+ * Deletion or duplication from a structural variant VCF, with the genotypes of the samples that carry it.
+ */
+public class StructuralVariant
+{
+	public enum Type
+	{
+		DEL, DUP
+	}
+
+	private final String chromosome;
+	private final long start;
+	private final long end;
+	private final Type type;
+	private final Map<String, String> sampleGenotypes;
+
+	public StructuralVariant(String chromosome, long start, long end, Type type, Map<String, String> sampleGenotypes)
+	{
+		this.chromosome = chromosome;
+		this.start = start;
+		this.end = end;
+		this.type = type;
+		this.sampleGenotypes = sampleGenotypes;
+	}
+
+	public String getChromosome()
+	{
+		return chromosome;
+	}
+
+	public long getStart()
+	{
+		return start;
+	}
+
+	public long getEnd()
+	{
+		return end;
+	}
+
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return genotypes, e.g. 0/1 or 1|0, of the samples that carry this variant
+	 */
+	public Map<String, String> getSampleGenotypes()
+	{
+		return sampleGenotypes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return type + " " + chromosome + ":" + start + "-" + end;
+	}
+}
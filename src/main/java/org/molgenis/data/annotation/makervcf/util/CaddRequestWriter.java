@@ -0,0 +1,163 @@
+package org.molgenis.data.annotation.makervcf.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the variants that need a CADD score to the file(s) that are uploaded to the CADD scoring service, one
+ * 'chrom pos . ref alt' line per variant.
+ *
+ * Output is buffered and BGZF compressed when the file name ends with '.gz'. Variants are written in input order, which
+ * is position sorted because the pipeline rejects unsorted input. When a file reaches the maximum number of variants
+ * of one upload, the next variants go to '[name].part2.tsv', '[name].part3.tsv', etc.
+ *
+ * Duplicate variants, e.g. from multi-allelic records that trim to the same alleles, are skipped with a set of
+ * recently written variants. Duplicates are close to each other in the position sorted input, so the set only keeps
+ * the most recent variants.
+ */
+public class CaddRequestWriter implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(CaddRequestWriter.class);
+
+	public static final int MAX_VARIANTS_PER_FILE = 100000;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int NR_OF_RECENT_VARIANTS = 4096;
+	private static final String GZ_EXTENSION = ".gz";
+	private static final String TSV_EXTENSION = ".tsv";
+
+	private final File caddFile;
+	private final int maxVariantsPerFile;
+	private final Map<String, Boolean> recentVariants = new LinkedHashMap<String, Boolean>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+		{
+			return size() > NR_OF_RECENT_VARIANTS;
+		}
+	};
+	private final List<File> files = new ArrayList<>();
+	private Writer writer;
+	private int nrOfVariantsInFile;
+	private long nrOfVariants;
+	private long nrOfDuplicates;
+
+	public CaddRequestWriter(File caddFile) throws IOException
+	{
+		this(caddFile, MAX_VARIANTS_PER_FILE);
+	}
+
+	public CaddRequestWriter(File caddFile, int maxVariantsPerFile) throws IOException
+	{
+		if (maxVariantsPerFile < 1)
+		{
+			throw new IllegalArgumentException("Maximum number of variants per file must be positive");
+		}
+		this.caddFile = caddFile;
+		this.maxVariantsPerFile = maxVariantsPerFile;
+		openNextFile();
+	}
+
+	/**
+	 * @return false if the variant was skipped as duplicate
+	 */
+	public boolean write(String chromosome, int position, String ref, String alt) throws IOException
+	{
+		String line = chromosome + "\t" + position + "\t.\t" + ref + "\t" + alt;
+		if (isDuplicate(line))
+		{
+			nrOfDuplicates++;
+			return false;
+		}
+
+		if (nrOfVariantsInFile == maxVariantsPerFile)
+		{
+			writer.close();
+			openNextFile();
+		}
+		writer.write(line);
+		writer.write('\n');
+		nrOfVariantsInFile++;
+		nrOfVariants++;
+		return true;
+	}
+
+	private boolean isDuplicate(String line)
+	{
+		return recentVariants.put(line, Boolean.TRUE) != null;
+	}
+
+	private void openNextFile() throws IOException
+	{
+		File file = files.isEmpty() ? caddFile : getPartFile(caddFile, files.size() + 1);
+		OutputStream outputStream = file.getName().endsWith(GZ_EXTENSION) ?
+				new BlockCompressedOutputStream(file) :
+				new FileOutputStream(file);
+		writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8), BUFFER_SIZE);
+		files.add(file);
+		nrOfVariantsInFile = 0;
+	}
+
+	static File getPartFile(File caddFile, int part)
+	{
+		String name = caddFile.getName();
+		String extension = "";
+		if (name.endsWith(GZ_EXTENSION))
+		{
+			extension = GZ_EXTENSION;
+			name = name.substring(0, name.length() - GZ_EXTENSION.length());
+		}
+		if (name.endsWith(TSV_EXTENSION))
+		{
+			extension = TSV_EXTENSION + extension;
+			name = name.substring(0, name.length() - TSV_EXTENSION.length());
+		}
+		return new File(caddFile.getParentFile(), name + ".part" + part + extension);
+	}
+
+	/**
+	 * @return files written so far, the CADD file first
+	 */
+	public List<File> getFiles()
+	{
+		return Collections.unmodifiableList(files);
+	}
+
+	public long getNrOfVariants()
+	{
+		return nrOfVariants;
+	}
+
+	public long getNrOfDuplicates()
+	{
+		return nrOfDuplicates;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (writer == null)
+		{
+			return;
+		}
+		writer.close();
+		writer = null;
+		LOG.info("[CaddRequestWriter] Wrote {} variants without CADD score to {} file(s) {}, skipped {} duplicates",
+				nrOfVariants, files.size(), files, nrOfDuplicates);
+	}
+}
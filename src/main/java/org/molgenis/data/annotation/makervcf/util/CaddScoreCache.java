@@ -0,0 +1,514 @@
+package org.molgenis.data.annotation.makervcf.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import org.broad.tribble.readers.TabixReader;
+import org.molgenis.data.vcf.utils.FixVcfAlleleNotation;
+import org.molgenis.data.vcf.utils.TabixIndexBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local CADD score cache that is shared across runs, so variants that were scored by the CADD webservice once do not
+ * have to be requested again.
+ *
+ * The cache is a directory of bgzip compressed segment files with 'chrom pos ref alt phred' lines, sorted by
+ * chromosome, position and alleles, each with a tabix index. Alleles are back-trimmed with
+ * {@link FixVcfAlleleNotation#backTrimRefAlt}, like in the requests to the webservice. Scores are looked up in the
+ * segments through their index, only the indices and the scores added since the last flush are kept in memory.
+ *
+ * Segments are never modified: {@link #flush()} writes the scores that were added since the last flush to a new
+ * segment, a score in a newer segment wins. The newest segments are merged as long as the segment before them is at
+ * most {@link #MERGE_FACTOR} times as large, so each score is rewritten a logarithmic number of times, and the newest
+ * ones are merged regardless when there are more than {@link #MAX_SEGMENTS}. Each segment is written to a temporary
+ * file first and then moved into place, so an interrupted run leaves the cache intact.
+ *
+ * The cache can be used by multiple threads, the directory is locked so it cannot be opened twice.
+ */
+public class CaddScoreCache implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(CaddScoreCache.class);
+
+	public static final int MAX_SEGMENTS = 8;
+	public static final int MERGE_FACTOR = 2;
+	private static final String LOCK_FILE_NAME = ".lock";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_EXTENSION = ".tsv.gz";
+	private static final String TMP_EXTENSION = ".tmp";
+	private static final Pattern SEGMENT_PATTERN = Pattern.compile(
+			Pattern.quote(SEGMENT_PREFIX) + "(\\d+)" + Pattern.quote(SEGMENT_EXTENSION));
+
+	private final File directory;
+	private final RandomAccessFile lockFile;
+	private final FileLock lock;
+	private final Map<Key, Double> newScores = new HashMap<>();
+	private final List<Segment> segments = new ArrayList<>();
+	private int nextSegmentNumber;
+	private boolean closed;
+
+	public CaddScoreCache(File directory) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Could not create CADD score cache directory " + directory.getAbsolutePath());
+		}
+		this.directory = directory;
+		this.lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+		FileLock fileLock;
+		try
+		{
+			fileLock = lockFile.getChannel().tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			// already opened in this JVM
+			fileLock = null;
+		}
+		this.lock = fileLock;
+		if (lock == null)
+		{
+			lockFile.close();
+			throw new IOException(
+					"CADD score cache " + directory.getAbsolutePath() + " is already in use");
+		}
+		load();
+	}
+
+	private void load() throws IOException
+	{
+		File[] files = directory.listFiles();
+		Map<Integer, File> segmentsByNumber = new TreeMap<>();
+		for (File file : files != null ? files : new File[0])
+		{
+			Matcher matcher = SEGMENT_PATTERN.matcher(file.getName());
+			if (matcher.matches())
+			{
+				segmentsByNumber.put(Integer.parseInt(matcher.group(1)), file);
+			}
+			else if (file.getName().endsWith(TMP_EXTENSION) || file.getName().endsWith(TMP_EXTENSION
+					+ TabixIndexBuilder.TBI_EXTENSION) || (file.getName().endsWith(TabixIndexBuilder.TBI_EXTENSION)
+					&& !getSegmentFile(file).exists()))
+			{
+				// left behind by an interrupted flush or compaction
+				Files.delete(file.toPath());
+			}
+		}
+		for (Map.Entry<Integer, File> segment : segmentsByNumber.entrySet())
+		{
+			segments.add(new Segment(segment.getValue()));
+			nextSegmentNumber = segment.getKey() + 1;
+		}
+		LOG.info("[CaddScoreCache] Opened {} segment(s) in {}", segments.size(), directory);
+	}
+
+	private static File getSegmentFile(File indexFile)
+	{
+		String path = indexFile.getPath();
+		return new File(path.substring(0, path.length() - TabixIndexBuilder.TBI_EXTENSION.length()));
+	}
+
+	/**
+	 * @return cached CADD PHRED score or null
+	 */
+	public synchronized Double get(String chromosome, int position, String ref, String alt) throws IOException
+	{
+		return get(createKey(chromosome, position, ref, alt));
+	}
+
+	private Double get(Key key) throws IOException
+	{
+		Double score = newScores.get(key);
+		for (int i = segments.size() - 1; score == null && i >= 0; i--)
+		{
+			score = segments.get(i).get(key);
+		}
+		return score;
+	}
+
+	public synchronized void put(String chromosome, int position, String ref, String alt, double score)
+			throws IOException
+	{
+		Key key = createKey(chromosome, position, ref, alt);
+		Double previousScore = get(key);
+		if (previousScore == null || previousScore != score)
+		{
+			newScores.put(key, score);
+		}
+	}
+
+	private static Key createKey(String chromosome, int position, String ref, String alt)
+	{
+		return new Key(chromosome, position, FixVcfAlleleNotation.backTrimRefAlt(ref, alt, "\t"));
+	}
+
+	/**
+	 * Writes the scores that were added since the last flush to a new segment, merges the newest segments when they
+	 * have grown as large as the segment before them or when there are too many.
+	 */
+	public synchronized void flush() throws IOException
+	{
+		if (newScores.isEmpty())
+		{
+			return;
+		}
+		TreeMap<Key, Double> sortedScores = new TreeMap<>(newScores);
+		segments.add(writeSegment(new ScoreIterator()
+		{
+			private final Iterator<Map.Entry<Key, Double>> iterator = sortedScores.entrySet().iterator();
+
+			@Override
+			Map.Entry<Key, Double> readNext()
+			{
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+		}));
+		LOG.info("[CaddScoreCache] Added {} CADD scores to {}", newScores.size(), directory);
+		newScores.clear();
+
+		int nrOfMergedSegments = 1;
+		while (nrOfMergedSegments < segments.size() && (segments.size() - nrOfMergedSegments + 1 > MAX_SEGMENTS
+				|| getLength(segments.size() - nrOfMergedSegments - 1) <= MERGE_FACTOR * getLength(
+				segments.size() - nrOfMergedSegments, segments.size())))
+		{
+			nrOfMergedSegments++;
+		}
+		if (nrOfMergedSegments > 1)
+		{
+			merge(nrOfMergedSegments);
+		}
+	}
+
+	/**
+	 * @return compressed length of the segments from index up to toIndex
+	 */
+	private long getLength(int index, int toIndex)
+	{
+		long length = 0;
+		for (Segment segment : segments.subList(index, toIndex))
+		{
+			length += segment.file.length();
+		}
+		return length;
+	}
+
+	private long getLength(int index)
+	{
+		return getLength(index, index + 1);
+	}
+
+	/**
+	 * Merges the newest segments into one, a score in a newer segment wins.
+	 */
+	private void merge(int nrOfSegments) throws IOException
+	{
+		List<Segment> oldSegments = new ArrayList<>(segments.subList(segments.size() - nrOfSegments, segments.size()));
+		List<SegmentReader> readers = new ArrayList<>(nrOfSegments);
+		Segment merged;
+		try
+		{
+			for (Segment segment : oldSegments)
+			{
+				readers.add(new SegmentReader(segment.file));
+			}
+			merged = writeSegment(new ScoreIterator()
+			{
+				@Override
+				Map.Entry<Key, Double> readNext() throws IOException
+				{
+					// the smallest key of all readers, from the newest reader that has it
+					SegmentReader next = null;
+					for (SegmentReader reader : readers)
+					{
+						if (reader.peek() != null && (next == null
+								|| reader.peek().getKey().compareTo(next.peek().getKey()) <= 0))
+						{
+							next = reader;
+						}
+					}
+					if (next == null)
+					{
+						return null;
+					}
+					Map.Entry<Key, Double> entry = next.poll();
+					for (SegmentReader reader : readers)
+					{
+						if (reader.peek() != null && reader.peek().getKey().equals(entry.getKey()))
+						{
+							reader.poll();
+						}
+					}
+					return entry;
+				}
+			});
+		}
+		finally
+		{
+			for (SegmentReader reader : readers)
+			{
+				reader.close();
+			}
+		}
+
+		segments.removeAll(oldSegments);
+		segments.add(merged);
+		for (Segment oldSegment : oldSegments)
+		{
+			oldSegment.delete();
+		}
+		LOG.info("[CaddScoreCache] Merged the {} newest segments of {}", nrOfSegments, directory);
+	}
+
+	private Segment writeSegment(ScoreIterator scores) throws IOException
+	{
+		File segmentFile = new File(directory, SEGMENT_PREFIX + nextSegmentNumber++ + SEGMENT_EXTENSION);
+		File tmpSegmentFile = new File(segmentFile.getPath() + TMP_EXTENSION);
+		TabixIndexBuilder tabixIndexBuilder = new TabixIndexBuilder();
+		try (BlockCompressedOutputStream outputStream = new BlockCompressedOutputStream(tmpSegmentFile))
+		{
+			Map.Entry<Key, Double> entry;
+			while ((entry = scores.readNext()) != null)
+			{
+				Key key = entry.getKey();
+				long startOffset = outputStream.getFilePointer();
+				write(outputStream, key.chromosome + "\t" + key.position + "\t" + key.alleles + "\t" + entry.getValue()
+						+ "\n");
+				tabixIndexBuilder.addRecord(key.chromosome, key.position, key.position, startOffset,
+						outputStream.getFilePointer());
+			}
+		}
+		if (tabixIndexBuilder.requiresCsi())
+		{
+			throw new IOException("Cannot cache CADD scores at positions that do not fit in a tabix index");
+		}
+		// the index is moved into place first, so a segment always has an index
+		File tmpIndexFile = tabixIndexBuilder.writeIndex(tmpSegmentFile);
+		File indexFile = new File(segmentFile.getPath() + TabixIndexBuilder.TBI_EXTENSION);
+		Files.move(tmpIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		Files.move(tmpSegmentFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		return new Segment(segmentFile);
+	}
+
+	private static void write(OutputStream outputStream, String line) throws IOException
+	{
+		outputStream.write(line.getBytes(UTF_8));
+	}
+
+	/**
+	 * @return segment files, oldest first
+	 */
+	public synchronized List<File> getSegments()
+	{
+		List<File> segmentFiles = new ArrayList<>(segments.size());
+		for (Segment segment : segments)
+		{
+			segmentFiles.add(segment.file);
+		}
+		return segmentFiles;
+	}
+
+	/**
+	 * Flushes the new scores and releases the cache, can be called more than once and concurrently.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			for (Segment segment : segments)
+			{
+				segment.close();
+			}
+			lock.release();
+			lockFile.close();
+		}
+	}
+
+	private static Map.Entry<Key, Double> parse(String line, File segmentFile) throws IOException
+	{
+		String[] columns = line.split("\t", -1);
+		if (columns.length != 5)
+		{
+			throw new IOException("Expected 5 columns in CADD score cache segment " + segmentFile + ": " + line);
+		}
+		Key key = new Key(columns[0], Integer.parseInt(columns[1]), columns[2] + "\t" + columns[3]);
+		return new AbstractMap.SimpleImmutableEntry<>(key, Double.parseDouble(columns[4]));
+	}
+
+	/**
+	 * Back-trimmed variant, ordered by chromosome, numeric position and alleles.
+	 */
+	private static class Key implements Comparable<Key>
+	{
+		private final String chromosome;
+		private final int position;
+		private final String alleles;
+
+		Key(String chromosome, int position, String alleles)
+		{
+			this.chromosome = chromosome;
+			this.position = position;
+			this.alleles = alleles;
+		}
+
+		@Override
+		public int compareTo(Key other)
+		{
+			int compare = chromosome.compareTo(other.chromosome);
+			if (compare == 0)
+			{
+				compare = Integer.compare(position, other.position);
+			}
+			return compare != 0 ? compare : alleles.compareTo(other.alleles);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o)
+			{
+				return true;
+			}
+			if (o == null || getClass() != o.getClass())
+			{
+				return false;
+			}
+			Key key = (Key) o;
+			return position == key.position && chromosome.equals(key.chromosome) && alleles.equals(key.alleles);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(chromosome, position, alleles);
+		}
+	}
+
+	/**
+	 * Segment file with its tabix index, to look up scores by position.
+	 */
+	private static class Segment
+	{
+		private final File file;
+		private final TabixReader tabixReader;
+
+		Segment(File file) throws IOException
+		{
+			if (!new File(file.getPath() + TabixIndexBuilder.TBI_EXTENSION).isFile())
+			{
+				throw new IOException("Tabix index not found for CADD score cache segment " + file);
+			}
+			this.file = file;
+			this.tabixReader = new TabixReader(file.getPath());
+		}
+
+		Double get(Key key) throws IOException
+		{
+			Integer tid = tabixReader.mChr2tid.get(key.chromosome);
+			if (tid == null)
+			{
+				return null;
+			}
+			// the index reads the alt column as the VCF REF column, which may only widen the interval of a line
+			TabixReader.Iterator iterator = tabixReader.query(tid, key.position - 1, key.position);
+			String line;
+			while (iterator != null && (line = iterator.next()) != null)
+			{
+				Map.Entry<Key, Double> entry = parse(line, file);
+				if (entry.getKey().equals(key))
+				{
+					return entry.getValue();
+				}
+			}
+			return null;
+		}
+
+		void close()
+		{
+			tabixReader.close();
+		}
+
+		void delete() throws IOException
+		{
+			close();
+			Files.delete(file.toPath());
+			Files.delete(new File(file.getPath() + TabixIndexBuilder.TBI_EXTENSION).toPath());
+		}
+	}
+
+	/**
+	 * Reads the scores of a segment in order, to merge segments without loading them.
+	 */
+	private static class SegmentReader implements Closeable
+	{
+		private final File file;
+		private final BlockCompressedInputStream inputStream;
+		private Map.Entry<Key, Double> next;
+
+		SegmentReader(File file) throws IOException
+		{
+			this.file = file;
+			this.inputStream = new BlockCompressedInputStream(file);
+			poll();
+		}
+
+		Map.Entry<Key, Double> peek()
+		{
+			return next;
+		}
+
+		Map.Entry<Key, Double> poll() throws IOException
+		{
+			Map.Entry<Key, Double> entry = next;
+			String line = inputStream.readLine();
+			next = line != null ? parse(line, file) : null;
+			return entry;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Scores in key order.
+	 */
+	private abstract static class ScoreIterator
+	{
+		/**
+		 * @return next score or null
+		 */
+		abstract Map.Entry<Key, Double> readNext() throws IOException;
+	}
+}
@@ -1,37 +1,66 @@
 package org.molgenis.data.annotation.makervcf.util;
 
-import org.molgenis.calibratecadd.support.GavinUtils;
-import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
-import org.molgenis.vcf.VcfReader;
-import org.molgenis.vcf.VcfRecord;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord.CADD_SCALED;
 
-import java.io.*;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import org.molgenis.data.vcf.utils.FixVcfAlleleNotation;
+import org.molgenis.data.vcf.utils.TabixIndexBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-/** 
+/**
  * Annotator that adds the output of the CADD webservice to a VCF file.
- * TODO: rewrite into a proper annotator!
- *  
+ *
  * Many indels in your VCF are not present in the static CADD files for SNV, 1000G, etc.
  * The webservice can calculate CADD scores for these variants to get more complete data.
  * This is what you get back when you use the webservice of CADD:
- * 
+ *
  * ## CADD v1.3 (c) University of Washington and Hudson-Alpha Institute for Biotechnology 2013-2015. All rights reserved.
  * #CHROM	POS	REF	ALT	RawScore	PHRED
  * 1	3102852	G	A	0.458176	7.103
  * 1	3102888	G	T	-0.088829	1.815
  * 1	3103004	G	A	1.598097	13.84
  * 1	3319479	G	A	0.717654	8.942
- * 
+ *
  * This information can be added to a VCF based on chrom, pos, ref, alt.
  *
+ * Both files must be position sorted with the chromosomes in the same order, the VCF and the webservice output are
+ * then merge-joined so only the webservice scores at the current VCF position are kept in memory. Webservice output
+ * on chromosomes that are not in the VCF is skipped, a different chromosome order fails. Lines are copied
+ * as-is, only the CADD_SCALED values of alleles without a score are filled in. Output that ends with '.gz' is bgzip
+ * compressed and gets a tabix index.
  */
 public class CaddWebserviceOutputAnnotator
 {
+	private static final Logger LOG = LoggerFactory.getLogger(CaddWebserviceOutputAnnotator.class);
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final String MISSING_VALUE = ".";
+	private static final String CADD_SCALED_HEADER_LINE = "##INFO=<ID=" + CADD_SCALED
+			+ ",Number=.,Type=Float,Description=\"CADD PHRED score, added from CADD webservice output\">";
 
-	File vcfToAnnotate;
-	File caddWebserviceOutput;
-	HandleMissingCaddScores hmcs;
-	BufferedWriter outputVCFWriter;
+	private final File vcfToAnnotate;
+	private final File caddWebserviceOutput;
+	private final File outputFile;
+
+	private long nrOfRecords;
+	private long nrOfScoresAdded;
+	private long nrOfScoresMissing;
 
 	public CaddWebserviceOutputAnnotator(File vcfToAnnotate, File caddWebserviceOutput, File outputFile) throws Exception
 	{
@@ -47,42 +76,343 @@ public class CaddWebserviceOutputAnnotator
 		}
 		if (outputFile.isFile())
 		{
-			System.out.println("Warning: output file " + outputFile.getAbsolutePath()
-					+ " already exists, overwriting content!");
+			LOG.warn("Output file {} already exists, overwriting content!", outputFile.getAbsolutePath());
 		}
 		this.vcfToAnnotate = vcfToAnnotate;
 		this.caddWebserviceOutput = caddWebserviceOutput;
-		this.hmcs = new HandleMissingCaddScores(HandleMissingCaddScores.Mode.ANALYSIS, caddWebserviceOutput);
-		this.outputVCFWriter = new BufferedWriter(new FileWriter(outputFile));
+		this.outputFile = outputFile;
 	}
-	
+
 	public void annotate() throws Exception
 	{
-		VcfReader vcfReader = GavinUtils.getVcfReader(vcfToAnnotate);
-		//TODO: VcfWriterUtils.writeVcfHeader(vcfToAnnotate, outputVCFWriter, attributes);
+		boolean bgzipCompressed = outputFile.getName().endsWith(".gz");
+		BlockCompressedOutputStream bgzipOutputStream =
+				bgzipCompressed ? new BlockCompressedOutputStream(outputFile) : null;
+		TabixIndexBuilder tabixIndexBuilder = bgzipCompressed ? new TabixIndexBuilder() : null;
+
+		try (BufferedReader vcfReader = createReader(vcfToAnnotate);
+				CaddScoreCursor caddScoreCursor = new CaddScoreCursor(caddWebserviceOutput);
+				OutputStream outputStream = bgzipOutputStream != null ? bgzipOutputStream : new BufferedOutputStream(
+						new FileOutputStream(outputFile), BUFFER_SIZE))
+		{
+			boolean hasCaddScaledHeader = false;
+			String line;
+			while ((line = vcfReader.readLine()) != null)
+			{
+				if (line.startsWith("##"))
+				{
+					hasCaddScaledHeader |= line.startsWith("##INFO=<ID=" + CADD_SCALED + ",");
+				}
+				else if (line.startsWith("#"))
+				{
+					if (!hasCaddScaledHeader)
+					{
+						writeLine(CADD_SCALED_HEADER_LINE, outputStream);
+					}
+				}
+				else
+				{
+					nrOfRecords++;
+					String[] fields = line.split("\t", 9);
+					String chromosome = fields[0];
+					int position = Integer.parseInt(fields[1]);
+					caddScoreCursor.moveTo(chromosome, position);
+					line = annotateLine(line, fields, caddScoreCursor);
+
+					long startOffset = bgzipOutputStream != null ? bgzipOutputStream.getFilePointer() : 0;
+					writeLine(line, outputStream);
+					if (tabixIndexBuilder != null)
+					{
+						tabixIndexBuilder.addRecord(chromosome, position, position + fields[3].length() - 1L,
+								startOffset, bgzipOutputStream.getFilePointer());
+					}
+					continue;
+				}
+				writeLine(line, outputStream);
+			}
+		}
+		if (tabixIndexBuilder != null)
+		{
+			tabixIndexBuilder.writeIndex(outputFile);
+		}
+
+		LOG.info("Annotated {} records, added {} CADD scores, {} alleles without CADD score remain", nrOfRecords,
+				nrOfScoresAdded, nrOfScoresMissing);
+	}
+
+	/**
+	 * @return the line with scores of the webservice added to CADD_SCALED, or the same line if none were added
+	 */
+	private String annotateLine(String line, String[] fields, CaddScoreCursor caddScoreCursor)
+	{
+		String ref = fields[3];
+		String[] alts = fields[4].split(",", -1);
+		String info = fields[7];
+
+		int caddStart = -1;
+		int caddEnd = -1;
+		String[] caddScores = null;
+		if (!info.equals(MISSING_VALUE))
+		{
+			int fieldStart = 0;
+			while (fieldStart < info.length())
+			{
+				int fieldEnd = info.indexOf(';', fieldStart);
+				if (fieldEnd == -1)
+				{
+					fieldEnd = info.length();
+				}
+				if (info.startsWith(CADD_SCALED + "=", fieldStart))
+				{
+					caddStart = fieldStart;
+					caddEnd = fieldEnd;
+					caddScores = info.substring(fieldStart + CADD_SCALED.length() + 1, fieldEnd).split(",", -1);
+					break;
+				}
+				fieldStart = fieldEnd + 1;
+			}
+		}
+		if (caddScores == null || caddScores.length != alts.length)
+		{
+			caddScores = new String[alts.length];
+		}
+
+		boolean updated = false;
+		for (int altIndex = 0; altIndex < alts.length; altIndex++)
+		{
+			String caddScore = caddScores[altIndex];
+			if (caddScore == null || caddScore.isEmpty() || caddScore.equals(MISSING_VALUE))
+			{
+				caddScore = caddScoreCursor.getScore(ref, alts[altIndex]);
+				if (caddScore != null)
+				{
+					caddScores[altIndex] = caddScore;
+					nrOfScoresAdded++;
+					updated = true;
+				}
+				else
+				{
+					caddScores[altIndex] = MISSING_VALUE;
+					nrOfScoresMissing++;
+				}
+			}
+		}
+		if (!updated)
+		{
+			return line;
+		}
+
+		String caddField = CADD_SCALED + "=" + String.join(",", caddScores);
+		String annotatedInfo;
+		if (caddStart != -1)
+		{
+			annotatedInfo = info.substring(0, caddStart) + caddField + info.substring(caddEnd);
+		}
+		else if (info.isEmpty() || info.equals(MISSING_VALUE))
+		{
+			annotatedInfo = caddField;
+		}
+		else
+		{
+			annotatedInfo = info + ";" + caddField;
+		}
+
+		StringBuilder annotatedLine = new StringBuilder(line.length() + caddField.length());
+		for (int i = 0; i < fields.length; i++)
+		{
+			if (i > 0)
+			{
+				annotatedLine.append('\t');
+			}
+			annotatedLine.append(i == 7 ? annotatedInfo : fields[i]);
+		}
+		return annotatedLine.toString();
+	}
+
+	private static void writeLine(String line, OutputStream outputStream) throws IOException
+	{
+		outputStream.write(line.getBytes(UTF_8));
+		outputStream.write('\n');
+	}
+
+	private static BufferedReader createReader(File file) throws IOException
+	{
+		InputStream inputStream = new FileInputStream(file);
+		if (file.getName().endsWith(".gz"))
+		{
+			inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+		}
+		return new BufferedReader(new InputStreamReader(inputStream, UTF_8), BUFFER_SIZE);
+	}
+
+	/**
+	 * Walks through the sorted webservice output along with the VCF and holds the scores at the current position.
+	 * Webservice lines on a chromosome that comes before the current VCF chromosome in the webservice output, or before
+	 * the current position, are skipped.
+	 */
+	private static class CaddScoreCursor implements Closeable
+	{
+		private final File file;
+		private final Map<String, Integer> chromosomeIndices;
+		private final BufferedReader reader;
+		private final Map<String, String> scoresAtPosition = new HashMap<>();
+		private String[] next;
+		private String chromosome;
+		private Integer chromosomeIndex;
+		private int position;
+
+		CaddScoreCursor(File file) throws IOException
+		{
+			this.file = file;
+			this.chromosomeIndices = readChromosomeIndices(file);
+			this.reader = createReader(file);
+			readNext();
+		}
+
+		/**
+		 * Reads the chromosome order of the webservice output in a pass of its own. The merge-join needs this order to
+		 * decide whether webservice lines on another chromosome than the current VCF chromosome come before it and are
+		 * skipped, or after it and are kept. Reading both files once, a VCF chromosome without webservice lines cannot
+		 * be told apart from one that comes later in the webservice output without buffering the rest of that output.
+		 * The webservice output only holds the variants without a CADD score, so this pass is small next to the VCF.
+		 *
+		 * @return index of each chromosome in the order of the webservice output
+		 */
+		private static Map<String, Integer> readChromosomeIndices(File file) throws IOException
+		{
+			Map<String, Integer> chromosomeIndices = new HashMap<>();
+			try (BufferedReader reader = createReader(file))
+			{
+				String previousChromosome = null;
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					if (line.startsWith("#"))
+					{
+						continue;
+					}
+					int chromosomeEnd = Math.max(line.indexOf('\t'), 0);
+					if (previousChromosome == null || chromosomeEnd != previousChromosome.length()
+							|| !line.startsWith(previousChromosome))
+					{
+						String chromosome = line.substring(0, chromosomeEnd);
+						if (chromosomeIndices.put(chromosome, chromosomeIndices.size()) != null)
+						{
+							throw new IOException(
+									"Chromosome " + chromosome + " is not contiguous in CADD webservice output file "
+											+ file.getAbsolutePath() + ". Please sort the webservice output.");
+						}
+						previousChromosome = chromosome;
+					}
+				}
+			}
+			return chromosomeIndices;
+		}
 
-		for (VcfRecord aVcfReader : vcfReader)
+		void moveTo(String chromosome, int position) throws IOException
 		{
-			GavinRecord vcfEntity = new GavinRecord(aVcfReader);
-			for (int altIndex = 0; altIndex < vcfEntity.getAlts().length; altIndex++)
+			if (chromosome.equals(this.chromosome))
+			{
+				if (position == this.position)
+				{
+					return;
+				}
+				if (position < this.position)
+				{
+					throw new IOException(
+							"Position " + chromosome + ":" + position + " is not sorted. Please sort your input VCF.");
+				}
+			}
+			else
 			{
-				if (vcfEntity.getCaddPhredScore(altIndex) == null)
+				chromosomeIndex = chromosomeIndices.get(chromosome);
+				if (chromosomeIndex != null && chromosomeIndex < getNextChromosomeIndex())
+				{
+					throw new IOException(
+							"Chromosome " + chromosome + " of the VCF comes earlier in CADD webservice output file "
+									+ file.getAbsolutePath() + ". Please sort both files in the same chromosome order.");
+				}
+			}
+			this.chromosome = chromosome;
+			this.position = position;
+			scoresAtPosition.clear();
+
+			while (next != null)
+			{
+				if (next[0].equals(chromosome))
+				{
+					int nextPosition = Integer.parseInt(next[1]);
+					if (nextPosition > position)
+					{
+						break;
+					}
+					if (nextPosition == position)
+					{
+						scoresAtPosition.put(next[2] + "\t" + next[3], next[5]);
+					}
+				}
+				else if (chromosomeIndex == null || chromosomeIndices.get(next[0]) > chromosomeIndex)
 				{
-					Double cadd = hmcs.dealWithCaddScores(vcfEntity, altIndex);
-					vcfEntity.setCaddPhredScore(altIndex, cadd);
-					System.out.println("setting missing CADD score " + cadd);
+					// webservice output is ahead of the VCF
+					break;
 				}
+				// else a chromosome that the VCF has passed or that is not in the VCF
+				readNext();
 			}
+		}
 
-			//TODO: need for cadd_scaled? this is a concatenation of the phredScores
-			//TODO: VcfWriterUtils.writeToVcf(record.getOrignalEntity(), outputVCFWriter);
-			//TODO: outputVCFWriter.newLine();
+		/**
+		 * @return index of the chromosome of the next webservice line, or the number of chromosomes at the end
+		 */
+		private int getNextChromosomeIndex()
+		{
+			return next != null ? chromosomeIndices.get(next[0]) : chromosomeIndices.size();
+		}
+
+		/**
+		 * @return PHRED score of the allele at the current position as written by the webservice, or null
+		 */
+		String getScore(String ref, String alt)
+		{
+			if (scoresAtPosition.isEmpty())
+			{
+				return null;
+			}
+			String score = scoresAtPosition.get(ref + "\t" + alt);
+			if (score == null)
+			{
+				score = scoresAtPosition.get(FixVcfAlleleNotation.backTrimRefAlt(ref, alt, "\t"));
+			}
+			return score;
 		}
 
-		//TODO: outputVCFWriter.flush();
-		//TODO: outputVCFWriter.close();
+		private void readNext() throws IOException
+		{
+			String line;
+			do
+			{
+				line = reader.readLine();
+			}
+			while (line != null && line.startsWith("#"));
+
+			if (line == null)
+			{
+				next = null;
+				return;
+			}
+			String[] split = line.split("\t", -1);
+			if (split.length != 6)
+			{
+				throw new IOException("Expected 6 columns in CADD webservice output file, found " + split.length);
+			}
+			next = split;
+		}
 
-		System.out.println("Done!");
+		@Override
+		public void close() throws IOException
+		{
+			reader.close();
+		}
 	}
 
 	public static void main(String[] args) throws Exception
@@ -6,14 +6,16 @@ import org.molgenis.data.vcf.utils.FixVcfAlleleNotation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Created by joeri on 6/1/16.
  */
-public class HandleMissingCaddScores
+public class HandleMissingCaddScores implements Closeable
 {
 	private static final Logger LOG = LoggerFactory.getLogger(HandleMissingCaddScores.class);
 
@@ -23,17 +25,28 @@ public class HandleMissingCaddScores
 	}
 
 	private Mode mode;
-	private PrintWriter pw;
+	private CaddRequestWriter caddRequestWriter;
 	private Map<String, Double> caddScores;
+	private CaddScoreCache caddScoreCache;
 
 	public HandleMissingCaddScores(Mode mode, File caddFile) throws Exception
+	{
+		this(mode, caddFile, null);
+	}
+
+	/**
+	 * @param caddScoreCache optional cache that is consulted before requesting a score and that learns the scores of
+	 *                       the CADD file in {@link Mode#ANALYSIS} mode
+	 */
+	public HandleMissingCaddScores(Mode mode, File caddFile, @Nullable CaddScoreCache caddScoreCache) throws Exception
 	{
 		this.mode = mode;
+		this.caddScoreCache = caddScoreCache;
 
 		//either print missing cadd scores to this file, or read from file to get them, depending on mode
 		if (mode.equals(Mode.CREATEFILEFORCADD))
 		{
-			this.pw = new PrintWriter(caddFile);
+			this.caddRequestWriter = new CaddRequestWriter(caddFile);
 		}
 		else if (mode.equals(Mode.ANALYSIS))
 		{
@@ -51,11 +64,16 @@ public class HandleMissingCaddScores
 		{
 			if (mode.equals(Mode.CREATEFILEFORCADD))
 			{
-				String trimmedRefAlt = FixVcfAlleleNotation.backTrimRefAlt(record.getRef(), record.getAlt(altIndex),
-						"\t");
-				this.pw.println(
-						record.getChromosome() + "\t" + record.getPosition() + "\t" + "." + "\t" + trimmedRefAlt);
-				this.pw.flush();
+				//only request scores that are not in the cache
+				Double cachedScore = getCachedScore(record, altIndex);
+				if (cachedScore != null)
+				{
+					return cachedScore;
+				}
+				String[] trimmedRefAlt = FixVcfAlleleNotation.backTrimRefAlt(record.getRef(),
+						record.getAlt(altIndex), "\t").split("\t", -1);
+				this.caddRequestWriter.write(record.getChromosome(), record.getPosition(), trimmedRefAlt[0],
+						trimmedRefAlt[1]);
 				return null;
 			}
 			else if (mode.equals(Mode.ANALYSIS))
@@ -65,6 +83,7 @@ public class HandleMissingCaddScores
 				if (this.caddScores.containsKey(key))
 				{
 					record.setCaddPhredScore(altIndex, this.caddScores.get(key));
+					cacheScore(record, altIndex, this.caddScores.get(key));
 				}
 				else
 				{
@@ -73,8 +92,14 @@ public class HandleMissingCaddScores
 					key = record.getChromosome() + "_" + record.getPosition() + "_" + trimmedRefAlt;
 					if (this.caddScores.containsKey(key))
 					{
+						cacheScore(record, altIndex, this.caddScores.get(key));
 						return this.caddScores.get(key);
 					}
+					Double cachedScore = getCachedScore(record, altIndex);
+					if (cachedScore != null)
+					{
+						return cachedScore;
+					}
 					else
 					{
 						LOG.warn(
@@ -94,4 +119,36 @@ public class HandleMissingCaddScores
 		return record.getCaddPhredScore(altIndex);
 
 	}
+
+	private Double getCachedScore(GavinRecord record, int altIndex) throws IOException
+	{
+		return caddScoreCache != null ? caddScoreCache.get(record.getChromosome(), record.getPosition(),
+				record.getRef(), record.getAlt(altIndex)) : null;
+	}
+
+	private void cacheScore(GavinRecord record, int altIndex, Double score) throws IOException
+	{
+		if (caddScoreCache != null && score != null)
+		{
+			caddScoreCache.put(record.getChromosome(), record.getPosition(), record.getRef(), record.getAlt(altIndex),
+					score);
+		}
+	}
+
+	/**
+	 * Completes the file with missing CADD scores in {@link Mode#CREATEFILEFORCADD} mode and writes new scores to the
+	 * cache, can be called more than once.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (caddRequestWriter != null)
+		{
+			caddRequestWriter.close();
+		}
+		if (caddScoreCache != null)
+		{
+			caddScoreCache.flush();
+		}
+	}
 }
@@ -13,10 +13,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,7 +27,10 @@ public class ReportedPathogenic
 {
 	private static final Logger LOG = LoggerFactory.getLogger(ReportedPathogenic.class);
 
-	private Map<String, AnnotatedVcfRecord> posRefAltToRepPatho;
+	/**
+	 * REPORTEDPATHOGENIC info per chrom_pos_ref_alt key, null if the variant has no such info
+	 */
+	private Map<String, String> posRefAltToRepPatho;
 
 	public ReportedPathogenic(File repPathoFile) throws Exception
 	{
@@ -38,37 +41,44 @@ public class ReportedPathogenic
 		while (cvIt.hasNext())
 		{
 			AnnotatedVcfRecord record = new AnnotatedVcfRecord(cvIt.next());
+			String repPathoInfo = record.getReportedPathogenic().orElse(null);
 			for (String alt : VcfRecordUtils.getAlts(record))
 			{
 				String trimmedRefAlt = FixVcfAlleleNotation.backTrimRefAlt(VcfRecordUtils.getRef(record), alt, "_");
 
 				String key = record.getChromosome() + "_" + record.getPosition() + "_" + trimmedRefAlt;
-				posRefAltToRepPatho.put(key, record);
+				posRefAltToRepPatho.put(key, repPathoInfo);
 			}
 		}
 	}
 
+	public ReportedPathogenic(Map<String, String> posRefAltToRepPatho)
+	{
+		this.posRefAltToRepPatho = posRefAltToRepPatho;
+	}
+
+	public Map<String, String> getPosRefAltToRepPatho()
+	{
+		return Collections.unmodifiableMap(posRefAltToRepPatho);
+	}
+
 	public Judgment classifyVariant(GavinRecord record, String alt, String gene)
 			throws Exception
 	{
 		String trimmedRefAlt = FixVcfAlleleNotation.backTrimRefAlt(record.getRef(), alt, "_");
 		String key = record.getChromosome() + "_" + record.getPosition() + "_" + trimmedRefAlt;
 
-		if (posRefAltToRepPatho.containsKey(key))
+		// e.g.
+		// REPORTEDPATHOGENIC=CLINVAR|NM_002074.4(GNB1):c.284T>C (p.Leu95Pro)|GNB1|Pathogenic
+		String repPathoInfo = posRefAltToRepPatho.get(key);
+		if (repPathoInfo != null)
 		{
-			// e.g.
-			// REPORTEDPATHOGENIC=CLINVAR|NM_002074.4(GNB1):c.284T>C (p.Leu95Pro)|GNB1|Pathogenic
-			Optional<String> repPatho = posRefAltToRepPatho.get(key).getReportedPathogenic();
-			if (repPatho.isPresent())
+			//SnpEff does not annotate MT genes by default.. but perhaps we can get gene name from info field
+			if(gene.equals("MT"))
 			{
-				String repPathoInfo = repPatho.get();
-				//SnpEff does not annotate MT genes by default.. but perhaps we can get gene name from info field
-				if(gene.equals("MT"))
-				{
-					gene = getMTgene(repPathoInfo);
-				}
-				return new Judgment(Judgment.Classification.Pathogenic, Judgment.Method.genomewide, gene, repPathoInfo, "GAVIN+RepPatho", "Reported pathogenic");
+				gene = getMTgene(repPathoInfo);
 			}
+			return new Judgment(Judgment.Classification.Pathogenic, Judgment.Method.genomewide, gene, repPathoInfo, "GAVIN+RepPatho", "Reported pathogenic");
 		}
 		return null;//TODO JvdV: return VOUS?
 	}
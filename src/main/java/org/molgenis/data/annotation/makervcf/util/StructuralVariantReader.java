@@ -0,0 +1,205 @@
+package org.molgenis.data.annotation.makervcf.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.broad.tribble.readers.TabixReader;
+import org.molgenis.data.annotation.makervcf.structs.IntervalTree;
+import org.molgenis.data.annotation.makervcf.structs.StructuralVariant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the deletions and duplications of a bgzip compressed and tabix indexed structural variant VCF, e.g. the
+ * diploidSV.vcf.gz of Manta, one chromosome at a time.
+ *
+ * Only the chromosome that was queried last is kept in memory, in an {@link IntervalTree}, so for a position sorted
+ * stream of queries every chromosome is read once. Variants that did not pass the filters, and genotypes without an
+ * alternative allele or with a sample filter other than PASS, are skipped. Chromosome names are matched with or without
+ * a 'chr' prefix.
+ */
+public class StructuralVariantReader implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(StructuralVariantReader.class);
+
+	private static final String TBI_EXTENSION = ".tbi";
+	private static final String CHR_PREFIX = "chr";
+	private static final int FIRST_SAMPLE_INDEX = 9;
+
+	private final TabixReader tabixReader;
+	private final String[] sampleNames;
+	private String currentChromosome;
+	private IntervalTree<StructuralVariant> currentTree;
+
+	public StructuralVariantReader(File svVcfFile) throws IOException
+	{
+		if (!new File(svVcfFile.getPath() + TBI_EXTENSION).isFile())
+		{
+			throw new FileNotFoundException("Tabix index not found for structural variant VCF " + svVcfFile
+					+ ", please create it with 'tabix -p vcf " + svVcfFile.getPath() + "'");
+		}
+		this.tabixReader = new TabixReader(svVcfFile.getPath());
+		this.sampleNames = readSampleNames(svVcfFile);
+	}
+
+	private String[] readSampleNames(File svVcfFile) throws IOException
+	{
+		String line;
+		while ((line = tabixReader.readLine()) != null && line.startsWith("##"))
+		{
+			// skip meta information
+		}
+		if (line == null || !line.startsWith("#CHROM"))
+		{
+			throw new IOException("Header line not found in structural variant VCF " + svVcfFile);
+		}
+		String[] columns = line.split("\t", -1);
+		String[] samples = new String[Math.max(columns.length - FIRST_SAMPLE_INDEX, 0)];
+		System.arraycopy(columns, FIRST_SAMPLE_INDEX, samples, 0, samples.length);
+		return samples;
+	}
+
+	/**
+	 * @return deletions and duplications overlapping the 1-based closed interval, ordered by start
+	 */
+	public synchronized List<StructuralVariant> getOverlapping(String chromosome, long start, long end)
+			throws IOException
+	{
+		if (!chromosome.equals(currentChromosome))
+		{
+			currentTree = readChromosome(chromosome);
+			currentChromosome = chromosome;
+		}
+		return currentTree.getOverlapping(start, end);
+	}
+
+	private IntervalTree<StructuralVariant> readChromosome(String chromosome) throws IOException
+	{
+		IntervalTree<StructuralVariant> tree = new IntervalTree<>();
+		String svChromosome = findChromosome(chromosome);
+		if (svChromosome == null)
+		{
+			return tree;
+		}
+
+		TabixReader.Iterator iterator = tabixReader.query(svChromosome);
+		String line;
+		while (iterator != null && (line = iterator.next()) != null)
+		{
+			StructuralVariant structuralVariant = parse(chromosome, line);
+			if (structuralVariant != null)
+			{
+				tree.add(structuralVariant.getStart(), structuralVariant.getEnd(), structuralVariant);
+			}
+		}
+		LOG.debug("[StructuralVariantReader] Read {} deletions and duplications on chromosome {}", tree.size(),
+				chromosome);
+		return tree;
+	}
+
+	private String findChromosome(String chromosome)
+	{
+		if (tabixReader.mChr2tid.containsKey(chromosome))
+		{
+			return chromosome;
+		}
+		String otherName = chromosome.startsWith(CHR_PREFIX) ?
+				chromosome.substring(CHR_PREFIX.length()) :
+				CHR_PREFIX + chromosome;
+		return tabixReader.mChr2tid.containsKey(otherName) ? otherName : null;
+	}
+
+	/**
+	 * @return the deletion or duplication of the line, or null for other or filtered variants
+	 */
+	private StructuralVariant parse(String chromosome, String line)
+	{
+		String[] columns = line.split("\t", -1);
+		String filter = columns[6];
+		if (!filter.equals("PASS") && !filter.equals("."))
+		{
+			return null;
+		}
+
+		long start = Long.parseLong(columns[1]);
+		long end = start + columns[3].length() - 1;
+		String svType = null;
+		for (String infoField : columns[7].split(";", -1))
+		{
+			if (infoField.startsWith("END="))
+			{
+				end = Long.parseLong(infoField.substring("END=".length()));
+			}
+			else if (infoField.startsWith("SVTYPE="))
+			{
+				svType = infoField.substring("SVTYPE=".length());
+			}
+		}
+		StructuralVariant.Type type;
+		if ("DEL".equals(svType))
+		{
+			type = StructuralVariant.Type.DEL;
+		}
+		else if ("DUP".equals(svType))
+		{
+			type = StructuralVariant.Type.DUP;
+		}
+		else
+		{
+			return null;
+		}
+
+		Map<String, String> sampleGenotypes = Collections.emptyMap();
+		if (columns.length > FIRST_SAMPLE_INDEX)
+		{
+			List<String> format = Arrays.asList(columns[8].split(":", -1));
+			int genotypeIndex = format.indexOf("GT");
+			int filterIndex = format.indexOf("FT");
+			sampleGenotypes = new HashMap<>();
+			for (int i = 0; i < sampleNames.length && FIRST_SAMPLE_INDEX + i < columns.length; i++)
+			{
+				String[] sampleFields = columns[FIRST_SAMPLE_INDEX + i].split(":", -1);
+				if (genotypeIndex == -1 || genotypeIndex >= sampleFields.length)
+				{
+					continue;
+				}
+				if (filterIndex != -1 && filterIndex < sampleFields.length && !sampleFields[filterIndex].equals(
+						"PASS") && !sampleFields[filterIndex].equals("."))
+				{
+					continue;
+				}
+				String genotype = sampleFields[genotypeIndex];
+				if (hasAltAllele(genotype))
+				{
+					sampleGenotypes.put(sampleNames[i], genotype);
+				}
+			}
+		}
+		return new StructuralVariant(chromosome, start, Math.max(start, end), type, sampleGenotypes);
+	}
+
+	private static boolean hasAltAllele(String genotype)
+	{
+		for (int i = 0; i < genotype.length(); i++)
+		{
+			char allele = genotype.charAt(i);
+			if (allele >= '1' && allele <= '9')
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void close()
+	{
+		tabixReader.close();
+	}
+}
@@ -1,31 +1,54 @@
 package org.molgenis.data.annotation.reportrvcf;
 
-import org.molgenis.calibratecadd.support.GavinUtils;
-import org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
 import org.molgenis.vcf.VcfReader;
 import org.molgenis.vcf.VcfRecord;
 import org.molgenis.vcf.VcfRecordUtils;
+import org.molgenis.vcf.meta.VcfMeta;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Created by joeri on 6/29/16.
  * <p>
  * False Omission Rate
  * <p>
- * TODO JvdV: make gene stream
+ * Counts per gene how many variants of a (likely) pathogenic gold standard VCF are detected in the RVCF that GAVIN-Plus
+ * produced for it. The RVCF records are a subset of the gold standard records in the same order, so the two files are
+ * merge-joined: both are read once in chunks of consecutive positions on one chromosome, and the chunks are counted in
+ * parallel. Only the chunks in progress and the counts per gene are kept in memory.
  */
 public class FOR
 {
+	private static final int CHUNK_SIZE = 10000;
 
-	private File originalVcfFile;
-	private File rvcfFile;
-	private File genesFORoutput;
+	private final File originalVcfFile;
+	private final File rvcfFile;
+	private final File genesFORoutput;
+	private final int nrOfThreads;
 
 	/*
 	args[0] = working dir (e.g. /Users/joeri/Desktop/GAVIN-APP/1000G_diag_FDR/FOR/)
@@ -41,25 +64,102 @@ public class FOR
 	}
 
 	public FOR(File originalVcfFile, File rvcfFile, File genesFORoutput)
+	{
+		this(originalVcfFile, rvcfFile, genesFORoutput, Runtime.getRuntime().availableProcessors());
+	}
+
+	public FOR(File originalVcfFile, File rvcfFile, File genesFORoutput, int nrOfThreads)
 	{
 		this.originalVcfFile = originalVcfFile;
 		this.rvcfFile = rvcfFile;
 		this.genesFORoutput = genesFORoutput;
-
+		this.nrOfThreads = nrOfThreads;
 	}
 
 	public void go() throws Exception
 	{
-		//first, since we don't know the original, read the input VCF file that was processed before
-		//and count how many pathogenic variants per gene should have been found
-		//assumes that all variants in this list are (likely) pathogenic
-		VcfReader vcf = GavinUtils.getVcfReader(originalVcfFile);
-		Iterator<VcfRecord> originalVcfIterator = vcf.iterator();
+		List<GeneResult> geneResults = compute(originalVcfFile, rvcfFile, nrOfThreads);
+
+		int expected = geneResults.stream().mapToInt(GeneResult::getExpected).sum();
+		int observed = geneResults.stream().mapToInt(GeneResult::getObserved).sum();
+		System.out.println("pathogenic variants: " + expected + ", detected: " + observed + ", missed: " + (expected
+				- observed));
+
+		write(geneResults, genesFORoutput);
+	}
+
+	/**
+	 * @return expected and observed pathogenic variant counts per gene, in order of first occurrence in the original VCF
+	 */
+	public static List<GeneResult> compute(File originalVcfFile, File rvcfFile, int nrOfThreads) throws Exception
+	{
+		Map<String, GeneResult> geneResults = new LinkedHashMap<>();
+		Deque<Future<Map<String, GeneResult>>> pending = new ArrayDeque<>();
+		ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+		try (VcfLineReader original = new VcfLineReader(originalVcfFile);
+				VcfLineReader rvcf = new VcfLineReader(rvcfFile))
+		{
+			Set<String> finishedChromosomes = new HashSet<>();
+			while (original.peek() != null)
+			{
+				//take the original records of the next positions of the current chromosome
+				String chromosome = getChromosome(original.peek());
+				List<String> originalLines = new ArrayList<>();
+				int lastPosition = -1;
+				while (original.peek() != null && getChromosome(original.peek()).equals(chromosome) && (
+						originalLines.size() < CHUNK_SIZE || getPosition(original.peek()) == lastPosition))
+				{
+					String line = original.next();
+					lastPosition = getPosition(line);
+					originalLines.add(line);
+				}
+				boolean chromosomeEnded = original.peek() == null || !getChromosome(original.peek()).equals(chromosome);
+
+				//take the RVCF records up to and including the last position
+				List<String> rvcfLines = new ArrayList<>();
+				while (rvcf.peek() != null)
+				{
+					String rvcfChromosome = getChromosome(rvcf.peek());
+					if (finishedChromosomes.contains(rvcfChromosome))
+					{
+						throw new Exception("RVCF record " + rvcfChromosome + ":" + getPosition(rvcf.peek())
+								+ " is not in the order of the original VCF");
+					}
+					if (!rvcfChromosome.equals(chromosome) || (!chromosomeEnded
+							&& getPosition(rvcf.peek()) > lastPosition))
+					{
+						break;
+					}
+					rvcfLines.add(rvcf.next());
+				}
+				if (chromosomeEnded)
+				{
+					finishedChromosomes.add(chromosome);
+				}
+
+				VcfMeta originalVcfMeta = original.getVcfMeta();
+				VcfMeta rvcfMeta = rvcf.getVcfMeta();
+				pending.addLast(executorService.submit(
+						() -> countChunk(originalLines, originalVcfMeta, rvcfLines, rvcfMeta)));
+				mergePending(pending, 2 * nrOfThreads, geneResults);
+			}
+			mergePending(pending, 0, geneResults);
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+		return new ArrayList<>(geneResults.values());
+	}
 
-		HashMap<String, String> variantToGene = new HashMap<>(); //e.g. 10_126092389_G_A -> OAT, 10_126097170_C_T -> OAT
-		while (originalVcfIterator.hasNext())
+	private static Map<String, GeneResult> countChunk(List<String> originalLines, VcfMeta originalVcfMeta,
+			List<String> rvcfLines, VcfMeta rvcfMeta) throws Exception
+	{
+		//assumes that all variants in the original VCF are (likely) pathogenic
+		Map<String, String> variantToGene = new LinkedHashMap<>(); //e.g. 10_126092389_G_A -> OAT, 10_126097170_C_T -> OAT
+		for (String line : originalLines)
 		{
-			GavinRecord record = new GavinRecord(originalVcfIterator.next());
+			GavinRecord record = new GavinRecord(new VcfRecord(originalVcfMeta, line.split("\t", -1)));
 
 			String gene;
 			// TODO check if : split is correct
@@ -80,75 +180,156 @@ public class FOR
 			variantToGene.put(
 					record.getChromosome() + "_" + record.getPosition() + "_" + record.getRef() + "_" + record.getAlt(),
 					gene);
+		}
 
+		Set<String> detectedVariants = new HashSet<>();
+		for (String line : rvcfLines)
+		{
+			VcfRecord record = new VcfRecord(rvcfMeta, line.split("\t", -1));
+			detectedVariants.add(record.getChromosome() + "_" + record.getPosition() + "_" + VcfRecordUtils.getRef(record)
+					+ "_" + VcfRecordUtils.getAlt(record));
 		}
 
-		System.out.println("pathogenic variants, size BEFORE removing detected variants: " + variantToGene.size());
+		Map<String, GeneResult> geneResults = new LinkedHashMap<>();
+		for (Map.Entry<String, String> variantEntry : variantToGene.entrySet())
+		{
+			GeneResult geneResult = geneResults.computeIfAbsent(variantEntry.getValue(), GeneResult::new);
+			geneResult.expected++;
+			if (detectedVariants.contains(variantEntry.getKey()))
+			{
+				geneResult.observed++;
+			}
+		}
+		return geneResults;
+	}
 
-		HashMap<String, Integer> countPerGeneExpected = new HashMap<>();
-		for (Map.Entry<String,String> variantEntry : variantToGene.entrySet())
+	private static void mergePending(Deque<Future<Map<String, GeneResult>>> pending, int maxPending,
+			Map<String, GeneResult> geneResults) throws Exception
+	{
+		while (pending.size() > maxPending)
 		{
-			String gene = variantEntry.getValue();
-			if (countPerGeneExpected.containsKey(gene))
+			Map<String, GeneResult> chunkResults;
+			try
 			{
-				countPerGeneExpected.put(gene, countPerGeneExpected.get(gene) + 1);
+				chunkResults = pending.removeFirst().get();
 			}
-			else
+			catch (ExecutionException e)
+			{
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			for (GeneResult chunkResult : chunkResults.values())
 			{
-				countPerGeneExpected.put(gene, 1);
+				GeneResult geneResult = geneResults.computeIfAbsent(chunkResult.gene, GeneResult::new);
+				geneResult.expected += chunkResult.expected;
+				geneResult.observed += chunkResult.observed;
 			}
 		}
+	}
 
-		System.out.println("gold standard patho variant counts per gene: " + countPerGeneExpected.toString());
+	private static String getChromosome(String line)
+	{
+		return line.substring(0, line.indexOf('\t'));
+	}
 
-		VcfReader rvcf = GavinUtils.getVcfReader(rvcfFile);
+	private static int getPosition(String line)
+	{
+		int start = line.indexOf('\t') + 1;
+		return Integer.parseInt(line.substring(start, line.indexOf('\t', start)));
+	}
 
-		//remove variants seen in in RVCF
-		for (VcfRecord aRvcf : rvcf)
+	public static void write(List<GeneResult> geneResults, File genesFORoutput) throws IOException
+	{
+		try (PrintWriter pw = new PrintWriter(genesFORoutput, UTF_8.name()))
 		{
-			AnnotatedVcfRecord record = new AnnotatedVcfRecord(aRvcf);
-			String key = record.getChromosome() + "_" + record.getPosition() + "_" + VcfRecordUtils.getRef(record) + "_"
-					+ VcfRecordUtils.getAlt(record);
-			variantToGene.remove(key);
+			pw.println("Gene" + "\t" + "Expected" + "\t" + "Observed" + "\t" + "MissedFrac");
+			for (GeneResult geneResult : geneResults)
+			{
+				pw.println(geneResult.gene + "\t" + geneResult.expected + "\t" + geneResult.observed + "\t"
+						+ geneResult.getMissedFrac());
+			}
 		}
+	}
 
-		System.out.println("pathogenic variants, size AFTER removing detected variants: " + variantToGene.size());
+	public static class GeneResult
+	{
+		private final String gene;
+		private int expected;
+		private int observed;
 
-		HashMap<String, Integer> countPerGeneLeftover = new HashMap<>();
+		GeneResult(String gene)
+		{
+			this.gene = gene;
+		}
+
+		public String getGene()
+		{
+			return gene;
+		}
 
-		for (String variant : variantToGene.keySet())
+		public int getExpected()
 		{
-			String gene = variantToGene.get(variant);
+			return expected;
+		}
+
+		public int getObserved()
+		{
+			return observed;
+		}
 
-			if (countPerGeneLeftover.containsKey(gene))
+		public double getMissedFrac()
+		{
+			return 1.0 - ((double) observed / (double) expected);
+		}
+	}
+
+	/**
+	 * Reads the data lines of a (gzipped) VCF file one ahead, the meta information is parsed up front.
+	 */
+	private static class VcfLineReader implements Closeable
+	{
+		private final BufferedReader reader;
+		private final VcfMeta vcfMeta;
+		private String nextLine;
+
+		VcfLineReader(File vcfFile) throws IOException
+		{
+			InputStream inputStream = new FileInputStream(vcfFile);
+			if (vcfFile.getName().endsWith(".gz"))
 			{
-				countPerGeneLeftover.put(gene, countPerGeneLeftover.get(gene) + 1);
+				inputStream = new GZIPInputStream(inputStream, 1 << 16);
 			}
-			else
+			reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8), 1 << 16);
+			StringBuilder header = new StringBuilder();
+			nextLine = reader.readLine();
+			while (nextLine != null && nextLine.startsWith("#"))
 			{
-				countPerGeneLeftover.put(gene, 1);
+				header.append(nextLine).append('\n');
+				nextLine = reader.readLine();
 			}
+			vcfMeta = new VcfReader(new StringReader(header.toString())).getVcfMeta();
 		}
 
-		System.out.println("left over variant counts per gene: " + countPerGeneLeftover.toString());
+		VcfMeta getVcfMeta()
+		{
+			return vcfMeta;
+		}
 
-		PrintWriter pw = new PrintWriter(genesFORoutput);
-		pw.println("Gene" + "\t" + "Expected" + "\t" + "Observed" + "\t" + "MissedFrac");
-		for (String gene : countPerGeneExpected.keySet())
+		String peek()
 		{
-			//if no leftovers, subtract 0
-			int subtract = 0;
-			if (countPerGeneLeftover.containsKey(gene))
-			{
-				//  System.out.println("countPerGeneLeftover.containsKey(gene) " + gene);
-				subtract = countPerGeneLeftover.get(gene);
-			}
-			int exp = countPerGeneExpected.get(gene);
-			int obs = (countPerGeneExpected.get(gene) - subtract);
-			pw.println(gene + "\t" + exp + "\t" + obs + "\t" + (1.0 - ((double) obs / (double) exp)));
+			return nextLine;
 		}
-		pw.flush();
-		pw.close();
 
+		String next() throws IOException
+		{
+			String line = nextLine;
+			nextLine = reader.readLine();
+			return line;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			reader.close();
+		}
 	}
 }
@@ -0,0 +1,445 @@
+package org.molgenis.data.annotation.reportrvcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarBlock;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarReader;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarWriter;
+import org.molgenis.data.annotation.makervcf.structs.RVCF;
+import org.molgenis.data.annotation.makervcf.structs.RVCFUtils;
+
+/**
+ * Computes the gene specific FDR counts (affected and carrier samples) and the hom/het counts of a cohort RVCF, e.g.
+ * 1000G, in a single pass. Both {@link FDR} and {@link HomHetCounts} use this class, calibration bundles are best
+ * regenerated by running its main method which writes both files at once.
+ *
+ * Genes and samples are interned to ids, per gene the counted samples are kept as bitsets. Input is processed in chunks
+ * of consecutive records of one chromosome (or in sidecar blocks) on a thread pool. The chunk results are merged in
+ * input order, so just like a sequential pass every sample is counted once per gene, in the category of the record
+ * where it was seen first.
+ */
+public class FdrHomHetAggregator
+{
+	private static final int CHUNK_SIZE = 10000;
+
+	private final int nrOfSamples;
+	private final int nrOfThreads;
+	private final Interner genes = new Interner();
+	private final Interner samples = new Interner();
+	private final GeneSamples total = new GeneSamples();
+
+	/*
+	args[0] = the 1000G FDR result file, RVCF or columnar sidecar (.rlvc), e.g. "ALL.chr1to22plusXYMT_RVCF_r1.0.vcf"
+	args[1] = the output FDR file, e.g. FDR_allGenes_r1.0.tsv
+	args[2] = the output homhetcounts, e.g. HomHetCounts_r1.0.tsv
+	args[3] = optional, the number of samples in the RVCF, default 2504
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		FdrHomHetAggregator aggregator = new FdrHomHetAggregator(args.length > 3 ? Integer.parseInt(args[3]) : 2504);
+		aggregator.aggregate(new File(args[0]));
+		aggregator.writeFdr(new File(args[1]));
+		aggregator.writeHomHetCounts(new File(args[2]));
+	}
+
+	public FdrHomHetAggregator(int nrOfSamples)
+	{
+		this(nrOfSamples, Runtime.getRuntime().availableProcessors());
+	}
+
+	public FdrHomHetAggregator(int nrOfSamples, int nrOfThreads)
+	{
+		this.nrOfSamples = nrOfSamples;
+		this.nrOfThreads = nrOfThreads;
+	}
+
+	/**
+	 * Adds the relevant variants of an RVCF with merged RLV field (optionally gzipped), or of a sidecar file written
+	 * next to it, to the counts.
+	 */
+	public void aggregate(File input) throws Exception
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+		try
+		{
+			if (input.getName().endsWith(RlvSidecarWriter.EXTENSION))
+			{
+				aggregateSidecar(input, executorService);
+			}
+			else
+			{
+				aggregateRvcf(input, executorService);
+			}
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+	}
+
+	private void aggregateRvcf(File rvcfFile, ExecutorService executorService) throws Exception
+	{
+		Deque<Future<GeneSamples>> pending = new ArrayDeque<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(openRvcf(rvcfFile), UTF_8), 1 << 16))
+		{
+			List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+			String chunkChromosome = null;
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.startsWith("#"))
+				{
+					continue;
+				}
+				String chromosome = line.substring(0, line.indexOf('\t'));
+				if (chunk.size() == CHUNK_SIZE || (!chunk.isEmpty() && !chromosome.equals(chunkChromosome)))
+				{
+					List<String> lines = chunk;
+					submit(executorService, pending, () -> aggregateLines(lines));
+					chunk = new ArrayList<>(CHUNK_SIZE);
+				}
+				chunkChromosome = chromosome;
+				chunk.add(line);
+			}
+			if (!chunk.isEmpty())
+			{
+				List<String> lines = chunk;
+				submit(executorService, pending, () -> aggregateLines(lines));
+			}
+		}
+		mergePending(pending, 0);
+	}
+
+	private static InputStream openRvcf(File rvcfFile) throws IOException
+	{
+		InputStream inputStream = new FileInputStream(rvcfFile);
+		return rvcfFile.getName().endsWith(".gz") ? new GZIPInputStream(inputStream, 1 << 16) : inputStream;
+	}
+
+	private GeneSamples aggregateLines(List<String> lines) throws Exception
+	{
+		GeneSamples geneSamples = new GeneSamples();
+		for (String line : lines)
+		{
+			String rlv = getMergedRlvValue(line);
+			if (rlv == null || rlv.equals(RVCFUtils.EMPTY_VALUE))
+			{
+				continue;
+			}
+			for (String rlvEntry : rlv.split(",", -1))
+			{
+				String[] fields = rlvEntry.split("\\|", -1);
+				if (fields.length != RVCF.NR_OF_FIELDS)
+				{
+					throw new RuntimeException("Splitting RVCF entry on '|' did not yield " + RVCF.NR_OF_FIELDS
+							+ " fields, invalid format? tried to split: " + rlvEntry + " but had " + fields.length
+							+ " fields");
+				}
+				GeneCounts geneCounts = geneSamples.get(genes.getId(fields[2]));
+				for (String sampleStatus : splitSamples(fields[10]))
+				{
+					int separator = sampleStatus.lastIndexOf(':');
+					geneCounts.addStatus(samples.getId(sampleStatus.substring(0, separator)),
+							Status.valueOf(sampleStatus.substring(separator + 1)));
+				}
+				for (String sampleGenotype : splitSamples(fields[12]))
+				{
+					int separator = sampleGenotype.lastIndexOf(':');
+					geneCounts.addGenotype(samples.getId(sampleGenotype.substring(0, separator)),
+							Status.isHomozygous(RVCFUtils.unEscapeGenotype(sampleGenotype.substring(separator + 1))));
+				}
+			}
+		}
+		return geneSamples;
+	}
+
+	/**
+	 * @return the raw value of the RLV field in the INFO column of a VCF line, or null when not present
+	 */
+	private static String getMergedRlvValue(String line)
+	{
+		int start = 0;
+		for (int column = 0; column < 7; column++)
+		{
+			start = line.indexOf('\t', start) + 1;
+			if (start == 0)
+			{
+				return null;
+			}
+		}
+		int end = line.indexOf('\t', start);
+		String info = end != -1 ? line.substring(start, end) : line.substring(start);
+		String key = RVCF.FIELD_NAME + '=';
+		int valueStart;
+		if (info.startsWith(key))
+		{
+			valueStart = key.length();
+		}
+		else
+		{
+			int keyIndex = info.indexOf(';' + key);
+			if (keyIndex == -1)
+			{
+				return null;
+			}
+			valueStart = keyIndex + 1 + key.length();
+		}
+		int valueEnd = info.indexOf(';', valueStart);
+		return valueEnd != -1 ? info.substring(valueStart, valueEnd) : info.substring(valueStart);
+	}
+
+	private static String[] splitSamples(String samples)
+	{
+		return samples.isEmpty() ? new String[0] : samples.split(RVCFUtils.RVCF_SAMPLESEP, -1);
+	}
+
+	private void aggregateSidecar(File sidecarFile, ExecutorService executorService) throws Exception
+	{
+		Deque<Future<GeneSamples>> pending = new ArrayDeque<>();
+		try (RlvSidecarReader reader = new RlvSidecarReader(sidecarFile))
+		{
+			int[] geneIds = genes.getIds(reader.getGenes());
+			int[] sampleIds = samples.getIds(reader.getSamples());
+			boolean[] homozygous = new boolean[reader.getGenotypes().size()];
+			for (int i = 0; i < homozygous.length; i++)
+			{
+				homozygous[i] = Status.isHomozygous(reader.getGenotypes().get(i));
+			}
+
+			for (int blockIndex = 0; blockIndex < reader.getNrOfBlocks(); blockIndex++)
+			{
+				RlvSidecarBlock block = reader.readBlock(blockIndex);
+				submit(executorService, pending, () -> aggregateBlock(block, geneIds, sampleIds, homozygous));
+			}
+			mergePending(pending, 0);
+		}
+	}
+
+	private static GeneSamples aggregateBlock(RlvSidecarBlock block, int[] geneIds, int[] sampleIds,
+			boolean[] homozygous) throws Exception
+	{
+		GeneSamples geneSamples = new GeneSamples();
+		for (int entry = 0; entry < block.size(); entry++)
+		{
+			GeneCounts geneCounts = geneSamples.get(geneIds[block.getGene(entry)]);
+			for (int i = block.getStatusStart(entry); i < block.getStatusEnd(entry); i++)
+			{
+				geneCounts.addStatus(sampleIds[block.getStatusSample(i)], block.getStatus(i));
+			}
+			for (int i = block.getGenotypeStart(entry); i < block.getGenotypeEnd(entry); i++)
+			{
+				geneCounts.addGenotype(sampleIds[block.getGenotypeSample(i)], homozygous[block.getGenotype(i)]);
+			}
+		}
+		return geneSamples;
+	}
+
+	/**
+	 * Submits a chunk and merges finished chunks in order, limiting the number of chunks in memory.
+	 */
+	private void submit(ExecutorService executorService, Deque<Future<GeneSamples>> pending,
+			Callable<GeneSamples> chunk) throws Exception
+	{
+		pending.addLast(executorService.submit(chunk));
+		mergePending(pending, 2 * nrOfThreads);
+	}
+
+	private void mergePending(Deque<Future<GeneSamples>> pending, int maxPending) throws Exception
+	{
+		while (pending.size() > maxPending)
+		{
+			try
+			{
+				total.merge(pending.removeFirst().get());
+			}
+			catch (ExecutionException e)
+			{
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+	}
+
+	public void writeFdr(File outputFDR) throws IOException
+	{
+		try (PrintWriter pw = new PrintWriter(outputFDR, UTF_8.name()))
+		{
+			pw.println(FDR.HEADER);
+			for (GeneCounts geneCounts : total.geneOrder)
+			{
+				int affected = geneCounts.affectedSamples.cardinality();
+				int carrier = geneCounts.statusSamples.cardinality() - affected;
+				pw.println(genes.getValue(geneCounts.gene) + "\t" + affected + "\t" + carrier + "\t"
+						+ (((double) affected) / ((double) nrOfSamples)) + "\t" + (((double) carrier)
+						/ ((double) nrOfSamples)));
+			}
+		}
+	}
+
+	public void writeHomHetCounts(File outputHHC) throws IOException
+	{
+		try (PrintWriter pw = new PrintWriter(outputHHC, UTF_8.name()))
+		{
+			pw.println(HomHetCounts.HEADER);
+			for (GeneCounts geneCounts : total.geneOrder)
+			{
+				int hom = geneCounts.homozygousSamples.cardinality();
+				int het = geneCounts.genotypeSamples.cardinality() - hom;
+				pw.println(genes.getValue(geneCounts.gene) + "\t" + hom + "\t" + het + "\t" + (((double) hom)
+						/ ((double) nrOfSamples)) + "\t" + (((double) het) / ((double) nrOfSamples)));
+			}
+		}
+	}
+
+	/**
+	 * Genes and the samples counted for them in a part of the input, genes in order of first occurrence.
+	 */
+	private static class GeneSamples
+	{
+		private GeneCounts[] genes = new GeneCounts[1024];
+		private final List<GeneCounts> geneOrder = new ArrayList<>();
+
+		GeneCounts get(int gene)
+		{
+			if (gene >= genes.length)
+			{
+				genes = Arrays.copyOf(genes, Math.max(gene + 1, genes.length * 2));
+			}
+			GeneCounts geneCounts = genes[gene];
+			if (geneCounts == null)
+			{
+				geneCounts = new GeneCounts(gene);
+				genes[gene] = geneCounts;
+				geneOrder.add(geneCounts);
+			}
+			return geneCounts;
+		}
+
+		/**
+		 * Merges the counts of the input part directly following the parts merged so far.
+		 */
+		void merge(GeneSamples next)
+		{
+			for (GeneCounts nextGeneCounts : next.geneOrder)
+			{
+				GeneCounts geneCounts = get(nextGeneCounts.gene);
+				mergeFirstSeen(geneCounts.statusSamples, geneCounts.affectedSamples, nextGeneCounts.statusSamples,
+						nextGeneCounts.affectedSamples);
+				mergeFirstSeen(geneCounts.genotypeSamples, geneCounts.homozygousSamples,
+						nextGeneCounts.genotypeSamples, nextGeneCounts.homozygousSamples);
+			}
+		}
+
+		private static void mergeFirstSeen(BitSet seen, BitSet flagged, BitSet nextSeen, BitSet nextFlagged)
+		{
+			BitSet newlyFlagged = (BitSet) nextFlagged.clone();
+			newlyFlagged.andNot(seen);
+			flagged.or(newlyFlagged);
+			seen.or(nextSeen);
+		}
+	}
+
+	/**
+	 * Samples of one gene, counted in the category in which they were seen first.
+	 */
+	private static class GeneCounts
+	{
+		private final int gene;
+		private final BitSet statusSamples = new BitSet();
+		private final BitSet affectedSamples = new BitSet();
+		private final BitSet genotypeSamples = new BitSet();
+		private final BitSet homozygousSamples = new BitSet();
+
+		GeneCounts(int gene)
+		{
+			this.gene = gene;
+		}
+
+		void addStatus(int sample, Status status) throws Exception
+		{
+			boolean affected = Status.isPresumedAffected(status);
+			if (!affected && !Status.isPresumedCarrier(status))
+			{
+				throw new Exception("ERROR: Unknown sample Status: " + status);
+			}
+			if (!statusSamples.get(sample))
+			{
+				statusSamples.set(sample);
+				affectedSamples.set(sample, affected);
+			}
+		}
+
+		void addGenotype(int sample, boolean homozygous)
+		{
+			if (!genotypeSamples.get(sample))
+			{
+				genotypeSamples.set(sample);
+				homozygousSamples.set(sample, homozygous);
+			}
+		}
+	}
+
+	/**
+	 * Thread safe mapping of strings to consecutive ids.
+	 */
+	private static class Interner
+	{
+		private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		int getId(String value)
+		{
+			Integer id = ids.get(value);
+			if (id == null)
+			{
+				synchronized (this)
+				{
+					id = ids.get(value);
+					if (id == null)
+					{
+						id = values.size();
+						values.add(value);
+						ids.put(value, id);
+					}
+				}
+			}
+			return id;
+		}
+
+		int[] getIds(List<String> values)
+		{
+			int[] result = new int[values.size()];
+			for (int i = 0; i < result.length; i++)
+			{
+				result[i] = getId(values.get(i));
+			}
+			return result;
+		}
+
+		synchronized String getValue(int id)
+		{
+			return values.get(id);
+		}
+	}
+}
@@ -1,7 +1,196 @@
 package org.molgenis.data.annotation.reportrvcf;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneStream;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
+import org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord;
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.RVCF;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.vcf.VcfReader;
+import org.molgenis.vcf.VcfRecord;
+
 /**
  * Created by joeri on 6/1/16.
+ *
+ * Per gene summary of the relevant variants: number of relevant variants, affected, carrier and compound
+ * heterozygous samples, variant significance sources and FDR.
+ *
+ * Attached to the gene stream of the pipeline the summary of a gene is written as soon as its gene stream window is
+ * processed, see {@link #perGene(String, List)}. Run on an RVCF file the genes are windowed the same way, a window
+ * ends at the first record that shares no gene with the previous record. In both cases only the genes of the current
+ * window are kept in memory, a gene that occurs in multiple windows gets a line per window.
  */
-public class GeneCentricReport {
+public class GeneCentricReport extends GeneStream implements Closeable
+{
+	public static final String EXTENSION = ".genes.tsv";
+	public static final String HEADER =
+			"Gene" + "\t" + "RelevantVariants" + "\t" + "AffectedSamples" + "\t" + "CarrierSamples" + "\t"
+					+ "CompoundHetSamples" + "\t" + "SignificanceSources" + "\t" + "FDR";
+
+	private final PrintWriter pw;
+
+	// args[0] = RVCF file, e.g. GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf
+	// args[1] = output gene report, e.g. GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf.genes.tsv
+	public static void main(String[] args) throws Exception
+	{
+		writeReport(new File(args[0]), new File(args[1]));
+	}
+
+	/**
+	 * Summarizes the genes of the relevant variants that stream through, the records are passed on unchanged.
+	 */
+	public GeneCentricReport(Iterator<GavinRecord> relevantVariants, File reportFile) throws IOException
+	{
+		super(relevantVariants);
+		this.pw = createReportWriter(reportFile);
+	}
+
+	@Override
+	public void perGene(String gene, List<GavinRecord> gavinRecords)
+	{
+		GeneSummary geneSummary = new GeneSummary(gene);
+		GavinRecord previousRecord = null;
+		for (GavinRecord gavinRecord : gavinRecords)
+		{
+			// a record with multiple relevant alleles for this gene is added to the gene window for each allele
+			if (gavinRecord == previousRecord)
+			{
+				continue;
+			}
+			previousRecord = gavinRecord;
+			for (Relevance rlv : gavinRecord.getRelevance())
+			{
+				if (rlv.getGene().equals(gene))
+				{
+					geneSummary.add(rlv.getFDR(), rlv.getJudgment().getSource(), rlv.getSampleStatus());
+				}
+			}
+		}
+		pw.println(geneSummary);
+	}
+
+	@Override
+	public void close()
+	{
+		pw.close();
+	}
+
+	/**
+	 * Writes the report for an RVCF file with merged RLV field.
+	 */
+	public static void writeReport(File rvcfFile, File reportFile) throws IOException
+	{
+		VcfReader vcf = GavinUtils.getVcfReader(rvcfFile);
+		try (PrintWriter pw = createReportWriter(reportFile))
+		{
+			Map<String, GeneSummary> window = new LinkedHashMap<>();
+			Set<String> previousGenes = Collections.emptySet();
+			for (VcfRecord vcfRecord : vcf)
+			{
+				List<RVCF> rvcfs = new AnnotatedVcfRecord(vcfRecord).getRvcf();
+				Set<String> currentGenes = new HashSet<>();
+				for (RVCF rvcf : rvcfs)
+				{
+					currentGenes.add(rvcf.getGene());
+				}
+				if (!currentGenes.isEmpty() && Collections.disjoint(previousGenes, currentGenes))
+				{
+					window.values().forEach(pw::println);
+					window.clear();
+				}
+				for (RVCF rvcf : rvcfs)
+				{
+					window.computeIfAbsent(rvcf.getGene(), GeneSummary::new)
+						  .add(rvcf.getFDR(), rvcf.getVariantSignificanceSource(), rvcf.getSampleStatus());
+				}
+				if (!currentGenes.isEmpty())
+				{
+					previousGenes = currentGenes;
+				}
+			}
+			window.values().forEach(pw::println);
+		}
+		finally
+		{
+			vcf.close();
+		}
+	}
+
+	private static PrintWriter createReportWriter(File reportFile) throws IOException
+	{
+		PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), UTF_8)));
+		pw.println(HEADER);
+		return pw;
+	}
+
+	private static class GeneSummary
+	{
+		private final String gene;
+		private int nrOfRelevantVariants;
+		private final Set<String> affectedSamples = new HashSet<>();
+		private final Set<String> carrierSamples = new HashSet<>();
+		private final Set<String> compoundHetSamples = new HashSet<>();
+		private final Set<String> significanceSources = new TreeSet<>();
+		private String fdr;
+
+		GeneSummary(String gene)
+		{
+			this.gene = gene;
+		}
+
+		void add(String fdr, String significanceSource, Map<String, Status> sampleStatus)
+		{
+			nrOfRelevantVariants++;
+			if (this.fdr == null && fdr != null && !fdr.isEmpty())
+			{
+				this.fdr = fdr;
+			}
+			if (significanceSource != null && !significanceSource.isEmpty())
+			{
+				significanceSources.add(significanceSource);
+			}
+			for (Map.Entry<String, Status> entry : sampleStatus.entrySet())
+			{
+				Status status = entry.getValue();
+				if (Status.isPresumedAffected(status))
+				{
+					affectedSamples.add(entry.getKey());
+				}
+				else if (Status.isPresumedCarrier(status))
+				{
+					carrierSamples.add(entry.getKey());
+				}
+				if (Status.isCompound(status))
+				{
+					compoundHetSamples.add(entry.getKey());
+				}
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return gene + "\t" + nrOfRelevantVariants + "\t" + affectedSamples.size() + "\t" + carrierSamples.size()
+					+ "\t" + compoundHetSamples.size() + "\t" + (significanceSources.isEmpty() ? "NA" : String.join(
+					",", significanceSources)) + "\t" + (fdr != null ? fdr : "NA");
+		}
+	}
 }
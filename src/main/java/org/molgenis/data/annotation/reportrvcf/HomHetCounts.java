@@ -1,25 +1,18 @@
 package org.molgenis.data.annotation.reportrvcf;
 
-import org.molgenis.calibratecadd.support.GavinUtils;
-import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
-import org.molgenis.data.annotation.makervcf.structs.RVCF;
-import org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord;
-import org.molgenis.vcf.VcfReader;
-import org.molgenis.vcf.VcfRecord;
-
 import java.io.File;
-import java.io.PrintWriter;
-import java.util.*;
 
 /**
  *
  * Hom and Het counts
  *
+ * Use {@link FdrHomHetAggregator} to write the FDR file in the same pass.
+ *
  */
 public class HomHetCounts {
 
-    private VcfReader vcf;
-    private PrintWriter pw;
+    private File rvcfInput;
+    private File outputHHC;
     int nrOfSamples;
 
 
@@ -34,66 +27,17 @@ public class HomHetCounts {
 
 
     public HomHetCounts(File rvcfInput, File outputHHC, int nrOfSamples) throws Exception {
-        this.vcf = GavinUtils.getVcfReader(rvcfInput);
-        this.pw = new PrintWriter(outputHHC);
+        this.rvcfInput = rvcfInput;
+        this.outputHHC = outputHHC;
         this.nrOfSamples = nrOfSamples;
     }
 
     public void go() throws Exception {
 
-        Map<String, Integer> geneToHom = new HashMap<>();
-        Map<String, Integer> geneToHet = new HashMap<>();
-
         //make sure we only count every sample once per gene
-        Set<String> sampleGeneCombo = new HashSet<>();
-
-        for (VcfRecord aVcf : vcf)
-        {
-
-            AnnotatedVcfRecord record = new AnnotatedVcfRecord(aVcf);
-
-            for (RVCF rvcf : record.getRvcf())
-            {
-
-                String gene = rvcf.getGene();
-
-                if (!geneToHom.containsKey(gene))
-                {
-                    geneToHom.put(gene, 0);
-                    geneToHet.put(gene, 0);
-                }
-
-                for (String sample : rvcf.getSampleGenotype().keySet())
-                {
-                    if (Status.isHomozygous(rvcf.getSampleGenotype().get(sample)))
-                    {
-                        if (!sampleGeneCombo.contains(gene + "_" + sample))
-                        {
-                            int count = geneToHom.get(gene);
-                            geneToHom.put(gene, count + 1);
-                            sampleGeneCombo.add(gene + "_" + sample);
-                        }
-
-                    }
-
-                    if (!sampleGeneCombo.contains(gene + "_" + sample))
-                    {
-                        int count = geneToHet.get(gene);
-                        geneToHet.put(gene, count + 1);
-                        sampleGeneCombo.add(gene + "_" + sample);
-                    }
-                }
-            }
-        }
-
-        pw.println(HEADER);
-        for(String gene : geneToHom.keySet())
-        {
-            pw.println(gene + "\t" + geneToHom.get(gene) + "\t" + geneToHet.get(gene)+ "\t" + (((double)geneToHom.get(gene))/((double)nrOfSamples)) + "\t" + (((double)geneToHet.get(gene))/((double)nrOfSamples)));
-        }
-
-        pw.flush();
-        pw.close();
+        FdrHomHetAggregator aggregator = new FdrHomHetAggregator(nrOfSamples);
+        aggregator.aggregate(rvcfInput);
+        aggregator.writeHomHetCounts(outputHHC);
 
     }
 
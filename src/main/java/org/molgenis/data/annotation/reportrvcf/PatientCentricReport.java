@@ -1,7 +1,308 @@
 package org.molgenis.data.annotation.reportrvcf;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
+import org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord;
+import org.molgenis.data.annotation.makervcf.structs.RVCF;
+import org.molgenis.vcf.VcfReader;
+import org.molgenis.vcf.VcfRecord;
+import org.molgenis.vcf.VcfRecordUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Created by joeri on 6/1/16.
+ *
+ * Writes a report per sample with the relevant variants of that sample, in RVCF order.
+ *
+ * The gene and position ordered relevance entries are pivoted to sample order in two steps. First the RVCF is streamed
+ * into gzipped spill files, sharded by sample index, with at most bufferSize entries held in memory at any time. Then
+ * the shards are finalized in parallel, each shard is read once and its entries are streamed to the reports of its
+ * samples.
  */
-public class PatientCentricReport {
+public class PatientCentricReport
+{
+	private static final Logger LOG = LoggerFactory.getLogger(PatientCentricReport.class);
+
+	public static final String EXTENSION = ".patient.tsv";
+	public static final String HEADER =
+			"Chr" + "\t" + "Pos" + "\t" + "Ref" + "\t" + "Alt" + "\t" + "Gene" + "\t" + "Status" + "\t" + "Genotype"
+					+ "\t" + "VariantSignificance" + "\t" + "VariantSignificanceSource" + "\t" + "Phenotype" + "\t"
+					+ "PhenotypeInheritance";
+
+	static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	static final int DEFAULT_NR_OF_SHARDS = 64;
+
+	private final File rvcfFile;
+	private final File outputDir;
+	private final int bufferSize;
+	private final int nrOfShards;
+	private final int nrOfThreads;
+	private final Map<String, File> reportFiles = new HashMap<>();
+
+	/*
+	args[0] = RVCF file, e.g. GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf
+	args[1] = output directory for the reports, one <sample>.patient.tsv per sample
+	args[2] = optional, maximum number of relevance entries buffered in memory, default 1048576
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BUFFER_SIZE;
+		new PatientCentricReport(new File(args[0]), new File(args[1]), bufferSize, DEFAULT_NR_OF_SHARDS,
+				Runtime.getRuntime().availableProcessors()).go();
+	}
+
+	public PatientCentricReport(File rvcfFile, File outputDir, int bufferSize, int nrOfShards, int nrOfThreads)
+	{
+		this.rvcfFile = rvcfFile;
+		this.outputDir = outputDir;
+		this.bufferSize = bufferSize;
+		this.nrOfShards = nrOfShards;
+		this.nrOfThreads = nrOfThreads;
+	}
+
+	public void go() throws Exception
+	{
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+		{
+			throw new IOException("Could not create output directory " + outputDir);
+		}
+		File[] spillFiles = new File[nrOfShards];
+		for (int shard = 0; shard < nrOfShards; shard++)
+		{
+			spillFiles[shard] = File.createTempFile("patientcentricreport_shard" + shard + "_", ".tsv.gz");
+			spillFiles[shard].deleteOnExit();
+		}
+		try
+		{
+			List<String> samples = spill(spillFiles);
+			LOG.debug("[PatientCentricReport] Spilled relevance entries of {} samples, finalizing reports",
+					samples.size());
+			finalizeReports(spillFiles, createReportFiles(samples));
+		}
+		finally
+		{
+			for (File spillFile : spillFiles)
+			{
+				spillFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Streams the relevance entries of the RVCF to the spill files, prefixed with the sample index.
+	 *
+	 * @return sample names by sample index
+	 */
+	private List<String> spill(File[] spillFiles) throws IOException
+	{
+		Map<String, Integer> sampleIndices = new HashMap<>();
+		List<String> samples = new ArrayList<>();
+		StringBuilder[] buffers = new StringBuilder[nrOfShards];
+		Writer[] writers = new Writer[nrOfShards];
+		for (int shard = 0; shard < nrOfShards; shard++)
+		{
+			buffers[shard] = new StringBuilder();
+			writers[shard] = new OutputStreamWriter(
+					new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(spillFiles[shard]), 1 << 16)),
+					UTF_8);
+		}
+
+		VcfReader vcf = GavinUtils.getVcfReader(rvcfFile);
+		try
+		{
+			int nrOfBufferedEntries = 0;
+			for (VcfRecord vcfRecord : vcf)
+			{
+				AnnotatedVcfRecord record = new AnnotatedVcfRecord(vcfRecord);
+				String variant = record.getChromosome() + "\t" + record.getPosition() + "\t"
+						+ VcfRecordUtils.getRef(record);
+				for (RVCF rvcf : record.getRvcf())
+				{
+					for (Map.Entry<String, Status> sampleStatus : rvcf.getSampleStatus().entrySet())
+					{
+						String sample = sampleStatus.getKey();
+						Integer sampleIndex = sampleIndices.get(sample);
+						if (sampleIndex == null)
+						{
+							sampleIndex = samples.size();
+							samples.add(sample);
+							sampleIndices.put(sample, sampleIndex);
+						}
+						String genotype = rvcf.getSampleGenotype().get(sample);
+						buffers[sampleIndex % nrOfShards].append(sampleIndex)
+														 .append('\t')
+														 .append(variant)
+														 .append('\t')
+														 .append(rvcf.getAllele())
+														 .append('\t')
+														 .append(rvcf.getGene())
+														 .append('\t')
+														 .append(sampleStatus.getValue())
+														 .append('\t')
+														 .append(genotype != null ? genotype : "NA")
+														 .append('\t')
+														 .append(rvcf.getVariantSignificance())
+														 .append('\t')
+														 .append(rvcf.getVariantSignificanceSource())
+														 .append('\t')
+														 .append(rvcf.getPhenotype())
+														 .append('\t')
+														 .append(rvcf.getPhenotypeInheritance())
+														 .append('\n');
+						if (++nrOfBufferedEntries == bufferSize)
+						{
+							flush(buffers, writers);
+							nrOfBufferedEntries = 0;
+						}
+					}
+				}
+			}
+			flush(buffers, writers);
+		}
+		finally
+		{
+			vcf.close();
+			for (Writer writer : writers)
+			{
+				writer.close();
+			}
+		}
+		return samples;
+	}
+
+	private static void flush(StringBuilder[] buffers, Writer[] writers) throws IOException
+	{
+		for (int shard = 0; shard < buffers.length; shard++)
+		{
+			writers[shard].append(buffers[shard]);
+			buffers[shard].setLength(0);
+		}
+	}
+
+	/**
+	 * Report files are named after the sample with other characters than letters, digits, '.', '_' and '-' replaced.
+	 * When the names of samples collide, also when they only differ in case, a suffix is added to the later ones.
+	 *
+	 * @return report files by sample index
+	 */
+	private List<File> createReportFiles(List<String> samples)
+	{
+		reportFiles.clear();
+		List<File> reportFilesBySampleIndex = new ArrayList<>(samples.size());
+		Set<String> fileNames = new HashSet<>();
+		for (String sample : samples)
+		{
+			String baseName = sample.replaceAll("[^A-Za-z0-9._-]", "_");
+			String fileName = baseName + EXTENSION;
+			for (int suffix = 2; !fileNames.add(fileName.toLowerCase(Locale.ROOT)); suffix++)
+			{
+				fileName = baseName + "_" + suffix + EXTENSION;
+			}
+			if (!fileName.equals(baseName + EXTENSION))
+			{
+				LOG.warn("[PatientCentricReport] Report file name of sample '{}' is already in use, writing {}", sample,
+						fileName);
+			}
+			File reportFile = new File(outputDir, fileName);
+			reportFiles.put(sample, reportFile);
+			reportFilesBySampleIndex.add(reportFile);
+		}
+		return reportFilesBySampleIndex;
+	}
+
+	private void finalizeReports(File[] spillFiles, List<File> reportFiles) throws Exception
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<>(nrOfShards);
+			for (File spillFile : spillFiles)
+			{
+				futures.add(executorService.submit(() -> finalizeShard(spillFile, reportFiles)));
+			}
+			for (Future<Void> future : futures)
+			{
+				try
+				{
+					future.get();
+				}
+				catch (ExecutionException e)
+				{
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+	}
+
+	private static Void finalizeShard(File spillFile, List<File> reportFiles) throws IOException
+	{
+		Map<Integer, Writer> reportWriters = new HashMap<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new GZIPInputStream(new FileInputStream(spillFile), 1 << 16), UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				int separator = line.indexOf('\t');
+				int sampleIndex = Integer.parseInt(line.substring(0, separator));
+				Writer reportWriter = reportWriters.get(sampleIndex);
+				if (reportWriter == null)
+				{
+					reportWriter = new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(reportFiles.get(sampleIndex)), UTF_8));
+					reportWriter.write(HEADER);
+					reportWriter.write('\n');
+					reportWriters.put(sampleIndex, reportWriter);
+				}
+				reportWriter.write(line, separator + 1, line.length() - separator - 1);
+				reportWriter.write('\n');
+			}
+		}
+		finally
+		{
+			for (Writer reportWriter : reportWriters.values())
+			{
+				reportWriter.close();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return report file of the sample, or null if the sample has no relevant variants
+	 */
+	File getReportFile(String sample)
+	{
+		return reportFiles.get(sample);
+	}
 }
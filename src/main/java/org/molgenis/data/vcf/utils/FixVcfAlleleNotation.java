@@ -7,9 +7,13 @@ import java.io.PrintWriter;
 import java.net.URL;
 import java.util.Scanner;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class FixVcfAlleleNotation
 {
+	private static final Logger LOG = LoggerFactory.getLogger(FixVcfAlleleNotation.class);
+
 	/**
 	 * Fix N notation in VCFs produced by Ensembl VEP web service.
 	 * 
@@ -38,15 +42,20 @@ public class FixVcfAlleleNotation
 	 * So we want either ref or alt to be 1 basepair, which is the right way to express variants in VCF format.
 	 * This is why we do a check and fix it here.
 	 * 
+	 * Usage: FixVcfAlleleNotation [input VCF] [output VCF] [reference FASTA]
 	 * 
+	 * The replacement bases are read from the reference FASTA, which must be indexed with 'samtools faidx'.
+	 * Without a reference FASTA they are requested from the UCSC DAS server, one request per variant.
 	 * 
 	 */
 	public static void main(String[] args) throws Exception
 	{
 		File in = new File(args[0]);
 		File out = new File(args[1]);
+		File fasta = args.length > 2 ? new File(args[2]) : null;
 
-		try (PrintWriter pw = new PrintWriter(out))
+		try (PrintWriter pw = new PrintWriter(out);
+				IndexedFastaReader reference = fasta != null ? new IndexedFastaReader(fasta) : null)
 		{
 			try (Scanner s = new Scanner(in)){
 			String line;
@@ -120,29 +129,17 @@ public class FixVcfAlleleNotation
 					throw new Exception("either ref " + ref + " or alt " + alt + " starts with N, not expected this");
 				}
 
-				String replacementRefBase = "if you see this, we did not get a replacement base while we needed one!";
+				String fixedRef = ref;
+				String fixedAlt = alt;
 				if (queryUCSC)
 				{
-					//get replacement base for N from UCSC
-					URL ucsc = new URL(
-							"http://genome.ucsc.edu/cgi-bin/das/hg19/dna?segment=chr" + chr + ":" + pos + "," + pos);
-					try(BufferedReader getUrlContent = new BufferedReader(new InputStreamReader(ucsc.openStream()))){
-					String urlLine;
-
-					while ((urlLine = getUrlContent.readLine()) != null)
-					{
-						//the base ('g', 'c', 'a', 't') is on line of its own, so length == 1
-						if (urlLine.length() == 1)
-						{
-							replacementRefBase = urlLine.toUpperCase();
-							System.out.println("we found replacement base for N = " + replacementRefBase);
-						}
-					}
-					getUrlContent.close();
-
-					//wait a little bit
-					Thread.sleep(100);
-				}
+					//get replacement base for N from the reference FASTA, or from UCSC if we have none
+					String replacementRefBase = reference != null ?
+							String.valueOf(reference.getBase(chr, Long.parseLong(pos))) :
+							queryUcsc(chr, pos);
+					LOG.debug("we found replacement base for N = {}", replacementRefBase);
+					fixedRef = ref.replace("N", replacementRefBase);
+					fixedAlt = alt.replace("N", replacementRefBase);
 				}
 
 				//print the fixed notation
@@ -156,9 +153,7 @@ public class FixVcfAlleleNotation
 					}
 					else if (i == 3 || i == 4)
 					{
-						String fixedNotation =
-								i == 3 ? ref.replace("N", replacementRefBase) : alt.replace("N", replacementRefBase);
-						fixedLine.append(fixedNotation).append("\t");
+						fixedLine.append(i == 3 ? fixedRef : fixedAlt).append("\t");
 					}
 					else
 					{
@@ -185,6 +180,28 @@ public class FixVcfAlleleNotation
 
 
 
+	private static String queryUcsc(String chr, String pos) throws Exception
+	{
+		String replacementRefBase = "if you see this, we did not get a replacement base while we needed one!";
+		URL ucsc = new URL("http://genome.ucsc.edu/cgi-bin/das/hg19/dna?segment=chr" + chr + ":" + pos + "," + pos);
+		try (BufferedReader getUrlContent = new BufferedReader(new InputStreamReader(ucsc.openStream())))
+		{
+			String urlLine;
+			while ((urlLine = getUrlContent.readLine()) != null)
+			{
+				//the base ('g', 'c', 'a', 't') is on line of its own, so length == 1
+				if (urlLine.length() == 1)
+				{
+					replacementRefBase = urlLine.toUpperCase();
+				}
+			}
+		}
+
+		//wait a little bit
+		Thread.sleep(100);
+		return replacementRefBase;
+	}
+
 	/**
 	 * AT ATT -> A AT
 	 * ATGTG ATG -> ATG A
@@ -0,0 +1,184 @@
+package org.molgenis.data.vcf.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads reference bases from an uncompressed FASTA file with a samtools faidx index (.fai) next to it.
+ *
+ * The FASTA is memory mapped in windows of 16 MB, the most recently used windows stay mapped, so looking up bases of
+ * variants that are close to each other does not touch the disk again. Contig names are matched with or without a
+ * 'chr' prefix, so a UCSC reference (chr1, chr2, ...) can be used for VCFs with b37 names (1, 2, ...) and vice versa.
+ */
+public class IndexedFastaReader implements Closeable
+{
+	public static final String FAI_EXTENSION = ".fai";
+
+	private static final int WINDOW_SIZE = 1 << 24;
+	private static final int MAX_CACHED_WINDOWS = 8;
+	private static final String CHR_PREFIX = "chr";
+
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final Map<String, FaiEntry> contigs = new HashMap<>();
+	private final Map<Long, MappedByteBuffer> windows = new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest)
+		{
+			return size() > MAX_CACHED_WINDOWS;
+		}
+	};
+	private long currentWindowIndex = -1;
+	private MappedByteBuffer currentWindow;
+
+	public IndexedFastaReader(File fastaFile) throws IOException
+	{
+		this(fastaFile, new File(fastaFile.getPath() + FAI_EXTENSION));
+	}
+
+	public IndexedFastaReader(File fastaFile, File faiFile) throws IOException
+	{
+		if (!faiFile.exists())
+		{
+			throw new IOException("FASTA index not found at " + faiFile.getAbsolutePath()
+					+ ", please create it with 'samtools faidx " + fastaFile.getPath() + "'");
+		}
+		readFai(faiFile);
+		this.randomAccessFile = new RandomAccessFile(fastaFile, "r");
+		this.channel = randomAccessFile.getChannel();
+		this.fileSize = channel.size();
+	}
+
+	private void readFai(File faiFile) throws IOException
+	{
+		List<String> lines = Files.readAllLines(faiFile.toPath(), StandardCharsets.UTF_8);
+		for (String line : lines)
+		{
+			if (line.isEmpty())
+			{
+				continue;
+			}
+			String[] split = line.split("\t", -1);
+			if (split.length < 5)
+			{
+				throw new IOException("Expected at least 5 columns in FASTA index " + faiFile + " at line: " + line);
+			}
+			FaiEntry faiEntry = new FaiEntry(Long.parseLong(split[1]), Long.parseLong(split[2]),
+					Integer.parseInt(split[3]), Integer.parseInt(split[4]));
+			contigs.put(split[0], faiEntry);
+		}
+	}
+
+	public boolean hasContig(String contig)
+	{
+		return findContig(contig) != null;
+	}
+
+	/**
+	 * @param contig   contig name, with or without 'chr' prefix
+	 * @param position 1-based position
+	 * @return upper case base at the position
+	 */
+	public char getBase(String contig, long position) throws IOException
+	{
+		return getSequence(contig, position, position).charAt(0);
+	}
+
+	/**
+	 * @param contig contig name, with or without 'chr' prefix
+	 * @param start  1-based start position
+	 * @param end    1-based inclusive end position
+	 * @return upper case bases from start to end
+	 */
+	public String getSequence(String contig, long start, long end) throws IOException
+	{
+		FaiEntry faiEntry = findContig(contig);
+		if (faiEntry == null)
+		{
+			throw new IOException("Contig '" + contig + "' not found in FASTA index");
+		}
+		if (start < 1 || end > faiEntry.length || start > end)
+		{
+			throw new IOException(
+					"Region " + contig + ":" + start + "-" + end + " outside of contig with length " + faiEntry.length);
+		}
+
+		StringBuilder sequence = new StringBuilder((int) (end - start + 1));
+		for (long position = start; position <= end; position++)
+		{
+			long zeroBased = position - 1;
+			long fileOffset = faiEntry.offset + (zeroBased / faiEntry.lineBases) * faiEntry.lineWidth
+					+ zeroBased % faiEntry.lineBases;
+			sequence.append(Character.toUpperCase((char) getByte(fileOffset)));
+		}
+		return sequence.toString();
+	}
+
+	private FaiEntry findContig(String contig)
+	{
+		FaiEntry faiEntry = contigs.get(contig);
+		if (faiEntry == null)
+		{
+			faiEntry = contig.startsWith(CHR_PREFIX) ?
+					contigs.get(contig.substring(CHR_PREFIX.length())) :
+					contigs.get(CHR_PREFIX + contig);
+		}
+		return faiEntry;
+	}
+
+	private byte getByte(long fileOffset) throws IOException
+	{
+		long windowIndex = fileOffset / WINDOW_SIZE;
+		if (windowIndex != currentWindowIndex)
+		{
+			MappedByteBuffer window = windows.get(windowIndex);
+			if (window == null)
+			{
+				long windowStart = windowIndex * WINDOW_SIZE;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+						Math.min(WINDOW_SIZE, fileSize - windowStart));
+				windows.put(windowIndex, window);
+			}
+			currentWindowIndex = windowIndex;
+			currentWindow = window;
+		}
+		return currentWindow.get((int) (fileOffset - currentWindowIndex * WINDOW_SIZE));
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		windows.clear();
+		currentWindow = null;
+		currentWindowIndex = -1;
+		randomAccessFile.close();
+	}
+
+	private static class FaiEntry
+	{
+		private final long length;
+		private final long offset;
+		private final int lineBases;
+		private final int lineWidth;
+
+		FaiEntry(long length, long offset, int lineBases, int lineWidth)
+		{
+			this.length = length;
+			this.offset = offset;
+			this.lineBases = lineBases;
+			this.lineWidth = lineWidth;
+		}
+	}
+}
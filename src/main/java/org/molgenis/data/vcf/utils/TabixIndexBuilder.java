@@ -0,0 +1,347 @@
+package org.molgenis.data.vcf.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+
+/**
+ * Builds a tabix index for a bgzip compressed VCF file while it is being written, so no second pass over the output is
+ * needed. Records must be added in the order in which they are written, together with the BGZF virtual file offsets
+ * of the start and end of the record line.
+ *
+ * A regular .tbi index is written unless a record ends beyond 2^29 bp, which the tabix binning scheme cannot address.
+ * In that case a .csi index is written instead, with enough binning levels to cover the longest contig.
+ */
+public class TabixIndexBuilder
+{
+	public static final String TBI_EXTENSION = ".tbi";
+	public static final String CSI_EXTENSION = ".csi";
+
+	private static final int MIN_SHIFT = 14;
+	private static final int TBI_DEPTH = 5;
+	private static final int FORMAT_VCF = 2;
+	private static final int COL_SEQ = 1;
+	private static final int COL_BEG = 2;
+	private static final int COL_END = 0;
+	private static final int META_CHAR = '#';
+
+	private final List<SequenceIndex> sequences = new ArrayList<>();
+	private final Set<String> seenSequences = new HashSet<>();
+	private SequenceIndex current;
+	private long maxEnd;
+
+	/**
+	 * @param chrom       chromosome of the record
+	 * @param start       1-based start position of the record
+	 * @param end         1-based inclusive end position of the record
+	 * @param startOffset virtual file offset at which the record line starts
+	 * @param endOffset   virtual file offset directly after the record line
+	 */
+	public void addRecord(String chrom, long start, long end, long startOffset, long endOffset)
+	{
+		if (current == null || !current.name.equals(chrom))
+		{
+			if (!seenSequences.add(chrom))
+			{
+				throw new IllegalArgumentException(
+						"Cannot index output, chromosome '" + chrom + "' is not contiguous. Please sort your input VCF.");
+			}
+			current = new SequenceIndex(chrom);
+			sequences.add(current);
+		}
+		else if (start < current.lastStart)
+		{
+			throw new IllegalArgumentException(
+					"Cannot index output, position " + chrom + ":" + start + " is not sorted. Please sort your input VCF.");
+		}
+		long beg = start - 1;
+		long endExclusive = Math.max(end, start);
+		current.add(beg, endExclusive, startOffset, endOffset);
+		current.lastStart = start;
+		maxEnd = Math.max(maxEnd, endExclusive);
+	}
+
+	/**
+	 * @return true when the indexed coordinates do not fit in a .tbi index
+	 */
+	public boolean requiresCsi()
+	{
+		return maxEnd >= 1L << (MIN_SHIFT + 3 * TBI_DEPTH);
+	}
+
+	/**
+	 * Writes the index next to the given bgzip compressed file.
+	 *
+	 * @return the written .tbi or .csi file
+	 */
+	public File writeIndex(File bgzipFile) throws IOException
+	{
+		boolean csi = requiresCsi();
+		File indexFile = new File(bgzipFile.getPath() + (csi ? CSI_EXTENSION : TBI_EXTENSION));
+		try (OutputStream outputStream = new BlockCompressedOutputStream(indexFile))
+		{
+			if (csi)
+			{
+				writeCsi(outputStream);
+			}
+			else
+			{
+				writeTbi(outputStream);
+			}
+		}
+		return indexFile;
+	}
+
+	private void writeTbi(OutputStream out) throws IOException
+	{
+		out.write("TBI\1".getBytes(StandardCharsets.US_ASCII));
+		writeInt(out, sequences.size());
+		writeTabixHeader(out);
+		for (SequenceIndex sequence : sequences)
+		{
+			Map<Integer, List<long[]>> bins = sequence.getBins(TBI_DEPTH);
+			writeInt(out, bins.size() + 1);
+			for (Map.Entry<Integer, List<long[]>> bin : bins.entrySet())
+			{
+				writeInt(out, bin.getKey());
+				writeChunks(out, bin.getValue());
+			}
+			writeMetaBin(out, sequence, TBI_DEPTH);
+			long[] linearIndex = sequence.getLinearIndex();
+			writeInt(out, linearIndex.length);
+			for (long offset : linearIndex)
+			{
+				writeLong(out, offset);
+			}
+		}
+	}
+
+	private void writeCsi(OutputStream out) throws IOException
+	{
+		int depth = TBI_DEPTH;
+		while (maxEnd >= 1L << (MIN_SHIFT + 3 * depth))
+		{
+			depth++;
+		}
+		out.write("CSI\1".getBytes(StandardCharsets.US_ASCII));
+		writeInt(out, MIN_SHIFT);
+		writeInt(out, depth);
+		ByteArrayOutputStream aux = new ByteArrayOutputStream();
+		writeTabixHeader(aux);
+		writeInt(out, aux.size());
+		aux.writeTo(out);
+		writeInt(out, sequences.size());
+		for (SequenceIndex sequence : sequences)
+		{
+			Map<Integer, List<long[]>> bins = sequence.getBins(depth);
+			long[] linearIndex = sequence.getLinearIndex();
+			writeInt(out, bins.size() + 1);
+			for (Map.Entry<Integer, List<long[]>> bin : bins.entrySet())
+			{
+				writeInt(out, bin.getKey());
+				writeLong(out, getLoffset(bin.getKey(), depth, linearIndex, bin.getValue()));
+				writeChunks(out, bin.getValue());
+			}
+			writeInt(out, getMetaBin(depth));
+			writeLong(out, 0);
+			writeMetaChunks(out, sequence);
+		}
+	}
+
+	private void writeTabixHeader(OutputStream out) throws IOException
+	{
+		writeInt(out, FORMAT_VCF);
+		writeInt(out, COL_SEQ);
+		writeInt(out, COL_BEG);
+		writeInt(out, COL_END);
+		writeInt(out, META_CHAR);
+		writeInt(out, 0);
+		ByteArrayOutputStream names = new ByteArrayOutputStream();
+		for (SequenceIndex sequence : sequences)
+		{
+			names.write(sequence.name.getBytes(StandardCharsets.UTF_8));
+			names.write(0);
+		}
+		writeInt(out, names.size());
+		names.writeTo(out);
+	}
+
+	/**
+	 * The pseudo-bin holding the file offset range and the number of records of a sequence, as written by tabix itself.
+	 */
+	private void writeMetaBin(OutputStream out, SequenceIndex sequence, int depth) throws IOException
+	{
+		writeInt(out, getMetaBin(depth));
+		writeMetaChunks(out, sequence);
+	}
+
+	private void writeMetaChunks(OutputStream out, SequenceIndex sequence) throws IOException
+	{
+		writeInt(out, 2);
+		writeLong(out, sequence.firstOffset);
+		writeLong(out, sequence.lastOffset);
+		writeLong(out, sequence.nrRecords);
+		writeLong(out, 0);
+	}
+
+	private static int getMetaBin(int depth)
+	{
+		return ((1 << ((depth + 1) * 3)) - 1) / 7 + 1;
+	}
+
+	/**
+	 * Smallest virtual offset of any record overlapping the start of the bin, used by CSI readers to skip chunks.
+	 */
+	private static long getLoffset(int bin, int depth, long[] linearIndex, List<long[]> chunks)
+	{
+		int level = 0;
+		while (bin >= firstBinOfLevel(level + 1))
+		{
+			level++;
+		}
+		long binStart = (long) (bin - firstBinOfLevel(level)) << (MIN_SHIFT + 3 * (depth - level));
+		long window = binStart >> MIN_SHIFT;
+		long loffset = chunks.get(0)[0];
+		if (window < linearIndex.length && linearIndex[(int) window] != 0)
+		{
+			loffset = Math.min(loffset, linearIndex[(int) window]);
+		}
+		return loffset;
+	}
+
+	private static int firstBinOfLevel(int level)
+	{
+		return ((1 << (3 * level)) - 1) / 7;
+	}
+
+	private static void writeChunks(OutputStream out, List<long[]> chunks) throws IOException
+	{
+		writeInt(out, chunks.size());
+		for (long[] chunk : chunks)
+		{
+			writeLong(out, chunk[0]);
+			writeLong(out, chunk[1]);
+		}
+	}
+
+	private static void writeInt(OutputStream out, int value) throws IOException
+	{
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static void writeLong(OutputStream out, long value) throws IOException
+	{
+		writeInt(out, (int) value);
+		writeInt(out, (int) (value >>> 32));
+	}
+
+	/**
+	 * Index data of one sequence. Bins are keyed on the number of levels above the 16kb leaf level and the index of the
+	 * bin within that level, so the bin numbers can be computed once the required depth is known.
+	 */
+	private static class SequenceIndex
+	{
+		private final String name;
+		private final Map<Long, List<long[]>> chunksPerBin = new TreeMap<>();
+		private long[] linearIndex = new long[64];
+		private int linearIndexSize;
+		private long firstOffset = -1;
+		private long lastOffset;
+		private long nrRecords;
+		private long lastStart;
+
+		SequenceIndex(String name)
+		{
+			this.name = name;
+		}
+
+		void add(long beg, long endExclusive, long startOffset, long endOffset)
+		{
+			long last = endExclusive - 1;
+			int levelsAboveLeaf = 0;
+			while ((beg >> (MIN_SHIFT + 3 * levelsAboveLeaf)) != (last >> (MIN_SHIFT + 3 * levelsAboveLeaf)))
+			{
+				levelsAboveLeaf++;
+			}
+			long key = ((long) levelsAboveLeaf << 56) | (beg >> (MIN_SHIFT + 3 * levelsAboveLeaf));
+			List<long[]> chunks = chunksPerBin.computeIfAbsent(key, k -> new ArrayList<>());
+			long[] lastChunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+			if (lastChunk != null && lastChunk[1] == startOffset)
+			{
+				lastChunk[1] = endOffset;
+			}
+			else
+			{
+				chunks.add(new long[] { startOffset, endOffset });
+			}
+
+			int firstWindow = (int) (beg >> MIN_SHIFT);
+			int lastWindow = (int) (last >> MIN_SHIFT);
+			if (lastWindow >= linearIndex.length)
+			{
+				linearIndex = Arrays.copyOf(linearIndex, Math.max(lastWindow + 1, linearIndex.length * 2));
+			}
+			for (int window = firstWindow; window <= lastWindow; window++)
+			{
+				if (window >= linearIndexSize)
+				{
+					linearIndex[window] = startOffset;
+				}
+			}
+			linearIndexSize = Math.max(linearIndexSize, lastWindow + 1);
+
+			if (firstOffset == -1)
+			{
+				firstOffset = startOffset;
+			}
+			lastOffset = endOffset;
+			nrRecords++;
+		}
+
+		Map<Integer, List<long[]>> getBins(int depth)
+		{
+			Map<Integer, List<long[]>> bins = new TreeMap<>();
+			for (Map.Entry<Long, List<long[]>> entry : chunksPerBin.entrySet())
+			{
+				int levelsAboveLeaf = (int) (entry.getKey() >>> 56);
+				long index = entry.getKey() & ((1L << 56) - 1);
+				int bin = levelsAboveLeaf >= depth ? 0 : firstBinOfLevel(depth - levelsAboveLeaf) + (int) index;
+				bins.computeIfAbsent(bin, k -> new ArrayList<>()).addAll(entry.getValue());
+			}
+			for (List<long[]> chunks : bins.values())
+			{
+				chunks.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+			}
+			return bins;
+		}
+
+		/**
+		 * Linear index with empty windows filled with the offset of the preceding window, like tabix does.
+		 */
+		long[] getLinearIndex()
+		{
+			long[] result = Arrays.copyOf(linearIndex, linearIndexSize);
+			for (int i = 1; i < result.length; i++)
+			{
+				if (result[i] == 0)
+				{
+					result[i] = result[i - 1];
+				}
+			}
+			return result;
+		}
+	}
+}
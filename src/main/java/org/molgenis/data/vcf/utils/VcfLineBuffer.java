@@ -0,0 +1,94 @@
+package org.molgenis.data.vcf.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable, growable byte buffer in which a VCF line is assembled before it is written to an output stream. Strings
+ * are appended as UTF-8 with a fast path for ASCII, which covers virtually all VCF content.
+ */
+public class VcfLineBuffer
+{
+	private byte[] bytes;
+	private int length;
+
+	public VcfLineBuffer()
+	{
+		this(8192);
+	}
+
+	public VcfLineBuffer(int initialCapacity)
+	{
+		bytes = new byte[initialCapacity];
+	}
+
+	public VcfLineBuffer append(String value)
+	{
+		return append(value, 0, value.length());
+	}
+
+	public VcfLineBuffer append(String value, int start, int end)
+	{
+		ensureCapacity(length + end - start);
+		for (int i = start; i < end; i++)
+		{
+			char c = value.charAt(i);
+			if (c >= 0x80)
+			{
+				return append(value.substring(i, end).getBytes(StandardCharsets.UTF_8));
+			}
+			bytes[length++] = (byte) c;
+		}
+		return this;
+	}
+
+	public VcfLineBuffer append(char c)
+	{
+		if (c >= 0x80)
+		{
+			return append(String.valueOf(c));
+		}
+		ensureCapacity(length + 1);
+		bytes[length++] = (byte) c;
+		return this;
+	}
+
+	public VcfLineBuffer append(byte[] value)
+	{
+		ensureCapacity(length + value.length);
+		System.arraycopy(value, 0, bytes, length, value.length);
+		length += value.length;
+		return this;
+	}
+
+	public int length()
+	{
+		return length;
+	}
+
+	public void clear()
+	{
+		length = 0;
+	}
+
+	public void writeTo(OutputStream outputStream) throws IOException
+	{
+		outputStream.write(bytes, 0, length);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,90 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.makervcf.BatchRunner.BatchJob;
+import org.molgenis.data.annotation.makervcf.Main.RlvMode;
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneWindowBuffer;
+import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class BatchRunnerTest extends Setup
+{
+	protected File inputVcfFile;
+	protected File cgdFile;
+	protected File fdrFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream inputVcf = BatchRunnerTest.class.getResourceAsStream(
+				"/MatchVariantsToGenotypeAndInheritanceTestFile.vcf");
+		inputVcfFile = new File(FileUtils.getTempDirectory(), "MatchVariantsToGenotypeAndInheritanceTestFile.vcf");
+		FileCopyUtils.copy(inputVcf, new FileOutputStream(inputVcfFile));
+
+		InputStream cgd = BatchRunnerTest.class.getResourceAsStream("/bundle_r0.1/CGD_1jun2016.txt.gz");
+		cgdFile = new File(FileUtils.getTempDirectory(), "CGD_1jun2016.txt.gz");
+		FileCopyUtils.copy(cgd, new FileOutputStream(cgdFile));
+
+		InputStream fdr = BatchRunnerTest.class.getResourceAsStream("/bundle_r0.1/FDR_allGenes.tsv");
+		fdrFile = new File(FileUtils.getTempDirectory(), "FDR_allGenes.tsv");
+		FileCopyUtils.copy(fdr, new FileOutputStream(fdrFile));
+	}
+
+	@Test
+	public void testRun() throws Exception
+	{
+		File manifestFile = new File(FileUtils.getTempDirectory(), "BatchRunnerTestManifest.tsv");
+		try (PrintWriter pw = new PrintWriter(manifestFile, "UTF-8"))
+		{
+			pw.println("# input\toutput\tcadd");
+			pw.println(inputVcfFile.getName() + "\tBatchRunnerTestOutput1.vcf\t" + caddFile.getName());
+			pw.println("BatchRunnerTestMissing.vcf\tBatchRunnerTestOutput2.vcf\t" + caddFile.getName());
+			pw.println(inputVcfFile.getName() + "\tBatchRunnerTestOutput3.vcf\t" + caddFile.getName());
+		}
+		List<BatchJob> jobs = BatchRunner.readManifest(manifestFile);
+		assertEquals(jobs.size(), 3);
+		for (BatchJob job : jobs)
+		{
+			job.getOutputVcfFile().delete();
+		}
+
+		ReferenceData referenceData = ReferenceData.load(gavinFile, repPathoFile, cgdFile, fdrFile, null);
+		VcfRecordMapperSettings vcfRecordMapperSettings = VcfRecordMapperSettings.create(false, RlvMode.MERGED, false,
+				false);
+		Map<BatchJob, Exception> failures = new BatchRunner("test", "command", vcfRecordMapperSettings, false,
+				HandleMissingCaddScores.Mode.ANALYSIS, referenceData, false, false, false, false, GeneWindowBuffer.UNLIMITED, 2, null).run(jobs);
+
+		assertEquals(failures.keySet().iterator().next(), jobs.get(1));
+		assertEquals(failures.size(), 1);
+		assertTrue(jobs.get(0).getOutputVcfFile().exists());
+		assertFalse(jobs.get(1).getOutputVcfFile().exists());
+		assertTrue(jobs.get(2).getOutputVcfFile().exists());
+		assertEquals(FileUtils.readLines(jobs.get(2).getOutputVcfFile(), "UTF-8").size(),
+				FileUtils.readLines(jobs.get(0).getOutputVcfFile(), "UTF-8").size());
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testReadManifestDuplicateOutput() throws IOException
+	{
+		File manifestFile = new File(FileUtils.getTempDirectory(), "BatchRunnerTestDuplicateManifest.tsv");
+		try (PrintWriter pw = new PrintWriter(manifestFile, "UTF-8"))
+		{
+			pw.println("a.vcf\tout.vcf\tcadd.tsv");
+			pw.println("b.vcf\tout.vcf\tcadd.tsv");
+		}
+		BatchRunner.readManifest(manifestFile);
+	}
+}
@@ -0,0 +1,59 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.molgenis.data.annotation.makervcf.util.CaddRequestWriter;
+import org.testng.annotations.Test;
+
+public class CaddRequestWriterTest
+{
+	@Test
+	public void testWrite() throws IOException
+	{
+		File caddFile = new File(FileUtils.getTempDirectory(), "CaddRequestWriterTest.tsv");
+		try (CaddRequestWriter caddRequestWriter = new CaddRequestWriter(caddFile, 2))
+		{
+			assertTrue(caddRequestWriter.write("1", 100, "A", "T"));
+			assertTrue(caddRequestWriter.write("1", 100, "A", "G"));
+			assertFalse(caddRequestWriter.write("1", 100, "A", "T"));
+			assertTrue(caddRequestWriter.write("1", 200, "AT", "A"));
+			assertEquals(caddRequestWriter.getNrOfVariants(), 3);
+			assertEquals(caddRequestWriter.getNrOfDuplicates(), 1);
+			assertEquals(caddRequestWriter.getFiles(), Arrays.asList(caddFile,
+					new File(FileUtils.getTempDirectory(), "CaddRequestWriterTest.part2.tsv")));
+		}
+
+		assertEquals(FileUtils.readLines(caddFile, UTF_8), Arrays.asList("1\t100\t.\tA\tT", "1\t100\t.\tA\tG"));
+		assertEquals(
+				FileUtils.readLines(new File(FileUtils.getTempDirectory(), "CaddRequestWriterTest.part2.tsv"), UTF_8),
+				Arrays.asList("1\t200\t.\tAT\tA"));
+	}
+
+	@Test
+	public void testWriteCompressed() throws IOException
+	{
+		File caddFile = new File(FileUtils.getTempDirectory(), "CaddRequestWriterTest.tsv.gz");
+		try (CaddRequestWriter caddRequestWriter = new CaddRequestWriter(caddFile))
+		{
+			caddRequestWriter.write("X", 5, "C", "CA");
+		}
+
+		try (InputStream inputStream = new GZIPInputStream(new FileInputStream(caddFile)))
+		{
+			List<String> lines = IOUtils.readLines(inputStream, UTF_8);
+			assertEquals(lines, Arrays.asList("X\t5\t.\tC\tCA"));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.makervcf.util.CaddScoreCache;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CaddScoreCacheTest
+{
+	private File cacheDir;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException
+	{
+		cacheDir = new File(FileUtils.getTempDirectory(), "CaddScoreCacheTest");
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	@Test
+	public void testPutGet() throws IOException
+	{
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			caddScoreCache.put("1", 100, "CTT", "CT", 24.1);
+			caddScoreCache.put("1", 50, "A", "G", 3.5);
+			// same key after back-trimming
+			assertEquals(caddScoreCache.get("1", 100, "CT", "C"), Double.valueOf(24.1));
+			assertNull(caddScoreCache.get("1", 100, "C", "A"));
+		}
+
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			assertEquals(caddScoreCache.get("1", 100, "CTT", "CT"), Double.valueOf(24.1));
+			assertEquals(caddScoreCache.get("1", 50, "A", "G"), Double.valueOf(3.5));
+			caddScoreCache.put("1", 50, "A", "G", 4.5);
+		}
+
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			assertEquals(caddScoreCache.get("1", 50, "A", "G"), Double.valueOf(4.5));
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException
+	{
+		int nrOfFlushes = 10 * CaddScoreCache.MAX_SEGMENTS;
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			for (int i = 0; i < nrOfFlushes; i++)
+			{
+				caddScoreCache.put("2", i + 1, "G", "A", i);
+				caddScoreCache.put("1", 1, "G", "A", i);
+				caddScoreCache.flush();
+				assertTrue(caddScoreCache.getSegments().size() <= CaddScoreCache.MAX_SEGMENTS);
+			}
+		}
+
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			for (int i = 0; i < nrOfFlushes; i++)
+			{
+				assertEquals(caddScoreCache.get("2", i + 1, "G", "A"), Double.valueOf(i));
+			}
+			// the newest score wins
+			assertEquals(caddScoreCache.get("1", 1, "G", "A"), Double.valueOf(nrOfFlushes - 1));
+			assertNull(caddScoreCache.get("2", nrOfFlushes + 1, "G", "A"));
+			assertNull(caddScoreCache.get("3", 1, "G", "A"));
+		}
+	}
+
+	@Test
+	public void testCompactionKeepsLargeSegment() throws IOException
+	{
+		File largeSegment;
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			for (int i = 0; i < 10000; i++)
+			{
+				caddScoreCache.put("3", i + 1, "C", "T", i % 50);
+			}
+			caddScoreCache.flush();
+			largeSegment = caddScoreCache.getSegments().get(0);
+		}
+
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			for (int i = 0; i < 2 * CaddScoreCache.MAX_SEGMENTS; i++)
+			{
+				caddScoreCache.put("4", i + 1, "C", "T", i);
+				caddScoreCache.flush();
+			}
+			// small flushes are merged with each other, not with the large segment
+			assertEquals(caddScoreCache.getSegments().get(0), largeSegment);
+			assertEquals(caddScoreCache.get("3", 10000, "C", "T"), Double.valueOf(9999 % 50));
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testAlreadyInUse() throws IOException
+	{
+		try (CaddScoreCache caddScoreCache = new CaddScoreCache(cacheDir))
+		{
+			new CaddScoreCache(cacheDir);
+		}
+	}
+}
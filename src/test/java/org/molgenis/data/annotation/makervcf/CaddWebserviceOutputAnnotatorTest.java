@@ -0,0 +1,119 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.molgenis.data.annotation.makervcf.util.CaddWebserviceOutputAnnotator;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class CaddWebserviceOutputAnnotatorTest
+{
+	private static final List<String> EXPECTED_OUTPUT = Arrays.asList("##fileformat=VCFv4.1",
+			"##INFO=<ID=CADD_SCALED,Number=.,Type=Float,Description=\"CADD PHRED score, added from CADD webservice output\">",
+			"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO", "1\t100\tsnv\tA\tT\t.\t.\tAC=1;CADD_SCALED=12.5",
+			"1\t200\tscored\tA\tG\t.\t.\tCADD_SCALED=3.0", "1\t300\tmulti\tCTT\tC,CT\t.\t.\tAC=1,1;CADD_SCALED=24.1,31",
+			"1\t400\tunknown\tG\tC\t.\t.\t.", "2\t50\tdel\tTA\tT\t.\t.\tCADD_SCALED=22.2;AC=2");
+
+	private File vcfFile;
+	private File caddFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		vcfFile = new File(FileUtils.getTempDirectory(), "CaddWebserviceOutputAnnotatorTest.vcf");
+		try (PrintWriter pw = new PrintWriter(vcfFile, "UTF-8"))
+		{
+			pw.println("##fileformat=VCFv4.1");
+			pw.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+			pw.println("1\t100\tsnv\tA\tT\t.\t.\tAC=1");
+			pw.println("1\t200\tscored\tA\tG\t.\t.\tCADD_SCALED=3.0");
+			pw.println("1\t300\tmulti\tCTT\tC,CT\t.\t.\tAC=1,1;CADD_SCALED=24.1,.");
+			pw.println("1\t400\tunknown\tG\tC\t.\t.\t.");
+			pw.println("2\t50\tdel\tTA\tT\t.\t.\tCADD_SCALED=.;AC=2");
+		}
+		// the CTT/CT deletion is back-trimmed to CT/C by the webservice
+		caddFile = new File(FileUtils.getTempDirectory(), "CaddWebserviceOutputAnnotatorTest.tsv");
+		try (PrintWriter pw = new PrintWriter(caddFile, "UTF-8"))
+		{
+			pw.println("## CADD v1.3 (c) University of Washington and Hudson-Alpha Institute for Biotechnology");
+			pw.println("#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED");
+			pw.println("1\t50\tC\tG\t0.1\t5.5");
+			pw.println("1\t100\tA\tT\t1.1\t12.5");
+			pw.println("1\t200\tA\tG\t0.2\t8.0");
+			pw.println("1\t300\tCT\tC\t3.2\t31");
+			pw.println("1\t350\tA\tC\t0.3\t9.0");
+			pw.println("2\t50\tTA\tT\t2.7\t22.2");
+			pw.println("2\t60\tG\tA\t0.4\t2.0");
+		}
+	}
+
+	@Test
+	public void testAnnotate() throws Exception
+	{
+		File outputFile = new File(FileUtils.getTempDirectory(), "CaddWebserviceOutputAnnotatorTestOutput.vcf");
+		new CaddWebserviceOutputAnnotator(vcfFile, caddFile, outputFile).annotate();
+		assertEquals(FileUtils.readLines(outputFile, UTF_8), EXPECTED_OUTPUT);
+	}
+
+	@Test
+	public void testAnnotateCompressed() throws Exception
+	{
+		File outputFile = new File(FileUtils.getTempDirectory(), "CaddWebserviceOutputAnnotatorTestOutput.vcf.gz");
+		new CaddWebserviceOutputAnnotator(vcfFile, caddFile, outputFile).annotate();
+		try (InputStream inputStream = new GZIPInputStream(new FileInputStream(outputFile)))
+		{
+			assertEquals(IOUtils.readLines(inputStream, UTF_8), EXPECTED_OUTPUT);
+		}
+		assertTrue(new File(outputFile.getPath() + ".tbi").isFile());
+	}
+
+	@Test
+	public void testAnnotateOtherChromosomes() throws Exception
+	{
+		// chromosome 2 is only in the webservice output, chromosome 3 only in the VCF
+		File vcfFile = writeLines("CaddWebserviceOutputAnnotatorTestOtherChromosomes.vcf",
+				"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO", "1\t100\ta\tA\tT\t.\t.\t.",
+				"3\t100\tb\tA\tT\t.\t.\t.", "4\t100\tc\tA\tT\t.\t.\t.");
+		File caddFile = writeLines("CaddWebserviceOutputAnnotatorTestOtherChromosomes.tsv",
+				"#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED", "1\t100\tA\tT\t0.1\t1.5", "2\t100\tA\tT\t0.2\t2.5",
+				"4\t100\tA\tT\t0.4\t4.5");
+		File outputFile = new File(FileUtils.getTempDirectory(),
+				"CaddWebserviceOutputAnnotatorTestOtherChromosomesOutput.vcf");
+		new CaddWebserviceOutputAnnotator(vcfFile, caddFile, outputFile).annotate();
+		assertEquals(FileUtils.readLines(outputFile, UTF_8), Arrays.asList(
+				"##INFO=<ID=CADD_SCALED,Number=.,Type=Float,Description=\"CADD PHRED score, added from CADD webservice output\">",
+				"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO", "1\t100\ta\tA\tT\t.\t.\tCADD_SCALED=1.5",
+				"3\t100\tb\tA\tT\t.\t.\t.", "4\t100\tc\tA\tT\t.\t.\tCADD_SCALED=4.5"));
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testAnnotateOtherChromosomeOrder() throws Exception
+	{
+		File vcfFile = writeLines("CaddWebserviceOutputAnnotatorTestOtherOrder.vcf",
+				"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO", "1\t100\ta\tA\tT\t.\t.\t.",
+				"2\t100\tb\tA\tT\t.\t.\t.");
+		File caddFile = writeLines("CaddWebserviceOutputAnnotatorTestOtherOrder.tsv",
+				"#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED", "2\t100\tA\tT\t0.2\t2.5", "1\t100\tA\tT\t0.1\t1.5");
+		File outputFile = new File(FileUtils.getTempDirectory(), "CaddWebserviceOutputAnnotatorTestOtherOrderOutput.vcf");
+		new CaddWebserviceOutputAnnotator(vcfFile, caddFile, outputFile).annotate();
+	}
+
+	private static File writeLines(String fileName, String... lines) throws IOException
+	{
+		File file = new File(FileUtils.getTempDirectory(), fileName);
+		FileUtils.writeLines(file, UTF_8.name(), Arrays.asList(lines));
+		return file;
+	}
+}
@@ -0,0 +1,202 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.makervcf.Main.RlvMode;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpoint;
+import org.molgenis.data.annotation.makervcf.checkpoint.CheckpointSettings;
+import org.molgenis.data.annotation.makervcf.checkpoint.Checkpointer;
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneWindowBuffer;
+import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class CheckpointTest
+{
+	private static final String CMD_STRING = "command";
+
+	private File inputVcfFile;
+	private File gavinFile;
+	private File repPathoFile;
+	private File cgdFile;
+	private File caddFile;
+	private File fdrFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		inputVcfFile = copy("/GAVIN-Plus_TinyDemo_1000G_Spiked.vcf", "CheckpointTestFile.vcf");
+		caddFile = copy("/GAVIN-Plus_TinyDemo_1000G_Spiked.fromCadd.tsv", "CheckpointTestFile.fromCadd.tsv");
+		gavinFile = copy("/bundle_r1.2/GAVIN_calibrations_r0.5.tsv", "GAVIN_calibrations_r0.5.tsv");
+		repPathoFile = copy("/bundle_r1.2/clinvar.vkgl.patho.26june2018.vcf.gz",
+				"clinvar.vkgl.patho.26june2018.vcf.gz");
+		cgdFile = copy("/bundle_r1.2/CGD_26jun2018.txt.gz", "CGD_26jun2018.txt.gz");
+		fdrFile = copy("/bundle_r1.2/FDR_allGenes_r1.2.tsv", "FDR_allGenes_r1.2.tsv");
+	}
+
+	private static File copy(String resource, String fileName) throws IOException
+	{
+		InputStream inputStream = CheckpointTest.class.getResourceAsStream(resource);
+		File file = new File(FileUtils.getTempDirectory(), fileName);
+		FileCopyUtils.copy(inputStream, new FileOutputStream(file));
+		return file;
+	}
+
+	@Test
+	public void testWriteRead() throws IOException
+	{
+		File checkpointFile = new File(FileUtils.getTempDirectory(), "CheckpointTestWriteRead.checkpoint");
+		new Checkpoint(CMD_STRING, inputVcfFile, 12, -1, "7", 1234, 5678, asList("1", "2"), 3).write(checkpointFile);
+
+		Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+		checkpoint.validate(CMD_STRING, inputVcfFile);
+		assertEquals(checkpoint.getRecordIndex(), 12);
+		assertEquals(checkpoint.getInputOffset(), -1);
+		assertEquals(checkpoint.getChromosome(), "7");
+		assertEquals(checkpoint.getPosition(), 1234);
+		assertEquals(checkpoint.getOutputOffset(), 5678);
+		assertEquals(checkpoint.getFinishedChromosomes(), asList("1", "2"));
+		assertEquals(checkpoint.getNrOfGenesOutsideSpan(), 3);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testValidateOtherArguments() throws IOException
+	{
+		File checkpointFile = new File(FileUtils.getTempDirectory(), "CheckpointTestValidate.checkpoint");
+		new Checkpoint(CMD_STRING, inputVcfFile, 0, -1, "7", 1, 0, asList(), 0).write(checkpointFile);
+		Checkpoint.read(checkpointFile).validate(CMD_STRING + " -k", inputVcfFile);
+	}
+
+	@Test
+	public void testResume() throws Exception
+	{
+		assertResume(inputVcfFile, "CheckpointTestOutput.vcf");
+	}
+
+	@Test
+	public void testResumeBgzip() throws Exception
+	{
+		assertResume(inputVcfFile, "CheckpointTestOutput.vcf.gz");
+	}
+
+	@Test
+	public void testResumeBgzipInput() throws Exception
+	{
+		// one BGZF block per line, so resuming seeks into a later block: a virtual offset with a block address above 0
+		File bgzipInputVcfFile = new File(FileUtils.getTempDirectory(), "CheckpointTestFile.vcf.gz");
+		try (BlockCompressedOutputStream outputStream = new BlockCompressedOutputStream(bgzipInputVcfFile))
+		{
+			for (String line : FileUtils.readLines(inputVcfFile, UTF_8))
+			{
+				outputStream.write((line + '\n').getBytes(UTF_8));
+				outputStream.flush();
+			}
+		}
+
+		List<Checkpoint> checkpoints = assertResume(bgzipInputVcfFile, "CheckpointTestBgzipInputOutput.vcf");
+		assertTrue(checkpoints.stream().anyMatch(checkpoint -> checkpoint.getInputOffset() >= 1 << 16));
+	}
+
+	/**
+	 * Interrupts a run after every checkpoint in turn, resumes it and compares the output with an uninterrupted run.
+	 *
+	 * @return checkpoints that were resumed from
+	 */
+	private List<Checkpoint> assertResume(File inputVcfFile, String outputFileName) throws Exception
+	{
+		File expectedFile = new File(FileUtils.getTempDirectory(), "Expected" + outputFileName);
+		expectedFile.delete();
+		createPipeline(inputVcfFile, expectedFile).start(null);
+		String expected = read(expectedFile);
+
+		File outputFile = new File(FileUtils.getTempDirectory(), outputFileName);
+		File checkpointFile = new File(outputFile.getPath() + Checkpointer.EXTENSION);
+		List<Checkpoint> checkpoints = new ArrayList<>();
+		for (int nrOfCheckpoints = 1; ; nrOfCheckpoints++)
+		{
+			outputFile.delete();
+			checkpointFile.delete();
+			InterruptingCheckpointer checkpointer = new InterruptingCheckpointer(checkpointFile, inputVcfFile,
+					nrOfCheckpoints);
+			try
+			{
+				createPipeline(inputVcfFile, outputFile).start(checkpointer);
+				// no more checkpoints to interrupt at
+				assertTrue(nrOfCheckpoints > 1);
+				assertFalse(checkpointFile.exists());
+				break;
+			}
+			catch (Exception e)
+			{
+				assertTrue(checkpointFile.exists());
+			}
+
+			checkpoints.add(Checkpoint.read(checkpointFile));
+			createPipeline(inputVcfFile, outputFile).start(
+					Checkpointer.open(checkpointFile, CMD_STRING, inputVcfFile, 0));
+			assertEquals(read(outputFile), expected, "resumed at checkpoint " + nrOfCheckpoints);
+			assertFalse(checkpointFile.exists());
+		}
+		return checkpoints;
+	}
+
+	private Pipeline createPipeline(File inputVcfFile, File outputFile)
+	{
+		return new Pipeline("test", CMD_STRING, VcfRecordMapperSettings.create(false, RlvMode.MERGED, false, true),
+				true, HandleMissingCaddScores.Mode.ANALYSIS, inputVcfFile, gavinFile, repPathoFile, cgdFile, caddFile,
+				fdrFile, outputFile, null, false, false, false, GeneWindowBuffer.UNLIMITED,
+				CheckpointSettings.create(true), null, null);
+	}
+
+	private static String read(File file) throws IOException
+	{
+		try (InputStream inputStream = file.getName().endsWith(".gz") ? new BlockCompressedInputStream(
+				file) : new FileInputStream(file))
+		{
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			FileCopyUtils.copy(inputStream, outputStream);
+			return new String(outputStream.toByteArray(), UTF_8);
+		}
+	}
+
+	/**
+	 * Writes a checkpoint as soon as possible and interrupts the run after the given number of checkpoints.
+	 */
+	private static class InterruptingCheckpointer extends Checkpointer
+	{
+		private final int nrOfCheckpoints;
+		private int count;
+
+		InterruptingCheckpointer(File checkpointFile, File inputVcfFile, int nrOfCheckpoints)
+		{
+			super(checkpointFile, CMD_STRING, inputVcfFile, null, 0);
+			this.nrOfCheckpoints = nrOfCheckpoints;
+		}
+
+		@Override
+		public void commit(long outputOffset) throws IOException
+		{
+			super.commit(outputOffset);
+			if (++count == nrOfCheckpoints)
+			{
+				throw new IOException("interrupted");
+			}
+		}
+	}
+}
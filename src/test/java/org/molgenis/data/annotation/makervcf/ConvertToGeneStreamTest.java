@@ -1,16 +1,23 @@
 package org.molgenis.data.annotation.makervcf;
 
 import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
 import org.molgenis.data.annotation.makervcf.genestream.core.ConvertToGeneStream;
 import org.molgenis.data.annotation.makervcf.positionalstream.DiscoverRelevantVariants;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.GeneIndex;
 import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
 import org.springframework.util.FileCopyUtils;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import static org.testng.Assert.*;
 
@@ -19,9 +26,12 @@ public class ConvertToGeneStreamTest extends Setup
 
 	protected File inputVcfFile1;
 	protected File inputVcfFile2;
+	protected File inputVcfFile3;
+	protected File inputVcfFile4;
 
 	public static final String expected1 = "3_4_1_2_5_7_9_10_6_8_11_13_12_14_15_18_19_17_16_20_23_22_24_21_25_27_28_29_26_30_31_32_33_34_35_37_36_38_40_41_42_43_44_45_";
 	public static final String expected2 = "1_2_3_4_5_6_7_8_9_10_11_12_13_14_15_16_17_18_19_20_21_22_23_24_25_";
+	public static final String expected3 = "3_4_1_2_5_7_9_10_6_8_11_12_13_14_15_17_18_19_16_20_23_22_24_21_25_27_28_29_26_30_31_32_33_34_35_36_38_37_40_41_42_43_44_45_";
 
 
 	@BeforeClass
@@ -35,6 +45,97 @@ public class ConvertToGeneStreamTest extends Setup
 		inputVcfFile2 = new File(FileUtils.getTempDirectory(), "AssignCompoundHetTestFile.vcf");
 		FileCopyUtils.copy(inputVcf2, new FileOutputStream(inputVcfFile2));
 
+		// geneInner lies within geneOuter, between two variants of geneOuter
+		inputVcfFile3 = new File(FileUtils.getTempDirectory(), "ConvertToGeneStreamTestFile3.vcf");
+		String header = "##fileformat=VCFv4.1\n##INFO=<ID=CADD_SCALED,Number=.,Type=Float,Description=\"CADD\">\n"
+				+ "##INFO=<ID=ANN,Number=.,Type=String,Description=\"Functional annotations\">\n"
+				+ "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n"
+				+ "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tp01\n";
+		String records = "1\t1\t.\tG\tA\t.\t.\tCADD_SCALED=34.0;ANN=A||HIGH|geneOuter||||||||||||\tGT\t1/1\n"
+				+ "1\t2\t.\tG\tA\t.\t.\tCADD_SCALED=34.0;ANN=A||HIGH|geneInner||||||||||||\tGT\t1/1\n"
+				+ "1\t3\t.\tG\tA\t.\t.\tCADD_SCALED=34.0;ANN=A||HIGH|geneOuter||||||||||||\tGT\t1/1\n";
+		Files.write(inputVcfFile3.toPath(), (header + records).getBytes(StandardCharsets.UTF_8));
+
+		// gene40 spans 4100-8400 and overlaps gene41 and gene42, see createTreeGeneIndex
+		inputVcfFile4 = new File(FileUtils.getTempDirectory(), "ConvertToGeneStreamTestFile4.vcf");
+		String records4 = "1\t4101\t.\tG\tA\t.\t.\tCADD_SCALED=34.0;ANN=A||HIGH|gene40||||||||||||\tGT\t1/1\n"
+				+ "1\t4305\t.\tG\tA\t.\t.\tCADD_SCALED=34.0;ANN=A||HIGH|gene42||||||||||||\tGT\t1/1\n"
+				+ "1\t4315\t.\tG\tA\t.\t.\tCADD_SCALED=34.0;ANN=A||HIGH|gene40||||||||||||\tGT\t1/1\n";
+		Files.write(inputVcfFile4.toPath(), (header + records4).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Gene index with the span of the variants of every gene in the test file, and for the genes of the third test file.
+	 */
+	private static GeneIndex createGeneIndex(String resource) throws IOException
+	{
+		Map<String, long[]> spans = new HashMap<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(ConvertToGeneStreamTest.class.getResourceAsStream(resource),
+						StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.startsWith("#"))
+				{
+					continue;
+				}
+				String[] columns = line.split("\t", -1);
+				long pos = Long.parseLong(columns[1]);
+				for (String ann : columns[7].split("ANN=")[1].split(";")[0].split(","))
+				{
+					spans.merge(ann.split("\\|", -1)[3], new long[] { pos, pos },
+							(span, other) -> new long[] { Math.min(span[0], other[0]), Math.max(span[1], other[1]) });
+				}
+			}
+		}
+		spans.put("geneOuter", new long[] { 1, 10 });
+		spans.put("geneInner", new long[] { 2, 2 });
+		return createGeneIndex(spans);
+	}
+
+	/**
+	 * Gene index of 43 short genes, of which gene40 is long. In the interval tree gene40 sits in the last, incomplete
+	 * subtree, whose maximum end was once computed too small, so that lookups beyond gene41 and gene42 missed it.
+	 */
+	private static GeneIndex createTreeGeneIndex()
+	{
+		Map<String, long[]> spans = new HashMap<>();
+		for (int i = 0; i < 43; i++)
+		{
+			long start = 100L * (i + 1);
+			spans.put("gene" + i, new long[] { start, i == 40 ? 8400 : start + 10 });
+		}
+		return createGeneIndex(spans);
+	}
+
+	private static GeneIndex createGeneIndex(Map<String, long[]> spans)
+	{
+		Map<String, GavinEntry> gavinEntries = new HashMap<>();
+		for (Map.Entry<String, long[]> span : spans.entrySet())
+		{
+			StringBuilder line = new StringBuilder(
+					span.getKey() + "\tC1\t1\t" + span.getValue()[0] + "\t" + span.getValue()[1]);
+			for (int i = 5; i < 30; i++)
+			{
+				line.append('\t');
+			}
+			gavinEntries.put(span.getKey(), new GavinEntry(line.toString()));
+		}
+		return new GeneIndex(gavinEntries);
+	}
+
+	private String getPositions(File inputVcfFile, GeneIndex geneIndex) throws Exception
+	{
+		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, repPathoFile, caddFile, null, HandleMissingCaddScores.Mode.ANALYSIS, false);
+		Iterator<GavinRecord> it = new ConvertToGeneStream(discover.findRelevantVariants(), geneIndex).go();
+		StringBuilder positions = new StringBuilder();
+		while(it.hasNext())
+		{
+			positions.append(it.next().getPosition()).append('_');
+		}
+		return positions.toString();
 	}
 
 	@Test
@@ -75,4 +176,32 @@ public class ConvertToGeneStreamTest extends Setup
 		assertEquals(positions.toString(), expected2);
 	}
 
+	@Test
+	public void testCoordinateWindows() throws Exception
+	{
+		// genes end at their last variant instead of at the next variant without the gene, e.g. F (12-13) before G (13)
+		assertEquals(getPositions(inputVcfFile1, createGeneIndex("/ConvertToGeneStreamTestFile.vcf")), expected3);
+		assertEquals(getPositions(inputVcfFile2, createGeneIndex("/AssignCompoundHetTestFile.vcf")), expected2);
+	}
+
+	@Test
+	public void testCoordinateWindowsOverlappingGene() throws Exception
+	{
+		// by annotation geneInner splits geneOuter in two windows, by coordinate geneOuter stays open until its end
+		assertEquals(getPositions(inputVcfFile3, null), "1_2_3_");
+		assertEquals(getPositions(inputVcfFile3, createGeneIndex("/AssignCompoundHetTestFile.vcf")), "2_1_3_");
+	}
+
+	@Test
+	public void testCoordinateWindowsOverlappingGeneIndexTree() throws Exception
+	{
+		GeneIndex geneIndex = createTreeGeneIndex();
+		assertEquals(geneIndex.getGenes("1", 4305, 4305), Arrays.asList("gene40", "gene42"));
+		assertEquals(geneIndex.getGenes("1", 4315, 4315), Arrays.asList("gene40"));
+
+		// by annotation gene42 splits gene40 in two windows, by coordinate gene40 stays open past gene42
+		assertEquals(getPositions(inputVcfFile4, null), "4101_4305_4315_");
+		assertEquals(getPositions(inputVcfFile4, geneIndex), "4305_4101_4315_");
+	}
+
 }
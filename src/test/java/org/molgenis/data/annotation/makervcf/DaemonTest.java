@@ -0,0 +1,161 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.makervcf.Main.RlvMode;
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneWindowBuffer;
+import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class DaemonTest extends Setup
+{
+	protected File inputVcfFile;
+	protected File cgdFile;
+	protected File fdrFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream inputVcf = DaemonTest.class.getResourceAsStream(
+				"/MatchVariantsToGenotypeAndInheritanceTestFile.vcf");
+		inputVcfFile = new File(FileUtils.getTempDirectory(), "MatchVariantsToGenotypeAndInheritanceTestFile.vcf");
+		FileCopyUtils.copy(inputVcf, new FileOutputStream(inputVcfFile));
+
+		InputStream cgd = DaemonTest.class.getResourceAsStream("/bundle_r0.1/CGD_1jun2016.txt.gz");
+		cgdFile = new File(FileUtils.getTempDirectory(), "CGD_1jun2016.txt.gz");
+		FileCopyUtils.copy(cgd, new FileOutputStream(cgdFile));
+
+		InputStream fdr = DaemonTest.class.getResourceAsStream("/bundle_r0.1/FDR_allGenes.tsv");
+		fdrFile = new File(FileUtils.getTempDirectory(), "FDR_allGenes.tsv");
+		FileCopyUtils.copy(fdr, new FileOutputStream(fdrFile));
+	}
+
+	@Test
+	public void testServe() throws Exception
+	{
+		File outputVcfFile = new File(FileUtils.getTempDirectory(), "DaemonTestOutput.vcf");
+		outputVcfFile.delete();
+		try (Daemon daemon = new Daemon(createBatchRunner(), 0, 1, 1))
+		{
+			startServing(daemon);
+
+			assertEquals(send(daemon.getPort(),
+					inputVcfFile.getAbsolutePath() + "\t" + outputVcfFile.getAbsolutePath() + "\t"
+							+ caddFile.getAbsolutePath()), "OK\t" + outputVcfFile.getAbsolutePath());
+			assertTrue(outputVcfFile.exists());
+
+			assertTrue(send(daemon.getPort(), "missing.vcf\tmissing.out.vcf\t" + caddFile.getAbsolutePath()).startsWith(
+					"ERROR\t"));
+			assertTrue(send(daemon.getPort(), "not a job").startsWith("ERROR\t"));
+		}
+	}
+
+	@Test
+	public void testSlowClient() throws Exception
+	{
+		try (Daemon daemon = new Daemon(createBatchRunner(), 0, 2, 1))
+		{
+			startServing(daemon);
+
+			// a client that does not send its job does not hold up the next one
+			try (Socket slowClient = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort()))
+			{
+				long start = System.currentTimeMillis();
+				assertTrue(send(daemon.getPort(), "not a job").startsWith("ERROR\t"));
+				assertTrue(System.currentTimeMillis() - start < 5000);
+			}
+		}
+	}
+
+	@Test
+	public void testOutputInUse() throws Exception
+	{
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		BatchRunner batchRunner = new BatchRunner("test", "command",
+				VcfRecordMapperSettings.create(false, RlvMode.MERGED, false, false), false,
+				HandleMissingCaddScores.Mode.ANALYSIS, loadReferenceData(), true, false, false, false,
+				GeneWindowBuffer.UNLIMITED, 1, null)
+		{
+			@Override
+			public void run(BatchJob job) throws Exception
+			{
+				started.countDown();
+				release.await(10, TimeUnit.SECONDS);
+			}
+		};
+
+		String job = inputVcfFile.getAbsolutePath() + "\t" + new File(FileUtils.getTempDirectory(),
+				"DaemonTestInUse.vcf").getAbsolutePath() + "\t" + caddFile.getAbsolutePath();
+		try (Daemon daemon = new Daemon(batchRunner, 0, 2, 1))
+		{
+			startServing(daemon);
+
+			FutureTask<String> runningJob = new FutureTask<>(() -> send(daemon.getPort(), job));
+			new Thread(runningJob).start();
+			started.await();
+			assertTrue(send(daemon.getPort(), job).startsWith("ERROR\toutput "));
+
+			release.countDown();
+			assertTrue(runningJob.get().startsWith("OK\t"));
+			// the output can be written again once the job is done
+			assertTrue(send(daemon.getPort(), job).startsWith("OK\t"));
+		}
+	}
+
+	private ReferenceData loadReferenceData() throws Exception
+	{
+		return ReferenceData.load(gavinFile, repPathoFile, cgdFile, fdrFile, null);
+	}
+
+	private BatchRunner createBatchRunner() throws Exception
+	{
+		VcfRecordMapperSettings vcfRecordMapperSettings = VcfRecordMapperSettings.create(false, RlvMode.MERGED, false,
+				false);
+		return new BatchRunner("test", "command", vcfRecordMapperSettings, false,
+				HandleMissingCaddScores.Mode.ANALYSIS, loadReferenceData(), true, false, false, false, GeneWindowBuffer.UNLIMITED, 1, null);
+	}
+
+	private static void startServing(Daemon daemon)
+	{
+		new Thread(() ->
+		{
+			try
+			{
+				daemon.serve();
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}).start();
+	}
+
+	private static String send(int port, String job) throws IOException
+	{
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+		{
+			PrintWriter pw = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+			pw.println(job);
+			return new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8)).readLine();
+		}
+	}
+}
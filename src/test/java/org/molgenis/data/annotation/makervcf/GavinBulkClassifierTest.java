@@ -0,0 +1,83 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinAlgorithm;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinBulkClassifier;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinCalibrationTable;
+import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
+import org.testng.annotations.Test;
+
+public class GavinBulkClassifierTest extends Setup
+{
+	private static final Impact[] IMPACTS = { null, Impact.MODIFIER, Impact.LOW, Impact.MODERATE, Impact.HIGH };
+	private static final double[] CADD_SCORES = { Double.NaN, 1.0, 12.5, 20.0, 27.5, 35.0 };
+	private static final double[] EXAC_MAFS = { 0.0, 0.00001, 0.001, 0.01, 0.1 };
+
+	@Test
+	public void testClassify() throws Exception
+	{
+		GavinCalibrations gavinCalibrations = GavinUtils.getGeneToEntry(gavinFile);
+		GavinCalibrationTable table = gavinCalibrations.getCalibrationTable();
+		List<String> genes = new ArrayList<>(gavinCalibrations.getGavinEntries().keySet());
+		genes.add("NOT_A_GENE");
+
+		int size = genes.size() * IMPACTS.length * CADD_SCORES.length * EXAC_MAFS.length;
+		String[] geneColumn = new String[size];
+		Impact[] impactColumn = new Impact[size];
+		byte[] impacts = new byte[size];
+		double[] caddScores = new double[size];
+		double[] exacMAFs = new double[size];
+		int[] geneIds = new int[size];
+		int i = 0;
+		for (String gene : genes)
+		{
+			for (Impact impact : IMPACTS)
+			{
+				for (double caddScore : CADD_SCORES)
+				{
+					for (double exacMAF : EXAC_MAFS)
+					{
+						geneColumn[i] = gene;
+						impactColumn[i] = impact;
+						impacts[i] = GavinBulkClassifier.toImpactCode(impact);
+						caddScores[i] = caddScore;
+						exacMAFs[i] = exacMAF;
+						geneIds[i] = table.getGeneId(gene);
+						i++;
+					}
+				}
+			}
+		}
+
+		GavinBulkClassifier gavinBulkClassifier = new GavinBulkClassifier(gavinCalibrations);
+		byte[] classifications = new byte[size];
+		gavinBulkClassifier.classify(impacts, caddScores, exacMAFs, geneIds, classifications);
+		byte[] parallelClassifications = new byte[size];
+		gavinBulkClassifier.classify(impacts, caddScores, exacMAFs, geneIds, parallelClassifications,
+				new ForkJoinPool(2));
+
+		GavinAlgorithm gavinAlgorithm = new GavinAlgorithm();
+		for (i = 0; i < size; i++)
+		{
+			Double caddScore = !Double.isNaN(caddScores[i]) ? caddScores[i] : null;
+			assertEquals(GavinBulkClassifier.toClassification(classifications[i]),
+					gavinAlgorithm.classifyVariant(impactColumn[i], caddScore, exacMAFs[i], geneColumn[i],
+							gavinCalibrations).getClassification(), "at " + geneColumn[i]);
+			assertEquals(parallelClassifications[i], classifications[i]);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testClassifyColumnLengths() throws Exception
+	{
+		GavinCalibrations gavinCalibrations = GavinUtils.getGeneToEntry(gavinFile);
+		new GavinBulkClassifier(gavinCalibrations).classify(new byte[2], new double[2], new double[1], new int[2],
+				new byte[2]);
+	}
+}
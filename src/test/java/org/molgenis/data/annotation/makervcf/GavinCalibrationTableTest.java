@@ -0,0 +1,76 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.molgenis.data.annotation.entity.impl.gavin.GavinAlgorithm.extraSensitivityFactor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinAlgorithm;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinCalibrationTable;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry.Category;
+import org.molgenis.data.annotation.makervcf.structs.GavinCalibrations;
+import org.testng.annotations.Test;
+
+public class GavinCalibrationTableTest extends Setup
+{
+	@Test
+	public void testCalibrationTable() throws Exception
+	{
+		GavinCalibrations gavinCalibrations = GavinUtils.getGeneToEntry(gavinFile);
+		GavinCalibrationTable table = gavinCalibrations.getCalibrationTable();
+
+		assertEquals(table.getNrOfGenes(), gavinCalibrations.getGavinEntries().size());
+		assertEquals(table.getGeneId("NOT_A_GENE"), GavinCalibrationTable.UNKNOWN_GENE);
+		for (GavinEntry entry : gavinCalibrations.getGavinEntries().values())
+		{
+			int geneId = table.getGeneId(entry.getGene());
+			assertEquals(table.getCategory(geneId), entry.getCategory());
+			if (entry.getMeanPathogenicCADDScore() != null)
+			{
+				assertEquals(table.getMeanPathogenicCADDScore(geneId),
+						entry.getMeanPathogenicCADDScore() - extraSensitivityFactor);
+			}
+			else
+			{
+				assertTrue(Double.isNaN(table.getMeanPathogenicCADDScore(geneId)));
+			}
+			if (entry.getPathoMAFThreshold() != null)
+			{
+				assertEquals(table.getPathoMAFThreshold(geneId),
+						entry.getPathoMAFThreshold() * extraSensitivityFactor * 2);
+			}
+			else
+			{
+				assertTrue(Double.isNaN(table.getPathoMAFThreshold(geneId)));
+			}
+		}
+	}
+
+	@Test
+	public void testClassifyVariantByGeneId() throws Exception
+	{
+		GavinCalibrations gavinCalibrations = GavinUtils.getGeneToEntry(gavinFile);
+		GavinCalibrationTable table = gavinCalibrations.getCalibrationTable();
+		GavinAlgorithm gavinAlgorithm = new GavinAlgorithm();
+
+		for (GavinEntry entry : gavinCalibrations.getGavinEntries().values())
+		{
+			if (entry.getCategory() == Category.C1 || entry.getCategory() == Category.C2)
+			{
+				double caddScaled = entry.getMeanPathogenicCADDScore() - extraSensitivityFactor + 0.5;
+				Judgment judgment = gavinAlgorithm.classifyVariant(Impact.MODERATE, caddScaled, 0.0, entry.getGene(),
+						table.getGeneId(entry.getGene()), gavinCalibrations);
+				assertEquals(judgment.getClassification(), Judgment.Classification.Pathogenic);
+				assertEquals(judgment.getConfidence(), Judgment.Method.calibrated);
+			}
+		}
+
+		Judgment judgment = gavinAlgorithm.classifyVariant(Impact.MODERATE, 40.0, 0.0, "NOT_A_GENE",
+				GavinCalibrationTable.UNKNOWN_GENE, gavinCalibrations);
+		assertEquals(judgment.getClassification(), Judgment.Classification.Pathogenic);
+		assertEquals(judgment.getConfidence(), Judgment.Method.genomewide);
+	}
+}
@@ -0,0 +1,68 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.core.entity.impl.snpeff.Impact;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinReason;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinReason.Rule;
+import org.testng.annotations.Test;
+
+public class GavinReasonTest
+{
+	@Test
+	public void testGetReason()
+	{
+		Judgment judgment = new Judgment(Judgment.Classification.Pathogenic, Judgment.Method.genomewide, "PMS2",
+				new GavinReason(Rule.GENOMEWIDE_CADD_ABOVE_THRESHOLD, Impact.HIGH, "PMS2", 39.0, 1.647E-4, 15.0), null,
+				null);
+		assertEquals(judgment.getReason(),
+				"Variant MAF of 1.647E-4 is rare enough to be potentially pathogenic and its CADD score of 39.0 is greater than a global threshold of 15.0.");
+		assertEquals(((GavinReason) judgment.getStructuredReason()).getRule(), Rule.GENOMEWIDE_CADD_ABOVE_THRESHOLD);
+	}
+
+	@Test
+	public void testGetReasonMissingValues()
+	{
+		Judgment judgment = new Judgment(Judgment.Classification.VOUS, Judgment.Method.genomewide, "PMS2",
+				new GavinReason(Rule.GENOMEWIDE_INCONCLUSIVE, null, "PMS2", null, 0.0, Double.NaN), null, null);
+		assertEquals(judgment.getReason(),
+				"Unable to classify variant as benign or pathogenic. The combination of null impact, a CADD score of null and MAF of 0.0 in PMS2 is inconclusive.");
+	}
+
+	@Test
+	public void testGetReasonNaN()
+	{
+		Judgment judgment = new Judgment(Judgment.Classification.Benign, Judgment.Method.calibrated, "PMS2",
+				new GavinReason(Rule.CALIBRATED_MODIFIER_IMPACT, Impact.MODIFIER, "PMS2", 1.0, Double.NaN, Double.NaN),
+				null, null);
+		assertEquals(judgment.getReason(),
+				"Variant is of 'modifier' impact, and therefore unlikely to be pathogenic. However, the variant MAF of NaN is less than a MAF of null.");
+	}
+
+	@Test
+	public void testEquals()
+	{
+		Judgment judgment = new Judgment(Judgment.Classification.Benign, Judgment.Method.genomewide, "PMS2",
+				new GavinReason(Rule.GENOMEWIDE_CADD_BELOW_THRESHOLD, null, "PMS2", 1.0, null, 15.0), null, null);
+		Judgment otherJudgment = new Judgment(Judgment.Classification.Benign, Judgment.Method.genomewide, "PMS2",
+				new GavinReason(Rule.GENOMEWIDE_CADD_BELOW_THRESHOLD, null, "PMS2", 1.0, null, 15.0), null, null);
+		// rendering the reason of one of them does not change equality
+		judgment.getReason();
+		assertEquals(judgment, otherJudgment);
+		assertEquals(judgment.hashCode(), otherJudgment.hashCode());
+		assertNotEquals(judgment, new Judgment(Judgment.Classification.Benign, Judgment.Method.genomewide, "PMS2",
+				new GavinReason(Rule.GENOMEWIDE_CADD_BELOW_THRESHOLD, null, "PMS2", 2.0, null, 15.0), null, null));
+	}
+
+	@Test
+	public void testSetReason()
+	{
+		Judgment judgment = new Judgment(Judgment.Classification.Benign, Judgment.Method.genomewide, "PMS2",
+				new GavinReason(Rule.GENOMEWIDE_MODIFIER_IMPACT, Impact.MODIFIER, "PMS2", 1.0, 0.0, Double.NaN), null,
+				null);
+		judgment.setReason("overridden");
+		assertEquals(judgment.getReason(), "overridden");
+	}
+}
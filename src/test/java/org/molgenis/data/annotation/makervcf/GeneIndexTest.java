@@ -0,0 +1,129 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
+import org.molgenis.data.annotation.makervcf.structs.GeneIndex;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GeneIndexTest
+{
+	private GeneIndex geneIndex;
+
+	@BeforeClass
+	public void beforeClass()
+	{
+		Map<String, GavinEntry> gavinEntries = new HashMap<>();
+		for (GavinEntry gavinEntry : asList(createGavinEntry("A", "1", 100, 200), createGavinEntry("B", "1", 150, 400),
+				createGavinEntry("C", "1", 1000, 2000), createGavinEntry("D", "X", 100, 200)))
+		{
+			gavinEntries.put(gavinEntry.getGene(), gavinEntry);
+		}
+		geneIndex = new GeneIndex(gavinEntries);
+	}
+
+	private static GavinEntry createGavinEntry(String gene, String chromosome, long start, long end)
+	{
+		StringBuilder line = new StringBuilder(gene + "\tC1\t" + chromosome + "\t" + start + "\t" + end);
+		for (int i = 5; i < 30; i++)
+		{
+			line.append('\t');
+		}
+		return new GavinEntry(line.toString());
+	}
+
+	@Test
+	public void testGetGenes()
+	{
+		assertEquals(geneIndex.getGenes("1", 180, 180), asList("A", "B"));
+		assertEquals(geneIndex.getGenes("chr1", 201, 999), asList("B"));
+		assertEquals(geneIndex.getGenes("X", 100, 100), asList("D"));
+		assertEquals(geneIndex.getGenes("2", 100, 100), emptyList());
+	}
+
+	@Test
+	public void testGetEnd()
+	{
+		assertEquals(geneIndex.getEnd("B", "chr1"), Long.valueOf(400));
+		assertNull(geneIndex.getEnd("B", "2"));
+		assertNull(geneIndex.getEnd("unknown", "1"));
+	}
+
+	@Test
+	public void testIsWithinGene()
+	{
+		assertTrue(geneIndex.isWithinGene("A", "1", 150, 0));
+		assertTrue(geneIndex.isWithinGene("A", "1", 250, 50));
+		assertFalse(geneIndex.isWithinGene("A", "1", 251, 50));
+		assertFalse(geneIndex.isWithinGene("A", "X", 150, 0));
+		assertTrue(geneIndex.isWithinGene("unknown", "1", 150, 0));
+	}
+
+	@Test
+	public void testGetGenesCalibrations() throws IOException
+	{
+		File gavinFile = new File(FileUtils.getTempDirectory(), "GAVIN_calibrations_r0.5.tsv");
+		FileCopyUtils.copy(GeneIndexTest.class.getResourceAsStream("/bundle_r1.2/GAVIN_calibrations_r0.5.tsv"),
+				new FileOutputStream(gavinFile));
+		Map<String, GavinEntry> gavinEntries = GavinUtils.getGeneToEntry(gavinFile).getGavinEntries();
+		GeneIndex calibrationsGeneIndex = new GeneIndex(gavinEntries);
+
+		Random random = new Random(1);
+		for (GavinEntry gavinEntry : gavinEntries.values())
+		{
+			if (gavinEntry.getStart() == null || gavinEntry.getEnd() == null)
+			{
+				continue;
+			}
+			String chromosome = gavinEntry.getChromosome();
+			long start = gavinEntry.getStart();
+			long end = gavinEntry.getEnd();
+			// the gene bounds, just outside them and a random window around the gene
+			for (long[] query : new long[][] { { start, start }, { end, end }, { start - 1, start - 1 },
+					{ end + 1, end + 1 }, { start - random.nextInt(100000), end + random.nextInt(100000) } })
+			{
+				List<String> expected = getGenesByScan(gavinEntries, chromosome, query[0], query[1]);
+				List<String> observed = new ArrayList<>(
+						calibrationsGeneIndex.getGenes(chromosome, query[0], query[1]));
+				observed.sort(String::compareTo);
+				assertEquals(observed, expected, chromosome + ":" + query[0] + "-" + query[1]);
+			}
+		}
+	}
+
+	/**
+	 * @return genes overlapping the interval by a scan over all calibration spans, ordered by name
+	 */
+	private static List<String> getGenesByScan(Map<String, GavinEntry> gavinEntries, String chromosome, long start,
+			long end)
+	{
+		List<String> genes = new ArrayList<>();
+		for (GavinEntry gavinEntry : gavinEntries.values())
+		{
+			if (chromosome.equals(gavinEntry.getChromosome()) && gavinEntry.getStart() != null
+					&& gavinEntry.getEnd() != null && gavinEntry.getStart() <= end && gavinEntry.getEnd() >= start)
+			{
+				genes.add(gavinEntry.getGene());
+			}
+		}
+		genes.sort(String::compareTo);
+		return genes;
+	}
+}
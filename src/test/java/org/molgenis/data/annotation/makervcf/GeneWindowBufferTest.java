@@ -0,0 +1,162 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.makervcf.genestream.core.ConvertToGeneStream;
+import org.molgenis.data.annotation.makervcf.genestream.core.GeneWindowBuffer;
+import org.molgenis.data.annotation.makervcf.genestream.impl.AssignCompoundHet;
+import org.molgenis.data.annotation.makervcf.positionalstream.DiscoverRelevantVariants;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance;
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GeneWindowBufferTest extends Setup
+{
+	private File inputVcfFile;
+	private File cgdFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream inputVcf = GeneWindowBufferTest.class.getResourceAsStream("/AssignCompoundHetTestFile.vcf");
+		inputVcfFile = new File(FileUtils.getTempDirectory(), "GeneWindowBufferTestFile.vcf");
+		FileCopyUtils.copy(inputVcf, new FileOutputStream(inputVcfFile));
+		InputStream cgd = GeneWindowBufferTest.class.getResourceAsStream("/bundle_r0.1/CGD_1jun2016.txt.gz");
+		cgdFile = new File(FileUtils.getTempDirectory(), "CGD_1jun2016.txt.gz");
+		FileCopyUtils.copy(cgd, new FileOutputStream(cgdFile));
+	}
+
+	private List<GavinRecord> readRecords() throws Exception
+	{
+		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, repPathoFile,
+				caddFile, null, HandleMissingCaddScores.Mode.ANALYSIS, true);
+		List<GavinRecord> gavinRecords = new ArrayList<>();
+		discover.findRelevantVariants().forEachRemaining(gavinRecords::add);
+		return gavinRecords;
+	}
+
+	@Test
+	public void testSpill() throws Exception
+	{
+		List<GavinRecord> gavinRecords = readRecords();
+		// without relevance, so the record is spilled
+		GavinRecord spilledRecord = gavinRecords.get(0);
+		spilledRecord.setRelevances(new ArrayList<>());
+		spilledRecord.setGenes(new HashSet<>(asList("geneA", "geneB")));
+		spilledRecord.setCaddPhredScore(0, 12.5);
+		GavinRecord relevantRecord = gavinRecords.get(1);
+		assertTrue(relevantRecord.isRelevant());
+		GavinRecord removedRecord = gavinRecords.get(2);
+		removedRecord.setRelevances(new ArrayList<>());
+
+		GeneWindowBuffer buffer = new GeneWindowBuffer(1, false);
+		buffer.add(spilledRecord);
+		buffer.add(relevantRecord);
+		buffer.add(removedRecord);
+		buffer.removeAll(singleton(removedRecord.getChrPosRefAlt()));
+		assertEquals(buffer.size(), 2);
+
+		Iterator<GavinRecord> it = buffer.iterator();
+		GavinRecord readRecord = it.next();
+		assertEquals(readRecord.getAnnotatedVcfRecord().getTokens(), spilledRecord.getAnnotatedVcfRecord().getTokens());
+		assertEquals(readRecord.getGenes(), spilledRecord.getGenes());
+		assertEquals(readRecord.getCaddPhredScore(0), Double.valueOf(12.5));
+		assertTrue(readRecord.isCaddPhredScoresUpdated());
+		// relevant records stay in memory
+		assertSame(it.next(), relevantRecord);
+		assertTrue(!it.hasNext());
+	}
+
+	@Test
+	public void testCompactRelevant() throws Exception
+	{
+		List<GavinRecord> gavinRecords = readRecords();
+		GavinRecord relevantRecord = gavinRecords.get(1);
+		assertTrue(relevantRecord.isRelevant());
+
+		// a budget that is not exceeded, so all records are encoded and none are spilled
+		GeneWindowBuffer buffer = new GeneWindowBuffer(Integer.MAX_VALUE, true);
+		for (GavinRecord gavinRecord : gavinRecords)
+		{
+			buffer.add(gavinRecord);
+		}
+		buffer.removeAll(singleton(gavinRecords.get(0).getChrPosRefAlt()));
+		assertEquals(buffer.size(), gavinRecords.size() - 1);
+
+		Iterator<GavinRecord> it = buffer.iterator();
+		for (GavinRecord gavinRecord : gavinRecords.subList(1, gavinRecords.size()))
+		{
+			GavinRecord readRecord = it.next();
+			assertEquals(readRecord.getAnnotatedVcfRecord().getTokens(), gavinRecord.getAnnotatedVcfRecord().getTokens());
+			assertEquals(readRecord.getGenes(), gavinRecord.getGenes());
+			// relevance is not encoded but kept as is
+			assertSame(readRecord.getRelevance(), gavinRecord.getRelevance().isEmpty() ? readRecord.getRelevance()
+					: gavinRecord.getRelevance());
+		}
+		assertTrue(!it.hasNext());
+	}
+
+	@Test
+	public void testUnlimitedKeepsRecordsLive() throws Exception
+	{
+		List<GavinRecord> gavinRecords = readRecords();
+		GeneWindowBuffer buffer = new GeneWindowBuffer(GeneWindowBuffer.UNLIMITED, true);
+		for (GavinRecord gavinRecord : gavinRecords)
+		{
+			buffer.add(gavinRecord);
+		}
+
+		Iterator<GavinRecord> it = buffer.iterator();
+		for (GavinRecord gavinRecord : gavinRecords)
+		{
+			assertSame(it.next(), gavinRecord);
+		}
+		assertTrue(!it.hasNext());
+	}
+
+	@Test
+	public void testGeneStreamWithSpill() throws Exception
+	{
+		assertEquals(runGeneStream(1), runGeneStream(GeneWindowBuffer.UNLIMITED));
+	}
+
+	private String runGeneStream(long windowMemoryBudget) throws Exception
+	{
+		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, repPathoFile,
+				caddFile, null, HandleMissingCaddScores.Mode.ANALYSIS, true);
+		Iterator<GavinRecord> match = new MatchVariantsToGenotypeAndInheritance(discover.findRelevantVariants(),
+				cgdFile, new HashSet<String>()).go();
+		Iterator<GavinRecord> it = new AssignCompoundHet(
+				new ConvertToGeneStream(match, null, windowMemoryBudget).go()).setWindowMemoryBudget(
+				windowMemoryBudget).go();
+		StringBuilder result = new StringBuilder();
+		while (it.hasNext())
+		{
+			GavinRecord gavinRecord = it.next();
+			result.append(gavinRecord.getPosition());
+			for (Relevance relevance : gavinRecord.getRelevance())
+			{
+				result.append(relevance.getGene()).append(relevance.getSampleStatus());
+			}
+			result.append('_');
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,81 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.vcf.utils.FixVcfAlleleNotation;
+import org.molgenis.data.vcf.utils.IndexedFastaReader;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class IndexedFastaReaderTest
+{
+	protected File fastaFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		// two contigs with 10 bases per line, chr2 has lower case (soft masked) bases
+		fastaFile = new File(FileUtils.getTempDirectory(), "IndexedFastaReaderTest.fa");
+		try (PrintWriter pw = new PrintWriter(fastaFile, "UTF-8"))
+		{
+			pw.print(">chr1 test\nACGTACGTAC\nGGGGGCCCCC\nTTA\n>chr2\nacgtnnnnac\n");
+		}
+		try (PrintWriter pw = new PrintWriter(fastaFile.getPath() + IndexedFastaReader.FAI_EXTENSION, "UTF-8"))
+		{
+			pw.print("chr1\t23\t11\t10\t11\nchr2\t10\t43\t10\t11\n");
+		}
+	}
+
+	@Test
+	public void testGetSequence() throws IOException
+	{
+		try (IndexedFastaReader reader = new IndexedFastaReader(fastaFile))
+		{
+			assertEquals(reader.getSequence("chr1", 1, 23), "ACGTACGTACGGGGGCCCCCTTA");
+			assertEquals(reader.getSequence("chr1", 9, 12), "ACGG");
+			assertEquals(reader.getBase("chr1", 23), 'A');
+			assertEquals(reader.getSequence("2", 1, 4), "ACGT");
+			assertEquals(reader.getBase("2", 5), 'N');
+			assertTrue(reader.hasContig("1"));
+			assertFalse(reader.hasContig("3"));
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testGetSequenceOutsideContig() throws IOException
+	{
+		try (IndexedFastaReader reader = new IndexedFastaReader(fastaFile))
+		{
+			reader.getSequence("chr1", 20, 24);
+		}
+	}
+
+	@Test
+	public void testFixVcfAlleleNotation() throws Exception
+	{
+		File inputVcfFile = new File(FileUtils.getTempDirectory(), "IndexedFastaReaderTestInput.vcf");
+		try (PrintWriter pw = new PrintWriter(inputVcfFile, "UTF-8"))
+		{
+			pw.println("##fileformat=VCFv4.1");
+			pw.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+			pw.println("1\t11\tdel\tNGGG\tN\t.\t.\t.");
+			pw.println("1\t16\tdup\tN\tNC\t.\t.\t.");
+		}
+		File outputVcfFile = new File(FileUtils.getTempDirectory(), "IndexedFastaReaderTestOutput.vcf");
+
+		FixVcfAlleleNotation.main(
+				new String[] { inputVcfFile.getPath(), outputVcfFile.getPath(), fastaFile.getPath() });
+
+		List<String> lines = FileUtils.readLines(outputVcfFile, "UTF-8");
+		assertEquals(lines.size(), 4);
+		assertEquals(lines.get(2), "1\t11\tdel\tGGGG\tG\t.\t.\t.");
+		assertEquals(lines.get(3), "1\t16\tdup\tC\tCC\t.\t.\t.");
+	}
+}
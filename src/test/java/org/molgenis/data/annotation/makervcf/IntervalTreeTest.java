@@ -0,0 +1,89 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.util.Collections.emptyList;
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.molgenis.data.annotation.makervcf.structs.IntervalTree;
+import org.testng.annotations.Test;
+
+public class IntervalTreeTest
+{
+	@Test
+	public void testGetOverlapping()
+	{
+		IntervalTree<String> intervalTree = new IntervalTree<>();
+		intervalTree.add(30, 40, "c");
+		intervalTree.add(10, 20, "a");
+		intervalTree.add(15, 100, "b");
+		intervalTree.add(50, 50, "d");
+
+		assertEquals(intervalTree.getOverlapping(20, 30), Arrays.asList("a", "b", "c"));
+		assertEquals(intervalTree.getOverlapping(50, 50), Arrays.asList("b", "d"));
+		assertEquals(intervalTree.getOverlapping(1, 9), emptyList());
+		assertEquals(intervalTree.getOverlapping(101, 200), emptyList());
+	}
+
+	@Test
+	public void testGetOverlappingRandom()
+	{
+		// every size up to a few levels deep, most of them not a power of two, and a few larger trees
+		List<Integer> sizes = new ArrayList<>();
+		for (int size = 0; size <= 300; size++)
+		{
+			sizes.add(size);
+		}
+		sizes.addAll(Arrays.asList(511, 512, 513, 1000, 4097));
+		for (long seed = 1; seed <= 5; seed++)
+		{
+			Random random = new Random(seed);
+			for (int size : sizes)
+			{
+				assertGetOverlapping(random, size, seed);
+			}
+		}
+	}
+
+	/**
+	 * Compares the overlapping intervals with a scan over all intervals.
+	 */
+	private static void assertGetOverlapping(Random random, int size, long seed)
+	{
+		IntervalTree<Integer> intervalTree = new IntervalTree<>();
+		long[][] intervals = new long[size][];
+		for (int i = 0; i < size; i++)
+		{
+			long start = random.nextInt(100000);
+			// mostly short intervals with an occasional very long one
+			long length = random.nextInt(10) == 0 ? random.nextInt(50000) : random.nextInt(500);
+			intervals[i] = new long[] { start, start + length };
+			intervalTree.add(start, start + length, i);
+		}
+
+		for (int query = 0; query < 100; query++)
+		{
+			long start = random.nextInt(110000);
+			long end = start + random.nextInt(2000);
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < size; i++)
+			{
+				if (intervals[i][0] <= end && intervals[i][1] >= start)
+				{
+					expected.add(i);
+				}
+			}
+			List<Integer> observed = new ArrayList<>(intervalTree.getOverlapping(start, end));
+			observed.sort(Integer::compare);
+			assertEquals(observed, expected, "seed " + seed + " size " + size + " query " + start + "-" + end);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testAddEndBeforeStart()
+	{
+		new IntervalTree<String>().add(10, 9, "a");
+	}
+}
@@ -0,0 +1,38 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.calibratecadd.support.LoadCADDWebserviceOutput;
+import org.testng.annotations.Test;
+
+public class LoadCADDWebserviceOutputTest
+{
+	private static final String CADD_OUTPUT =
+			"## CADD v1.3\n" + "#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED\n" + "1\t158651386\tC\tCAAC\t1.117764\t11.31\n";
+
+	@Test
+	public void testLoad() throws Exception
+	{
+		File caddFile = new File(FileUtils.getTempDirectory(), "LoadCADDWebserviceOutputTest.tsv");
+		FileUtils.write(caddFile, CADD_OUTPUT, UTF_8);
+		assertEquals(LoadCADDWebserviceOutput.load(caddFile), singletonMap("1_158651386_C_CAAC", 11.31));
+	}
+
+	@Test
+	public void testLoadGzipped() throws Exception
+	{
+		File caddFile = new File(FileUtils.getTempDirectory(), "LoadCADDWebserviceOutputTest.tsv.gz");
+		try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(caddFile)))
+		{
+			outputStream.write(CADD_OUTPUT.getBytes(UTF_8));
+		}
+		assertEquals(LoadCADDWebserviceOutput.load(caddFile), singletonMap("1_158651386_C_CAAC", 11.31));
+	}
+}
@@ -0,0 +1,94 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.cgd.CGDEntry;
+import org.molgenis.data.annotation.entity.impl.gavin.GavinEntry;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ReferenceBundleTest extends Setup
+{
+	protected File cgdFile;
+	protected File fdrFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream cgd = ReferenceBundleTest.class.getResourceAsStream("/bundle_r0.1/CGD_1jun2016.txt.gz");
+		cgdFile = new File(FileUtils.getTempDirectory(), "CGD_1jun2016.txt.gz");
+		FileCopyUtils.copy(cgd, new FileOutputStream(cgdFile));
+
+		InputStream fdr = ReferenceBundleTest.class.getResourceAsStream("/bundle_r0.1/FDR_allGenes.tsv");
+		fdrFile = new File(FileUtils.getTempDirectory(), "FDR_allGenes.tsv");
+		FileCopyUtils.copy(fdr, new FileOutputStream(fdrFile));
+	}
+
+	@Test
+	public void testCompileAndLoad() throws Exception
+	{
+		File bundleFile = new File(FileUtils.getTempDirectory(), "ReferenceBundleTest.gavinbundle");
+		ReferenceBundle.compile(gavinFile, repPathoFile, cgdFile, fdrFile, bundleFile);
+
+		ReferenceData expected = ReferenceData.load(gavinFile, repPathoFile, cgdFile, fdrFile, null);
+		ReferenceData observed = ReferenceBundle.load(bundleFile, null);
+
+		assertEquals(observed.getGavinCalibrations().getGenomewideCaddThreshold(),
+				expected.getGavinCalibrations().getGenomewideCaddThreshold());
+		assertEquals(observed.getGavinCalibrations().getGenomewideMafThreshold(),
+				expected.getGavinCalibrations().getGenomewideMafThreshold());
+		assertEquals(observed.getGavinCalibrations().getGavinEntries().keySet(),
+				expected.getGavinCalibrations().getGavinEntries().keySet());
+		for (GavinEntry expectedEntry : expected.getGavinCalibrations().getGavinEntries().values())
+		{
+			GavinEntry observedEntry = observed.getGavinCalibrations().getGavinEntries().get(expectedEntry.getGene());
+			assertEquals(observedEntry.getCategory(), expectedEntry.getCategory());
+			assertEquals(observedEntry.getChromosome(), expectedEntry.getChromosome());
+			assertEquals(observedEntry.getStart(), expectedEntry.getStart());
+			assertEquals(observedEntry.getNrOfPathogenicVariants(), expectedEntry.getNrOfPathogenicVariants());
+			assertEquals(observedEntry.getPathoMAFThreshold(), expectedEntry.getPathoMAFThreshold());
+			assertEquals(observedEntry.getMeanPathogenicCADDScore(), expectedEntry.getMeanPathogenicCADDScore());
+			assertEquals(observedEntry.getSpec95thPerCADDThreshold(), expectedEntry.getSpec95thPerCADDThreshold());
+		}
+
+		assertEquals(observed.getReportedPathogenic().getPosRefAltToRepPatho(),
+				expected.getReportedPathogenic().getPosRefAltToRepPatho());
+
+		assertEquals(observed.getCgd().keySet(), expected.getCgd().keySet());
+		for (CGDEntry expectedEntry : expected.getCgd().values())
+		{
+			// the CGD is case insensitive
+			CGDEntry observedEntry = observed.getCgd().get(expectedEntry.getGene().toLowerCase());
+			assertEquals(observedEntry.toString(), expectedEntry.toString());
+		}
+
+		assertEquals(observed.getFdrTable().getGenes(), expected.getFdrTable().getGenes());
+		for (String gene : expected.getFdrTable().getGenes())
+		{
+			assertEquals(observed.getFdrTable().getAffectedFrac(gene), expected.getFdrTable().getAffectedFrac(gene));
+			assertEquals(observed.getFdrTable().getCarrierFrac(gene), expected.getFdrTable().getCarrierFrac(gene));
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testLoadCorrupt() throws Exception
+	{
+		File bundleFile = new File(FileUtils.getTempDirectory(), "ReferenceBundleTestCorrupt.gavinbundle");
+		ReferenceBundle.compile(gavinFile, repPathoFile, cgdFile, fdrFile, bundleFile);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(bundleFile, "rw"))
+		{
+			randomAccessFile.seek(100);
+			int value = randomAccessFile.read();
+			randomAccessFile.seek(100);
+			randomAccessFile.write(value ^ 0xFF);
+		}
+		ReferenceBundle.load(bundleFile, null);
+	}
+}
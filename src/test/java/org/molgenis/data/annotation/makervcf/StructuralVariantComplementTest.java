@@ -0,0 +1,142 @@
+package org.molgenis.data.annotation.makervcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.calibratecadd.support.GavinUtils;
+import org.molgenis.data.annotation.makervcf.genestream.core.ConvertToGeneStream;
+import org.molgenis.data.annotation.makervcf.genestream.impl.AssignCompoundHet;
+import org.molgenis.data.annotation.makervcf.genestream.impl.StructuralVariantComplement;
+import org.molgenis.data.annotation.makervcf.positionalstream.DiscoverRelevantVariants;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance;
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.data.annotation.makervcf.structs.StructuralVariant;
+import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
+import org.molgenis.data.annotation.makervcf.util.StructuralVariantReader;
+import org.molgenis.data.vcf.utils.TabixIndexBuilder;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class StructuralVariantComplementTest extends Setup
+{
+	private File inputVcfFile;
+	private File cgdFile;
+	private File svVcfFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream inputVcf = StructuralVariantComplementTest.class.getResourceAsStream(
+				"/AssignCompoundHetTestFile.vcf");
+		inputVcfFile = new File(FileUtils.getTempDirectory(), "StructuralVariantComplementTestFile.vcf");
+		FileCopyUtils.copy(inputVcf, new FileOutputStream(inputVcfFile));
+		InputStream cgd = StructuralVariantComplementTest.class.getResourceAsStream(
+				"/bundle_r0.1/CGD_1jun2016.txt.gz");
+		cgdFile = new File(FileUtils.getTempDirectory(), "CGD_1jun2016.txt.gz");
+		FileCopyUtils.copy(cgd, new FileOutputStream(cgdFile));
+
+		// AIMP1 deletion on the other haplotype of p02, ALG1 duplication on the same haplotype as the p01 variant and
+		// unphased for p02, an inversion that is ignored and a filtered deletion of ALG9
+		svVcfFile = new File(FileUtils.getTempDirectory(), "StructuralVariantComplementTestSV.vcf.gz");
+		writeSvVcf(svVcfFile, "1\t1\tdel1\tG\t<DEL>\t.\tPASS\tEND=2;SVTYPE=DEL\tGT:FT\t0/0:PASS\t1|0:PASS",
+				"1\t10\tinv1\tG\t<INV>\t.\tPASS\tEND=30;SVTYPE=INV\tGT\t1/1\t1/1",
+				"1\t11\tdup1\tG\t<DUP>\t.\tPASS\tEND=12;SVTYPE=DUP\tGT\t1|0\t0/1",
+				"1\t20\tdel2\tG\t<DEL>\t.\tMinQUAL\tEND=21;SVTYPE=DEL\tGT\t1/1\t1/1");
+	}
+
+	private static void writeSvVcf(File file, String... lines) throws IOException
+	{
+		TabixIndexBuilder tabixIndexBuilder = new TabixIndexBuilder();
+		try (BlockCompressedOutputStream outputStream = new BlockCompressedOutputStream(file))
+		{
+			outputStream.write(("##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tp01\tp02\n")
+					.getBytes(UTF_8));
+			for (String line : lines)
+			{
+				long startOffset = outputStream.getFilePointer();
+				outputStream.write((line + "\n").getBytes(UTF_8));
+				int position = Integer.parseInt(line.split("\t")[1]);
+				tabixIndexBuilder.addRecord("1", position, position, startOffset, outputStream.getFilePointer());
+			}
+		}
+		tabixIndexBuilder.writeIndex(file);
+	}
+
+	@Test
+	public void testReader() throws IOException
+	{
+		try (StructuralVariantReader reader = new StructuralVariantReader(svVcfFile))
+		{
+			List<StructuralVariant> structuralVariants = reader.getOverlapping("chr1", 2, 11);
+			assertEquals(structuralVariants.size(), 2);
+			assertEquals(structuralVariants.get(0).toString(), "DEL chr1:1-2");
+			assertEquals(structuralVariants.get(0).getSampleGenotypes().toString(), "{p02=1|0}");
+			assertEquals(structuralVariants.get(1).getType(), StructuralVariant.Type.DUP);
+			assertEquals(reader.getOverlapping("2", 1, 100).size(), 0);
+		}
+	}
+
+	@Test
+	public void testMantaOutput() throws IOException
+	{
+		File mantaFile = new File(FileUtils.getTempDirectory(), "diploidSV.vcf.gz");
+		FileCopyUtils.copy(getClass().getResourceAsStream("/PlatinumGenomesMantaSV/diploidSV.vcf.gz"),
+				new FileOutputStream(mantaFile));
+		FileCopyUtils.copy(getClass().getResourceAsStream("/PlatinumGenomesMantaSV/diploidSV.vcf.gz.tbi"),
+				new FileOutputStream(mantaFile.getPath() + ".tbi"));
+		try (StructuralVariantReader reader = new StructuralVariantReader(mantaFile))
+		{
+			// deletions that did not pass the filters are skipped
+			List<StructuralVariant> structuralVariants = reader.getOverlapping("2", 200000, 500000);
+			assertEquals(structuralVariants.size(), 3);
+			assertEquals(structuralVariants.get(0).toString(), "DEL 2:313507-313590");
+			assertEquals(structuralVariants.get(0).getSampleGenotypes().get("PlatinumSample"), "0/1");
+		}
+	}
+
+	@Test
+	public void testComplement() throws Exception
+	{
+		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, repPathoFile,
+				caddFile, null, HandleMissingCaddScores.Mode.ANALYSIS, true);
+		Iterator<GavinRecord> match = new MatchVariantsToGenotypeAndInheritance(discover.findRelevantVariants(),
+				cgdFile, new HashSet<String>()).go();
+		Iterator<GavinRecord> compounds = new AssignCompoundHet(new ConvertToGeneStream(match).go()).go();
+
+		Map<Integer, String> sampleStatusPerPosition = new HashMap<>();
+		try (StructuralVariantReader reader = new StructuralVariantReader(svVcfFile))
+		{
+			Iterator<GavinRecord> it = new StructuralVariantComplement(compounds, reader,
+					GavinUtils.getGeneToEntry(gavinFile).getGeneIndex()).go();
+			while (it.hasNext())
+			{
+				GavinRecord gavinRecord = it.next();
+				for (Relevance relevance : gavinRecord.getRelevance())
+				{
+					sampleStatusPerPosition.put(gavinRecord.getPosition(), relevance.getSampleStatus().toString());
+				}
+			}
+		}
+
+		// AIMP1
+		assertEquals(sampleStatusPerPosition.get(2), "{p02=AFFECTED_COMPOUNDHET}");
+		// ALG1
+		assertEquals(sampleStatusPerPosition.get(11), "{p01=CARRIER}");
+		assertEquals(sampleStatusPerPosition.get(12), "{p02=AFFECTED_COMPOUNDHET}");
+		// ALG9, only hit by the filtered deletion
+		assertEquals(sampleStatusPerPosition.get(20), "{p01=CARRIER, p02=AFFECTED}");
+	}
+}
@@ -8,18 +8,20 @@ import static org.mockito.Mockito.when;
 import static org.mockito.quality.Strictness.STRICT_STUBS;
 import static org.testng.Assert.assertEquals;
 
-import java.util.Optional;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.mockito.Mock;
 import org.mockito.MockitoSession;
 import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
 import org.molgenis.data.annotation.makervcf.Main.RlvMode;
+import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance.Status;
 import org.molgenis.data.annotation.makervcf.structs.AnnotatedVcfRecord;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
 import org.molgenis.data.annotation.makervcf.structs.Relevance;
-import org.molgenis.vcf.VcfInfo;
-import org.molgenis.vcf.VcfRecord;
-import org.molgenis.vcf.VcfSample;
-import org.molgenis.vcf.meta.VcfMeta;
+import org.molgenis.data.vcf.utils.VcfLineBuffer;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -28,8 +30,6 @@ public class VcfRecordMapperTest
 {
 	private MockitoSession mockito;
 
-	@Mock
-	private VcfMeta vcfMeta;
 	@Mock
 	private VcfRecordMapperSettings vcfRecordMapperSettings;
 	private VcfRecordMapper vcfRecordMapper;
@@ -47,208 +47,260 @@ public class VcfRecordMapperTest
 	}
 
 	@Test
-	public void testMap()
+	public void testWriteSamples()
 	{
-		GavinRecord gavinRecord = createMock(true, true, true, true, true, true, true);
 		when(vcfRecordMapperSettings.includeSamples()).thenReturn(true);
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;key1=val1", null, true, "GT:DP", "0|1:1", "1|1:2");
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||\tGT:DP\t0|1:1\t1|1:2");
+	}
+
+	@Test
+	public void testWriteSampleRlv()
+	{
+		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0", null, true);
+		Relevance relevance = gavinRecord.getRelevance().get(0);
+		Map<String, Status> sampleStatus = new LinkedHashMap<>();
+		sampleStatus.put("p01", Status.AFFECTED);
+		sampleStatus.put("p 02", Status.CARRIER);
+		relevance.setSampleStatus(sampleStatus);
+		Map<String, String> sampleGenotypes = new LinkedHashMap<>();
+		sampleGenotypes.put("p01", "1|1");
+		sampleGenotypes.put("p 02", "0/1");
+		relevance.setSampleGenotypes(sampleGenotypes);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
 
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||","GT:DP","0|1:1","1|1:2" }));
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;RLV=A|0.1|gene0||transcript0||||||p01:AFFECTED/p_02:CARRIER||p01:1p1/p_02:0s1||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||");
 	}
 
 	@Test
-	public void testMapNoSamples()
+	public void testWriteNoSamples()
 	{
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||" }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;key1=val1", null, true, "GT:DP", "0|1:1", "1|1:2");
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||");
 	}
 
 	@Test
-	public void testMapSplitRlv()
+	public void testWriteSplitRlv()
 	{
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.SPLITTED);
 		when(vcfRecordMapperSettings.prefixSplittedRlvFields()).thenReturn(true);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV_ALLELEFREQ=[A|gene0]0.1,[G|gene1]3.4;RLV_SAMPLEGENOTYPE=[A|gene0].,[G|gene1].;RLV_VARIANTGROUP=[A|gene0].,[G|gene1].;RLV_SAMPLEGROUP=[A|gene0].,[G|gene1].;RLV_FDR=[A|gene0].,[G|gene1].;RLV_PHENOTYPEINHERITANCE=[A|gene0].,[G|gene1].;RLV_ALLELE=[A|gene0]A,[G|gene1]G;RLV_GENE=[A|gene0]gene0,[G|gene1]gene1;RLV_PHENOTYPE=[A|gene0].,[G|gene1].;RLV_PHENOTYPEDETAILS=[A|gene0].,[G|gene1].;RLV_PHENOTYPEGROUP=[A|gene0].,[G|gene1].;RLV_VARIANTSIGNIFICANCE=[A|gene0]type0,[G|gene1]type1;RLV_VARIANTSIGNIFICANCEJUSTIFICATION=[A|gene0]my_reason_#0,[G|gene1]my_reason_#1;RLV_TRANSCRIPT=[A|gene0]transcript0,[G|gene1]transcript1;RLV_PRESENT=[A|gene0]TRUE,[G|gene1]TRUE;RLV_SAMPLESTATUS=[A|gene0].,[G|gene1].;RLV_VARIANTSIGNIFICANCESOURCE=[A|gene0]source0,[G|gene1]source1;RLV_VARIANTMULTIGENIC=[A|gene0].,[G|gene1].;RLV_PHENOTYPEONSET=[A|gene0].,[G|gene1].;RLV_SAMPLEPHENOTYPE=[A|gene0].,[G|gene1]." }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;key1=val1", null, true);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;RLV_PRESENT=[A|gene0]TRUE,[G|gene1]TRUE;RLV_ALLELE=[A|gene0]A,[G|gene1]G;RLV_ALLELEFREQ=[A|gene0]0.1,[G|gene1]3.4;RLV_GENE=[A|gene0]gene0,[G|gene1]gene1;RLV_FDR=[A|gene0].,[G|gene1].;RLV_TRANSCRIPT=[A|gene0]transcript0,[G|gene1]transcript1;RLV_PHENOTYPE=[A|gene0].,[G|gene1].;RLV_PHENOTYPEINHERITANCE=[A|gene0].,[G|gene1].;RLV_PHENOTYPEONSET=[A|gene0].,[G|gene1].;RLV_PHENOTYPEDETAILS=[A|gene0].,[G|gene1].;RLV_PHENOTYPEGROUP=[A|gene0].,[G|gene1].;RLV_SAMPLESTATUS=[A|gene0].,[G|gene1].;RLV_SAMPLEPHENOTYPE=[A|gene0].,[G|gene1].;RLV_SAMPLEGENOTYPE=[A|gene0].,[G|gene1].;RLV_SAMPLEGROUP=[A|gene0].,[G|gene1].;RLV_VARIANTSIGNIFICANCE=[A|gene0]type0,[G|gene1]type1;RLV_VARIANTSIGNIFICANCESOURCE=[A|gene0]source0,[G|gene1]source1;RLV_VARIANTSIGNIFICANCEJUSTIFICATION=[A|gene0]my_reason_#0,[G|gene1]my_reason_#1;RLV_VARIANTMULTIGENIC=[A|gene0].,[G|gene1].;RLV_VARIANTGROUP=[A|gene0].,[G|gene1].");
 	}
 
 	@Test
-	public void testMapSplittedAndMergedRlv() {
+	public void testWriteSplittedAndMergedRlv()
+	{
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.BOTH);
 		when(vcfRecordMapperSettings.prefixSplittedRlvFields()).thenReturn(true);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[]{"1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV_ALLELEFREQ=[A|gene0]0.1,[G|gene1]3.4;RLV_SAMPLEGENOTYPE=[A|gene0].,[G|gene1].;RLV_VARIANTGROUP=[A|gene0].,[G|gene1].;RLV_SAMPLEGROUP=[A|gene0].,[G|gene1].;RLV_FDR=[A|gene0].,[G|gene1].;RLV_PHENOTYPEINHERITANCE=[A|gene0].,[G|gene1].;RLV_ALLELE=[A|gene0]A,[G|gene1]G;RLV_GENE=[A|gene0]gene0,[G|gene1]gene1;RLV_PHENOTYPE=[A|gene0].,[G|gene1].;RLV_PHENOTYPEDETAILS=[A|gene0].,[G|gene1].;RLV_PHENOTYPEGROUP=[A|gene0].,[G|gene1].;RLV_VARIANTSIGNIFICANCE=[A|gene0]type0,[G|gene1]type1;RLV_VARIANTSIGNIFICANCEJUSTIFICATION=[A|gene0]my_reason_#0,[G|gene1]my_reason_#1;RLV_TRANSCRIPT=[A|gene0]transcript0,[G|gene1]transcript1;RLV_PRESENT=[A|gene0]TRUE,[G|gene1]TRUE;RLV_SAMPLESTATUS=[A|gene0].,[G|gene1].;RLV_VARIANTSIGNIFICANCESOURCE=[A|gene0]source0,[G|gene1]source1;RLV_VARIANTMULTIGENIC=[A|gene0].,[G|gene1].;RLV_PHENOTYPEONSET=[A|gene0].,[G|gene1].;RLV_SAMPLEPHENOTYPE=[A|gene0].,[G|gene1].;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||"}));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;key1=val1", null, true);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;RLV_PRESENT=[A|gene0]TRUE,[G|gene1]TRUE;RLV_ALLELE=[A|gene0]A,[G|gene1]G;RLV_ALLELEFREQ=[A|gene0]0.1,[G|gene1]3.4;RLV_GENE=[A|gene0]gene0,[G|gene1]gene1;RLV_FDR=[A|gene0].,[G|gene1].;RLV_TRANSCRIPT=[A|gene0]transcript0,[G|gene1]transcript1;RLV_PHENOTYPE=[A|gene0].,[G|gene1].;RLV_PHENOTYPEINHERITANCE=[A|gene0].,[G|gene1].;RLV_PHENOTYPEONSET=[A|gene0].,[G|gene1].;RLV_PHENOTYPEDETAILS=[A|gene0].,[G|gene1].;RLV_PHENOTYPEGROUP=[A|gene0].,[G|gene1].;RLV_SAMPLESTATUS=[A|gene0].,[G|gene1].;RLV_SAMPLEPHENOTYPE=[A|gene0].,[G|gene1].;RLV_SAMPLEGENOTYPE=[A|gene0].,[G|gene1].;RLV_SAMPLEGROUP=[A|gene0].,[G|gene1].;RLV_VARIANTSIGNIFICANCE=[A|gene0]type0,[G|gene1]type1;RLV_VARIANTSIGNIFICANCESOURCE=[A|gene0]source0,[G|gene1]source1;RLV_VARIANTSIGNIFICANCEJUSTIFICATION=[A|gene0]my_reason_#0,[G|gene1]my_reason_#1;RLV_VARIANTMULTIGENIC=[A|gene0].,[G|gene1].;RLV_VARIANTGROUP=[A|gene0].,[G|gene1].;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||");
 	}
 
 	@Test
-	public void testMapSplitRlvNoPrefix()
+	public void testWriteSplitRlvNoPrefix()
 	{
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.SPLITTED);
 		when(vcfRecordMapperSettings.prefixSplittedRlvFields()).thenReturn(false);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV_ALLELEFREQ=0.1,3.4;RLV_SAMPLEGENOTYPE=.,.;RLV_VARIANTGROUP=.,.;RLV_SAMPLEGROUP=.,.;RLV_FDR=.,.;RLV_PHENOTYPEINHERITANCE=.,.;RLV_ALLELE=A,G;RLV_GENE=gene0,gene1;RLV_PHENOTYPE=.,.;RLV_PHENOTYPEDETAILS=.,.;RLV_PHENOTYPEGROUP=.,.;RLV_VARIANTSIGNIFICANCE=type0,type1;RLV_VARIANTSIGNIFICANCEJUSTIFICATION=my_reason_#0,my_reason_#1;RLV_TRANSCRIPT=transcript0,transcript1;RLV_PRESENT=TRUE,TRUE;RLV_SAMPLESTATUS=.,.;RLV_VARIANTSIGNIFICANCESOURCE=source0,source1;RLV_VARIANTMULTIGENIC=.,.;RLV_PHENOTYPEONSET=.,.;RLV_SAMPLEPHENOTYPE=.,." }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;key1=val1", null, true);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;RLV_PRESENT=TRUE,TRUE;RLV_ALLELE=A,G;RLV_ALLELEFREQ=0.1,3.4;RLV_GENE=gene0,gene1;RLV_FDR=.,.;RLV_TRANSCRIPT=transcript0,transcript1;RLV_PHENOTYPE=.,.;RLV_PHENOTYPEINHERITANCE=.,.;RLV_PHENOTYPEONSET=.,.;RLV_PHENOTYPEDETAILS=.,.;RLV_PHENOTYPEGROUP=.,.;RLV_SAMPLESTATUS=.,.;RLV_SAMPLEPHENOTYPE=.,.;RLV_SAMPLEGENOTYPE=.,.;RLV_SAMPLEGROUP=.,.;RLV_VARIANTSIGNIFICANCE=type0,type1;RLV_VARIANTSIGNIFICANCESOURCE=source0,source1;RLV_VARIANTSIGNIFICANCEJUSTIFICATION=my_reason_#0,my_reason_#1;RLV_VARIANTMULTIGENIC=.,.;RLV_VARIANTGROUP=.,.");
 	}
 
 	@Test
-	public void testMapNoIdentifiers()
+	public void testWriteMissingValues()
 	{
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(false, true, true, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", ".", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||" }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock(new String[] { "1", "123", ".", "GTC", ".", ".", "." }, "key0=val0;key1=val1",
+				null, true);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\t.\tGTC\t.\t.\t.\tkey0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||");
 	}
 
 	@Test
-	public void testMapNoAlt()
+	public void testWriteNoRlvNoSamples()
 	{
-		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, false, true, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", ".", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||" }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;key1=val1", null, false);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;RLV_PRESENT=FALSE");
 	}
 
 	@Test
-	public void testMapNoQuality()
+	public void testWriteNoInfo()
 	{
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, false, true, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", ".", "q10;s50",
-						"key0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||" }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock(".", null, true);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tRLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||");
 	}
 
 	@Test
-	public void testMapNoFilterStatus()
+	public void testWrite()
 	{
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
+		when(vcfRecordMapperSettings.includeSamples()).thenReturn(true);
 		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		GavinRecord gavinRecord = createMock(true, true, true, false, true, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", ".",
-						"key0=val0;key1=val1;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||" }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;CADD_SCALED=1;FLAG;key1=val1", new Double[] { 12.3, null },
+				true, "GT:DP", "0|1:1", "1|1:2");
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;FLAG;key1=val1;CADD_SCALED=12.3,.;RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||\tGT:DP\t0|1:1\t1|1:2");
 	}
 
 	@Test
-	public void testMapAnnotatedVcfRecordNoRlv()
+	public void testWriteNoSamplesNoInfoNoRlv()
 	{
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, false, true, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"key0=val0;key1=val1;RLV_PRESENT=FALSE" }));
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock(".", null, false, "GT", "0|1");
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tRLV_PRESENT=FALSE");
 	}
 
 	@Test
-	public void testMapNoInfo()
+	public void testWritePassThrough()
 	{
-		when(vcfRecordMapperSettings.rlvMode()).thenReturn(RlvMode.MERGED);
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, true, false, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"RLV=A|0.1|gene0||transcript0||||||||||type0|source0|my_reason_#0||,G|3.4|gene1||transcript1||||||||||type1|source1|my_reason_#1||" }));
+		when(vcfRecordMapperSettings.includeSamples()).thenReturn(true);
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;CADD_SCALED=1;key1=val1", null, false, "GT:DP", "0|1:1",
+				"1|1:2");
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;CADD_SCALED=1;key1=val1;RLV_PRESENT=FALSE\tGT:DP\t0|1:1\t1|1:2");
 	}
 
 	@Test
-	public void testMapNoInfoNoRlv()
+	public void testWriteNoRlvCaddScoresUpdated()
 	{
-		vcfRecordMapper = new VcfRecordMapper(vcfMeta, vcfRecordMapperSettings);
-		GavinRecord gavinRecord = createMock(true, true, true, true, false, false, false);
-		VcfRecord mappedVcfRecord = vcfRecordMapper.map(gavinRecord);
-		assertEquals(mappedVcfRecord, new VcfRecord(vcfMeta,
-				new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50",
-						"RLV_PRESENT=FALSE" }));
+		when(vcfRecordMapperSettings.includeSamples()).thenReturn(true);
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0;CADD_SCALED=1;key1=val1", new Double[] { 12.3 }, false,
+				"GT:DP", "0|1:1", "1|1:2");
+		when(gavinRecord.isCaddPhredScoresUpdated()).thenReturn(true);
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;key1=val1;CADD_SCALED=12.3;RLV_PRESENT=FALSE\tGT:DP\t0|1:1\t1|1:2");
 	}
 
-	private GavinRecord createMock(boolean includeIdentifiers, boolean includeAlt, boolean includeQuality,
-			boolean includeFilter, boolean includeRlv, boolean includeInfo, boolean includeSamples)
+	@Test
+	public void testWritePassThroughSameAsCommonPath() throws IOException
 	{
-		AnnotatedVcfRecord annotatedVcfRecord = mock(AnnotatedVcfRecord.class);
-		if (includeInfo)
-		{
-			VcfInfo vcfInfo0 = mock(VcfInfo.class);
-			when(vcfInfo0.getKey()).thenReturn("key0");
-			when(vcfInfo0.getValRaw()).thenReturn("val0");
-			VcfInfo vcfInfo1 = mock(VcfInfo.class);
-			when(vcfInfo1.getKey()).thenReturn("key1");
-			when(vcfInfo1.getValRaw()).thenReturn("val1");
-			when(annotatedVcfRecord.getInformation()).thenReturn(asList(vcfInfo0, vcfInfo1));
-		}
-		else
-		{
-			when(annotatedVcfRecord.getInformation()).thenReturn(emptyList());
-		}
+		when(vcfRecordMapperSettings.includeSamples()).thenReturn(true);
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		assertPassThroughSameAsCommonPath("key0=val0;FLAG;key1=val1", "GT:DP", "0|1:1", "1|1:2");
+		assertPassThroughSameAsCommonPath(".", "GT:DP", "0|1:1");
+		assertPassThroughSameAsCommonPath("key0=val0", "GT");
+		assertPassThroughSameAsCommonPath("key0=val0");
+	}
+
+	private void assertPassThroughSameAsCommonPath(String info, String... formatAndSampleTokens) throws IOException
+	{
+		GavinRecord passThroughRecord = createTokensMock(info, null, false, formatAndSampleTokens);
+		VcfLineBuffer passThroughBuffer = new VcfLineBuffer();
+		vcfRecordMapper.write(passThroughRecord, passThroughBuffer);
+
+		// a record with an updated CADD score, but without any scores, takes the common path
+		GavinRecord commonPathRecord = createTokensMock(info, null, false, formatAndSampleTokens);
+		when(commonPathRecord.isCaddPhredScoresUpdated()).thenReturn(true);
+		VcfLineBuffer commonPathBuffer = new VcfLineBuffer();
+		vcfRecordMapper.write(commonPathRecord, commonPathBuffer);
+
+		assertEquals(toBytes(passThroughBuffer), toBytes(commonPathBuffer));
+	}
+
+	@Test
+	public void testWriteNoRlvFormatWithoutSamples()
+	{
+		when(vcfRecordMapperSettings.includeSamples()).thenReturn(true);
+		vcfRecordMapper = new VcfRecordMapper(vcfRecordMapperSettings);
+		GavinRecord gavinRecord = createTokensMock("key0=val0", null, false, "GT");
+		VcfLineBuffer buffer = new VcfLineBuffer();
+		vcfRecordMapper.write(gavinRecord, buffer);
+
+		assertEquals(buffer.toString(),
+				"1\t123\trs6054257;rs6040355\tGTC\tG,GTCT\t123.45\tq10;s50\tkey0=val0;RLV_PRESENT=FALSE");
+	}
+
+	private static byte[] toBytes(VcfLineBuffer buffer) throws IOException
+	{
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		buffer.writeTo(outputStream);
+		return outputStream.toByteArray();
+	}
+
+	private GavinRecord createTokensMock(String info, Double[] caddScores, boolean includeRlv,
+			String... formatAndSampleTokens)
+	{
+		return createTokensMock(new String[] { "1", "123", "rs6054257;rs6040355", "GTC", "G,GTCT", "123.45", "q10;s50" },
+				info, caddScores, includeRlv, formatAndSampleTokens);
+	}
+
+	private GavinRecord createTokensMock(String[] columns, String info, Double[] caddScores, boolean includeRlv,
+			String... formatAndSampleTokens)
+	{
+		String[] tokens = Arrays.copyOf(columns, columns.length + 1);
+		tokens[columns.length] = info;
+		String[] allTokens = Arrays.copyOf(tokens, tokens.length + formatAndSampleTokens.length);
+		System.arraycopy(formatAndSampleTokens, 0, allTokens, tokens.length, formatAndSampleTokens.length);
 
+		AnnotatedVcfRecord annotatedVcfRecord = mock(AnnotatedVcfRecord.class);
+		when(annotatedVcfRecord.getTokens()).thenReturn(allTokens);
 		GavinRecord gavinRecord = mock(GavinRecord.class);
-		when(gavinRecord.getChromosome()).thenReturn("1");
-		when(gavinRecord.getPosition()).thenReturn(123);
-		if (includeIdentifiers)
-		{
-			when(gavinRecord.getIdentifiers()).thenReturn(asList("rs6054257", "rs6040355"));
-		}
-		else
-		{
-			when(gavinRecord.getIdentifiers()).thenReturn(emptyList());
-		}
-		when(gavinRecord.getRef()).thenReturn("GTC");
-		if (includeAlt)
-		{
-			when(gavinRecord.getAlts()).thenReturn(new String[] { "G", "GTCT" });
-		}
-		else
-		{
-			when(gavinRecord.getAlts()).thenReturn(new String[] {});
-		}
-		if (includeQuality)
-		{
-			when(gavinRecord.getQuality()).thenReturn(Optional.of(123.45));
-		}
-		else
-		{
-			when(gavinRecord.getQuality()).thenReturn(Optional.empty());
-		}
-		if (includeFilter)
-		{
-			when(gavinRecord.getFilterStatus()).thenReturn(asList("q10", "s50"));
-		}
-		else
+		when(gavinRecord.getAnnotatedVcfRecord()).thenReturn(annotatedVcfRecord);
+		if (caddScores != null)
 		{
-			when(gavinRecord.getFilterStatus()).thenReturn(emptyList());
+			when(gavinRecord.getCaddPhredScores()).thenReturn(caddScores);
 		}
-		when(gavinRecord.getAnnotatedVcfRecord()).thenReturn(annotatedVcfRecord);
-
 		if (includeRlv)
 		{
 			Relevance relevance0 = new Relevance("A", "transcript0", 0.1, 2.3, "gene0",
@@ -263,16 +315,6 @@ public class VcfRecordMapperTest
 		{
 			when(gavinRecord.getRelevance()).thenReturn(emptyList());
 		}
-
-		if (includeSamples)
-		{
-			VcfSample sample0 = mock(VcfSample.class);
-			VcfSample sample1 = mock(VcfSample.class);
-			when(annotatedVcfRecord.getSamples()).thenReturn(asList(sample0, sample1));
-
-			when(annotatedVcfRecord.getFormat()).thenReturn(new String[]{"GT","DP"});
-			when(annotatedVcfRecord.getSampleTokens()).thenReturn(new String[] { "0|1:1", "1|1:2" });
-		}
 		return gavinRecord;
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.molgenis.data.annotation.makervcf;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -8,13 +9,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
 import org.apache.commons.io.FileUtils;
+import org.broad.tribble.readers.TabixReader;
 import org.molgenis.data.annotation.makervcf.Main.RlvMode;
 import org.molgenis.data.annotation.makervcf.positionalstream.DiscoverRelevantVariants;
 import org.molgenis.data.annotation.makervcf.positionalstream.MatchVariantsToGenotypeAndInheritance;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarBlock;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarReader;
+import org.molgenis.data.annotation.makervcf.sidecar.RlvSidecarWriter;
 import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
 import org.molgenis.data.annotation.makervcf.util.HandleMissingCaddScores;
 import org.springframework.util.FileCopyUtils;
@@ -149,6 +156,68 @@ public class WriteToRVCFTest extends Setup
 				readVcfLinesWithoutHeader(expectedOutputVcfFileSplittedAnn));
 	}
 
+	@Test
+	public void testBgzipWithTabixIndex() throws Exception
+	{
+		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, repPathoFile,
+				caddFile, null, HandleMissingCaddScores.Mode.ANALYSIS, true);
+		Iterator<GavinRecord> match = new MatchVariantsToGenotypeAndInheritance(discover.findRelevantVariants(),
+				cgdFile, new HashSet<String>()).go();
+
+		File observedOutputVcfGzFile = new File(FileUtils.getTempDirectory(), "outputVcfFile.vcf.gz");
+		VcfRecordMapperSettings vcfRecordMapperSettings = VcfRecordMapperSettings
+				.create(false, RlvMode.MERGED, false, false);
+		new WriteToRVCF().writeRVCF(match, observedOutputVcfGzFile, inputVcfFile, "test", "command", true,
+				vcfRecordMapperSettings);
+
+		assertTrue(new File(observedOutputVcfGzFile.getPath() + ".tbi").exists());
+
+		TabixReader tabixReader = new TabixReader(observedOutputVcfGzFile.getPath());
+		TabixReader.Iterator iterator = tabixReader.query("1:3-4");
+		List<String> positions = new ArrayList<>();
+		String line;
+		while ((line = iterator.next()) != null)
+		{
+			positions.add(line.split("\t")[1]);
+		}
+		assertEquals(positions, Arrays.asList("3", "4"));
+	}
+
+	@Test
+	public void testSidecar() throws Exception
+	{
+		DiscoverRelevantVariants discover = new DiscoverRelevantVariants(inputVcfFile, gavinFile, repPathoFile, caddFile,
+				null, HandleMissingCaddScores.Mode.ANALYSIS, false);
+		Iterator<GavinRecord> match = new MatchVariantsToGenotypeAndInheritance(discover.findRelevantVariants(),
+				cgdFile, new HashSet<String>()).go();
+
+		File sidecarFile = new File(FileUtils.getTempDirectory(), "outputVcfFile.vcf" + RlvSidecarWriter.EXTENSION);
+		VcfRecordMapperSettings vcfRecordMapperSettings = VcfRecordMapperSettings
+				.create(false, RlvMode.MERGED, false, false);
+		new WriteToRVCF().writeRVCF(match, observedOutputVcfFile, inputVcfFile, "test", "command", true,
+				vcfRecordMapperSettings, sidecarFile);
+
+		List<String> genes = new ArrayList<>();
+		List<String> statuses = new ArrayList<>();
+		try (RlvSidecarReader sidecarReader = new RlvSidecarReader(sidecarFile))
+		{
+			assertEquals(sidecarReader.getNrOfBlocks(), 1);
+			RlvSidecarBlock block = sidecarReader.readBlock(0);
+			for (int entry = 0; entry < block.size(); entry++)
+			{
+				genes.add(sidecarReader.getGenes().get(block.getGene(entry)));
+				for (int i = block.getStatusStart(entry); i < block.getStatusEnd(entry); i++)
+				{
+					statuses.add(sidecarReader.getSamples().get(block.getStatusSample(i)) + ":" + block.getStatus(i));
+				}
+			}
+		}
+		assertEquals(genes, Arrays.asList("ADCY5", "ABCG5", "AIFM1", "ALB", "USP9Y"));
+		assertEquals(statuses,
+				Arrays.asList("p03:AFFECTED", "p02:AFFECTED", "p03:AFFECTED", "p02:CARRIER", "p03:AFFECTED",
+						"p02:CARRIER", "p03:AFFECTED", "p02:AFFECTED", "p03:HOMOZYGOUS"));
+	}
+
 	public ArrayList<String> readVcfLinesWithoutHeader(File vcf) throws FileNotFoundException
 	{
 		ArrayList<String> res = new ArrayList<>();
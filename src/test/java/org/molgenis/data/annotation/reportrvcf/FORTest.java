@@ -0,0 +1,50 @@
+package org.molgenis.data.annotation.reportrvcf;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.reportrvcf.FOR.GeneResult;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class FORTest
+{
+	private File originalVcfFile;
+	private File rvcfFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		originalVcfFile = copyResource("GAVIN-Plus_TinyDemo_1000G_Spiked.vcf");
+		rvcfFile = copyResource("GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+	}
+
+	private static File copyResource(String name) throws IOException
+	{
+		InputStream inputStream = FORTest.class.getResourceAsStream("/" + name);
+		File file = new File(FileUtils.getTempDirectory(), name);
+		FileCopyUtils.copy(inputStream, new FileOutputStream(file));
+		return file;
+	}
+
+	@Test
+	public void testCompute() throws Exception
+	{
+		List<String> geneResults = new ArrayList<>();
+		for (GeneResult geneResult : FOR.compute(originalVcfFile, rvcfFile, 2))
+		{
+			geneResults.add(geneResult.getGene() + ":" + geneResult.getExpected() + ":" + geneResult.getObserved());
+		}
+		assertEquals(geneResults,
+				Arrays.asList("PMS2:2:0", "http:2:2", "AQP1:3:1", "SBDS:2:0", "ABCB4:5:2", "GATAD1:3:1", "TFR2:3:1",
+						"DLD:3:1", "CLCN1:3:1", "KCNH2:4:1"));
+	}
+}
@@ -0,0 +1,51 @@
+package org.molgenis.data.annotation.reportrvcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class FdrHomHetAggregatorTest
+{
+	private File rvcfFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream rvcf = FdrHomHetAggregatorTest.class.getResourceAsStream(
+				"/GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+		rvcfFile = new File(FileUtils.getTempDirectory(), "GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+		FileCopyUtils.copy(rvcf, new FileOutputStream(rvcfFile));
+	}
+
+	@Test
+	public void testAggregate() throws Exception
+	{
+		File fdrFile = new File(FileUtils.getTempDirectory(), "FdrHomHetAggregatorTest.fdr.tsv");
+		File homHetFile = new File(FileUtils.getTempDirectory(), "FdrHomHetAggregatorTest.homhet.tsv");
+
+		FdrHomHetAggregator aggregator = new FdrHomHetAggregator(10, 2);
+		aggregator.aggregate(rvcfFile);
+		aggregator.writeFdr(fdrFile);
+		aggregator.writeHomHetCounts(homHetFile);
+
+		assertEquals(Files.readAllLines(fdrFile.toPath(), UTF_8),
+				Arrays.asList(FDR.HEADER, "PMS2\t1\t0\t0.1\t0.0", "AQP1\t0\t1\t0.0\t0.1", "SBDS\t1\t0\t0.1\t0.0",
+						"ABCB4\t2\t0\t0.2\t0.0", "GATAD1\t0\t1\t0.0\t0.1", "TFR2\t0\t1\t0.0\t0.1",
+						"DLD\t0\t1\t0.0\t0.1", "CLCN1\t1\t0\t0.1\t0.0", "KCNH2\t1\t0\t0.1\t0.0"));
+		assertEquals(Files.readAllLines(homHetFile.toPath(), UTF_8),
+				Arrays.asList(HomHetCounts.HEADER, "PMS2\t0\t1\t0.0\t0.1", "AQP1\t0\t1\t0.0\t0.1",
+						"SBDS\t0\t1\t0.0\t0.1", "ABCB4\t0\t2\t0.0\t0.2", "GATAD1\t0\t1\t0.0\t0.1",
+						"TFR2\t0\t1\t0.0\t0.1", "DLD\t0\t1\t0.0\t0.1", "CLCN1\t0\t1\t0.0\t0.1",
+						"KCNH2\t0\t1\t0.0\t0.1"));
+	}
+}
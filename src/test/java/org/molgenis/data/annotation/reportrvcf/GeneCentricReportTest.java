@@ -0,0 +1,91 @@
+package org.molgenis.data.annotation.reportrvcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.molgenis.data.annotation.core.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.makervcf.structs.GavinRecord;
+import org.molgenis.data.annotation.makervcf.structs.Relevance;
+import org.molgenis.vcf.VcfRecord;
+import org.molgenis.vcf.meta.VcfMeta;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GeneCentricReportTest
+{
+	private File rvcfFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream rvcf = GeneCentricReportTest.class.getResourceAsStream("/GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+		rvcfFile = new File(FileUtils.getTempDirectory(), "GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+		FileCopyUtils.copy(rvcf, new FileOutputStream(rvcfFile));
+	}
+
+	@Test
+	public void testWriteReport() throws Exception
+	{
+		File reportFile = new File(FileUtils.getTempDirectory(), "GeneCentricReportTest" + GeneCentricReport.EXTENSION);
+		GeneCentricReport.writeReport(rvcfFile, reportFile);
+
+		assertEquals(Files.readAllLines(reportFile.toPath(), UTF_8),
+				Arrays.asList(GeneCentricReport.HEADER, "PMS2\t1\t1\t0\t0\tClinVar\t0.029552715654952075 0.0",
+						"AQP1\t1\t0\t1\t0\tGAVIN\t3.9936102236421724E-4 0.025559105431309903",
+						"SBDS\t1\t1\t0\t0\tGAVIN\t0.009584664536741214 0.0",
+						"ABCB4\t2\t2\t0\t0\tGAVIN\t0.3765974440894569 0.0",
+						"GATAD1\t1\t0\t1\t0\tGAVIN\t0.0 0.005191693290734824",
+						"TFR2\t1\t0\t1\t0\tGAVIN\t0.0023961661341853034 0.06669329073482429",
+						"DLD\t1\t0\t1\t0\tGAVIN\t0.0 0.024361022364217253",
+						"CLCN1\t1\t1\t0\t0\tClinVar\t0.039936102236421724 0.0",
+						"KCNH2\t1\t1\t0\t0\tGAVIN\t0.04472843450479233 0.0"));
+	}
+
+	@Test
+	public void testGeneStreamGeneOrder() throws Exception
+	{
+		// genes in the order of their first variant, like writeReport
+		List<GavinRecord> gavinRecords = asList(createGavinRecord(100, "geneC", "geneA"),
+				createGavinRecord(200, "geneA", "geneB"));
+		File reportFile = new File(FileUtils.getTempDirectory(),
+				"GeneCentricReportTestGeneOrder" + GeneCentricReport.EXTENSION);
+		try (GeneCentricReport geneCentricReport = new GeneCentricReport(gavinRecords.iterator(), reportFile))
+		{
+			geneCentricReport.go().forEachRemaining(gavinRecord ->
+			{
+			});
+		}
+
+		assertEquals(Files.readAllLines(reportFile.toPath(), UTF_8),
+				asList(GeneCentricReport.HEADER, "geneC\t1\t0\t0\t0\tGAVIN\tNA", "geneA\t2\t0\t0\t0\tGAVIN\tNA",
+						"geneB\t1\t0\t0\t0\tGAVIN\tNA"));
+	}
+
+	private static GavinRecord createGavinRecord(int position, String... genes)
+	{
+		List<Relevance> relevances = new ArrayList<>();
+		for (String gene : genes)
+		{
+			Relevance relevance = new Relevance("T", null, 0, 0, gene,
+					new Judgment(Judgment.Classification.Pathogenic, Judgment.Method.calibrated, gene, "reason",
+							"GAVIN", null));
+			relevance.setSampleStatus(Collections.emptyMap());
+			relevances.add(relevance);
+		}
+		VcfRecord vcfRecord = new VcfRecord(new VcfMeta(),
+				new String[] { "1", String.valueOf(position), ".", "A", "T", ".", ".", "." });
+		return new GavinRecord(vcfRecord, relevances);
+	}
+}
@@ -0,0 +1,77 @@
+package org.molgenis.data.annotation.reportrvcf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.springframework.util.FileCopyUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class PatientCentricReportTest
+{
+	private File rvcfFile;
+
+	@BeforeClass
+	public void beforeClass() throws IOException
+	{
+		InputStream rvcf = PatientCentricReportTest.class.getResourceAsStream(
+				"/GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+		rvcfFile = new File(FileUtils.getTempDirectory(), "GAVIN-Plus_TinyDemo_1000G_Spiked.RVCF.vcf");
+		FileCopyUtils.copy(rvcf, new FileOutputStream(rvcfFile));
+	}
+
+	@Test
+	public void testGo() throws Exception
+	{
+		File outputDir = new File(FileUtils.getTempDirectory(), "PatientCentricReportTest");
+		FileUtils.deleteDirectory(outputDir);
+
+		// small buffer and shard count, so entries are spilled multiple times and shards hold multiple samples
+		PatientCentricReport patientCentricReport = new PatientCentricReport(rvcfFile, outputDir, 2, 2, 2);
+		patientCentricReport.go();
+
+		assertEquals(outputDir.list().length, 3);
+		assertTrue(patientCentricReport.getReportFile("HG00171").exists());
+		assertTrue(patientCentricReport.getReportFile("HG00403").exists());
+		assertEquals(Files.readAllLines(patientCentricReport.getReportFile("HG00096").toPath(), UTF_8),
+				Arrays.asList(PatientCentricReport.HEADER,
+						"7\t30951672\tG\tA\tAQP1\tHETEROZYGOUS\t1|0\tPredicted pathogenic\tGAVIN\tBlood group  Colton\tBLOODGROUP",
+						"7\t92083883\tC\tG\tGATAD1\tCARRIER\t1|0\tPredicted pathogenic\tGAVIN\tCardiomyopathy  dilated  2B\tRECESSIVE",
+						"7\t100218631\tC\tT\tTFR2\tCARRIER\t0|1\tPredicted pathogenic\tGAVIN\tHemochromatosis  type 3\tRECESSIVE"));
+	}
+
+	@Test
+	public void testGoCollidingSampleNames() throws Exception
+	{
+		// sample names that are equal after replacing unsafe characters, or that only differ in case
+		File collidingRvcfFile = new File(FileUtils.getTempDirectory(), "PatientCentricReportTestColliding.RVCF.vcf");
+		String rvcf = FileUtils.readFileToString(rvcfFile, UTF_8);
+		FileUtils.writeStringToFile(collidingRvcfFile,
+				rvcf.replace("HG00096", "S+1").replace("HG00171", "S_1").replace("HG00403", "s_1"), UTF_8);
+		File outputDir = new File(FileUtils.getTempDirectory(), "PatientCentricReportTestColliding");
+		FileUtils.deleteDirectory(outputDir);
+
+		PatientCentricReport patientCentricReport = new PatientCentricReport(collidingRvcfFile, outputDir, 2, 2, 2);
+		patientCentricReport.go();
+
+		Set<String> fileNames = new HashSet<>();
+		for (String sample : asList("S+1", "S_1", "s_1"))
+		{
+			File reportFile = patientCentricReport.getReportFile(sample);
+			assertTrue(reportFile.exists());
+			assertTrue(fileNames.add(reportFile.getName().toLowerCase()));
+		}
+		assertEquals(Files.readAllLines(patientCentricReport.getReportFile("S+1").toPath(), UTF_8).size(), 4);
+	}
+}